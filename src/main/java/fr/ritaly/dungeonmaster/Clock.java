@@ -21,16 +21,28 @@ package fr.ritaly.dungeonmaster;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import fr.ritaly.dungeonmaster.event.ChangeCoalescer;
+import fr.ritaly.dungeonmaster.log.FlightRecorder;
+
 /**
  * The clock is the source of time ticks and broadcasts ticks to listening
  * objects inside the game. The clock runs in a separate thread and can be
  * paused / resumed.
+ * <p>
+ * Objects can either register as a {@link ClockListener} to be notified of
+ * every tick or be scheduled to be notified once after a given delay (see
+ * {@link #schedule(int, Runnable)}) or periodically (see
+ * {@link #scheduleRepeating(int, ClockListener)}). Scheduled objects are
+ * stored in a {@link TimingWheel} and cost nothing until they expire, this is
+ * the preferred way of handling long-lived timers.
+ * </p>
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
@@ -64,6 +76,11 @@ public class Clock {
 	 */
 	private int tickCount = 1;
 
+	/**
+	 * The thread currently executing a clock tick (if any).
+	 */
+	private volatile Thread tickingThread;
+
 	private final class Task implements Runnable {
 
 		/**
@@ -77,7 +94,7 @@ public class Clock {
 				// When should the next tick occur ?
 				final long nextTick = System.currentTimeMillis() + period;
 
-				_tick();
+				runTick();
 
 				while (paused) {
 					// The clock has been paused, wait for the 'resume' signal
@@ -181,16 +198,18 @@ public class Clock {
 	private static final Clock INSTANCE = new Clock();
 
 	/**
-	 * Set containing the listeners to be notified of clock ticks.
+	 * Set containing the listeners to be notified of clock ticks. The
+	 * listeners are notified in their registration order so that a tick is
+	 * reproducible from one run to another.
 	 */
-	private final Set<ClockListener> listeners = new HashSet<ClockListener>();
+	private final Set<ClockListener> listeners = new LinkedHashSet<ClockListener>();
 
 	/**
 	 * Buffer set used for storing the clock listeners to be registered at the
 	 * next clock tick. Necessary to avoid concurrent modification exceptions
 	 * when notifying listeners.
 	 */
-	private final Set<ClockListener> buffer = Collections.synchronizedSet(new HashSet<ClockListener>());
+	private final Set<ClockListener> buffer = Collections.synchronizedSet(new LinkedHashSet<ClockListener>());
 
 	/**
 	 * Buffer set used for storing the clock listeners to be unregistered at the
@@ -199,6 +218,11 @@ public class Clock {
 	 */
 	private final Set<ClockListener> trash = Collections.synchronizedSet(new HashSet<ClockListener>());
 
+	/**
+	 * The timing wheel storing the scheduled timeouts.
+	 */
+	private final TimingWheel wheel = new TimingWheel();
+
 	/**
 	 * The clock's thread.
 	 */
@@ -267,6 +291,81 @@ public class Clock {
 		}
 	}
 
+	/**
+	 * Schedules the given command to be run once after the given delay. The
+	 * delay is expressed in clock ticks: a delay of 1 runs the command at the
+	 * next tick (or at the next tick after the current one if this method is
+	 * called while the clock is ticking).
+	 *
+	 * @param delay
+	 *            the number of ticks to wait before running the command. Must
+	 *            be positive.
+	 * @param command
+	 *            the command to run. Can't be null.
+	 * @return the {@link Timeout} which can be used for cancelling the
+	 *         command. Never returns null.
+	 */
+	public Timeout schedule(int delay, final Runnable command) {
+		Validate.isTrue(delay > 0, String.format("The given delay %d must be positive", delay));
+		Validate.notNull(command, "The given command is null");
+
+		final Timeout timeout = wheel.schedule(new ClockListener() {
+			@Override
+			public boolean clockTicked() {
+				command.run();
+
+				return false;
+			}
+
+			@Override
+			public String toString() {
+				return command.toString();
+			}
+		}, delay, 0);
+
+		if (log.isDebugEnabled()) {
+			log.debug("Scheduled " + command + " [delay=" + delay + " ticks]");
+		}
+
+		return timeout;
+	}
+
+	/**
+	 * Schedules the given listener to be notified every period ticks. The
+	 * listener is notified for the first time after period ticks and then
+	 * every period ticks as long as it returns true and the returned
+	 * {@link Timeout} isn't cancelled.
+	 *
+	 * @param period
+	 *            the number of ticks between 2 notifications. Must be
+	 *            positive.
+	 * @param listener
+	 *            the listener to notify. Can't be null.
+	 * @return the {@link Timeout} which can be used for cancelling the
+	 *         notifications. Never returns null.
+	 */
+	public Timeout scheduleRepeating(int period, ClockListener listener) {
+		Validate.isTrue(period > 0, String.format("The given period %d must be positive", period));
+		Validate.notNull(listener, "The given clock listener is null");
+
+		final Timeout timeout = wheel.schedule(listener, period, period);
+
+		if (log.isDebugEnabled()) {
+			log.debug("Scheduled " + listener + " [period=" + period + " ticks]");
+		}
+
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of timeouts currently scheduled on the clock.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public int getScheduledCount() {
+		return wheel.size();
+	}
+
 	/**
 	 * Pauses the clock.
 	 */
@@ -368,6 +467,20 @@ public class Clock {
 		}
 	}
 
+	/**
+	 * Executes a clock tick and flags the current thread as the ticking one
+	 * during the tick (see {@link #isTicking()}).
+	 */
+	private void runTick() {
+		tickingThread = Thread.currentThread();
+
+		try {
+			_tick();
+		} finally {
+			tickingThread = null;
+		}
+	}
+
 	private void _tick() {
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("[----------- Tick #%d -----------]", tickCount));
@@ -385,6 +498,11 @@ public class Clock {
 			trash.clear();
 		}
 
+		FlightRecorder.tick(tickCount, listeners.size());
+
+		// Notify the scheduled timeouts expiring during this tick
+		wheel.advance();
+
 		if (!listeners.isEmpty()) {
 			if (log.isDebugEnabled()) {
 				log.debug(String.format("Clock is notifying %d listener(s) ...", listeners.size()));
@@ -405,9 +523,22 @@ public class Clock {
 			}
 		}
 
+		// Deliver the changes coalesced during this tick (if any)
+		ChangeCoalescer.getInstance().flush();
+
 		tickCount++;
 	}
 
+	/**
+	 * Tells whether the current thread is executing a clock tick. The commands
+	 * issued during a clock tick come from the game itself.
+	 *
+	 * @return whether the current thread is executing a clock tick.
+	 */
+	public boolean isTicking() {
+		return (tickingThread == Thread.currentThread());
+	}
+
 	public synchronized long getPeriod() {
 		return period;
 	}
@@ -445,7 +576,7 @@ public class Clock {
 		}
 
 		for (int i = 0; i < n; i++) {
-			_tick();
+			runTick();
 		}
 
 		if (log.isDebugEnabled()) {
@@ -469,6 +600,9 @@ public class Clock {
 		listeners.clear();
 		buffer.clear();
 		trash.clear();
+		wheel.clear();
+
+		ChangeCoalescer.getInstance().clear();
 
 		tickCount = 1;
 
@@ -19,7 +19,9 @@
 package fr.ritaly.dungeonmaster;
 
 /**
- * An object notified when the game clock ticks.
+ * An object notified when the game clock ticks. The listener is either
+ * notified of every tick (see {@link Clock#register(ClockListener)}) or every n
+ * ticks (see {@link Clock#scheduleRepeating(int, ClockListener)}).
  * 
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
@@ -18,38 +18,88 @@
  */
 package fr.ritaly.dungeonmaster;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
 /**
- * Custom implementation of {@link ClockListener} used for running a given
- * command after a defined wait time.
+ * A command run once after a defined wait time. The command is scheduled on
+ * the {@link Clock}'s timing wheel so it costs nothing while waiting.
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
-public abstract class DeferredCommand implements ClockListener {
+public abstract class DeferredCommand implements Runnable {
+
+	/**
+	 * A label used mainly for debugging purposes.
+	 */
+	private final String label;
+
+	/**
+	 * The wait time (in clock ticks) before running the command.
+	 */
+	private final int delay;
 
 	/**
-	 * The temporizer managing the count down (wait time).
+	 * The timeout created when the command was scheduled. Null if the command
+	 * isn't scheduled.
 	 */
-	private final Temporizer temporizer;
+	private Timeout timeout;
 
-	public DeferredCommand(String label, int max) {
-		this.temporizer = new Temporizer(label, max);
+	public DeferredCommand(String label, int delay) {
+		Validate.isTrue(!StringUtils.isEmpty(label), String.format("The given label '%s' is blank", label));
+		Validate.isTrue(delay > 0, String.format("The given delay %d must be positive", delay));
+
+		this.label = label;
+		this.delay = delay;
 	}
 
 	/**
 	 * Method called after the end of the wait time.
 	 */
-	protected abstract void run();
-
 	@Override
-	public final boolean clockTicked() {
-		if (temporizer.trigger()) {
-			run();
+	public abstract void run();
 
-			// Stop listening to clock ticks
-			return false;
+	/**
+	 * Schedules this command to run after its wait time.
+	 */
+	public final void schedule() {
+		if (isScheduled()) {
+			throw new IllegalStateException("The command " + label + " is already scheduled");
 		}
 
-		// Keep on listening clock ticks
-		return true;
+		this.timeout = Clock.getInstance().schedule(delay, this);
+	}
+
+	/**
+	 * Cancels this command if it's scheduled.
+	 */
+	public final void cancel() {
+		if (timeout != null) {
+			timeout.cancel();
+			timeout = null;
+		}
+	}
+
+	/**
+	 * Tells whether this command is scheduled and waiting to run.
+	 *
+	 * @return whether this command is scheduled and waiting to run.
+	 */
+	public final boolean isScheduled() {
+		return (timeout != null) && timeout.isPending();
+	}
+
+	/**
+	 * Returns the wait time (in clock ticks) before running the command.
+	 *
+	 * @return a positive integer.
+	 */
+	public final int getDelay() {
+		return delay;
+	}
+
+	@Override
+	public String toString() {
+		return label;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,289 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Immutable table of (dx, dy) offsets relative to a {@link Position}. The
+ * tables used for perception queries (visible, surrounding and attackable
+ * positions) are precomputed once and shared so that those queries can be
+ * answered without allocating any object.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class Offsets {
+
+	/**
+	 * The maximal radius / range whose tables are cached. Tables for larger
+	 * values are computed on demand.
+	 */
+	static final int MAX_CACHED_RANGE = 16;
+
+	/**
+	 * The offsets of the positions visible when looking towards a direction
+	 * indexed by the direction's ordinal (only the 4 horizontal directions are
+	 * set).
+	 */
+	private static final Offsets[] VISIBLE = new Offsets[Direction.values().length];
+
+	/**
+	 * The offsets of the surrounding positions indexed by radius.
+	 */
+	private static final Offsets[] SURROUNDING = new Offsets[MAX_CACHED_RANGE + 1];
+
+	/**
+	 * The offsets of the attackable positions indexed by range.
+	 */
+	private static final Offsets[] ATTACKABLE = new Offsets[MAX_CACHED_RANGE + 1];
+
+	static {
+		// The positions visible when looking north. The other directions are
+		// inferred by rotation
+		final int[] dx = { -1, 0, 1, -1, 0, 1, -2, -1, 0, 1, 2 };
+		final int[] dy = { -1, -1, -1, -2, -2, -2, -3, -3, -3, -3, -3 };
+
+		final int[] minus = new int[dx.length];
+
+		for (int i = 0; i < dx.length; i++) {
+			minus[i] = -dy[i];
+		}
+
+		VISIBLE[Direction.NORTH.ordinal()] = new Offsets(dx, dy);
+		VISIBLE[Direction.SOUTH.ordinal()] = new Offsets(dx, minus);
+		VISIBLE[Direction.WEST.ordinal()] = new Offsets(dy, dx);
+		VISIBLE[Direction.EAST.ordinal()] = new Offsets(minus, dx);
+
+		for (int i = 1; i <= MAX_CACHED_RANGE; i++) {
+			SURROUNDING[i] = computeSurrounding(i);
+			ATTACKABLE[i] = computeAttackable(i);
+		}
+	}
+
+	private final int[] dx, dy;
+
+	/**
+	 * The maximal absolute value of the offsets. Defines the bounding box of
+	 * the mask.
+	 */
+	private final int extent;
+
+	/**
+	 * Bitmap indexed by (dy + extent) * (2 * extent + 1) + (dx + extent) telling
+	 * whether an offset belongs to this table.
+	 */
+	private final boolean[] mask;
+
+	private Offsets(int[] dx, int[] dy) {
+		this.dx = dx;
+		this.dy = dy;
+
+		int extent = 0;
+
+		for (int i = 0; i < dx.length; i++) {
+			extent = Math.max(extent, Math.max(Math.abs(dx[i]), Math.abs(dy[i])));
+		}
+
+		this.extent = extent;
+		this.mask = new boolean[(2 * extent + 1) * (2 * extent + 1)];
+
+		for (int i = 0; i < dx.length; i++) {
+			mask[index(dx[i], dy[i])] = true;
+		}
+	}
+
+	private int index(int dx, int dy) {
+		return (dy + extent) * (2 * extent + 1) + (dx + extent);
+	}
+
+	/**
+	 * Returns the offsets of the positions visible when looking towards the
+	 * given direction (see {@link Position#getVisiblePositions(Direction)}).
+	 *
+	 * @param direction
+	 *            the direction of look. Can't be null.
+	 * @return an instance of {@link Offsets}. Never returns null.
+	 */
+	public static Offsets visible(Direction direction) {
+		Validate.notNull(direction, "The given direction is null");
+
+		final Offsets offsets = VISIBLE[direction.ordinal()];
+
+		if (offsets == null) {
+			throw new UnsupportedOperationException("Unsupported direction " + direction);
+		}
+
+		return offsets;
+	}
+
+	/**
+	 * Returns the offsets of the positions surrounding a position within the
+	 * given radius (see {@link Position#getSurroundingPositions(int)}).
+	 *
+	 * @param radius
+	 *            the radius as a number of steps. Must be positive.
+	 * @return an instance of {@link Offsets}. Never returns null.
+	 */
+	public static Offsets surrounding(int radius) {
+		Validate.isTrue(radius >= 1, "The given radius must be positive");
+
+		if (radius <= MAX_CACHED_RANGE) {
+			return SURROUNDING[radius];
+		}
+
+		return computeSurrounding(radius);
+	}
+
+	/**
+	 * Returns the offsets of the positions attackable from a position within
+	 * the given range (see {@link Position#getAttackablePositions(int)}).
+	 *
+	 * @param range
+	 *            the range as a number of steps. Must be positive.
+	 * @return an instance of {@link Offsets}. Never returns null.
+	 */
+	public static Offsets attackable(int range) {
+		Validate.isTrue(range >= 1, String.format("The given range %d must be positive", range));
+
+		if (range <= MAX_CACHED_RANGE) {
+			return ATTACKABLE[range];
+		}
+
+		return computeAttackable(range);
+	}
+
+	private static Offsets computeSurrounding(int radius) {
+		// Same order as the original algorithm: explore 1/4th of the space
+		// from the outside towards the inside and infer the 3 other points by
+		// symmetry. Comparing the squared distance to (radius + 0.5)^2 avoids
+		// computing a square root, for integers the condition becomes
+		// (x^2 + y^2 <= radius^2 + radius)
+		final int limit = (radius * radius) + radius;
+
+		int count = 0;
+
+		for (int x = 0; x <= radius; x++) {
+			for (int y = 0; y <= radius; y++) {
+				if (((x != 0) || (y != 0)) && ((x * x) + (y * y) <= limit)) {
+					count += ((x != 0) ? 2 : 1) * ((y != 0) ? 2 : 1);
+				}
+			}
+		}
+
+		final int[] dx = new int[count];
+		final int[] dy = new int[count];
+
+		int n = 0;
+
+		for (int x = radius; x >= 0; x--) {
+			for (int y = radius; y >= 0; y--) {
+				if (((x == 0) && (y == 0)) || ((x * x) + (y * y) > limit)) {
+					continue;
+				}
+
+				dx[n] = x;
+				dy[n++] = y;
+
+				if (y != 0) {
+					dx[n] = x;
+					dy[n++] = -y;
+				}
+
+				if (x != 0) {
+					dx[n] = -x;
+					dy[n++] = y;
+
+					if (y != 0) {
+						dx[n] = -x;
+						dy[n++] = -y;
+					}
+				}
+			}
+		}
+
+		return new Offsets(dx, dy);
+	}
+
+	private static Offsets computeAttackable(int range) {
+		final int[] dx = new int[4 * range];
+		final int[] dy = new int[4 * range];
+
+		for (int i = 1, n = 0; i <= range; i++) {
+			dx[n] = -i;
+			dy[n++] = 0;
+			dx[n] = i;
+			dy[n++] = 0;
+			dx[n] = 0;
+			dy[n++] = -i;
+			dx[n] = 0;
+			dy[n++] = i;
+		}
+
+		return new Offsets(dx, dy);
+	}
+
+	/**
+	 * Returns the number of offsets in this table.
+	 *
+	 * @return a positive integer.
+	 */
+	public int size() {
+		return dx.length;
+	}
+
+	/**
+	 * Returns the x offset with the given index.
+	 *
+	 * @param index
+	 *            the index of the offset in [0, size() - 1].
+	 * @return an integer.
+	 */
+	public int getX(int index) {
+		return dx[index];
+	}
+
+	/**
+	 * Returns the y offset with the given index.
+	 *
+	 * @param index
+	 *            the index of the offset in [0, size() - 1].
+	 * @return an integer.
+	 */
+	public int getY(int index) {
+		return dy[index];
+	}
+
+	/**
+	 * Tells whether the given offset belongs to this table. This is a constant
+	 * time operation.
+	 *
+	 * @param dx
+	 *            the x offset.
+	 * @param dy
+	 *            the y offset.
+	 * @return whether the given offset belongs to this table.
+	 */
+	public boolean contains(int dx, int dy) {
+		if ((dx < -extent) || (dx > extent) || (dy < -extent) || (dy > extent)) {
+			return false;
+		}
+
+		return mask[index(dx, dy)];
+	}
+}
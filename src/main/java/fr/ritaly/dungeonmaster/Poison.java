@@ -80,18 +80,16 @@ public class Poison implements ClockListener {
 
 		this.strength += powerRune.getPowerLevel();
 
-		if (!wasActive && isActive()) {
-			// Listen to clock ticks
-			Clock.getInstance().register(this);
+		if (!wasActive && isActive() && !temporizer.isStarted()) {
+			// Let the poison decay over time
+			temporizer.start(this);
 		}
 	}
 
 	@Override
 	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			// The poison naturally decays over time
-			cure(PowerRune.LO);
-		}
+		// The poison naturally decays over time
+		cure(PowerRune.LO);
 
 		// Listen as long as the poison is active
 		return isActive();
@@ -227,100 +227,8 @@ public final class Position implements Place {
 		// |   |   | 4 | 4 | 4 | 4 | 4 |   |   |
 		// +---+---+---+---+---+---+---+---+---+
 
-		// Compute the positions inside the given radius
-		final List<Position> positions = new ArrayList<Position>(64);
-
-//		// First non-optimized version
-//		for (int x = this.x - radius; x <= this.x + radius; x++) {
-//			for (int y = this.y - radius; y <= this.y + radius; y++) {
-//				final Position position = new Position(x, y, 1);
-//
-//				if (this.equals(position)) {
-//					continue;
-//				}
-//
-//				final double distance = Utils.distance(this.x, this.y,
-//						position.x, position.y);
-//
-//				if (distance <= radius + 0.5d) {
-//					positions.add(position);
-//				}
-//			}
-//		}
-
-//		// Optimization: Use the symmetry to only explore 1/4th of the total
-//		// space. Test one point and if within the radius, infer the 3 others
-//		for (int x = 0; x <= radius; x++) {
-//			for (int y = 0; y <= radius; y++) {
-//				if ((x == 0) && (y == 0)) {
-//					// On ignore la position centrale
-//					continue;
-//				}
-//
-//				final double distance = Utils.distance(0, 0, x, y);
-//
-//				if (distance <= radius + 0.5d) {
-//					positions.add(new Position(this.x + x, this.y + y, this.z));
-//
-//					if (y != 0) {
-//						positions.add(new Position(this.x + x, this.y - y,
-//								this.z));
-//					}
-//
-//					if (x != 0) {
-//						positions.add(new Position(this.x - x, this.y + y,
-//								this.z));
-//
-//						if (y != 0) {
-//							positions.add(new Position(this.x - x, this.y - y,
-//									this.z));
-//						}
-//					}
-//				}
-//			}
-//		}
-
-		// Optimization: Use the symmetry to only explore 1/4th of the total
-		// space. Test one point and if within the radius, infer the 3 others
-		// Optimization 2: On parcourt l'espace de l'extèrieur vers l'intérieur
-		// et dès qu'on découvre un point dans le cercle, on prend de suite tous
-		// les points "plus proches" pour une même valeur de x
-		// Optimization 3: Méthode Utils.distance(int, int, int, int) inlinée
-		// Optimization 4: Constructeur Position(int, int, int) optimisé
-		for (int x = radius; x >= 0; x--) {
-			boolean inside = false;
-
-			for (int y = radius; y >= 0; y--) {
-				if ((x == 0) && (y == 0)) {
-					// On ignore la position centrale
-					continue;
-				}
-
-				if (!inside) {
-					final double distance = Math.sqrt((x * x) + (y * y));
-
-					inside = (distance <= radius + 0.5d);
-				}
-
-				if (inside) {
-					positions.add(new Position(this.x + x, this.y + y, this.z));
-
-					if (y != 0) {
-						positions.add(new Position(this.x + x, this.y - y, this.z));
-					}
-
-					if (x != 0) {
-						positions.add(new Position(this.x - x, this.y + y, this.z));
-
-						if (y != 0) {
-							positions.add(new Position(this.x - x, this.y - y, this.z));
-						}
-					}
-				}
-			}
-		}
-
-		return positions;
+		// The offsets are precomputed (see Offsets#surrounding(int))
+		return toPositions(Offsets.surrounding(radius));
 	}
 
 	/**
@@ -389,8 +297,6 @@ public final class Position implements Place {
 		// FIXME Add a sightRange parameter ? Because creatures can have a longer sight range
 		Validate.notNull(lookDirection, "The given direction is null");
 
-		final List<Position> positions = new ArrayList<Position>(11);
-
 		// The positions visible from P when looking towards North
 		// +---+---+---+---+---+---+---+---+---+
 		// |   |   |   |   |   |   |   |   |   |
@@ -404,72 +310,7 @@ public final class Position implements Place {
 		// |   |   |   |   | P |   |   |   |   |
 		// +---+---+---+---+---+---+---+---+---+
 
-		switch (lookDirection) {
-		case NORTH:
-			positions.add(new Position(x - 1, y - 1, z));
-			positions.add(new Position(x, y - 1, z));
-			positions.add(new Position(x + 1, y - 1, z));
-
-			positions.add(new Position(x - 1, y - 2, z));
-			positions.add(new Position(x, y - 2, z));
-			positions.add(new Position(x + 1, y - 2, z));
-
-			positions.add(new Position(x - 2, y - 3, z));
-			positions.add(new Position(x - 1, y - 3, z));
-			positions.add(new Position(x, y - 3, z));
-			positions.add(new Position(x + 1, y - 3, z));
-			positions.add(new Position(x + 2, y - 3, z));
-			break;
-		case SOUTH:
-			positions.add(new Position(x - 1, y + 1, z));
-			positions.add(new Position(x, y + 1, z));
-			positions.add(new Position(x + 1, y + 1, z));
-
-			positions.add(new Position(x - 1, y + 2, z));
-			positions.add(new Position(x, y + 2, z));
-			positions.add(new Position(x + 1, y + 2, z));
-
-			positions.add(new Position(x - 2, y + 3, z));
-			positions.add(new Position(x - 1, y + 3, z));
-			positions.add(new Position(x, y + 3, z));
-			positions.add(new Position(x + 1, y + 3, z));
-			positions.add(new Position(x + 2, y + 3, z));
-			break;
-		case WEST:
-			positions.add(new Position(x - 1, y - 1, z));
-			positions.add(new Position(x - 1, y, z));
-			positions.add(new Position(x - 1, y + 1, z));
-
-			positions.add(new Position(x - 2, y - 1, z));
-			positions.add(new Position(x - 2, y, z));
-			positions.add(new Position(x - 2, y + 1, z));
-
-			positions.add(new Position(x - 3, y - 2, z));
-			positions.add(new Position(x - 3, y - 1, z));
-			positions.add(new Position(x - 3, y, z));
-			positions.add(new Position(x - 3, y + 1, z));
-			positions.add(new Position(x - 3, y + 2, z));
-			break;
-		case EAST:
-			positions.add(new Position(x + 1, y - 1, z));
-			positions.add(new Position(x + 1, y, z));
-			positions.add(new Position(x + 1, y + 1, z));
-
-			positions.add(new Position(x + 2, y - 1, z));
-			positions.add(new Position(x + 2, y, z));
-			positions.add(new Position(x + 2, y + 1, z));
-
-			positions.add(new Position(x + 3, y - 2, z));
-			positions.add(new Position(x + 3, y - 1, z));
-			positions.add(new Position(x + 3, y, z));
-			positions.add(new Position(x + 3, y + 1, z));
-			positions.add(new Position(x + 3, y + 2, z));
-			break;
-		default:
-			throw new UnsupportedOperationException("Unsupported direction " + lookDirection);
-		}
-
-		return positions;
+		return toPositions(Offsets.visible(lookDirection));
 	}
 
 	/**
@@ -620,18 +461,83 @@ public final class Position implements Place {
 		// |   |   |   | 3 |   |   |   |
 		// +---+---+---+---+---+---+---+
 
-		final List<Position> positions = new ArrayList<Position>(4 * range);
+		return toPositions(Offsets.attackable(range));
+	}
+
+	private List<Position> toPositions(Offsets offsets) {
+		final List<Position> positions = new ArrayList<Position>(offsets.size());
 
-		for (int i = 1; i <= range; i++) {
-			positions.add(new Position(x-i, y, z));
-			positions.add(new Position(x+i, y, z));
-			positions.add(new Position(x, y-i, z));
-			positions.add(new Position(x, y+i, z));
+		for (int i = 0; i < offsets.size(); i++) {
+			positions.add(new Position(x + offsets.getX(i), y + offsets.getY(i), z));
 		}
 
 		return positions;
 	}
 
+	/**
+	 * Tells whether the given position belongs to the offsets relative to this
+	 * position. Doesn't allocate any object.
+	 *
+	 * @param position
+	 *            the position to test. Can't be null.
+	 * @param offsets
+	 *            the offsets relative to this position. Can't be null.
+	 * @return whether the given position belongs to the offsets.
+	 */
+	public boolean contains(Position position, Offsets offsets) {
+		Validate.notNull(position, "The given position is null");
+		Validate.notNull(offsets, "The given offsets are null");
+
+		return (this.z == position.z) && offsets.contains(position.x - this.x, position.y - this.y);
+	}
+
+	/**
+	 * Tells whether the given position is visible from this position when
+	 * looking towards the given direction. Equivalent to (but faster than)
+	 * testing whether the list returned by
+	 * {@link #getVisiblePositions(Direction)} contains the position.
+	 *
+	 * @param position
+	 *            the position to test. Can't be null.
+	 * @param lookDirection
+	 *            the direction of look. Can't be null.
+	 * @return whether the given position is visible from this position.
+	 */
+	public boolean isVisible(Position position, Direction lookDirection) {
+		return contains(position, Offsets.visible(lookDirection));
+	}
+
+	/**
+	 * Tells whether the given position surrounds this position within the
+	 * given radius. Equivalent to (but faster than) testing whether the list
+	 * returned by {@link #getSurroundingPositions(int)} contains the position.
+	 *
+	 * @param position
+	 *            the position to test. Can't be null.
+	 * @param radius
+	 *            the radius as a number of steps. Must be positive.
+	 * @return whether the given position surrounds this position.
+	 */
+	public boolean isSurrounding(Position position, int radius) {
+		return contains(position, Offsets.surrounding(radius));
+	}
+
+	/**
+	 * Tells whether the given position can be attacked from this position
+	 * within the given range. Equivalent to (but faster than) testing whether
+	 * the list returned by {@link #getAttackablePositions(int)} contains the
+	 * position.
+	 *
+	 * @param position
+	 *            the position to test. Can't be null.
+	 * @param range
+	 *            the range as a number of steps. Must be positive.
+	 * @return whether the given position can be attacked from this position.
+	 */
+	public boolean isAttackable(Position position, int range) {
+		return contains(position, Offsets.attackable(range));
+	}
+
 	/**
 	 * From this position, returns the direction into which one should look to
 	 * point towards the given position.
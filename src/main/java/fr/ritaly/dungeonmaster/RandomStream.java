@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Fast splittable pseudo-random number generator (same algorithm as the
+ * SplitMix64 generator). A stream is meant to be owned by a single subsystem
+ * or entity and isn't thread-safe: concurrent subsystems should
+ * {@link #split()} their own stream instead of sharing one. Two streams
+ * created with the same seed return the same sequence of values.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class RandomStream {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Generates the seeds of the streams created without an explicit seed.
+	 */
+	private static final AtomicLong SEEDER = new AtomicLong(mix64(System.currentTimeMillis())
+			^ mix64(System.nanoTime()));
+
+	private long seed;
+
+	/**
+	 * The increment added to the seed at each step. Always odd.
+	 */
+	private final long gamma;
+
+	/**
+	 * Creates a new stream with the given seed.
+	 *
+	 * @param seed
+	 *            the stream's seed.
+	 */
+	public RandomStream(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Creates a new stream whose seed is likely to differ from the ones of the
+	 * other streams. The values returned aren't reproducible.
+	 */
+	public RandomStream() {
+		this(SEEDER.getAndAdd(2 * GOLDEN_GAMMA));
+	}
+
+	private RandomStream(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+
+		return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		z = (z ^ (z >>> 33)) | 1L;
+
+		// Ensure the gamma has enough bit transitions
+		final int n = Long.bitCount(z ^ (z >>> 1));
+
+		return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+	}
+
+	private long nextSeed() {
+		return (seed += gamma);
+	}
+
+	/**
+	 * Returns a new stream whose values are independent from this one's. The
+	 * new stream is derived from this stream's state so splitting is
+	 * reproducible.
+	 *
+	 * @return a new stream. Never returns null.
+	 */
+	public RandomStream split() {
+		return new RandomStream(mix64(nextSeed()), mixGamma(nextSeed()));
+	}
+
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	public int nextInt() {
+		return mix32(nextSeed());
+	}
+
+	/**
+	 * Returns a random integer within [0, bound[.
+	 *
+	 * @param bound
+	 *            the (exclusive) upper bound. Must be positive.
+	 * @return a random integer within [0, bound[.
+	 */
+	public int nextInt(int bound) {
+		Validate.isTrue(bound > 0, String.format("The given bound %d must be positive", bound));
+
+		final int mask = bound - 1;
+
+		int r = mix32(nextSeed());
+
+		if ((bound & mask) == 0) {
+			// The bound is a power of 2
+			return r & mask;
+		}
+
+		// Reject the values which would make the result biased
+		int u = r >>> 1;
+
+		while (u + mask - (r = u % bound) < 0) {
+			u = mix32(nextSeed()) >>> 1;
+		}
+
+		return r;
+	}
+
+	/**
+	 * Returns a random integer within the range [min, max] (same contract as
+	 * {@link Utils#random(int, int)}).
+	 *
+	 * @param min
+	 *            the range's lower bound. Can't be negative.
+	 * @param max
+	 *            the range's upper bound. Can't be negative.
+	 * @return a random integer within the specified range.
+	 */
+	public int nextInt(int min, int max) {
+		Validate.isTrue(min >= 0, String.format("The given min %d must be positive", min));
+		Validate.isTrue(max >= 0, String.format("The given max %d must be positive", max));
+		Validate.isTrue(min < max, String.format("The given min %d must be lesser than the max %d", min, max));
+
+		return min + nextInt(max + 1 - min);
+	}
+
+	public boolean nextBoolean() {
+		return mix32(nextSeed()) < 0;
+	}
+
+	/**
+	 * Randomly permutes the given list.
+	 *
+	 * @param list
+	 *            the list to shuffle. Can't be null.
+	 */
+	public <T> void shuffle(List<T> list) {
+		Validate.notNull(list, "The given list is null");
+
+		for (int i = list.size(); i > 1; i--) {
+			final int j = nextInt(i);
+
+			list.set(j, list.set(i - 1, list.get(j)));
+		}
+	}
+
+	/**
+	 * Returns an element randomly chosen from the given list.
+	 *
+	 * @param list
+	 *            the list to pick an element from. Can't be null or empty.
+	 * @return an element of the list.
+	 */
+	public <T> T pick(List<T> list) {
+		Validate.notNull(list, "The given list is null");
+		Validate.isTrue(!list.isEmpty(), "The given list is empty");
+
+		return list.get(nextInt(list.size()));
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Source of the {@link RandomStream}s used by the subsystems and entities of a
+ * dungeon. Each subsystem gets its own stream whose seed only depends on the
+ * root seed and the subsystem's name so that the values drawn by a subsystem
+ * don't depend on the other subsystems. The entities get streams split from
+ * their subsystem's stream. Running twice a simulation with the same root
+ * seed produces the same random values.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class RandomStreams {
+
+	/**
+	 * The name of the subsystem moving and placing the creatures.
+	 */
+	public static final String CREATURES = "Creatures";
+
+	/**
+	 * The name of the subsystem placing the creatures on the elements.
+	 */
+	public static final String PLACEMENT = "Placement";
+
+	/**
+	 * The name of the subsystem placing the items on the elements.
+	 */
+	public static final String ITEMS = "Items";
+
+	/**
+	 * The name of the subsystem rolling the champions' stats and choosing the
+	 * party's leader.
+	 */
+	public static final String CHAMPIONS = "Champions";
+
+	/**
+	 * The name of the subsystem computing the damage inflicted by the dungeon
+	 * itself (falls, poison clouds, walls bumped into).
+	 */
+	public static final String HAZARDS = "Hazards";
+
+	private final long seed;
+
+	/**
+	 * The streams of the subsystems by name. Guarded by this object's lock.
+	 */
+	private final Map<String, RandomStream> streams = new HashMap<String, RandomStream>();
+
+	public RandomStreams(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the root seed.
+	 *
+	 * @return a long.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the stream of the subsystem with the given name. The stream
+	 * mustn't be shared between threads.
+	 *
+	 * @param subsystem
+	 *            the subsystem's name. Can't be blank.
+	 * @return a stream. Never returns null.
+	 */
+	public synchronized RandomStream getStream(String subsystem) {
+		Validate.isTrue(!StringUtils.isBlank(subsystem), String.format("The given subsystem '%s' is blank", subsystem));
+
+		RandomStream stream = streams.get(subsystem);
+
+		if (stream == null) {
+			// Derive the seed from the subsystem's name (and not from the
+			// order the streams are created)
+			stream = new RandomStream(seed ^ ((long) subsystem.hashCode() << 32 | (subsystem.length() & 0xFFFFFFFFL)))
+					.split();
+
+			streams.put(subsystem, stream);
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Returns a new stream for an entity of the given subsystem. The stream
+	 * is split from the subsystem's stream and can be used by the entity
+	 * without synchronization.
+	 *
+	 * @param subsystem
+	 *            the subsystem's name. Can't be blank.
+	 * @return a new stream. Never returns null.
+	 */
+	public synchronized RandomStream newStream(String subsystem) {
+		return getStream(subsystem).split();
+	}
+}
@@ -53,6 +53,19 @@ public enum Sector implements Place {
 		return Sector.values()[RandomUtils.nextInt(COUNT)];
 	}
 
+	/**
+	 * Returns a sector drawn from the given random stream.
+	 *
+	 * @param random
+	 *            the stream to draw the sector from. Can't be null.
+	 * @return a sector. Never returns null.
+	 */
+	public static Sector random(RandomStream random) {
+		Validate.notNull(random, "The given random stream is null");
+
+		return Sector.values()[random.nextInt(COUNT)];
+	}
+
 	/**
 	 * TODO Translate this javadoc to english
 	 * Tire au hasard parmi les deux {@link Sector}s visibles de la
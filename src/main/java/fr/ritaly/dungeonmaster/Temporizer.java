@@ -27,6 +27,19 @@ import org.apache.commons.logging.LogFactory;
  * A temporizer is responsible for delaying the triggering of an event for a
  * specified number of clock "cycles". This class acts as a count down and is
  * reusable: once a temporizer triggered, it can be reused endlessly.
+ * <p>
+ * A temporizer can be used in two ways:
+ * <ul>
+ * <li>Started with {@link #start(ClockListener)}: the temporizer schedules the
+ * given listener on the {@link Clock}'s timing wheel and the listener is only
+ * notified when the temporizer triggers. This is the preferred way as a
+ * dormant temporizer costs nothing between 2 triggerings.</li>
+ * <li>Polled with {@link #trigger()}: the owner calls this method once per
+ * "cycle". This is useful when the cycles are driven by another object (for
+ * instance the {@link fr.ritaly.dungeonmaster.stat.Stats} of a champion are
+ * animated by the champion itself).</li>
+ * </ul>
+ * </p>
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
@@ -49,6 +62,12 @@ public final class Temporizer {
 	 */
 	private final String label;
 
+	/**
+	 * The timeout created when the temporizer was started. Null if the
+	 * temporizer was never started.
+	 */
+	private Timeout timeout;
+
 	public Temporizer(String label, int max) {
 		Validate.isTrue(!StringUtils.isEmpty(label), String.format("The given label '%s' is blank", label));
 		Validate.isTrue(max > 0, String.format("The given max value %d must be positive", max));
@@ -58,6 +77,53 @@ public final class Temporizer {
 		this.current = max;
 	}
 
+	/**
+	 * Starts the temporizer: the given listener will be notified every time
+	 * the temporizer triggers (that is, every <code>max</code> clock ticks) as
+	 * long as it returns true or until the temporizer is stopped.
+	 *
+	 * @param listener
+	 *            the listener to notify when the temporizer triggers. Can't be
+	 *            null.
+	 */
+	public void start(ClockListener listener) {
+		Validate.notNull(listener, "The given clock listener is null");
+
+		if (isStarted()) {
+			throw new IllegalStateException("The temporizer " + label + " is already started");
+		}
+
+		this.timeout = Clock.getInstance().scheduleRepeating(max, listener);
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Temporizer[%s] started", label));
+		}
+	}
+
+	/**
+	 * Stops the temporizer. Does nothing if the temporizer isn't started.
+	 */
+	public void stop() {
+		if (timeout != null) {
+			timeout.cancel();
+			timeout = null;
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Temporizer[%s] stopped", label));
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the temporizer is started, that is, whether its listener
+	 * will be notified the next time the temporizer triggers.
+	 *
+	 * @return whether the temporizer is started.
+	 */
+	public boolean isStarted() {
+		return (timeout != null) && timeout.isPending();
+	}
+
 	/**
 	 * Notifies the temporizer that a clock cycle elapsed and returns if the
 	 * temporiser triggered.
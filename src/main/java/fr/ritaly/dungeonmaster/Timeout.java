@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+/**
+ * Handle returned when scheduling a {@link ClockListener} on the {@link Clock}
+ * (see {@link Clock#schedule(int, Runnable)} and
+ * {@link Clock#scheduleRepeating(int, ClockListener)}). The handle can be used
+ * to cancel the scheduled task before it expires.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class Timeout {
+
+	/**
+	 * Enumerates the possible states of a {@link Timeout}.
+	 */
+	private static enum State {
+		PENDING,
+		CANCELLED,
+		EXPIRED;
+	}
+
+	/**
+	 * The listener to notify when the timeout expires.
+	 */
+	final ClockListener listener;
+
+	/**
+	 * The period (in clock ticks) between 2 notifications of the listener. Zero
+	 * for a one-shot timeout.
+	 */
+	final int period;
+
+	/**
+	 * The wheel this timeout is scheduled on.
+	 */
+	private final TimingWheel wheel;
+
+	/**
+	 * The absolute tick (in the timing wheel's referential) when the timeout
+	 * will expire.
+	 */
+	long deadline;
+
+	/**
+	 * Links to the previous / next timeouts in the wheel's bucket. Both null
+	 * when the timeout isn't currently stored in a bucket.
+	 */
+	Timeout previous, next;
+
+	/**
+	 * The timeout's state. Guarded by the timing wheel's lock.
+	 */
+	private State state = State.PENDING;
+
+	Timeout(TimingWheel wheel, ClockListener listener, long deadline, int period) {
+		this.wheel = wheel;
+		this.listener = listener;
+		this.deadline = deadline;
+		this.period = period;
+	}
+
+	/**
+	 * Cancels this timeout. Does nothing if the timeout already expired or was
+	 * already cancelled.
+	 *
+	 * @return whether the timeout was cancelled by this call.
+	 */
+	public boolean cancel() {
+		return wheel.cancel(this);
+	}
+
+	/**
+	 * Tells whether this timeout is still pending, that is, neither cancelled
+	 * nor expired. A repeating timeout stays pending until cancelled or until
+	 * its listener asks to stop being notified.
+	 *
+	 * @return whether this timeout is still pending.
+	 */
+	public boolean isPending() {
+		synchronized (wheel) {
+			return pending();
+		}
+	}
+
+	/**
+	 * Tells whether this timeout was cancelled.
+	 *
+	 * @return whether this timeout was cancelled.
+	 */
+	public boolean isCancelled() {
+		synchronized (wheel) {
+			return State.CANCELLED.equals(state);
+		}
+	}
+
+	/**
+	 * Tells whether this timeout expired.
+	 *
+	 * @return whether this timeout expired.
+	 */
+	public boolean isExpired() {
+		synchronized (wheel) {
+			return State.EXPIRED.equals(state);
+		}
+	}
+
+	// Must be called with the wheel's lock held
+	boolean pending() {
+		return State.PENDING.equals(state);
+	}
+
+	// Must be called with the wheel's lock held
+	boolean markCancelled() {
+		if (!State.PENDING.equals(state)) {
+			return false;
+		}
+
+		state = State.CANCELLED;
+
+		return true;
+	}
+
+	// Must be called with the wheel's lock held
+	void markExpired() {
+		if (State.PENDING.equals(state)) {
+			state = State.EXPIRED;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Timeout[" + listener + ", deadline=" + deadline + ", period=" + period + "]";
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hierarchical timing wheel storing the {@link Timeout}s scheduled on the
+ * {@link Clock}. The wheel is made of {@link #LEVELS} levels of
+ * {@link #SLOTS} buckets each. A timeout is stored in the level matching its
+ * remaining delay and cascades down to the lower levels as the time elapses.
+ * Advancing the wheel by one tick only visits the bucket of the current tick
+ * (and occasionally cascades a higher-level bucket) so the cost of a tick
+ * depends on the number of timeouts expiring and not on the number of
+ * timeouts pending.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class TimingWheel {
+
+	/**
+	 * The number of bits used for indexing the buckets of a level.
+	 */
+	private static final int BITS = 6;
+
+	/**
+	 * The number of buckets per level.
+	 */
+	static final int SLOTS = 1 << BITS;
+
+	private static final int MASK = SLOTS - 1;
+
+	/**
+	 * The number of levels of the wheel.
+	 */
+	static final int LEVELS = 4;
+
+	/**
+	 * The maximal delay (in ticks) the wheel can represent. Timeouts expiring
+	 * after this delay are parked in the last level and re-inserted when their
+	 * bucket cascades.
+	 */
+	static final long MAX_DELAY = (1L << (BITS * LEVELS)) - 1;
+
+	private final Log log = LogFactory.getLog(TimingWheel.class);
+
+	/**
+	 * The buckets of the wheel indexed by [level][slot]. Each bucket is a
+	 * circular doubly-linked list whose head is a sentinel {@link Timeout}.
+	 */
+	private final Timeout[][] buckets = new Timeout[LEVELS][SLOTS];
+
+	/**
+	 * The current time of the wheel, that is, the number of ticks elapsed.
+	 */
+	private long now;
+
+	/**
+	 * The number of pending timeouts stored in the wheel.
+	 */
+	private int size;
+
+	/**
+	 * Buffer storing the timeouts expiring during the current tick. Only used
+	 * by the clock's thread.
+	 */
+	private final List<Timeout> expired = new ArrayList<Timeout>();
+
+	TimingWheel() {
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				final Timeout sentinel = new Timeout(this, null, 0, 0);
+				sentinel.previous = sentinel;
+				sentinel.next = sentinel;
+
+				buckets[level][slot] = sentinel;
+			}
+		}
+	}
+
+	/**
+	 * Schedules the given listener to be notified after the given delay and
+	 * then every period ticks (if the period is positive) as long as the
+	 * listener returns true.
+	 *
+	 * @param listener
+	 *            the listener to notify. Can't be null.
+	 * @param delay
+	 *            the delay (in ticks) before the first notification. Must be
+	 *            positive.
+	 * @param period
+	 *            the period (in ticks) between two notifications. Zero for a
+	 *            one-shot timeout.
+	 * @return the {@link Timeout} created.
+	 */
+	synchronized Timeout schedule(ClockListener listener, int delay, int period) {
+		final Timeout timeout = new Timeout(this, listener, now + delay, period);
+
+		add(timeout);
+
+		size++;
+
+		return timeout;
+	}
+
+	synchronized boolean cancel(Timeout timeout) {
+		if (!timeout.markCancelled()) {
+			return false;
+		}
+
+		if (timeout.next != null) {
+			// The timeout is stored in a bucket (it isn't currently firing)
+			unlink(timeout);
+		}
+
+		size--;
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of pending timeouts.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of ticks elapsed since the wheel was created or
+	 * cleared.
+	 *
+	 * @return a positive or zero long.
+	 */
+	synchronized long getTime() {
+		return now;
+	}
+
+	/**
+	 * Cancels all the pending timeouts and resets the wheel's time.
+	 */
+	synchronized void clear() {
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				final Timeout sentinel = buckets[level][slot];
+
+				while (sentinel.next != sentinel) {
+					final Timeout timeout = sentinel.next;
+
+					unlink(timeout);
+
+					timeout.markCancelled();
+				}
+			}
+		}
+
+		size = 0;
+		now = 0;
+	}
+
+	/**
+	 * Advances the wheel by one tick and notifies the listeners of the
+	 * timeouts expiring during this tick. Must only be called by the clock's
+	 * thread.
+	 */
+	void advance() {
+		synchronized (this) {
+			now++;
+
+			// Cascade the buckets of the upper levels when the lower level
+			// wraps around
+			for (int level = 1; level < LEVELS; level++) {
+				if (((now >> (BITS * (level - 1))) & MASK) != 0) {
+					break;
+				}
+
+				cascade(level, (int) ((now >> (BITS * level)) & MASK));
+			}
+
+			final Timeout sentinel = buckets[0][(int) (now & MASK)];
+
+			while (sentinel.next != sentinel) {
+				final Timeout timeout = sentinel.next;
+
+				unlink(timeout);
+
+				expired.add(timeout);
+			}
+		}
+
+		if (expired.isEmpty()) {
+			return;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("%d timeout(s) expired at tick %d", expired.size(), now));
+		}
+
+		try {
+			for (int i = 0; i < expired.size(); i++) {
+				fire(expired.get(i));
+			}
+		} finally {
+			expired.clear();
+		}
+	}
+
+	private void fire(Timeout timeout) {
+		if (timeout.period == 0) {
+			synchronized (this) {
+				if (!timeout.pending()) {
+					return;
+				}
+
+				timeout.markExpired();
+
+				size--;
+			}
+
+			timeout.listener.clockTicked();
+
+			return;
+		}
+
+		if (!timeout.isPending()) {
+			// Cancelled while waiting to fire
+			return;
+		}
+
+		final boolean again = timeout.listener.clockTicked();
+
+		synchronized (this) {
+			if (!timeout.pending()) {
+				// Cancelled by the listener
+				return;
+			}
+
+			if (again) {
+				timeout.deadline = now + timeout.period;
+
+				add(timeout);
+			} else {
+				timeout.markExpired();
+
+				size--;
+			}
+		}
+	}
+
+	// Must be called with the lock held
+	private void cascade(int level, int slot) {
+		final Timeout sentinel = buckets[level][slot];
+
+		while (sentinel.next != sentinel) {
+			final Timeout timeout = sentinel.next;
+
+			unlink(timeout);
+
+			add(timeout);
+		}
+	}
+
+	// Must be called with the lock held
+	private void add(Timeout timeout) {
+		final long delay = timeout.deadline - now;
+
+		final Timeout sentinel;
+
+		if (delay < SLOTS) {
+			sentinel = buckets[0][(int) (timeout.deadline & MASK)];
+		} else {
+			// Park the timeout in the last level if it expires beyond the
+			// wheel's capacity, it'll be re-inserted when its bucket cascades
+			final long expires = (delay > MAX_DELAY) ? now + MAX_DELAY : timeout.deadline;
+
+			int level = 1;
+
+			while ((level < LEVELS - 1) && ((expires - now) >> (BITS * (level + 1))) != 0) {
+				level++;
+			}
+
+			sentinel = buckets[level][(int) ((expires >> (BITS * level)) & MASK)];
+		}
+
+		timeout.previous = sentinel.previous;
+		timeout.next = sentinel;
+		sentinel.previous.next = timeout;
+		sentinel.previous = timeout;
+	}
+
+	// Must be called with the lock held
+	private static void unlink(Timeout timeout) {
+		timeout.previous.next = timeout.next;
+		timeout.next.previous = timeout.previous;
+		timeout.previous = null;
+		timeout.next = null;
+	}
+}
@@ -29,7 +29,10 @@ import org.apache.commons.lang.math.RandomUtils;
 public class Utils {
 
 	/**
-	 * Returns a random value within the specified range [min, max].
+	 * Returns a random value within the specified range [min, max]. The value
+	 * is drawn from a global source and can't be reproduced, prefer the
+	 * dungeon's {@link RandomStream}s when possible (see
+	 * {@link RandomStream#nextInt(int, int)}).
 	 *
 	 * @param min
 	 *            the range's lower bound. Can't be negative.
@@ -108,6 +108,15 @@ public class LoopingActuator implements Actuator {
 		return (current < max);
 	}
 
+	/**
+	 * Returns the actuator cloned every time this actuator loops.
+	 *
+	 * @return an {@link Actuator}. Never returns null.
+	 */
+	public Actuator getPrototype() {
+		return prototype;
+	}
+
 	@Override
 	public Object clone() throws CloneNotSupportedException {
 		return super.clone();
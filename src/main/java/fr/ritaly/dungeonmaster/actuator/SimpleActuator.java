@@ -20,6 +20,7 @@ package fr.ritaly.dungeonmaster.actuator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang.Validate;
@@ -109,6 +110,15 @@ public class SimpleActuator implements Actuator {
 		return true;
 	}
 
+	/**
+	 * Returns the elements triggered by this actuator.
+	 *
+	 * @return an unmodifiable list of {@link Triggerable}s. Never returns null.
+	 */
+	public List<Triggerable> getTargets() {
+		return Collections.unmodifiableList(targets);
+	}
+
 	@Override
 	public String getLabel() {
 		return label;
@@ -19,7 +19,7 @@
 package fr.ritaly.dungeonmaster.ai;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -35,8 +35,9 @@ import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.HasDirection;
 import fr.ritaly.dungeonmaster.Position;
-import fr.ritaly.dungeonmaster.Utils;
-import fr.ritaly.dungeonmaster.ai.astar.PathFinder;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
+import fr.ritaly.dungeonmaster.ai.astar.HierarchicalPathFinder;
 import fr.ritaly.dungeonmaster.audio.AudioClip;
 import fr.ritaly.dungeonmaster.champion.Champion;
 import fr.ritaly.dungeonmaster.champion.Party;
@@ -44,8 +45,13 @@ import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
 import fr.ritaly.dungeonmaster.item.Action;
 import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.log.FlightRecorder;
+import fr.ritaly.dungeonmaster.log.FlightRecorder.EventType;
 import fr.ritaly.dungeonmaster.magic.Spell;
+import fr.ritaly.dungeonmaster.map.CellMap;
+import fr.ritaly.dungeonmaster.map.Dungeon;
 import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
 import fr.ritaly.dungeonmaster.stat.Stat;
 
 /**
@@ -378,7 +384,9 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		 * @return a list of attack spells. Never returns null.
 		 */
 		public Set<Spell.Type> getAttackSpells() {
-			final Set<Spell.Type> spells = getSpells();
+			// The definition's spells can't be modified, work on a copy
+			final Set<Spell.Type> spells = EnumSet.noneOf(Spell.Type.class);
+			spells.addAll(getSpells());
 
 			// Remove the possible non-attack spells (like OPEN_DOOR)
 			for (final Iterator<Spell.Type> it = spells.iterator(); it.hasNext();) {
@@ -442,11 +450,15 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		 * Tells whether the attack of a {@link Creature} against a
 		 * {@link Champion} succeeds.
 		 *
+		 * @param random
+		 *            the stream to draw the attack roll from. Can't be null.
 		 * @return whether the attack of a {@link Creature} against a
 		 *         {@link Champion} succeeds.
 		 */
-		public boolean hitsChampion() {
-			return Utils.random(255) < getAttackProbability();
+		public boolean hitsChampion(RandomStream random) {
+			Validate.notNull(random, "The given random stream is null");
+
+			return random.nextInt(0, 255) < getAttackProbability();
 		}
 
 		public int getAttackProbability() {
@@ -597,6 +609,12 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		GIANT;
 	}
 
+	/**
+	 * The maximal distance (in positions) between a patrolling creature's
+	 * waypoint and its patrol origin.
+	 */
+	private static final int PATROL_RADIUS = 3;
+
 	private static final AtomicInteger SEQUENCE = new AtomicInteger();
 
 	private final int id = SEQUENCE.incrementAndGet();
@@ -625,6 +643,12 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 	 */
 	private Element element;
 
+	/**
+	 * The stream of random values used by this creature. Split from the
+	 * dungeon's streams once the creature is inside a dungeon.
+	 */
+	private RandomStream random;
+
 	/**
 	 * The creature's look direction. Can't be null.
 	 */
@@ -648,19 +672,109 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 	 */
 	private final AtomicInteger attackTimer = new AtomicInteger();
 
+	/**
+	 * Whether the creature is pursuing the party which left the creature's
+	 * level.
+	 */
+	private boolean pursuing;
+
+	/**
+	 * The request for the path of the pursuit across levels. Null if the
+	 * creature isn't waiting for a path.
+	 */
+	private HierarchicalPathRequest pursuitRequest;
+
+	/**
+	 * The path followed by the creature pursuing the party on another level.
+	 * Null if the creature has no path to follow.
+	 */
+	private List<Element> pursuitPath;
+
+	/**
+	 * The start and goal positions of the last pursuit path which couldn't be
+	 * found. Not requested again as long as neither the creature nor the
+	 * party moves. Null if none.
+	 */
+	private Position unreachableStart, unreachableGoal;
+
+	/**
+	 * The position around which the creature patrols. Null until the creature
+	 * starts patrolling.
+	 */
+	private Position patrolOrigin;
+
+	/**
+	 * The position the creature walks to when patrolling. The creature walks
+	 * back and forth between its patrol origin and this waypoint so that the
+	 * paths are served by the dungeon's {@link PathCache}. Null if not picked
+	 * yet.
+	 */
+	private Position patrolWaypoint;
+
+	/**
+	 * Whether the patrolling creature is walking towards its waypoint (or back
+	 * to its patrol origin).
+	 */
+	private boolean outbound;
+
+	/**
+	 * The path followed by the patrolling creature. Null if the creature has
+	 * no path to follow.
+	 */
+	private List<Element> patrolPath;
+
+	/**
+	 * The index in the patrol path of the element where the creature is.
+	 */
+	private int patrolIndex;
+
+	/**
+	 * The request for the path of the next leg of the patrol. Null if the
+	 * creature isn't waiting for a path.
+	 */
+	private PathRequest patrolRequest;
+
+	/**
+	 * Listener notified when the path of the next leg of the patrol has been
+	 * solved.
+	 */
+	private final PathListener patrolListener = new PathListener() {
+		@Override
+		public void pathResolved(PathRequest request) {
+			patrolPathResolved(request);
+		}
+	};
+
 	// The parameter 'multiplier' can denote a health multiplier or a
 	// "level experience multiplier"
 	public Creature(Type type, int multiplier, Direction direction) {
+		this(type, multiplier, direction, null);
+	}
+
+	/**
+	 * Creates a new creature drawing its random values from the given stream
+	 * (typically split from the dungeon's streams, see
+	 * {@link fr.ritaly.dungeonmaster.map.Dungeon#getRandomStreams()}) so that
+	 * the creature's health and behavior are reproducible.
+	 *
+	 * @param random
+	 *            the stream of random values used by the creature. Can be
+	 *            null in which case the stream is split from the dungeon's
+	 *            streams when the creature is placed inside a dungeon.
+	 */
+	public Creature(Type type, int multiplier, Direction direction, RandomStream random) {
 		Validate.notNull(type, "The given creature type is null");
 		Validate.isTrue(multiplier > 0, String.format("The given multiplier %d must be positive", multiplier));
 		Validate.notNull(direction, "The given direction is null");
 
 		this.type = type;
 		this.direction = direction;
+		this.random = random;
 
 		// Formula excerpted from "Technical Documentation - Dungeon Master and
 		// Chaos Strikes Back Creature Generators"
-		final int healthPoints = (multiplier * getType().getBaseHealth()) + Utils.random(getType().getBaseHealth() / 4);
+		final int healthPoints = (multiplier * getType().getBaseHealth())
+				+ ((random != null) ? random : new RandomStream()).nextInt(0, getType().getBaseHealth() / 4);
 
 		this.health = new Stat(getId(), "Health", healthPoints, healthPoints);
 		this.health.addChangeListener(this);
@@ -869,6 +983,24 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		return health.value();
 	}
 
+	public int getMaxHealth() {
+		return health.maxValue();
+	}
+
+	/**
+	 * Restores the creature's health. Used when reloading a creature from a
+	 * snapshot.
+	 *
+	 * @param value
+	 *            the creature's health points.
+	 * @param maxValue
+	 *            the creature's max health points.
+	 */
+	public void restoreHealth(int value, int maxValue) {
+		health.baseMaxValue(maxValue);
+		health.baseValue(value);
+	}
+
 	public int hit(AttackType attackType) {
 		Validate.notNull(attackType, "The given attack type is null");
 
@@ -883,7 +1015,7 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		// FIXME Refine the lower and upper bounds for the damage points below
 		switch (attackType) {
 		case CRITICAL:
-			damage = Utils.random(1, 5) * 3;
+			damage = getRandom().nextInt(1, 5) * 3;
 			break;
 
 		case FIRE:
@@ -891,7 +1023,7 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		case NORMAL:
 		case PSYCHIC:
 		case SHARP:
-			damage = Utils.random(1, 5);
+			damage = getRandom().nextInt(1, 5);
 			break;
 
 		case MAGIC:
@@ -900,7 +1032,7 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 				return 0;
 			}
 
-			damage = Utils.random(1, 5);
+			damage = getRandom().nextInt(1, 5);
 			break;
 
 		default:
@@ -1090,23 +1222,17 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 			return false;
 		}
 
-		// FIXME Consider the transparency of doors and the possible elements between the 2 positions
-
-		// What are the positions visible from the creature ?
-		final List<Position> visiblePositions = currentPosition.getVisiblePositions(direction);
-
-		// Convert the positions into elements
-		final List<Element> visibleElements = getElement().getLevel().getElements(visiblePositions);
-
-		for (Element element : visibleElements) {
-			if (targetPosition.equals(element.getPosition())) {
-				// The creature can see the position
-				return true;
-			}
+		// Optimization: Ensure the target position is inside the cone of view
+		// before looking up the field of view
+		if (!currentPosition.isVisible(targetPosition, direction)) {
+			return false;
 		}
 
-		// The creature can't see the position
-		return false;
+		// The field of view takes into account the walls and the doors (and
+		// their transparency) between the 2 positions
+		// FIXME Use the creature's sight range
+		return getElement().getLevel().getFieldOfView().isVisible(currentPosition, direction,
+				FieldOfView.DEFAULT_RANGE, targetPosition);
 	}
 
 	/**
@@ -1134,24 +1260,17 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 			return false;
 		}
 
-		// FIXME Take into account the possible obstacles between the 2 positions !!
-
-		// What are the positions that the creature can hear ? There are within
-		// a range defined by the creature's awareness
-		final List<Position> audiblePositions = currentPosition.getSurroundingPositions(getType().getAwareness());
+		final NoiseMap noiseMap = getElement().getLevel().getNoiseMap();
 
-		// Convert the positions into elements
-		final List<Element> audibleElements = getElement().getLevel().getElements(audiblePositions);
-
-		for (Element element : audibleElements) {
-			if (targetPosition.equals(element.getPosition())) {
-				// The position can be heard
-				return true;
-			}
+		if (!noiseMap.isSource(targetPosition.x, targetPosition.y)) {
+			// No noise was made from this position
+			return false;
 		}
 
-		// The creature can't hear a sound from this position
-		return false;
+		// The noise map takes into account the obstacles between the 2
+		// positions. The noise must be heard within a range defined by the
+		// creature's awareness
+		return noiseMap.isAudible(currentPosition.x, currentPosition.y, getType().getAwareness());
 	}
 
 	/**
@@ -1179,20 +1298,15 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 
 		// FIXME Take into account the possible obstacles between the 2 positions !!
 
-		final List<Position> attackablePositions;
-
 		// Can the creature perform a remote attack (with an attack spell) ?
 		if (!getType().getAttackSpells().isEmpty()) {
-			// Yes. What are the positions attackable with a spall within the
-			// (spell) range ?
-			attackablePositions = currentPosition.getAttackablePositions(getSpellRange());
-		} else {
-			// No, the creature has to adjoin the party to perform a direct
-			// attack
-			attackablePositions = currentPosition.getAttackablePositions();
+			// Yes. Is the position attackable with a spell within the (spell)
+			// range ?
+			return currentPosition.isAttackable(targetPosition, getSpellRange());
 		}
 
-		return attackablePositions.contains(targetPosition);
+		// No, the creature has to adjoin the party to perform a direct attack
+		return currentPosition.isAttackable(targetPosition, 1);
 	}
 
 	private boolean isMoveAllowed() {
@@ -1261,6 +1375,21 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 			}
 		}
 
+		if (!isMoveAllowed() && getType().canMove()
+				&& (State.IDLE.equals(getState()) || State.PATROLLING.equals(getState()))
+				&& (patrolPath == null) && (patrolRequest == null)) {
+
+			// Request the path of the patrol's next leg ahead of time so that
+			// it's available when the creature can move again
+			planPatrol();
+		}
+
+		if (!isMoveAllowed() && getType().canMove() && (party != null)) {
+			// Same thing for the searches of the creature's next move
+			// towards the party
+			planStalking(party);
+		}
+
 		if (isMoveAllowed()) {
 			// FIXME Take into account the ambient light and whether the party is invisible to determine whether the detection succeeds
 
@@ -1291,6 +1420,25 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 				}
 			}
 
+			if ((party != null) && State.TRACKING.equals(getState())) {
+				if (pursue(party.getPosition())) {
+					// The party left the level, the creature pursues it
+					pursuing = true;
+
+					return true;
+				}
+				if (pursuing && (party.getPosition().z == getElement().getPosition().z)
+						&& moveTo(party.getPosition().x, party.getPosition().y)) {
+
+					// The creature reached the party's level and closes in
+					return true;
+				}
+
+				// The pursuit ended or the party is out of reach on another
+				// level
+				pursuing = false;
+			}
+
 			// No party to attack, the creature wanders
 			patrol();
 		}
@@ -1309,6 +1457,10 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		setState(State.ATTACKING);
 	}
 
+	private Materiality getMateriality() {
+		return isMaterial() ? Materiality.MATERIAL : Materiality.IMMATERIAL;
+	}
+
 	private boolean moveTo(int x, int y) {
 		if (!getType().canMove()) {
 			// The creature can't move
@@ -1325,26 +1477,78 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		// The creature's start position
 		final Position startPosition = element.getPosition();
 
-		// Find a path to reach the given target position
-		final PathFinder pathFinder = new PathFinder(element.getLevel(), isMaterial() ? Materiality.MATERIAL : Materiality.IMMATERIAL);
-		final List<Element> path = pathFinder.findBestPath(x, y, startPosition.x, startPosition.y);
+		// Descend the flow field towards the target position. The field is
+		// shared with the other creatures of the level
+		final FlowField flowField = element.getLevel().getFlowField(getMateriality());
+		flowField.setTarget(x, y);
 
-		if (path == null) {
+		if (!flowField.update(element.getLevel().getDungeon().getPathRequestQueue())) {
+			// The field is being recomputed by the path request queue. The
+			// creature keeps its move for the tick when the field is
+			// delivered
+			return true;
+		}
+
+		final int distance = flowField.getDistance(startPosition.x, startPosition.y);
+
+		if (distance == FlowField.UNREACHABLE) {
 			// Unable to reach the target position, return
 			return false;
 		}
 
-		if (log.isDebugEnabled()) {
-			log.debug("Found path: " + path);
+		if (distance <= 1) {
+			// The creature is already next to the target position, it only
+			// turns towards it
+			final Direction directionTowardsTarget = startPosition.getDirectionTowards(new Position(x, y,
+					startPosition.z));
+
+			if ((directionTowardsTarget != null) && !getDirection().equals(directionTowardsTarget)) {
+				setDirection(directionTowardsTarget);
+			}
+
+			resetMoveTimer();
+
+			setState(State.TRACKING);
+
+			resetPatrol();
+
+			return true;
 		}
 
-		// Move to the next position (the second element in the returned path)
-		final Element node = path.get(1);
+		// Move to the adjacent position closest to the target. If several
+		// positions are as close, prefer the one in front of the creature
+		Element node = null;
+		int nodeDistance = distance;
+
+		for (Element candidate : element.getAdjacentElements()) {
+			if (candidate.hasParty() || !candidate.isTraversable(this)) {
+				continue;
+			}
+
+			final Position position = candidate.getPosition();
+			final int candidateDistance = flowField.getDistance(position.x, position.y);
+
+			if ((candidateDistance < nodeDistance)
+					|| ((candidateDistance == nodeDistance) && (node != null) && getDirection().equals(
+							startPosition.getDirectionTowards(position)))) {
+
+				node = candidate;
+				nodeDistance = candidateDistance;
+			}
+		}
+
+		if (node == null) {
+			// The way is blocked (by a creature, a door, etc)
+			return false;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(this + " moves to " + node.getPosition() + " [distance to target: " + nodeDistance + "]");
+		}
 
 		// The creature moves and changes its direction to reach the target
 		// position
-		final Direction directionTowardsTarget = getElement().getPosition().getDirectionTowards(
-				new Position(node.getPosition().x, node.getPosition().y, startPosition.z));
+		final Direction directionTowardsTarget = startPosition.getDirectionTowards(node.getPosition());
 
 		// The creature leaves the current position
 		element.removeCreature(this);
@@ -1356,10 +1560,8 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 			}
 		}
 
-		final Element targetElement = element.getLevel().getElement(node.getPosition().x, node.getPosition().y);
-
 		// The creature arrives on the target position
-		targetElement.addCreature(this);
+		node.addCreature(this);
 
 		// The creature can't move for a given number of clock ticks
 		resetMoveTimer();
@@ -1367,6 +1569,10 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		// Switch to the TRACKING state
 		setState(State.TRACKING);
 
+		// The creature will patrol around the position where it lost the
+		// party
+		resetPatrol();
+
 		return true;
 	}
 
@@ -1376,6 +1582,10 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 			return;
 		}
 
+		if (followPatrolPath()) {
+			return;
+		}
+
 		// The creature can move. Where will it go ?
 
 		// What are the candidate targets ?
@@ -1442,18 +1652,175 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		}
 
 		// Toss a random position
-		Collections.shuffle(surroundingElements);
+		getRandom().shuffle(surroundingElements);
+
+		step(surroundingElements.iterator().next());
+	}
+
+	/**
+	 * Moves the creature one step towards the given position when located on
+	 * another level. The path is searched by the dungeon's
+	 * {@link HierarchicalPathFinder} through the stairs and the teleporters
+	 * the creature can take. The search is submitted to the dungeon's
+	 * {@link PathRequestQueue}: the creature waits for the path, then follows
+	 * it. When the party moves, the creature keeps following its current path
+	 * until the new one is delivered.
+	 *
+	 * @param goal
+	 *            the position to reach. Can't be null.
+	 * @return whether the creature moved or waits for its path.
+	 */
+	private boolean pursue(Position goal) {
+		if (!getType().canMove() || (!canTakeStairs() && !canTeleport())) {
+			return false;
+		}
+
+		final Element element = getElement();
+		final Position position = element.getPosition();
+
+		if (goal.z == position.z) {
+			// Not a long-distance pursuit
+			resetPursuit();
+
+			return false;
+		}
+
+		requestPursuit(goal);
+
+		if (pursuitPath == null) {
+			// Wait for the path unless the goal can't be reached
+			return (pursuitRequest != null);
+		}
+
+		final int index = pursuitPath.indexOf(element);
+
+		if ((index == -1) || (index == pursuitPath.size() - 1)) {
+			// The creature left its path
+			pursuitPath = null;
+
+			return false;
+		}
+
+		final Element next = pursuitPath.get(index + 1);
+
+		if (canStepOn(next)) {
+			step(next);
+		} else if ((Element.Type.STAIRS.equals(element.getType()) || Element.Type.TELEPORTER.equals(element
+				.getType())) && next.isTraversable(this) && !next.hasParty() && next.canHost(this)) {
+
+			// The creature takes the stairs (or the teleporter) to the
+			// destination
+			element.removeCreature(this);
+
+			next.addCreature(this);
+
+			resetMoveTimer();
+		} else {
+			// The path is blocked, it'll be requested again
+			pursuitPath = null;
+
+			return false;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(this + " pursues the party to " + goal + " [" + (pursuitPath.size() - index - 2)
+					+ " move(s) left]");
+		}
+
+		return true;
+	}
 
+	/**
+	 * Requests the path of the pursuit towards the given goal if necessary and
+	 * consumes the path delivered by the dungeon's {@link PathRequestQueue}.
+	 */
+	private void requestPursuit(Position goal) {
+		final Element element = getElement();
+		final Position position = element.getPosition();
+
+		if (pursuitRequest != null) {
+			if (pursuitRequest.isResolved()) {
+				if (pursuitRequest.getPath() != null) {
+					pursuitPath = pursuitRequest.getPath();
+				} else {
+					unreachableStart = pursuitRequest.getStart();
+					unreachableGoal = pursuitRequest.getGoal();
+				}
+
+				pursuitRequest = null;
+			} else if (pursuitRequest.getGoal().equals(goal)) {
+				// Still waiting for the path
+				return;
+			} else {
+				// The party moved in the meantime
+				pursuitRequest.cancel();
+
+				pursuitRequest = null;
+			}
+		}
+
+		if ((pursuitPath != null) && goal.equals(pursuitPath.get(pursuitPath.size() - 1).getPosition())) {
+			// The path is up to date
+			return;
+		}
+		if (goal.equals(unreachableGoal) && position.equals(unreachableStart)) {
+			// Already known to be unreachable
+			return;
+		}
+
+		final Dungeon dungeon = element.getLevel().getDungeon();
+
+		pursuitRequest = new HierarchicalPathRequest(dungeon, getMateriality(), position, goal, canTakeStairs(),
+				canTeleport());
+
+		dungeon.getPathRequestQueue().submit(pursuitRequest);
+	}
+
+	private void resetPursuit() {
+		pursuitPath = null;
+		unreachableStart = null;
+		unreachableGoal = null;
+
+		if (pursuitRequest != null) {
+			pursuitRequest.cancel();
+
+			pursuitRequest = null;
+		}
+	}
+
+	/**
+	 * Requests ahead of time the searches necessary for the creature's next
+	 * move towards the party: the flow field when the creature detects the
+	 * party on its level, the pursuit path when the party is on another level.
+	 */
+	private void planStalking(Party party) {
+		final Element element = getElement();
+		final Position target = party.getPosition();
+
+		if (target.z == element.getPosition().z) {
+			if (pursuing || canSeePosition(target) || canHearPosition(target)) {
+				final FlowField flowField = element.getLevel().getFlowField(getMateriality());
+				flowField.setTarget(target.x, target.y);
+				flowField.update(element.getLevel().getDungeon().getPathRequestQueue());
+			}
+		} else if (State.TRACKING.equals(getState()) && (canTakeStairs() || canTeleport())) {
+			requestPursuit(target);
+		}
+	}
+
+	/**
+	 * Moves the creature to the given adjacent element.
+	 */
+	private void step(Element endElement) {
 		final Element startElement = getElement();
-		final Element endElement = surroundingElements.iterator().next();
 
 		// Identify the direction when moving from the start to the end element
-		final Direction directionTowardsTarget = getElement().getPosition().getDirectionTowards(endElement.getPosition());
+		final Direction directionTowardsTarget = startElement.getPosition().getDirectionTowards(endElement.getPosition());
 
 		// The creature leaves the current position (event fired)
 		startElement.removeCreature(this);
 
-		if (!getDirection().equals(directionTowardsTarget)) {
+		if ((directionTowardsTarget != null) && !getDirection().equals(directionTowardsTarget)) {
 			// Change the creature's direction consistently with the move
 			setDirection(directionTowardsTarget);
 		}
@@ -1465,6 +1832,214 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		resetMoveTimer();
 	}
 
+	/**
+	 * Tells whether the creature can step on the given element (adjacent to
+	 * the creature) when following a path. The pits are avoided.
+	 */
+	private boolean canStepOn(Element target) {
+		final Position position = getElement().getPosition();
+		final Position targetPosition = target.getPosition();
+
+		if ((targetPosition == null) || (targetPosition.z != position.z)
+				|| (Math.abs(targetPosition.x - position.x) + Math.abs(targetPosition.y - position.y) != 1)) {
+
+			// The element was replaced or isn't adjacent
+			return false;
+		}
+		if (!target.isTraversable(this) || target.hasParty() || !target.canHost(this)) {
+			return false;
+		}
+
+		switch (target.getType()) {
+		case STAIRS:
+			return canTakeStairs();
+		case TELEPORTER:
+			return canTeleport();
+		case PIT:
+			return false;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Moves the patrolling creature one step along its patrol path. The path
+	 * is looked up in the dungeon's {@link PathCache} when the creature starts
+	 * a new leg of its patrol. If not cached, the path is requested to the
+	 * dungeon's {@link PathRequestQueue} and the creature waits for it.
+	 *
+	 * @return whether the creature moved or is waiting for its path.
+	 */
+	private boolean followPatrolPath() {
+		if (patrolPath == null) {
+			if (patrolRequest == null) {
+				planPatrol();
+			}
+			if (patrolRequest != null) {
+				if (State.IDLE.equals(getState())) {
+					setState(State.PATROLLING);
+				}
+
+				// Wait for the path
+				return true;
+			}
+			if (patrolPath == null) {
+				return false;
+			}
+		}
+
+		final Element next = patrolPath.get(patrolIndex + 1);
+
+		if (!canStepOn(next)) {
+			// The way is blocked, pick another waypoint
+			patrolPath = null;
+			patrolWaypoint = null;
+
+			return false;
+		}
+
+		if (State.IDLE.equals(getState())) {
+			// Switch to the PATROLLING state
+			setState(State.PATROLLING);
+		}
+
+		step(next);
+
+		if (++patrolIndex == patrolPath.size() - 1) {
+			// End of the leg, walk back
+			patrolPath = null;
+			outbound = !outbound;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Looks up the path of the next leg of the creature's patrol.
+	 */
+	private void planPatrol() {
+		final Element element = getElement();
+		final Position position = element.getPosition();
+
+		if ((patrolOrigin == null) || (patrolOrigin.z != position.z)) {
+			patrolOrigin = position;
+			patrolWaypoint = null;
+		}
+		if (patrolWaypoint == null) {
+			patrolWaypoint = pickWaypoint(element.getLevel().getCellMap());
+			outbound = true;
+
+			if (patrolWaypoint == null) {
+				return;
+			}
+		}
+
+		final Position goal = outbound ? patrolWaypoint : patrolOrigin;
+
+		if (goal.equals(position)) {
+			// Already there, walk back on the next move
+			outbound = !outbound;
+
+			return;
+		}
+
+		final Level level = element.getLevel();
+
+		final List<Element> path = level.getDungeon().getPathCache().get(level, getMateriality(), position.x,
+				position.y, goal.x, goal.y);
+
+		if (path == null) {
+			// Solve the path outside the clock's thread
+			patrolRequest = level.getDungeon().getPathRequestQueue().submit(level, getMateriality(), position.x,
+					position.y, goal.x, goal.y, patrolListener);
+
+			return;
+		}
+
+		patrolPath = path;
+		patrolIndex = 0;
+	}
+
+	private void patrolPathResolved(PathRequest request) {
+		if (request != patrolRequest) {
+			// Obsolete request
+			return;
+		}
+
+		patrolRequest = null;
+
+		final List<Element> path = request.getPath();
+
+		if (path == null) {
+			// The waypoint can't be reached, pick another one
+			patrolWaypoint = null;
+
+			return;
+		}
+
+		final Element element = getElement();
+
+		if ((element == null) || (path.get(0) != element) || !isTraversable(path)) {
+			// The creature or the level changed in the meantime, plan again
+			return;
+		}
+
+		patrolPath = request.getLevel().getDungeon().getPathCache().put(request.getLevel(),
+				request.getMateriality(), path);
+		patrolIndex = 0;
+	}
+
+	/**
+	 * Tells whether the given path (solved against a snapshot of the level) is
+	 * still traversable.
+	 */
+	private boolean isTraversable(List<Element> path) {
+		for (Element element : path) {
+			final Position position = element.getPosition();
+
+			if ((position == null) || (element.getLevel() == null)
+					|| !element.getLevel().getCellMap().isTraversable(position.x, position.y, getMateriality())) {
+
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Randomly picks a traversable position around the patrol origin.
+	 *
+	 * @return a position or null if there is none.
+	 */
+	private Position pickWaypoint(CellMap cellMap) {
+		final List<Position> candidates = new ArrayList<Position>();
+
+		for (int x = patrolOrigin.x - PATROL_RADIUS; x <= patrolOrigin.x + PATROL_RADIUS; x++) {
+			for (int y = patrolOrigin.y - PATROL_RADIUS; y <= patrolOrigin.y + PATROL_RADIUS; y++) {
+				if (((x != patrolOrigin.x) || (y != patrolOrigin.y))
+						&& cellMap.isTraversable(x, y, getMateriality())) {
+
+					candidates.add(new Position(x, y, patrolOrigin.z));
+				}
+			}
+		}
+
+		return candidates.isEmpty() ? null : getRandom().pick(candidates);
+	}
+
+	private void resetPatrol() {
+		patrolOrigin = null;
+		patrolWaypoint = null;
+		patrolPath = null;
+
+		if (patrolRequest != null) {
+			patrolRequest.cancel();
+
+			patrolRequest = null;
+		}
+	}
+
 	public synchronized State getState() {
 		return state;
 	}
@@ -1477,6 +2052,8 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 
 			this.state = state;
 
+			FlightRecorder.record(EventType.CREATURE_STATE, id, backup.ordinal(), state.ordinal());
+
 			if (log.isDebugEnabled()) {
 				log.debug(this + ".State: " + backup + " -> " + this.state);
 			}
@@ -1487,6 +2064,25 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 		return element;
 	}
 
+	/**
+	 * Returns the stream of random values used by this creature. The values
+	 * are reproducible once the creature has been placed inside a dungeon.
+	 *
+	 * @return a stream. Never returns null.
+	 */
+	RandomStream getRandom() {
+		if (random == null) {
+			if ((element == null) || (element.getLevel() == null) || (element.getLevel().getDungeon() == null)) {
+				// Not inside a dungeon yet, the values can't be reproduced
+				return new RandomStream();
+			}
+
+			random = element.getLevel().getDungeon().getRandomStreams().newStream(RandomStreams.CREATURES);
+		}
+
+		return random;
+	}
+
 	public void setElement(Element element) {
 		// The element can be null
 
@@ -1495,6 +2091,14 @@ public class Creature implements ChangeListener, ClockListener, HasDirection {
 
 			this.element = element;
 
+			if ((random == null) && (element != null) && (element.getLevel() != null)
+					&& (element.getLevel().getDungeon() != null)) {
+				// Split the creature's stream as soon as it enters the dungeon
+				// (and not when it first needs a random value) so that the
+				// streams are split in a reproducible order
+				random = element.getLevel().getDungeon().getRandomStreams().newStream(RandomStreams.CREATURES);
+			}
+
 			if (log.isDebugEnabled()) {
 				log.debug(this + ".Element: " + backup + " -> " + this.element);
 			}
@@ -29,13 +29,14 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.Validate;
-import org.apache.commons.lang.math.RandomUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.Place;
 import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
 import fr.ritaly.dungeonmaster.Sector;
 import fr.ritaly.dungeonmaster.map.Element;
 
@@ -65,6 +66,12 @@ public class CreatureManager {
 
 	private final Position position;
 
+	/**
+	 * The stream of random values used for placing the creatures. Lazily
+	 * split from the dungeon's streams.
+	 */
+	private RandomStream random;
+
 	public CreatureManager(Element element) {
 		Validate.notNull(element, "The given element is null");
 
@@ -72,6 +79,20 @@ public class CreatureManager {
 		this.position = element.getPosition();
 	}
 
+	private RandomStream getRandom() {
+		if (random == null) {
+			if ((element.getLevel() == null) || (element.getLevel().getDungeon() == null)) {
+				// The element isn't inside a dungeon, the values can't be
+				// reproduced
+				return new RandomStream();
+			}
+
+			random = element.getLevel().getDungeon().getRandomStreams().newStream(RandomStreams.PLACEMENT);
+		}
+
+		return random;
+	}
+
 	/**
 	 * Returns the creatures occupying this position as a set.
 	 *
@@ -193,14 +214,14 @@ public class CreatureManager {
 				if (directions.size() == 1) {
 					return EnumSet.of(directions.iterator().next());
 				} else {
-					Collections.shuffle(directions);
+					getRandom().shuffle(directions);
 
 					return EnumSet.of(directions.iterator().next());
 				}
 			case 4:
 				// 2 are free
 				// Choose a random pair of directions
-				if (RandomUtils.nextBoolean()) {
+				if (getRandom().nextBoolean()) {
 					return EnumSet.of(Direction.EAST, Direction.WEST);
 				} else {
 					return EnumSet.of(Direction.NORTH, Direction.SOUTH);
@@ -211,7 +232,7 @@ public class CreatureManager {
 		}
 
 		// Choose a random pair of directions
-		if (RandomUtils.nextBoolean()) {
+		if (getRandom().nextBoolean()) {
 			return EnumSet.of(Direction.EAST, Direction.WEST);
 		} else {
 			return EnumSet.of(Direction.NORTH, Direction.SOUTH);
@@ -596,7 +617,7 @@ public class CreatureManager {
 			final List<Sector> sectors = new ArrayList<Sector>(getFreeSectors());
 
 			if (sectors.size() > 1) {
-				Collections.shuffle(sectors);
+				getRandom().shuffle(sectors);
 			}
 
 			final Sector sector = sectors.iterator().next();
@@ -608,7 +629,7 @@ public class CreatureManager {
 			final List<Direction> directions = new ArrayList<Direction>(getFreeDirections());
 
 			if (directions.size() > 1) {
-				Collections.shuffle(directions);
+				getRandom().shuffle(directions);
 			}
 
 			final Direction direction = directions.iterator().next();
@@ -0,0 +1,489 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.map.CellMap;
+import fr.ritaly.dungeonmaster.map.Door;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.RetractableWall;
+
+/**
+ * Computes which positions of a {@link Level} are visible from a position when
+ * looking towards a direction within a given range. The visibility is computed
+ * with a recursive shadowcasting algorithm: the opaque elements (concrete
+ * elements, fake walls, closed retractable walls and the doors one can't see
+ * through) cast shadows hiding the positions behind them.
+ * <p>
+ * The positions considered are the ones within the cone of view in front of
+ * the viewer: at a distance d (in [1, range]) from the viewer, the positions
+ * whose lateral offset doesn't exceed (d + 1) / 2. For a range of 3, the cone
+ * matches the positions returned by
+ * {@link Position#getVisiblePositions(Direction)}.
+ * </p>
+ * <p>
+ * The computed views are cached and evicted when the opacity of an element
+ * inside their window changes (see {@link #elementChanged(int, int)}). This
+ * class isn't thread-safe and must be used from the clock's thread.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class FieldOfView {
+
+	/**
+	 * The default sight range (as a number of steps).
+	 */
+	public static final int DEFAULT_RANGE = 3;
+
+	/**
+	 * The maximal sight range supported.
+	 */
+	public static final int MAX_RANGE = 255;
+
+	/**
+	 * The default maximal number of views cached.
+	 */
+	public static final int DEFAULT_CAPACITY = 128;
+
+	/**
+	 * The set of positions visible from a position when looking towards a
+	 * direction. Stored as a compact bitset covering the square window of size
+	 * (2 * range + 1) centered on the viewer's position.
+	 */
+	public static final class View {
+
+		private final int originX, originY;
+
+		private final Direction direction;
+
+		private final int range;
+
+		private final int size;
+
+		private final long[] bits;
+
+		private View(int originX, int originY, Direction direction, int range) {
+			this.originX = originX;
+			this.originY = originY;
+			this.direction = direction;
+			this.range = range;
+			this.size = (2 * range) + 1;
+			this.bits = new long[((size * size) + 63) >>> 6];
+		}
+
+		private void set(int x, int y) {
+			final int index = ((y - originY + range) * size) + (x - originX + range);
+
+			bits[index >>> 6] |= (1L << index);
+		}
+
+		/**
+		 * Tells whether the position with the given coordinates is visible.
+		 *
+		 * @param x
+		 *            the x coordinate of the position to test.
+		 * @param y
+		 *            the y coordinate of the position to test.
+		 * @return whether the position is visible.
+		 */
+		public boolean isVisible(int x, int y) {
+			if (!covers(x, y)) {
+				return false;
+			}
+
+			final int index = ((y - originY + range) * size) + (x - originX + range);
+
+			return (bits[index >>> 6] & (1L << index)) != 0;
+		}
+
+		/**
+		 * Returns the number of visible positions.
+		 *
+		 * @return a positive or zero integer.
+		 */
+		public int getCount() {
+			int count = 0;
+
+			for (int i = 0; i < bits.length; i++) {
+				count += Long.bitCount(bits[i]);
+			}
+
+			return count;
+		}
+
+		/**
+		 * Tells whether the window of this view covers the given position.
+		 */
+		private boolean covers(int x, int y) {
+			return (Math.abs(x - originX) <= range) && (Math.abs(y - originY) <= range);
+		}
+
+		public int getOriginX() {
+			return originX;
+		}
+
+		public int getOriginY() {
+			return originY;
+		}
+
+		public Direction getDirection() {
+			return direction;
+		}
+
+		public int getRange() {
+			return range;
+		}
+
+		@Override
+		public String toString() {
+			return "View[" + originX + "," + originY + ", " + direction + ", range=" + range + "]";
+		}
+	}
+
+	private final Log log = LogFactory.getLog(FieldOfView.class);
+
+	private final Level level;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * Bitset of the opaque positions indexed by <code>y * width + x</code>.
+	 * Kept up to date by {@link #elementChanged(int, int)}.
+	 */
+	private final long[] opaque;
+
+	/**
+	 * Cache of the views computed indexed by key (see
+	 * {@link #key(int, int, Direction, int)}) in access order.
+	 */
+	private final LinkedHashMap<Long, View> views;
+
+	private int hitCount, missCount;
+
+	public FieldOfView(Level level) {
+		this(level, DEFAULT_CAPACITY);
+	}
+
+	public FieldOfView(Level level, final int capacity) {
+		Validate.notNull(level, "The given level is null");
+		Validate.isTrue(capacity > 0, String.format("The given capacity %d must be positive", capacity));
+
+		this.level = level;
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.opaque = new long[((width * height) + 63) >>> 6];
+		this.views = new LinkedHashMap<Long, View>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, View> eldest) {
+				return size() > capacity;
+			}
+		};
+
+		final CellMap cellMap = level.getCellMap();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (cellMap.isOpaque(x, y)) {
+					final int node = (y * width) + x;
+
+					opaque[node >>> 6] |= (1L << node);
+				}
+			}
+		}
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Tells whether the given element blocks the sight.
+	 *
+	 * @param element
+	 *            the element to test. Can be null.
+	 * @return whether the given element blocks the sight.
+	 */
+	public static boolean isOpaque(Element element) {
+		if (element == null) {
+			return true;
+		}
+		if (element.isConcrete()) {
+			return true;
+		}
+
+		switch (element.getType()) {
+		case FAKE_WALL:
+			// Looks like a regular wall
+			return true;
+		case RETRACTABLE_WALL:
+			return !((RetractableWall) element).isOpen();
+		case DOOR:
+			final Door door = (Door) element;
+
+			// One can see through a door if its style allows it or if the
+			// door is (mostly) open or broken
+			return !door.creaturesCanSeeThrough() && !door.getState().isTraversableByProjectile();
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Notifies the field of view that the element at the given position
+	 * changed. The cached views are evicted only if the element's opacity
+	 * changed.
+	 *
+	 * @param x
+	 *            the x coordinate of the element which changed.
+	 * @param y
+	 *            the y coordinate of the element which changed.
+	 */
+	public void elementChanged(int x, int y) {
+		final int node = (y * width) + x;
+
+		final boolean before = (opaque[node >>> 6] & (1L << node)) != 0;
+
+		if (before == level.getCellMap().isOpaque(x, y)) {
+			return;
+		}
+
+		opaque[node >>> 6] ^= (1L << node);
+
+		int evicted = 0;
+
+		for (Iterator<View> it = views.values().iterator(); it.hasNext();) {
+			if (it.next().covers(x, y)) {
+				it.remove();
+				evicted++;
+			}
+		}
+
+		if (log.isDebugEnabled() && (evicted > 0)) {
+			log.debug(String.format("Evicted %d view(s) after change of element [%d,%d]", evicted, x, y));
+		}
+	}
+
+	/**
+	 * Returns the view from the given position when looking towards the given
+	 * direction within the given range.
+	 *
+	 * @param x
+	 *            the x coordinate of the viewer.
+	 * @param y
+	 *            the y coordinate of the viewer.
+	 * @param direction
+	 *            the direction of look. Can't be null.
+	 * @param range
+	 *            the sight range. Must be in [1, {@link #MAX_RANGE}].
+	 * @return a {@link View}. Never returns null.
+	 */
+	public View getView(int x, int y, Direction direction, int range) {
+		Validate.isTrue((x >= 0) && (x < width), String.format("The given x %d is out of bounds", x));
+		Validate.isTrue((y >= 0) && (y < height), String.format("The given y %d is out of bounds", y));
+		Validate.notNull(direction, "The given direction is null");
+		Validate.isTrue((range >= 1) && (range <= MAX_RANGE),
+				String.format("The given range %d must be in [1,%d]", range, MAX_RANGE));
+
+		final Long key = Long.valueOf(key(x, y, direction, range));
+
+		View view = views.get(key);
+
+		if (view != null) {
+			hitCount++;
+
+			return view;
+		}
+
+		missCount++;
+
+		view = compute(x, y, direction, range);
+
+		views.put(key, view);
+
+		return view;
+	}
+
+	/**
+	 * Tells whether the given target position is visible from the given
+	 * position when looking towards the given direction within the given
+	 * range.
+	 *
+	 * @param position
+	 *            the viewer's position. Can't be null.
+	 * @param direction
+	 *            the direction of look. Can't be null.
+	 * @param range
+	 *            the sight range. Must be in [1, {@link #MAX_RANGE}].
+	 * @param target
+	 *            the position to test. Can't be null.
+	 * @return whether the target position is visible.
+	 */
+	public boolean isVisible(Position position, Direction direction, int range, Position target) {
+		Validate.notNull(position, "The given position is null");
+		Validate.notNull(target, "The given target position is null");
+
+		if ((position.z != level.getNumber()) || (target.z != level.getNumber())) {
+			return false;
+		}
+		if ((Math.abs(target.x - position.x) > range) || (Math.abs(target.y - position.y) > range)) {
+			// Optimization: No need to look up the view
+			return false;
+		}
+
+		return getView(position.x, position.y, direction, range).isVisible(target.x, target.y);
+	}
+
+	private static long key(int x, int y, Direction direction, int range) {
+		return (((((long) x << 16) | y) << 8 | direction.ordinal()) << 8) | range;
+	}
+
+	private View compute(int x, int y, Direction direction, int range) {
+		// The forward and lateral unit vectors
+		final int fx, fy, lx, ly;
+
+		switch (direction) {
+		case NORTH:
+			fx = 0;
+			fy = -1;
+			lx = 1;
+			ly = 0;
+			break;
+		case SOUTH:
+			fx = 0;
+			fy = 1;
+			lx = 1;
+			ly = 0;
+			break;
+		case WEST:
+			fx = -1;
+			fy = 0;
+			lx = 0;
+			ly = 1;
+			break;
+		case EAST:
+			fx = 1;
+			fy = 0;
+			lx = 0;
+			ly = 1;
+			break;
+		default:
+			throw new UnsupportedOperationException("Unsupported direction " + direction);
+		}
+
+		final View view = new View(x, y, direction, range);
+
+		// Cast the light in the 2 octants on both sides of the forward axis
+		castLight(view, 1, 1.0d, 0.0d, -lx, -fx, -ly, -fy);
+		castLight(view, 1, 1.0d, 0.0d, lx, -fx, ly, -fy);
+
+		return view;
+	}
+
+	/**
+	 * Recursive shadowcasting over one octant. The cell at (row, col) in the
+	 * octant's referential is mapped to the level's coordinates with the
+	 * transformation (xx, xy, yx, yy).
+	 */
+	private void castLight(View view, int row, double start, double end, int xx, int xy, int yx, int yy) {
+		if (start < end) {
+			return;
+		}
+
+		double newStart = 0.0d;
+
+		boolean blocked = false;
+
+		for (int distance = row; (distance <= view.range) && !blocked; distance++) {
+			final int dy = -distance;
+
+			for (int dx = -distance; dx <= 0; dx++) {
+				final double leftSlope = (dx - 0.5d) / (dy + 0.5d);
+				final double rightSlope = (dx + 0.5d) / (dy - 0.5d);
+
+				if (start < rightSlope) {
+					continue;
+				}
+				if (end > leftSlope) {
+					break;
+				}
+
+				final int x = view.originX + (dx * xx) + (dy * xy);
+				final int y = view.originY + (dx * yx) + (dy * yy);
+
+				final boolean inside = (x >= 0) && (x < width) && (y >= 0) && (y < height);
+
+				if (inside && (-dx <= (distance + 1) / 2)) {
+					// The position is lit and inside the cone of view
+					view.set(x, y);
+				}
+
+				final boolean blocking = !inside || isOpaque(x, y);
+
+				if (blocked) {
+					if (blocking) {
+						newStart = rightSlope;
+						continue;
+					}
+
+					blocked = false;
+					start = newStart;
+				} else if (blocking && (distance < view.range)) {
+					blocked = true;
+
+					castLight(view, distance + 1, start, leftSlope, xx, xy, yx, yy);
+
+					newStart = rightSlope;
+				}
+			}
+		}
+	}
+
+	private boolean isOpaque(int x, int y) {
+		final int node = (y * width) + x;
+
+		return (opaque[node >>> 6] & (1L << node)) != 0;
+	}
+
+	public int getCacheSize() {
+		return views.size();
+	}
+
+	public int getHitCount() {
+		return hitCount;
+	}
+
+	public int getMissCount() {
+		return missCount;
+	}
+}
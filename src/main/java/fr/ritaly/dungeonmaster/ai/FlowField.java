@@ -0,0 +1,460 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.map.CellMap;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+
+/**
+ * Distance field (also known as "Dijkstra map") storing for each position of a
+ * {@link Level} the number of moves necessary to reach a target position (the
+ * party's position) for a given {@link Materiality}. The field is shared by all
+ * the creatures of the level stalking the party: a creature simply moves to the
+ * adjacent position with the lowest distance. The field is lazily recomputed
+ * (with a breadth-first search) only when the target moves or when the
+ * traversability of an element changes (see
+ * {@link #elementChanged(int, int)}).
+ * <p>
+ * The field is computed by the calling thread when read while invalid. The
+ * creatures rather call {@link #update(PathRequestQueue)} first so that the
+ * field is recomputed by a worker thread of the dungeon's
+ * {@link PathRequestQueue} against a snapshot of the level's traversability.
+ * The creatures wait for the new field until it's delivered on a later tick.
+ * </p>
+ * <p>
+ * A material creature can't traverse concrete elements, closed doors,
+ * closed retractable walls and (real) open pits. An immaterial creature can
+ * traverse any element.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class FlowField {
+
+	/**
+	 * The asynchronous recomputation of the field.
+	 */
+	private final class Update extends SearchRequest {
+
+		/**
+		 * The value of {@link FlowField#version} when the snapshot was taken.
+		 */
+		private int version;
+
+		private int target;
+
+		/**
+		 * The snapshot of the traversable positions. Null until the request
+		 * is prepared.
+		 */
+		private long[] traversable;
+
+		/**
+		 * The distances computed by the worker.
+		 */
+		private int[] distances;
+
+		private int reached;
+
+		@Override
+		void prepare(Snapshots snapshots) {
+			this.version = FlowField.this.version;
+			this.target = (targetY * width) + targetX;
+			this.traversable = snapshot();
+		}
+
+		@Override
+		void solve() {
+			if (!isCancelled()) {
+				final int[] result = new int[width * height];
+
+				this.reached = search(traversable, width, height, target, result, new int[width * height]);
+				this.distances = result;
+			}
+		}
+
+		@Override
+		void deliver() {
+			if (request == this) {
+				request = null;
+			}
+			if (isCancelled() || (distances == null)) {
+				return;
+			}
+			if (!dirty || (version != FlowField.this.version)) {
+				// The target moved or the traversability changed in the
+				// meantime, the field will be recomputed on the next update
+				return;
+			}
+
+			FlowField.this.distances = distances;
+			FlowField.this.traversable = traversable;
+			FlowField.this.dirty = false;
+			FlowField.this.computationCount++;
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Updated %s flow field of level %d towards (%d,%d) [%d positions reached]",
+						materiality, level.getNumber(), target % width, target / width, reached));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("FlowField.Update[%s:%d]", materiality, level.getNumber());
+		}
+	}
+
+	/**
+	 * The distance of a position from which the target can't be reached.
+	 */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final Log log = LogFactory.getLog(FlowField.class);
+
+	private final Level level;
+
+	private final Materiality materiality;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The distances from each position to the target indexed by
+	 * <code>y * width + x</code>.
+	 */
+	private int[] distances;
+
+	/**
+	 * Bitset of the traversable positions when the field was last computed.
+	 * Used for telling whether an element change requires recomputing the
+	 * field.
+	 */
+	private long[] traversable;
+
+	/**
+	 * The queue used by the breadth-first search. Created on the first
+	 * computation by the calling thread.
+	 */
+	private int[] queue;
+
+	private int targetX = -1, targetY = -1;
+
+	/**
+	 * Whether the field must be recomputed before being read.
+	 */
+	private boolean dirty = true;
+
+	/**
+	 * Incremented whenever the target moves or the traversability of the
+	 * level changes. Tells whether the result of an {@link Update} is still
+	 * valid.
+	 */
+	private int version;
+
+	/**
+	 * The pending recomputation of the field. Null if none.
+	 */
+	private Update request;
+
+	/**
+	 * The number of times the field was computed. Useful for monitoring.
+	 */
+	private int computationCount;
+
+	public FlowField(Level level, Materiality materiality) {
+		Validate.notNull(level, "The given level is null");
+		Validate.notNull(materiality, "The given materiality is null");
+
+		this.level = level;
+		this.materiality = materiality;
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.distances = new int[width * height];
+		this.traversable = new long[((width * height) + 63) >>> 6];
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public Materiality getMateriality() {
+		return materiality;
+	}
+
+	/**
+	 * Sets the target position of the field. The field will be recomputed on
+	 * the next read only if the target actually moved.
+	 *
+	 * @param x
+	 *            the target's x coordinate.
+	 * @param y
+	 *            the target's y coordinate.
+	 */
+	public void setTarget(int x, int y) {
+		Validate.isTrue((x >= 0) && (x < width), "The given x " + x + " must be in range [0-" + (width - 1) + "]");
+		Validate.isTrue((y >= 0) && (y < height), "The given y " + y + " must be in range [0-" + (height - 1) + "]");
+
+		if ((x != targetX) || (y != targetY)) {
+			this.targetX = x;
+			this.targetY = y;
+			this.dirty = true;
+			this.version++;
+		}
+	}
+
+	/**
+	 * Returns the number of moves necessary to reach the target from the given
+	 * position.
+	 *
+	 * @param x
+	 *            the x coordinate of the start position.
+	 * @param y
+	 *            the y coordinate of the start position.
+	 * @return a positive or zero integer or {@link #UNREACHABLE} if the target
+	 *         can't be reached from this position (or if no target is set).
+	 */
+	public int getDistance(int x, int y) {
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return UNREACHABLE;
+		}
+		if (targetX == -1) {
+			// No target set
+			return UNREACHABLE;
+		}
+		if (dirty) {
+			compute();
+		}
+
+		return distances[(y * width) + x];
+	}
+
+	/**
+	 * Notifies the field that the element at the given position changed. The
+	 * field is invalidated only if the element's traversability changed.
+	 *
+	 * @param x
+	 *            the x coordinate of the element which changed.
+	 * @param y
+	 *            the y coordinate of the element which changed.
+	 */
+	public void elementChanged(int x, int y) {
+		if ((request != null) && (request.traversable != null)) {
+			// A recomputation is in progress, its result will be discarded
+			// if the position's traversability changed since the snapshot
+			if (isTraversable(request.traversable, (y * width) + x) != level.getCellMap().isTraversable(x, y,
+					materiality)) {
+
+				this.version++;
+			}
+
+			return;
+		}
+		if (dirty) {
+			// The field will be recomputed anyway
+			return;
+		}
+
+		final int node = (y * width) + x;
+
+		if (isTraversable(traversable, node) != level.getCellMap().isTraversable(x, y, materiality)) {
+			this.dirty = true;
+			this.version++;
+		}
+	}
+
+	/**
+	 * Recomputes the field asynchronously if invalid. The recomputation is
+	 * submitted to the given queue (once) and the new field is available once
+	 * the queue delivers it on a later tick. Until then, the field is still
+	 * invalid and mustn't be read (reading it would compute it synchronously).
+	 * Must be called by the clock's thread.
+	 *
+	 * @param queue
+	 *            the queue where to submit the recomputation. Can't be null.
+	 * @return whether the field is up to date and can be read.
+	 */
+	public boolean update(PathRequestQueue queue) {
+		Validate.notNull(queue, "The given queue is null");
+
+		if (!dirty || (targetX == -1)) {
+			return true;
+		}
+
+		if (request == null) {
+			request = new Update();
+
+			queue.submit(request);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tells whether the field must be recomputed before being read.
+	 *
+	 * @return whether the field is invalid.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public int getComputationCount() {
+		return computationCount;
+	}
+
+	/**
+	 * Tells whether the given element can be traversed for this field's
+	 * materiality.
+	 *
+	 * @param element
+	 *            the element to test. Can be null.
+	 * @return whether the given element can be traversed.
+	 */
+	public boolean isTraversable(Element element) {
+		return CellMap.isTraversable(element, materiality);
+	}
+
+	/**
+	 * Tells whether the traversability of the given element can change over
+	 * time. The level listens to the changes of those elements to invalidate
+	 * its flow fields.
+	 *
+	 * @param element
+	 *            the element to test. Can't be null.
+	 * @return whether the traversability of the given element can change.
+	 */
+	public static boolean isDynamic(Element element) {
+		Validate.notNull(element, "The given element is null");
+
+		switch (element.getType()) {
+		case DOOR:
+		case PIT:
+		case RETRACTABLE_WALL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void compute() {
+		if (queue == null) {
+			queue = new int[width * height];
+		}
+
+		this.traversable = snapshot();
+
+		final int reached = search(traversable, width, height, (targetY * width) + targetX, distances, queue);
+
+		this.dirty = false;
+		this.computationCount++;
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Computed %s flow field of level %d towards (%d,%d) [%d positions reached]",
+					materiality, level.getNumber(), targetX, targetY, reached));
+		}
+	}
+
+	/**
+	 * Returns a bitset of the level's traversable positions. Must be called by
+	 * the clock's thread.
+	 */
+	private long[] snapshot() {
+		final long[] bitset = new long[((width * height) + 63) >>> 6];
+
+		final CellMap cellMap = level.getCellMap();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (cellMap.isTraversable(x, y, materiality)) {
+					final int node = (y * width) + x;
+
+					bitset[node >>> 6] |= (1L << node);
+				}
+			}
+		}
+
+		return bitset;
+	}
+
+	private static boolean isTraversable(long[] bitset, int node) {
+		return (bitset[node >>> 6] & (1L << node)) != 0;
+	}
+
+	/**
+	 * Breadth-first search from the target. The target itself is always
+	 * reached (the party stands on it). Only reads its parameters so that it
+	 * can be run by any thread.
+	 *
+	 * @return the number of positions reached.
+	 */
+	private static int search(long[] traversable, int width, int height, int target, int[] distances, int[] queue) {
+		Arrays.fill(distances, UNREACHABLE);
+
+		int head = 0, tail = 0;
+
+		distances[target] = 0;
+		queue[tail++] = target;
+
+		while (head < tail) {
+			final int node = queue[head++];
+			final int x = node % width;
+			final int y = node / width;
+			final int distance = distances[node] + 1;
+
+			// West, east, north & south neighbours
+			if (x > 0) {
+				tail = visit(traversable, distances, queue, node - 1, distance, tail);
+			}
+			if (x < width - 1) {
+				tail = visit(traversable, distances, queue, node + 1, distance, tail);
+			}
+			if (y > 0) {
+				tail = visit(traversable, distances, queue, node - width, distance, tail);
+			}
+			if (y < height - 1) {
+				tail = visit(traversable, distances, queue, node + width, distance, tail);
+			}
+		}
+
+		return tail;
+	}
+
+	private static int visit(long[] traversable, int[] distances, int[] queue, int node, int distance, int tail) {
+		if (distances[node] != UNREACHABLE) {
+			// Already reached
+			return tail;
+		}
+		if (!isTraversable(traversable, node)) {
+			return tail;
+		}
+
+		distances[node] = distance;
+		queue[tail] = node;
+
+		return tail + 1;
+	}
+}
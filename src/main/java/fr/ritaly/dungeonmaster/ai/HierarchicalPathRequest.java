@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.ai.astar.HierarchicalPathFinder;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Element;
+
+/**
+ * A request for a path across the levels of a {@link Dungeon} submitted to a
+ * {@link PathRequestQueue}. The request is solved by the dungeon's
+ * {@link HierarchicalPathFinder} on a worker thread. The requester polls the
+ * request (see {@link #isResolved()}) on the next ticks.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class HierarchicalPathRequest extends SearchRequest {
+
+	private final Dungeon dungeon;
+
+	private final Materiality materiality;
+
+	private final Position start, goal;
+
+	private final boolean stairs, teleporters;
+
+	private HierarchicalPathFinder.Query query;
+
+	/**
+	 * The path found by the worker. Published to the clock's thread by the
+	 * queue.
+	 */
+	private List<Position> positions;
+
+	private boolean resolved;
+
+	private List<Element> path;
+
+	HierarchicalPathRequest(Dungeon dungeon, Materiality materiality, Position start, Position goal,
+			boolean stairs, boolean teleporters) {
+
+		Validate.notNull(dungeon, "The given dungeon is null");
+		Validate.notNull(materiality, "The given materiality is null");
+		Validate.notNull(start, "The given start position is null");
+		Validate.notNull(goal, "The given goal position is null");
+
+		this.dungeon = dungeon;
+		this.materiality = materiality;
+		this.start = start;
+		this.goal = goal;
+		this.stairs = stairs;
+		this.teleporters = teleporters;
+	}
+
+	public Position getStart() {
+		return start;
+	}
+
+	public Position getGoal() {
+		return goal;
+	}
+
+	/**
+	 * Tells whether this request has been resolved. Must be called by the
+	 * clock's thread.
+	 *
+	 * @return whether this request has been resolved.
+	 */
+	public boolean isResolved() {
+		return resolved;
+	}
+
+	/**
+	 * Returns the path found. Must be called by the clock's thread.
+	 *
+	 * @return an unmodifiable list of elements starting with the start element
+	 *         and ending with the goal element or null if the request isn't
+	 *         resolved yet or if the goal couldn't be reached.
+	 * @see HierarchicalPathFinder#findBestPath(Position, Position, boolean,
+	 *      boolean)
+	 */
+	public List<Element> getPath() {
+		return path;
+	}
+
+	@Override
+	void prepare(Snapshots snapshots) {
+		this.query = dungeon.getHierarchicalPathFinder(materiality).prepare(start, goal, stairs, teleporters);
+	}
+
+	@Override
+	void solve() {
+		if (!isCancelled()) {
+			this.positions = query.solve();
+		}
+	}
+
+	@Override
+	void deliver() {
+		if (isCancelled()) {
+			return;
+		}
+
+		final List<Element> elements = dungeon.getHierarchicalPathFinder(materiality).getElements(positions);
+
+		if (elements != null) {
+			this.path = Collections.unmodifiableList(elements);
+		}
+
+		this.resolved = true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("HierarchicalPathRequest[%s:%s->%s]", materiality, start, goal);
+	}
+}
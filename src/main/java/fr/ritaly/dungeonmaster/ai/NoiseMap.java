@@ -0,0 +1,514 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.map.CellMap;
+import fr.ritaly.dungeonmaster.map.Door;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.RetractableWall;
+
+/**
+ * Stores for each position of a {@link Level} how far the last noise made by
+ * the party is heard. When the party makes a noise (moves, bumps into a wall,
+ * etc), the noise floods the level from the party's position through the
+ * non-concrete elements and attenuates with the distance. The flood is bounded
+ * by the noise's loudness and computed once per noise so that every creature's
+ * hearing check is a single array lookup (see {@link #isAudible(int, int, int)}
+ * ).
+ * <p>
+ * The distances are stored in half steps: an orthogonal step costs 2, a
+ * diagonal step costs 3 (an approximation of the euclidean distance) and
+ * entering a closed door or a closed retractable wall costs
+ * {@link #MUFFLING} more. Concrete elements block the noise.
+ * </p>
+ * <p>
+ * A noise fades out {@link #DURATION} clock ticks after being made: the map
+ * is then cleared and no position hears the noise anymore.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class NoiseMap {
+
+	/**
+	 * The distance of a position where the noise can't be heard.
+	 */
+	public static final int INAUDIBLE = Integer.MAX_VALUE;
+
+	/**
+	 * The additional cost (in half steps) for a noise to go through a closed
+	 * door or a closed retractable wall.
+	 */
+	public static final byte MUFFLING = 4;
+
+	/**
+	 * The default loudness (as a number of steps) of a noise made by the
+	 * party. Matches the highest creature awareness so that any creature can
+	 * hear the party within its awareness range.
+	 */
+	public static final int DEFAULT_LOUDNESS = 10;
+
+	/**
+	 * The number of clock ticks during which a noise can be heard.
+	 */
+	public static final int DURATION = 5 * Clock.ONE_SECOND;
+
+	/**
+	 * Attenuation value of an element blocking the noise.
+	 */
+	private static final byte BLOCKED = -1;
+
+	/**
+	 * Attenuation value of an element letting the noise through.
+	 */
+	private static final byte OPEN = 0;
+
+	private static final int[] DX = { -1, 1, 0, 0, -1, 1, -1, 1 };
+
+	private static final int[] DY = { 0, 0, -1, 1, -1, -1, 1, 1 };
+
+	private final Log log = LogFactory.getLog(NoiseMap.class);
+
+	private final Level level;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The distances (in half steps) from the noise's source indexed by
+	 * <code>y * width + x</code>.
+	 */
+	private final int[] distances;
+
+	/**
+	 * The attenuation of each element indexed by <code>y * width + x</code>.
+	 * Kept up to date by {@link #elementChanged(int, int)}.
+	 */
+	private final byte[] attenuations;
+
+	/**
+	 * The positions reached by the last flood. Only those are reset before
+	 * the next flood.
+	 */
+	private final int[] reached;
+
+	private int reachedCount;
+
+	/**
+	 * The buckets of positions indexed by distance (Dial's algorithm).
+	 */
+	private int[][] buckets = new int[0][];
+
+	private int[] bucketSizes = new int[0];
+
+	private int sourceX = -1, sourceY = -1, loudness;
+
+	/**
+	 * The clock tick when the last noise was made.
+	 */
+	private int emissionTick;
+
+	/**
+	 * Whether the level must be flooded again before the map is read.
+	 */
+	private boolean dirty;
+
+	/**
+	 * The number of floods computed. Useful for monitoring.
+	 */
+	private int floodCount;
+
+	public NoiseMap(Level level) {
+		Validate.notNull(level, "The given level is null");
+
+		this.level = level;
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.distances = new int[width * height];
+		this.attenuations = new byte[width * height];
+		this.reached = new int[width * height];
+
+		Arrays.fill(distances, INAUDIBLE);
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				attenuations[(y * width) + x] = getAttenuation(x, y);
+			}
+		}
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Makes a noise with the {@link #DEFAULT_LOUDNESS} at the given position.
+	 *
+	 * @param x
+	 *            the x coordinate of the noise's source.
+	 * @param y
+	 *            the y coordinate of the noise's source.
+	 */
+	public void emit(int x, int y) {
+		emit(x, y, DEFAULT_LOUDNESS);
+	}
+
+	/**
+	 * Makes a noise at the given position. The level is flooded again unless
+	 * the same noise was already made at the same position and no element
+	 * changed since.
+	 *
+	 * @param x
+	 *            the x coordinate of the noise's source.
+	 * @param y
+	 *            the y coordinate of the noise's source.
+	 * @param loudness
+	 *            the noise's loudness as a number of steps. Must be positive.
+	 */
+	public void emit(int x, int y, int loudness) {
+		Validate.isTrue((x >= 0) && (x < width), String.format("The given x %d is out of bounds", x));
+		Validate.isTrue((y >= 0) && (y < height), String.format("The given y %d is out of bounds", y));
+		Validate.isTrue(loudness > 0, String.format("The given loudness %d must be positive", loudness));
+
+		this.emissionTick = Clock.getInstance().getTickId();
+
+		if ((x == sourceX) && (y == sourceY) && (loudness == this.loudness) && !dirty) {
+			// Same noise, the map is still valid
+			return;
+		}
+
+		this.sourceX = x;
+		this.sourceY = y;
+		this.loudness = loudness;
+
+		flood();
+	}
+
+	/**
+	 * Returns the x coordinate of the last noise's source.
+	 *
+	 * @return the x coordinate or -1 if there is no noise to hear.
+	 */
+	public int getSourceX() {
+		fadeOut();
+
+		return sourceX;
+	}
+
+	/**
+	 * Returns the y coordinate of the last noise's source.
+	 *
+	 * @return the y coordinate or -1 if there is no noise to hear.
+	 */
+	public int getSourceY() {
+		fadeOut();
+
+		return sourceY;
+	}
+
+	/**
+	 * Tells whether the last noise was made at the given position.
+	 *
+	 * @param x
+	 *            the x coordinate to test.
+	 * @param y
+	 *            the y coordinate to test.
+	 * @return whether the last noise was made at the given position.
+	 */
+	public boolean isSource(int x, int y) {
+		fadeOut();
+
+		return (x == sourceX) && (y == sourceY);
+	}
+
+	/**
+	 * Returns the distance (in half steps) between the given position and the
+	 * source of the last noise.
+	 *
+	 * @param x
+	 *            the x coordinate of the position.
+	 * @param y
+	 *            the y coordinate of the position.
+	 * @return a positive or zero integer or {@link #INAUDIBLE} if the noise
+	 *         can't be heard from the position.
+	 */
+	public int getDistance(int x, int y) {
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return INAUDIBLE;
+		}
+
+		fadeOut();
+
+		if (dirty) {
+			flood();
+		}
+
+		return distances[(y * width) + x];
+	}
+
+	/**
+	 * Tells whether the last noise can be heard from the given position by a
+	 * listener with the given hearing range.
+	 *
+	 * @param x
+	 *            the x coordinate of the listener.
+	 * @param y
+	 *            the y coordinate of the listener.
+	 * @param range
+	 *            the listener's hearing range as a number of steps.
+	 * @return whether the last noise can be heard.
+	 */
+	public boolean isAudible(int x, int y, int range) {
+		if (range <= 0) {
+			return false;
+		}
+
+		final int distance = getDistance(x, y);
+
+		// Same rounding as Position.getSurroundingPositions(int)
+		return (distance != INAUDIBLE) && (distance <= (2 * range) + 1);
+	}
+
+	/**
+	 * Notifies the map that the element at the given position changed. The
+	 * map is invalidated only if the element's attenuation changed.
+	 *
+	 * @param x
+	 *            the x coordinate of the element which changed.
+	 * @param y
+	 *            the y coordinate of the element which changed.
+	 */
+	public void elementChanged(int x, int y) {
+		final int node = (y * width) + x;
+
+		final byte attenuation = getAttenuation(x, y);
+
+		if (attenuations[node] == attenuation) {
+			return;
+		}
+
+		attenuations[node] = attenuation;
+
+		if (dirty || (sourceX == -1)) {
+			return;
+		}
+
+		// The change only matters if the element or one of its neighbours was
+		// reached by the last flood
+		for (int d = -1; d < DX.length; d++) {
+			final int nx = (d == -1) ? x : x + DX[d];
+			final int ny = (d == -1) ? y : y + DY[d];
+
+			if ((nx >= 0) && (nx < width) && (ny >= 0) && (ny < height)
+					&& (distances[(ny * width) + nx] != INAUDIBLE)) {
+
+				this.dirty = true;
+
+				return;
+			}
+		}
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Clears the map if the last noise was made more than {@link #DURATION}
+	 * ticks ago.
+	 */
+	private void fadeOut() {
+		if ((sourceX == -1) || (Clock.getInstance().getTickId() - emissionTick <= DURATION)) {
+			return;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Noise made at [%d,%d] on level %d faded out", sourceX, sourceY,
+					level.getNumber()));
+		}
+
+		for (int i = 0; i < reachedCount; i++) {
+			distances[reached[i]] = INAUDIBLE;
+		}
+
+		reachedCount = 0;
+
+		this.sourceX = -1;
+		this.sourceY = -1;
+		this.dirty = false;
+	}
+
+	public int getFloodCount() {
+		return floodCount;
+	}
+
+	/**
+	 * Returns the additional cost (in half steps) for a noise to enter the
+	 * given position. Only the elements which can't be traversed (closed
+	 * doors, etc) are actually inspected.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @return a positive or zero integer or {@link #BLOCKED}.
+	 */
+	private byte getAttenuation(int x, int y) {
+		final CellMap cellMap = level.getCellMap();
+
+		if (cellMap.isConcrete(x, y)) {
+			return BLOCKED;
+		}
+		if (cellMap.isTraversable(x, y, Materiality.MATERIAL)) {
+			return OPEN;
+		}
+
+		return getAttenuation(level.getElement(x, y));
+	}
+
+	/**
+	 * Returns the additional cost (in half steps) for a noise to enter the
+	 * given element.
+	 *
+	 * @param element
+	 *            the element to test. Can be null.
+	 * @return a positive or zero integer or {@link #BLOCKED}.
+	 */
+	private static byte getAttenuation(Element element) {
+		if ((element == null) || element.isConcrete()) {
+			return BLOCKED;
+		}
+
+		switch (element.getType()) {
+		case DOOR:
+			return Door.State.CLOSED.equals(((Door) element).getState()) ? MUFFLING : OPEN;
+		case RETRACTABLE_WALL:
+			return ((RetractableWall) element).isOpen() ? OPEN : MUFFLING;
+		default:
+			return OPEN;
+		}
+	}
+
+	private void flood() {
+		// Only reset the positions reached by the previous flood
+		for (int i = 0; i < reachedCount; i++) {
+			distances[reached[i]] = INAUDIBLE;
+		}
+
+		reachedCount = 0;
+
+		final int limit = (2 * loudness) + 1;
+
+		if (buckets.length < limit + 1) {
+			buckets = new int[limit + 1][];
+			bucketSizes = new int[limit + 1];
+
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new int[16];
+			}
+		} else {
+			Arrays.fill(bucketSizes, 0);
+		}
+
+		final int source = (sourceY * width) + sourceX;
+
+		distances[source] = 0;
+		reached[reachedCount++] = source;
+
+		push(0, source);
+
+		for (int distance = 0; distance <= limit; distance++) {
+			for (int i = 0; i < bucketSizes[distance]; i++) {
+				final int node = buckets[distance][i];
+
+				if (distances[node] != distance) {
+					// Stale entry, the node was reached with a shorter distance
+					continue;
+				}
+
+				final int x = node % width, y = node / width;
+
+				for (int d = 0; d < DX.length; d++) {
+					final int nx = x + DX[d], ny = y + DY[d];
+
+					if ((nx < 0) || (nx >= width) || (ny < 0) || (ny >= height)) {
+						continue;
+					}
+
+					final int neighbour = (ny * width) + nx;
+
+					final int attenuation = attenuations[neighbour];
+
+					if (attenuation == BLOCKED) {
+						continue;
+					}
+
+					int cost = 2 + attenuation;
+
+					if (d >= 4) {
+						// Diagonal step: the noise can't slip between 2
+						// blocking elements
+						if ((attenuations[(y * width) + nx] == BLOCKED) || (attenuations[(ny * width) + x] == BLOCKED)) {
+							continue;
+						}
+
+						cost++;
+					}
+
+					final int candidate = distance + cost;
+
+					if ((candidate <= limit) && (candidate < distances[neighbour])) {
+						if (distances[neighbour] == INAUDIBLE) {
+							reached[reachedCount++] = neighbour;
+						}
+
+						distances[neighbour] = candidate;
+
+						push(candidate, neighbour);
+					}
+				}
+			}
+		}
+
+		dirty = false;
+		floodCount++;
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Flooded noise from [%d,%d] on level %d (loudness: %d, reached: %d)", sourceX,
+					sourceY, level.getNumber(), loudness, reachedCount));
+		}
+	}
+
+	private void push(int distance, int node) {
+		if (bucketSizes[distance] == buckets[distance].length) {
+			buckets[distance] = Arrays.copyOf(buckets[distance], buckets[distance].length * 2);
+		}
+
+		buckets[distance][bucketSizes[distance]++] = node;
+	}
+}
@@ -0,0 +1,378 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.ai.astar.PathFinder;
+import fr.ritaly.dungeonmaster.event.ChangeEvent;
+import fr.ritaly.dungeonmaster.event.ChangeListener;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+
+/**
+ * Cache of the paths computed by the {@link PathFinder}. The paths are keyed by
+ * (level, start position, goal position, materiality). The cache listens to the
+ * change events fired by the elements of the cached paths and only evicts the
+ * paths traversing an element which changed. The least recently used paths are
+ * evicted once the cache's capacity is reached.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class PathCache {
+
+	/**
+	 * The default number of paths the cache can store.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * The key identifying a cached path.
+	 */
+	private static final class Key {
+
+		private final Level level;
+
+		private final Materiality materiality;
+
+		private final int startX, startY, goalX, goalY;
+
+		private Key(Level level, Materiality materiality, int startX, int startY, int goalX, int goalY) {
+			this.level = level;
+			this.materiality = materiality;
+			this.startX = startX;
+			this.startY = startY;
+			this.goalX = goalX;
+			this.goalY = goalY;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(level);
+			hash = (31 * hash) + materiality.hashCode();
+			hash = (31 * hash) + startX;
+			hash = (31 * hash) + startY;
+			hash = (31 * hash) + goalX;
+			hash = (31 * hash) + goalY;
+
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			final Key other = (Key) obj;
+
+			return (level == other.level) && (materiality == other.materiality) && (startX == other.startX)
+					&& (startY == other.startY) && (goalX == other.goalX) && (goalY == other.goalY);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s:%d:(%d,%d)->(%d,%d)", materiality, level.getNumber(), startX, startY, goalX,
+					goalY);
+		}
+	}
+
+	private final Log log = LogFactory.getLog(PathCache.class);
+
+	private final int capacity;
+
+	/**
+	 * The cached paths (unmodifiable lists) in access order (the first entry is
+	 * the least recently used).
+	 */
+	private final LinkedHashMap<Key, List<Element>> paths;
+
+	/**
+	 * The keys of the cached paths traversing a given element. The cache only
+	 * listens to the elements stored as keys of this map.
+	 */
+	private final Map<Element, List<Key>> keysByElement = new IdentityHashMap<Element, List<Key>>();
+
+	private final ChangeListener listener = new ChangeListener() {
+		@Override
+		public void onChangeEvent(ChangeEvent event) {
+			elementChanged((Element) event.getSource());
+		}
+	};
+
+	private int hitCount, missCount;
+
+	public PathCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public PathCache(final int capacity) {
+		Validate.isTrue(capacity > 0, "The given capacity " + capacity + " must be positive");
+
+		this.capacity = capacity;
+		this.paths = new LinkedHashMap<Key, List<Element>>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2585379614564627853L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, List<Element>> eldest) {
+				if (size() > PathCache.this.capacity) {
+					unindex(eldest.getKey(), eldest.getValue());
+
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the shortest path from the start position to the goal position
+	 * on the given level. The path is computed with a {@link PathFinder} if
+	 * not already cached.
+	 *
+	 * @param level
+	 *            the level where to search the path. Can't be null.
+	 * @param materiality
+	 *            the materiality of the creature searching the path. Can't be
+	 *            null.
+	 * @return an unmodifiable list of elements starting with the start element
+	 *         and ending with the goal element or null if the goal position
+	 *         can't be reached.
+	 */
+	public synchronized List<Element> findBestPath(Level level, Materiality materiality, int startX, int startY,
+			int goalX, int goalY) {
+
+		final List<Element> cached = get(level, materiality, startX, startY, goalX, goalY);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		final List<Element> path = new PathFinder(level, materiality).findBestPath(startX, startY, goalX, goalY);
+
+		if (path == null) {
+			// The failures aren't cached as any change on the level could
+			// open a path
+			return null;
+		}
+
+		return put(level, materiality, path);
+	}
+
+	/**
+	 * Returns the cached path from the start position to the goal position on
+	 * the given level. Unlike
+	 * {@link #findBestPath(Level, Materiality, int, int, int, int)}, this
+	 * method never runs a search.
+	 *
+	 * @param level
+	 *            the level where to search the path. Can't be null.
+	 * @param materiality
+	 *            the materiality of the creature searching the path. Can't be
+	 *            null.
+	 * @return an unmodifiable list of elements or null if the path isn't
+	 *         cached.
+	 */
+	public synchronized List<Element> get(Level level, Materiality materiality, int startX, int startY, int goalX,
+			int goalY) {
+
+		Validate.notNull(level, "The given level is null");
+		Validate.notNull(materiality, "The given materiality is null");
+
+		final Key key = new Key(level, materiality, startX, startY, goalX, goalY);
+
+		final List<Element> path = paths.get(key);
+
+		if (path != null) {
+			if (isAttached(level, path)) {
+				hitCount++;
+
+				return path;
+			}
+
+			// One of the elements was replaced, the path is stale
+			remove(key);
+		}
+
+		missCount++;
+
+		return null;
+	}
+
+	/**
+	 * Stores the given path computed elsewhere (for instance by a
+	 * {@link PathRequestQueue}) in the cache. The path's elements must still
+	 * be traversable as the cache only gets notified of the changes occurring
+	 * from now on.
+	 *
+	 * @param level
+	 *            the level where the path was searched. Can't be null.
+	 * @param materiality
+	 *            the materiality of the creature which searched the path.
+	 *            Can't be null.
+	 * @param path
+	 *            the path to cache starting with the start element and ending
+	 *            with the goal element. Can't be null or empty.
+	 * @return the unmodifiable path cached.
+	 */
+	public synchronized List<Element> put(Level level, Materiality materiality, List<Element> path) {
+		Validate.notNull(level, "The given level is null");
+		Validate.notNull(materiality, "The given materiality is null");
+		Validate.notEmpty(path, "The given path is null or empty");
+
+		final Position start = path.get(0).getPosition();
+		final Position goal = path.get(path.size() - 1).getPosition();
+
+		Validate.isTrue((start != null) && (goal != null), "The given path contains detached elements");
+
+		final Key key = new Key(level, materiality, start.x, start.y, goal.x, goal.y);
+
+		// Replace the path possibly cached
+		remove(key);
+
+		final List<Element> result = Collections.unmodifiableList(new ArrayList<Element>(path));
+
+		paths.put(key, result);
+
+		index(key, result);
+
+		return result;
+	}
+
+	/**
+	 * Removes all the paths from the cache.
+	 */
+	public synchronized void clear() {
+		for (Element element : keysByElement.keySet()) {
+			element.removeChangeListener(listener);
+		}
+
+		keysByElement.clear();
+		paths.clear();
+	}
+
+	/**
+	 * Returns the number of paths cached.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public synchronized int size() {
+		return paths.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	private synchronized void elementChanged(Element element) {
+		final List<Key> keys = keysByElement.get(element);
+
+		if (keys == null) {
+			return;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(element.getId() + " changed, evicting " + keys.size() + " path(s)");
+		}
+
+		for (Key key : new ArrayList<Key>(keys)) {
+			remove(key);
+		}
+	}
+
+	private void remove(Key key) {
+		final List<Element> path = paths.remove(key);
+
+		if (path != null) {
+			unindex(key, path);
+		}
+	}
+
+	private void index(Key key, List<Element> path) {
+		for (Element element : path) {
+			List<Key> keys = keysByElement.get(element);
+
+			if (keys == null) {
+				keys = new ArrayList<Key>(2);
+
+				keysByElement.put(element, keys);
+
+				element.addChangeListener(listener);
+			}
+
+			keys.add(key);
+		}
+	}
+
+	private void unindex(Key key, List<Element> path) {
+		for (Element element : path) {
+			final List<Key> keys = keysByElement.get(element);
+
+			if (keys == null) {
+				continue;
+			}
+
+			keys.remove(key);
+
+			if (keys.isEmpty()) {
+				keysByElement.remove(element);
+
+				element.removeChangeListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether all the elements of the given path still belong to the
+	 * given level.
+	 */
+	private static boolean isAttached(Level level, List<Element> path) {
+		for (Element element : path) {
+			final Position position = element.getPosition();
+
+			if ((position == null) || (level.getElement(position.x, position.y) != element)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -16,41 +16,23 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package fr.ritaly.dungeonmaster.log;
+package fr.ritaly.dungeonmaster.ai;
 
-import org.apache.log4j.MDC;
-
-aspect MappedDiagnosticContextAspect {
-	pointcut classes(): within(fr.ritaly.*.*);
-
-	pointcut constructors(): classes() && execution(new(..));
-
-	pointcut methods(): classes() && execution(* *(..));
-
-	private String depth = ">";
-
-	before(): constructors() {
-		depth = "-" + depth;
-
-		MDC.put("depth", depth);
-		// System.out.println("" + thisJoinPointStaticPart.getSignature());
-	}
-
-	after(): constructors() {
-		depth = depth.substring(1);
-
-		MDC.put("depth", depth);
-	}
-	
-	before(): methods() {
-		depth = "-" + depth;
-
-		MDC.put("depth", depth);
-	}
-
-	after(): methods() {
-		depth = depth.substring(1);
-
-		MDC.put("depth", depth);
-	}
-}
\ No newline at end of file
+/**
+ * Interface of the objects notified when a {@link PathRequest} submitted to a
+ * {@link PathRequestQueue} has been resolved.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public interface PathListener {
+
+	/**
+	 * Notifies the listener that the given request has been resolved. Always
+	 * called by the clock's thread.
+	 *
+	 * @param request
+	 *            the resolved request. Its path is null if the goal couldn't
+	 *            be reached.
+	 */
+	public void pathResolved(PathRequest request);
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.ritaly.dungeonmaster.ai.astar.Grid;
+import fr.ritaly.dungeonmaster.ai.astar.PathFinder;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+
+/**
+ * A request for a path submitted to a {@link PathRequestQueue}. The request is
+ * solved on a worker thread and its result delivered to its
+ * {@link PathListener} on a later clock tick.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class PathRequest extends SearchRequest {
+
+	private final Level level;
+
+	private final Materiality materiality;
+
+	private final PathFinder.Strategy strategy;
+
+	private final int startX, startY, goalX, goalY;
+
+	private final PathListener listener;
+
+	/**
+	 * The snapshot of the level's traversability searched by the worker.
+	 */
+	private Grid grid;
+
+	/**
+	 * The path found by the worker as node indices. Published to the clock's
+	 * thread through the queue of solved requests.
+	 */
+	private int[] nodes;
+
+	private boolean resolved;
+
+	private List<Element> path;
+
+	PathRequest(Level level, Materiality materiality, PathFinder.Strategy strategy, int startX, int startY,
+			int goalX, int goalY, PathListener listener) {
+
+		this.level = level;
+		this.materiality = materiality;
+		this.strategy = strategy;
+		this.startX = startX;
+		this.startY = startY;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.listener = listener;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public Materiality getMateriality() {
+		return materiality;
+	}
+
+	public PathFinder.Strategy getStrategy() {
+		return strategy;
+	}
+
+	public int getStartX() {
+		return startX;
+	}
+
+	public int getStartY() {
+		return startY;
+	}
+
+	public int getGoalX() {
+		return goalX;
+	}
+
+	public int getGoalY() {
+		return goalY;
+	}
+
+	/**
+	 * Tells whether this request has been resolved. Must be called by the
+	 * clock's thread.
+	 *
+	 * @return whether this request has been resolved.
+	 */
+	public boolean isResolved() {
+		return resolved;
+	}
+
+	/**
+	 * Returns the path found. The path was computed against the level's
+	 * traversability when the request was dispatched to the workers: the
+	 * caller should check that the elements are still traversable before
+	 * following the path. Must be called by the clock's thread.
+	 *
+	 * @return an unmodifiable list of elements starting with the start element
+	 *         and ending with the goal element or null if the request isn't
+	 *         resolved yet or if the goal couldn't be reached.
+	 */
+	public List<Element> getPath() {
+		return path;
+	}
+
+	@Override
+	void prepare(Snapshots snapshots) {
+		this.grid = snapshots.getGrid(level, materiality);
+	}
+
+	@Override
+	void solve() {
+		if (!isCancelled()) {
+			this.nodes = new PathFinder(grid, strategy).findPath(startX, startY, goalX, goalY);
+		}
+	}
+
+	@Override
+	void deliver() {
+		if (isCancelled()) {
+			return;
+		}
+
+		if (nodes != null) {
+			final List<Element> elements = new ArrayList<Element>(nodes.length);
+
+			for (int node : nodes) {
+				elements.add(level.getElement(node % level.getWidth(), node / level.getWidth()));
+			}
+
+			this.path = Collections.unmodifiableList(elements);
+		}
+
+		this.resolved = true;
+
+		if (listener != null) {
+			listener.pathResolved(this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PathRequest[%s:%d:(%d,%d)->(%d,%d)]", materiality, level.getNumber(), startX, startY,
+				goalX, goalY);
+	}
+}
@@ -0,0 +1,363 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.ClockListener;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Timeout;
+import fr.ritaly.dungeonmaster.ai.astar.PathFinder;
+import fr.ritaly.dungeonmaster.map.Level;
+
+/**
+ * Queue of {@link PathRequest}s solved asynchronously by a pool of worker
+ * threads so that the clock's thread never runs a search itself. The requests
+ * submitted during a tick are dispatched as a batch on the next tick: the
+ * traversability of each level involved is snapshot once (see
+ * {@link fr.ritaly.dungeonmaster.ai.astar.Grid}) and the requests are solved in
+ * parallel against the snapshot. The results are delivered to the requests'
+ * listeners by the clock's thread on the tick following the dispatch, in the
+ * order the requests were submitted. The workers have a whole tick to solve
+ * the batch. The delivery doesn't depend on how fast the workers are so the
+ * game stays deterministic.
+ * <p>
+ * The queue also solves the pursuits across levels (see
+ * {@link HierarchicalPathRequest}) and the recomputations of the flow fields
+ * (see {@link FlowField#update(PathRequestQueue)}) the same way.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public class PathRequestQueue {
+
+	/**
+	 * The number of seconds an idle worker thread is kept alive.
+	 */
+	private static final int KEEP_ALIVE = 30;
+
+	private final Log log = LogFactory.getLog(PathRequestQueue.class);
+
+	private final int threadCount;
+
+	/**
+	 * The worker threads. Created lazily on the first dispatch.
+	 */
+	private ExecutorService executorService;
+
+	/**
+	 * The requests submitted and not dispatched yet. Guarded by this.
+	 */
+	private final List<SearchRequest> submitted = new ArrayList<SearchRequest>();
+
+	/**
+	 * The requests dispatched to the workers and not delivered yet, in
+	 * submission order. Only accessed by the clock's thread (and when shutting
+	 * down the queue).
+	 */
+	private final List<SearchRequest> dispatched = new ArrayList<SearchRequest>();
+
+	/**
+	 * The tasks solving the dispatched requests (same indices as
+	 * {@link #dispatched}). Null for a request which couldn't be prepared.
+	 */
+	private final List<Future<?>> tasks = new ArrayList<Future<?>>();
+
+	/**
+	 * The number of requests dispatched and not delivered yet.
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * The timeout notifying the queue on every tick while there are requests
+	 * to dispatch or deliver. Guarded by this.
+	 */
+	private Timeout timeout;
+
+	private final ClockListener clockListener = new ClockListener() {
+		@Override
+		public boolean clockTicked() {
+			return PathRequestQueue.this.clockTicked();
+		}
+
+		@Override
+		public String toString() {
+			return "PathRequestQueue";
+		}
+	};
+
+	public PathRequestQueue() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	public PathRequestQueue(int threadCount) {
+		Validate.isTrue(threadCount > 0, "The given thread count " + threadCount + " must be positive");
+
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Submits a request for a path computed with the A* strategy.
+	 *
+	 * @see #submit(Level, Materiality, PathFinder.Strategy, int, int, int, int,
+	 *      PathListener)
+	 */
+	public PathRequest submit(Level level, Materiality materiality, int startX, int startY, int goalX, int goalY,
+			PathListener listener) {
+
+		return submit(level, materiality, PathFinder.Strategy.A_STAR, startX, startY, goalX, goalY, listener);
+	}
+
+	/**
+	 * Submits a request for the shortest path between the 2 given positions.
+	 * The request will be dispatched on the next tick and its result delivered
+	 * to the given listener on the tick after.
+	 *
+	 * @param level
+	 *            the level where to search the path. Can't be null.
+	 * @param materiality
+	 *            the materiality of the creature searching the path. Can't be
+	 *            null.
+	 * @param strategy
+	 *            the search strategy. Can't be null.
+	 * @param listener
+	 *            the listener to notify when the request is resolved. Can be
+	 *            null.
+	 * @return the submitted request.
+	 */
+	public PathRequest submit(Level level, Materiality materiality, PathFinder.Strategy strategy, int startX,
+			int startY, int goalX, int goalY, PathListener listener) {
+
+		Validate.notNull(level, "The given level is null");
+		Validate.notNull(materiality, "The given materiality is null");
+		Validate.notNull(strategy, "The given strategy is null");
+		Validate.isTrue(level.contains(new Position(startX, startY, level.getNumber())),
+				"The given start position is outside the level");
+		Validate.isTrue(level.contains(new Position(goalX, goalY, level.getNumber())),
+				"The given goal position is outside the level");
+
+		final PathRequest request = new PathRequest(level, materiality, strategy, startX, startY, goalX, goalY,
+				listener);
+
+		submit(request);
+
+		return request;
+	}
+
+	/**
+	 * Submits the given request. The request will be prepared on the next
+	 * tick and its result delivered on the tick after.
+	 *
+	 * @param request
+	 *            the request to submit. Can't be null.
+	 */
+	void submit(SearchRequest request) {
+		Validate.notNull(request, "The given request is null");
+
+		synchronized (this) {
+			submitted.add(request);
+
+			if ((timeout == null) || !timeout.isPending()) {
+				// Get notified on the next ticks
+				timeout = Clock.getInstance().scheduleRepeating(1, clockListener);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of requests submitted and not delivered yet.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public synchronized int getPendingCount() {
+		return submitted.size() + inFlight.get();
+	}
+
+	/**
+	 * Stops the worker threads. The requests not delivered yet are lost.
+	 */
+	public void shutdown() {
+		final ExecutorService service;
+
+		synchronized (this) {
+			service = executorService;
+
+			executorService = null;
+			submitted.clear();
+
+			if (timeout != null) {
+				timeout.cancel();
+				timeout = null;
+			}
+		}
+
+		if (service != null) {
+			service.shutdownNow();
+
+			try {
+				service.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		dispatched.clear();
+		tasks.clear();
+		inFlight.set(0);
+	}
+
+	// Called by the clock's thread
+	private boolean clockTicked() {
+		// Deliver the requests dispatched on the last tick. Wait for the
+		// workers if necessary
+		final int delivered = dispatched.size();
+
+		for (int i = 0; i < delivered; i++) {
+			try {
+				if (tasks.get(i) != null) {
+					tasks.get(i).get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// Not supposed to happen, the task logs its errors
+				log.error("Error when solving " + dispatched.get(i), e);
+			} catch (CancellationException e) {
+				// The queue was shut down
+			}
+
+			inFlight.decrementAndGet();
+
+			try {
+				dispatched.get(i).deliver();
+			} catch (RuntimeException e) {
+				log.error("Error when delivering " + dispatched.get(i), e);
+			}
+		}
+
+		dispatched.clear();
+		tasks.clear();
+
+		// Dispatch the requests submitted during the last tick
+		final List<SearchRequest> batch;
+
+		synchronized (this) {
+			batch = new ArrayList<SearchRequest>(submitted);
+
+			submitted.clear();
+		}
+
+		if (!batch.isEmpty()) {
+			dispatch(batch);
+		}
+
+		if (log.isDebugEnabled() && ((delivered > 0) || !batch.isEmpty())) {
+			log.debug("Delivered " + delivered + " result(s), dispatched " + batch.size() + " request(s)");
+		}
+
+		synchronized (this) {
+			if (!submitted.isEmpty() || (inFlight.get() > 0)) {
+				return true;
+			}
+
+			// Nothing left to do, the next request will reschedule the queue
+			timeout = null;
+
+			return false;
+		}
+	}
+
+	private void dispatch(List<SearchRequest> batch) {
+		final ExecutorService service = getExecutorService();
+
+		// Snapshot each level once per materiality
+		final SearchRequest.Snapshots snapshots = new SearchRequest.Snapshots();
+
+		for (final SearchRequest request : batch) {
+			if (request.isCancelled()) {
+				continue;
+			}
+
+			inFlight.incrementAndGet();
+
+			dispatched.add(request);
+
+			try {
+				request.prepare(snapshots);
+			} catch (RuntimeException e) {
+				log.error("Error when preparing " + request, e);
+
+				// The request is delivered without result
+				tasks.add(null);
+
+				continue;
+			}
+
+			tasks.add(service.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						request.solve();
+					} catch (RuntimeException e) {
+						log.error("Error when solving " + request, e);
+					}
+				}
+			}));
+		}
+	}
+
+	private synchronized ExecutorService getExecutorService() {
+		if (executorService == null) {
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							final Thread thread = new Thread(runnable, "PathFinder-" + count.incrementAndGet());
+							thread.setDaemon(true);
+
+							return thread;
+						}
+					});
+
+			// Every dungeon owns a queue, release the idle workers
+			executor.allowCoreThreadTimeOut(true);
+
+			executorService = executor;
+		}
+
+		return executorService;
+	}
+}
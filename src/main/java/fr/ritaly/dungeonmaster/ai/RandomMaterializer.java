@@ -24,7 +24,6 @@ import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.Temporizer;
-import fr.ritaly.dungeonmaster.Utils;
 
 /**
  * Custom implementation of {@link Materializer} that changes the materiality
@@ -52,16 +51,16 @@ public class RandomMaterializer implements Materializer {
 	 */
 	private final Creature creature;
 
-	private static int randomDuration() {
-		return Utils.random(Clock.ONE_SECOND, 3 * Clock.ONE_SECOND);
+	private int randomDuration() {
+		return creature.getRandom().nextInt(Clock.ONE_SECOND, 3 * Clock.ONE_SECOND);
 	}
 
 	public RandomMaterializer(Creature creature) {
 		Validate.notNull(creature, "The given creature is null");
 
-		final int count = randomDuration();
-
 		this.creature = creature;
+
+		final int count = randomDuration();
 		this.temporizer = new Temporizer(creature.getId() + ".", count);
 
 		if (log.isDebugEnabled()) {
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import fr.ritaly.dungeonmaster.ai.astar.Grid;
+import fr.ritaly.dungeonmaster.map.Level;
+
+/**
+ * A search submitted to a {@link PathRequestQueue}. The search goes through 3
+ * steps:
+ * <ol>
+ * <li>the request is prepared by the clock's thread when the queue dispatches
+ * it: the request takes a snapshot of the data it needs,</li>
+ * <li>the request is solved by a worker thread against this snapshot,</li>
+ * <li>the result is delivered by the clock's thread on the next tick.</li>
+ * </ol>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+abstract class SearchRequest {
+
+	/**
+	 * The snapshots of the levels' traversability shared by the requests
+	 * dispatched in the same batch.
+	 */
+	static final class Snapshots {
+
+		private final Map<Level, Grid[]> grids = new IdentityHashMap<Level, Grid[]>();
+
+		/**
+		 * Returns the snapshot of the given level's traversability for the
+		 * given materiality, taken once per batch.
+		 */
+		Grid getGrid(Level level, Materiality materiality) {
+			Grid[] levelGrids = grids.get(level);
+
+			if (levelGrids == null) {
+				levelGrids = new Grid[Materiality.values().length];
+
+				grids.put(level, levelGrids);
+			}
+
+			final int index = materiality.ordinal();
+
+			if (levelGrids[index] == null) {
+				levelGrids[index] = Grid.snapshot(level, materiality);
+			}
+
+			return levelGrids[index];
+		}
+	}
+
+	private volatile boolean cancelled;
+
+	/**
+	 * Cancels this request. Its result won't be delivered.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Takes a snapshot of the data needed to solve the request. Called by the
+	 * clock's thread.
+	 */
+	abstract void prepare(Snapshots snapshots);
+
+	/**
+	 * Solves the request against its snapshot. Called by a worker thread.
+	 */
+	abstract void solve();
+
+	/**
+	 * Delivers the result. Called by the clock's thread, even if the request
+	 * couldn't be solved.
+	 */
+	abstract void deliver();
+}
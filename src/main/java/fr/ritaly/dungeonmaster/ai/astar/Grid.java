@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai.astar;
+
+import org.apache.commons.lang.Validate;
+
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.map.CellMap;
+import fr.ritaly.dungeonmaster.map.Level;
+
+/**
+ * Immutable snapshot of the traversability of a {@link Level}'s positions for
+ * a given {@link Materiality}. A grid can be searched by a {@link PathFinder}
+ * from any thread while the level keeps changing on the clock's thread.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class Grid {
+
+	private final int levelNumber;
+
+	private final int width;
+
+	private final int height;
+
+	private final Materiality materiality;
+
+	/**
+	 * Bitset of the traversable positions indexed by
+	 * <code>y * width + x</code>.
+	 */
+	private final long[] traversable;
+
+	private Grid(Level level, Materiality materiality) {
+		this.levelNumber = level.getNumber();
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.materiality = materiality;
+		this.traversable = new long[((width * height) + 63) >>> 6];
+
+		final boolean immaterial = Materiality.IMMATERIAL.equals(materiality);
+		final CellMap cellMap = level.getCellMap();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (immaterial || !cellMap.isConcrete(x, y)) {
+					final int node = (y * width) + x;
+
+					traversable[node >>> 6] |= (1L << node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the traversability of the given level. Must be
+	 * called from the thread modifying the level (the clock's thread).
+	 *
+	 * @param level
+	 *            the level to snapshot. Can't be null.
+	 * @param materiality
+	 *            the materiality of the creatures searching the grid. Can't be
+	 *            null.
+	 * @return a new grid.
+	 */
+	public static Grid snapshot(Level level, Materiality materiality) {
+		Validate.notNull(level, "The given level is null");
+		Validate.notNull(materiality, "The given materiality is null");
+
+		return new Grid(level, materiality);
+	}
+
+	public int getLevelNumber() {
+		return levelNumber;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Materiality getMateriality() {
+		return materiality;
+	}
+
+	/**
+	 * Tells whether the position with given coordinates exists and was
+	 * traversable when the snapshot was taken.
+	 *
+	 * @return whether the position is traversable.
+	 */
+	public boolean isTraversable(int x, int y) {
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return false;
+		}
+
+		final int node = (y * width) + x;
+
+		return (traversable[node >>> 6] & (1L << node)) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Grid[level=" + levelNumber + ", " + width + "x" + height + ", " + materiality + "]";
+	}
+}
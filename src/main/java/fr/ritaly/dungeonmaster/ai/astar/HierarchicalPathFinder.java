@@ -0,0 +1,1050 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.map.CellMap;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Stairs;
+import fr.ritaly.dungeonmaster.map.Teleporter;
+
+/**
+ * Hierarchical path finder (HPA*) searching paths across the levels of a
+ * {@link Dungeon}. Each level is divided into square clusters. The abstract
+ * graph is made of:
+ * <ul>
+ * <li>the entrances between adjacent clusters (one pair of nodes per run of
+ * traversable positions along a cluster border),</li>
+ * <li>the stairs and (enabled) teleporters whose edges link 2 levels,</li>
+ * <li>the intra-cluster edges linking the nodes of a cluster, whose cost is
+ * precomputed with a search limited to the cluster.</li>
+ * </ul>
+ * A query only searches the (small) abstract graph, then refines the abstract
+ * edges into positions. The refinements are cached on the edges. The paths
+ * found are near-optimal.
+ * <p>
+ * The traversability rule is the one of the level's {@link CellMap}: a
+ * material creature can't traverse concrete elements, closed doors, etc.
+ * Stairs and teleporters can only be entered to be taken (they're never walked
+ * through). The graph is built lazily on the first query and discarded when an
+ * element changes the traversability of its position (see
+ * {@link #elementChanged(Level, int, int)}) or when a level is added to or
+ * removed from the dungeon (see {@link #invalidate()}).
+ * </p>
+ * <p>
+ * The levels are only read by the clock's thread when taking a snapshot of their
+ * traversability (see {@link #prepare(Position, Position, boolean, boolean)}).
+ * The abstract graph is built from the snapshot and searched by the
+ * {@link Query}s, possibly on other threads (see
+ * {@link fr.ritaly.dungeonmaster.ai.PathRequestQueue}). The paths found are
+ * made of positions converted into elements by the clock's thread (see
+ * {@link #getElements(List)}).
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public class HierarchicalPathFinder {
+
+	/**
+	 * The default size (in positions) of a cluster side.
+	 */
+	public static final int DEFAULT_CLUSTER_SIZE = 8;
+
+	/**
+	 * Enumerates the types of edges in the abstract graph.
+	 */
+	private static enum EdgeType {
+		/**
+		 * The edge links 2 positions on the same level.
+		 */
+		LOCAL,
+
+		/**
+		 * The edge links 2 stairs.
+		 */
+		STAIRS,
+
+		/**
+		 * The edge links a teleporter to its destination.
+		 */
+		TELEPORTER;
+	}
+
+	/**
+	 * A node of the abstract graph.
+	 */
+	private static final class Node {
+
+		private final int id;
+
+		private final Level level;
+
+		private final int x, y;
+
+		private final List<Edge> edges = new ArrayList<Edge>(4);
+
+		private Node(int id, Level level, int x, int y) {
+			this.id = id;
+			this.level = level;
+			this.x = x;
+			this.y = y;
+		}
+
+		private Position getPosition() {
+			return new Position(x, y, level.getNumber());
+		}
+
+		@Override
+		public String toString() {
+			return "Node[" + x + "," + y + "," + level.getNumber() + "]";
+		}
+	}
+
+	/**
+	 * An edge of the abstract graph.
+	 */
+	private static final class Edge {
+
+		private final Node target;
+
+		private final int cost;
+
+		private final EdgeType type;
+
+		/**
+		 * The positions traversed when following this edge (excluding the
+		 * source node's position, including the target's). Computed lazily
+		 * by the queries (possibly concurrently, the result is the same).
+		 */
+		private volatile List<Position> path;
+
+		private Edge(Node target, int cost, EdgeType type) {
+			this.target = target;
+			this.cost = cost;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * The abstract graph data of a level. The traversability of the level is
+	 * snapshot when creating the instance, the nodes and the edges are created
+	 * when building the {@link Graph}.
+	 */
+	private final class LevelGraph {
+
+		private final Graph graph;
+
+		private final Level level;
+
+		private final int width, height;
+
+		private final int clustersX, clustersY;
+
+		/**
+		 * Whether each position can be walked through, indexed by
+		 * <code>y * width + x</code>.
+		 */
+		private final boolean[] walkable;
+
+		/**
+		 * The type of portal (stairs, teleporter) on each position, null if
+		 * none.
+		 */
+		private final EdgeType[] portals;
+
+		/**
+		 * The destination of the portal on each position, null if none.
+		 */
+		private final Position[] destinations;
+
+		/**
+		 * The abstract node located on each position (if any).
+		 */
+		private final Node[] nodes;
+
+		/**
+		 * The abstract nodes of each cluster.
+		 */
+		private final List<List<Node>> clusters;
+
+		private LevelGraph(Graph graph, Level level) {
+			this.graph = graph;
+			this.level = level;
+			this.width = level.getWidth();
+			this.height = level.getHeight();
+			this.clustersX = (width + clusterSize - 1) / clusterSize;
+			this.clustersY = (height + clusterSize - 1) / clusterSize;
+			this.walkable = new boolean[width * height];
+			this.portals = new EdgeType[width * height];
+			this.destinations = new Position[width * height];
+			this.nodes = new Node[width * height];
+			this.clusters = new ArrayList<List<Node>>(clustersX * clustersY);
+
+			for (int i = 0; i < clustersX * clustersY; i++) {
+				clusters.add(new ArrayList<Node>());
+			}
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					final int index = (y * width) + x;
+
+					portals[index] = readPortalType(x, y);
+					walkable[index] = readWalkable(x, y, portals[index]);
+
+					if (portals[index] != null) {
+						destinations[index] = getDestination(level.getElement(x, y));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Reads the type of portal currently located at the given position.
+		 * The plain walls and floors which haven't been materialized can't be
+		 * portals.
+		 */
+		private EdgeType readPortalType(int x, int y) {
+			if (!level.isMaterialized(x, y)) {
+				return null;
+			}
+
+			final Element element = level.getElement(x, y);
+
+			return (element != null) ? getPortalType(element) : null;
+		}
+
+		/**
+		 * Reads whether the given position can currently be walked through.
+		 */
+		private boolean readWalkable(int x, int y, EdgeType portal) {
+			return (portal == null) && level.getCellMap().isTraversable(x, y, materiality);
+		}
+
+		/**
+		 * Tells whether the position's traversability differs from the one
+		 * stored in the graph.
+		 */
+		private boolean hasChanged(int x, int y) {
+			final int index = (y * width) + x;
+			final EdgeType portal = readPortalType(x, y);
+
+			return (portal != portals[index]) || (readWalkable(x, y, portal) != walkable[index]);
+		}
+
+		private int getCluster(int x, int y) {
+			return ((y / clusterSize) * clustersX) + (x / clusterSize);
+		}
+
+		private Node getNode(int x, int y) {
+			final int index = (y * width) + x;
+
+			if (nodes[index] == null) {
+				final Node node = new Node(graph.nodes.size(), level, x, y);
+
+				graph.nodes.add(node);
+				nodes[index] = node;
+				clusters.get(getCluster(x, y)).add(node);
+			}
+
+			return nodes[index];
+		}
+
+		private boolean isWalkable(int x, int y) {
+			return walkable[(y * width) + x];
+		}
+
+		private boolean isPortal(int x, int y) {
+			return (portals[(y * width) + x] != null);
+		}
+
+		/**
+		 * Runs a breadth-first search from the given position limited to the
+		 * position's cluster. The positions which can't be walked through
+		 * (stairs, etc) are reached but not expanded, except the start
+		 * position.
+		 *
+		 * @param parents
+		 *            an optional array filled with the parent of each reached
+		 *            position (cluster-local index). Can be null.
+		 * @return the distances of the positions of the cluster indexed by
+		 *         <code>(y - y0) * clusterSize + (x - x0)</code>. -1 for the
+		 *         positions not reached.
+		 */
+		private int[] search(int startX, int startY, int[] parents) {
+			final int x0 = (startX / clusterSize) * clusterSize;
+			final int y0 = (startY / clusterSize) * clusterSize;
+			final int x1 = Math.min(width, x0 + clusterSize);
+			final int y1 = Math.min(height, y0 + clusterSize);
+
+			final int[] distances = new int[clusterSize * clusterSize];
+			Arrays.fill(distances, -1);
+
+			final int[] queue = new int[clusterSize * clusterSize];
+			int head = 0, tail = 0;
+
+			final int start = ((startY - y0) * clusterSize) + (startX - x0);
+
+			distances[start] = 0;
+			queue[tail++] = start;
+
+			while (head < tail) {
+				final int local = queue[head++];
+				final int x = x0 + (local % clusterSize);
+				final int y = y0 + (local / clusterSize);
+
+				if ((local != start) && !isWalkable(x, y)) {
+					// Stairs & teleporters are dead ends
+					continue;
+				}
+
+				for (int i = 0; i < 4; i++) {
+					final int nx = x + DX[i];
+					final int ny = y + DY[i];
+
+					if ((nx < x0) || (nx >= x1) || (ny < y0) || (ny >= y1)) {
+						continue;
+					}
+					if (!isWalkable(nx, ny) && !isPortal(nx, ny)) {
+						continue;
+					}
+
+					final int neighbour = ((ny - y0) * clusterSize) + (nx - x0);
+
+					if (distances[neighbour] != -1) {
+						continue;
+					}
+
+					distances[neighbour] = distances[local] + 1;
+
+					if (parents != null) {
+						parents[neighbour] = local;
+					}
+
+					queue[tail++] = neighbour;
+				}
+			}
+
+			return distances;
+		}
+
+		/**
+		 * Returns the local index of the given position in its cluster.
+		 */
+		private int getLocalIndex(int x, int y) {
+			return ((y % clusterSize) * clusterSize) + (x % clusterSize);
+		}
+
+		/**
+		 * Returns the positions traversed from the source position to the
+		 * target position (both in the same cluster), excluding the source.
+		 */
+		private List<Position> refine(int sourceX, int sourceY, int targetX, int targetY) {
+			final int[] parents = new int[clusterSize * clusterSize];
+			final int[] distances = search(sourceX, sourceY, parents);
+
+			final int x0 = (sourceX / clusterSize) * clusterSize;
+			final int y0 = (sourceY / clusterSize) * clusterSize;
+
+			int local = getLocalIndex(targetX, targetY);
+
+			final Position[] path = new Position[distances[local]];
+
+			for (int i = path.length - 1; i >= 0; i--) {
+				path[i] = new Position(x0 + (local % clusterSize), y0 + (local / clusterSize), level.getNumber());
+
+				local = parents[local];
+			}
+
+			return Arrays.asList(path);
+		}
+	}
+
+	/**
+	 * The abstract graph of the dungeon. The traversability of the levels is
+	 * snapshot by the clock's thread when creating the graph. The nodes and
+	 * the edges are created from the snapshot on the first query, possibly on
+	 * another thread. Once built, the graph isn't modified anymore (except
+	 * for the refinements cached on the edges) and can be searched
+	 * concurrently.
+	 */
+	private final class Graph {
+
+		/**
+		 * The graphs of the dungeon's levels indexed by level number.
+		 */
+		private final Map<Integer, LevelGraph> levels = new HashMap<Integer, LevelGraph>();
+
+		/**
+		 * All the nodes of the abstract graph indexed by node id.
+		 */
+		private final List<Node> nodes = new ArrayList<Node>();
+
+		/**
+		 * Whether the nodes and the edges have been created. Guarded by this.
+		 */
+		private boolean built;
+
+		// Called by the clock's thread
+		private Graph() {
+			for (Level level : dungeon.getLevels()) {
+				levels.put(level.getNumber(), new LevelGraph(this, level));
+			}
+		}
+
+		/**
+		 * Creates the nodes and the edges of the graph if not done yet.
+		 */
+		private synchronized void build() {
+			if (built) {
+				return;
+			}
+
+			// Create the entrances between adjacent clusters and the portals
+			for (LevelGraph graph : levels.values()) {
+				for (int y = 0; y < graph.height; y++) {
+					for (int x = 0; x < graph.width; x++) {
+						if (graph.isPortal(x, y)) {
+							createPortal(graph, x, y);
+						}
+					}
+				}
+
+				// Vertical borders
+				for (int x = clusterSize; x < graph.width; x += clusterSize) {
+					for (int y0 = 0; y0 < graph.height; y0 += clusterSize) {
+						final int y1 = Math.min(graph.height, y0 + clusterSize);
+
+						int run = -1;
+
+						for (int y = y0; y <= y1; y++) {
+							final boolean open = (y < y1) && graph.isWalkable(x - 1, y) && graph.isWalkable(x, y);
+
+							if (open && (run == -1)) {
+								run = y;
+							} else if (!open && (run != -1)) {
+								for (int entrance : getEntrances(run, y - 1)) {
+									link(graph.getNode(x - 1, entrance), graph.getNode(x, entrance));
+								}
+
+								run = -1;
+							}
+						}
+					}
+				}
+
+				// Horizontal borders
+				for (int y = clusterSize; y < graph.height; y += clusterSize) {
+					for (int x0 = 0; x0 < graph.width; x0 += clusterSize) {
+						final int x1 = Math.min(graph.width, x0 + clusterSize);
+
+						int run = -1;
+
+						for (int x = x0; x <= x1; x++) {
+							final boolean open = (x < x1) && graph.isWalkable(x, y - 1) && graph.isWalkable(x, y);
+
+							if (open && (run == -1)) {
+								run = x;
+							} else if (!open && (run != -1)) {
+								for (int entrance : getEntrances(run, x - 1)) {
+									link(graph.getNode(entrance, y - 1), graph.getNode(entrance, y));
+								}
+
+								run = -1;
+							}
+						}
+					}
+				}
+			}
+
+			// Connect the nodes inside each cluster
+			int edgeCount = 0;
+
+			for (LevelGraph graph : levels.values()) {
+				for (List<Node> cluster : graph.clusters) {
+					for (Node node : cluster) {
+						final int[] distances = graph.search(node.x, node.y, null);
+
+						for (Node other : cluster) {
+							if (other == node) {
+								continue;
+							}
+
+							final int distance = distances[graph.getLocalIndex(other.x, other.y)];
+
+							if (distance > 0) {
+								node.edges.add(new Edge(other, distance, EdgeType.LOCAL));
+
+								edgeCount++;
+							}
+						}
+					}
+				}
+			}
+
+			built = true;
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Built %s abstract graph of %d levels: %d nodes, %d intra-cluster edges",
+						materiality, levels.size(), nodes.size(), edgeCount));
+			}
+		}
+
+		/**
+		 * Creates the node of the portal (stairs or teleporter) located at the
+		 * given position and links it to its destination and to the walkable
+		 * positions around it in the adjacent clusters.
+		 */
+		private void createPortal(LevelGraph graph, int x, int y) {
+			final Node node = graph.getNode(x, y);
+
+			final int index = (y * graph.width) + x;
+			final Position destination = graph.destinations[index];
+			final LevelGraph destinationGraph = levels.get(destination.z);
+
+			final Node target = destinationGraph.getNode(destination.x, destination.y);
+
+			final Edge edge = new Edge(target, 1, graph.portals[index]);
+			edge.path = Collections.singletonList(destination);
+
+			node.edges.add(edge);
+
+			// The positions around the portal in another cluster are only
+			// reachable through a direct edge
+			final int cluster = graph.getCluster(x, y);
+
+			for (int i = 0; i < 4; i++) {
+				final int nx = x + DX[i];
+				final int ny = y + DY[i];
+
+				if ((nx < 0) || (nx >= graph.width) || (ny < 0) || (ny >= graph.height)) {
+					continue;
+				}
+				if (!graph.isWalkable(nx, ny) || (graph.getCluster(nx, ny) == cluster)) {
+					continue;
+				}
+
+				link(node, graph.getNode(nx, ny));
+			}
+		}
+	}
+
+	/**
+	 * A query for a path between 2 positions. The query is created by the
+	 * clock's thread (see
+	 * {@link HierarchicalPathFinder#prepare(Position, Position, boolean, boolean)}
+	 * ) and can be solved by any thread. The query searches the abstract graph
+	 * as it was when created: the changes of the dungeon afterwards are
+	 * ignored.
+	 */
+	public final class Query {
+
+		private final Graph graph;
+
+		private final Position start, goal;
+
+		private final boolean stairs, teleporters;
+
+		private Query(Graph graph, Position start, Position goal, boolean stairs, boolean teleporters) {
+			this.graph = graph;
+			this.start = start;
+			this.goal = goal;
+			this.stairs = stairs;
+			this.teleporters = teleporters;
+		}
+
+		public Position getStart() {
+			return start;
+		}
+
+		public Position getGoal() {
+			return goal;
+		}
+
+		/**
+		 * Searches a (near) shortest path from the start position to the goal
+		 * position. This method can be called by any thread.
+		 *
+		 * @return a list of positions starting with the start position and
+		 *         ending with the goal position or null if the goal position
+		 *         can't be reached. When taking stairs or teleporters, the path
+		 *         "jumps" from one position to the destination position.
+		 */
+		public List<Position> solve() {
+			graph.build();
+
+			final LevelGraph startGraph = graph.levels.get(start.z);
+			final LevelGraph goalGraph = graph.levels.get(goal.z);
+
+			if (start.equals(goal)) {
+				final List<Position> path = new ArrayList<Position>(1);
+				path.add(start);
+
+				return path;
+			}
+
+			if (!goalGraph.isWalkable(goal.x, goal.y) && !goalGraph.isPortal(goal.x, goal.y)) {
+				return null;
+			}
+
+			final int count = graph.nodes.size();
+
+			// The start & goal nodes are temporary and identified by the 2 last
+			// ids
+			final Node startNode = new Node(count, startGraph.level, start.x, start.y);
+			final Node goalNode = new Node(count + 1, goalGraph.level, goal.x, goal.y);
+
+			// Connect the start node to the nodes of its cluster (and directly
+			// to the goal if in the same cluster)
+			final int[] startDistances = startGraph.search(start.x, start.y, null);
+
+			for (Node node : startGraph.clusters.get(startGraph.getCluster(start.x, start.y))) {
+				final int distance = startDistances[startGraph.getLocalIndex(node.x, node.y)];
+
+				if (distance >= 0) {
+					startNode.edges.add(new Edge(node, distance, EdgeType.LOCAL));
+				}
+			}
+
+			if ((startGraph == goalGraph)
+					&& (startGraph.getCluster(start.x, start.y) == goalGraph.getCluster(goal.x, goal.y))) {
+
+				final int distance = startDistances[startGraph.getLocalIndex(goal.x, goal.y)];
+
+				if (distance >= 0) {
+					startNode.edges.add(new Edge(goalNode, distance, EdgeType.LOCAL));
+				}
+			}
+
+			// The edges from the nodes of the goal's cluster to the goal
+			final Map<Node, Edge> goalEdges = new HashMap<Node, Edge>();
+			final int[] goalDistances = goalGraph.search(goal.x, goal.y, null);
+
+			for (Node node : goalGraph.clusters.get(goalGraph.getCluster(goal.x, goal.y))) {
+				final int distance = goalDistances[goalGraph.getLocalIndex(node.x, node.y)];
+
+				if (distance >= 0) {
+					goalEdges.put(node, new Edge(goalNode, distance, EdgeType.LOCAL));
+				}
+			}
+
+			// A* search over the abstract graph
+			final int[] costs = new int[count + 2];
+			final Edge[] parentEdges = new Edge[count + 2];
+			final Node[] parents = new Node[count + 2];
+			final boolean[] closed = new boolean[count + 2];
+
+			Arrays.fill(costs, Integer.MAX_VALUE);
+
+			final NodeHeap heap = new NodeHeap(64);
+
+			costs[startNode.id] = 0;
+			heap.push(estimate(startNode, goalNode), startNode.id);
+
+			int expanded = 0;
+
+			while (!heap.isEmpty()) {
+				final int id = heap.poll();
+
+				if (closed[id]) {
+					continue;
+				}
+				if (id == goalNode.id) {
+					break;
+				}
+
+				closed[id] = true;
+				expanded++;
+
+				final Node node = (id == startNode.id) ? startNode : graph.nodes.get(id);
+
+				for (Edge edge : node.edges) {
+					if (EdgeType.STAIRS.equals(edge.type) && !stairs) {
+						continue;
+					}
+					if (EdgeType.TELEPORTER.equals(edge.type) && !teleporters) {
+						continue;
+					}
+
+					relax(node, edge, costs, parents, parentEdges, closed, heap, goalNode);
+				}
+
+				final Edge goalEdge = goalEdges.get(node);
+
+				if (goalEdge != null) {
+					relax(node, goalEdge, costs, parents, parentEdges, closed, heap, goalNode);
+				}
+			}
+
+			if (parents[goalNode.id] == null) {
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("No path from %s to %s [%d nodes expanded]", start, goal, expanded));
+				}
+
+				return null;
+			}
+
+			// Refine the abstract path
+			final List<Edge> edges = new ArrayList<Edge>();
+			final List<Node> sources = new ArrayList<Node>();
+
+			for (Node node = goalNode; node != startNode; node = parents[node.id]) {
+				edges.add(parentEdges[node.id]);
+				sources.add(parents[node.id]);
+			}
+
+			Collections.reverse(edges);
+			Collections.reverse(sources);
+
+			final List<Position> path = new ArrayList<Position>(costs[goalNode.id] + 1);
+			path.add(start);
+
+			for (int i = 0; i < edges.size(); i++) {
+				final Edge edge = edges.get(i);
+				final Node source = sources.get(i);
+
+				List<Position> refinement = edge.path;
+
+				if (refinement == null) {
+					refinement = graph.levels.get(source.level.getNumber()).refine(source.x, source.y, edge.target.x,
+							edge.target.y);
+
+					edge.path = refinement;
+				}
+
+				path.addAll(refinement);
+			}
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Found path from %s to %s: %d positions [%d nodes expanded]", start, goal,
+						path.size(), expanded));
+			}
+
+			return path;
+		}
+	}
+
+	/**
+	 * The minimal length of a run of positions along a cluster border to
+	 * create 2 entrances (one at each end) instead of one.
+	 */
+	private static final int LONG_RUN = 6;
+
+	private static final int[] DX = { -1, 1, 0, 0 };
+
+	private static final int[] DY = { 0, 0, -1, 1 };
+
+	private final Log log = LogFactory.getLog(HierarchicalPathFinder.class);
+
+	private final Dungeon dungeon;
+
+	private final Materiality materiality;
+
+	private final int clusterSize;
+
+	/**
+	 * The abstract graph. Null until a query is prepared or after the graph
+	 * was discarded. Only accessed by the clock's thread.
+	 */
+	private Graph graph;
+
+	public HierarchicalPathFinder(Dungeon dungeon, Materiality materiality) {
+		this(dungeon, materiality, DEFAULT_CLUSTER_SIZE);
+	}
+
+	public HierarchicalPathFinder(Dungeon dungeon, Materiality materiality, int clusterSize) {
+		Validate.notNull(dungeon);
+		Validate.notNull(materiality);
+		Validate.isTrue(clusterSize > 1, "The given cluster size " + clusterSize + " must be greater than 1");
+
+		this.dungeon = dungeon;
+		this.materiality = materiality;
+		this.clusterSize = clusterSize;
+	}
+
+	/**
+	 * Discards the abstract graph. It'll be rebuilt on the next query. Must be
+	 * called when a level is added to or removed from the dungeon. The queries
+	 * already prepared keep searching the discarded graph.
+	 */
+	public void invalidate() {
+		graph = null;
+	}
+
+	/**
+	 * Notifies the path finder that the element at the given position changed
+	 * (or was replaced). The abstract graph is discarded if the position's
+	 * traversability changed.
+	 *
+	 * @param level
+	 *            the level where the element changed. Can't be null.
+	 * @param x
+	 *            the element's x coordinate.
+	 * @param y
+	 *            the element's y coordinate.
+	 */
+	public void elementChanged(Level level, int x, int y) {
+		Validate.notNull(level, "The given level is null");
+
+		if (graph == null) {
+			return;
+		}
+
+		final LevelGraph levelGraph = graph.levels.get(level.getNumber());
+
+		if ((levelGraph == null) || (levelGraph.level != level)) {
+			// The level isn't part of the graph, it'll be discarded when the
+			// level is added to the dungeon
+			return;
+		}
+
+		if (levelGraph.hasChanged(x, y)) {
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Position %d:(%d,%d) changed, discarding the %s abstract graph",
+						level.getNumber(), x, y, materiality));
+			}
+
+			invalidate();
+		}
+	}
+
+	/**
+	 * Tells whether the abstract graph depends on the state of the given
+	 * element, that is, whether the element must be listened to for calling
+	 * {@link #elementChanged(Level, int, int)}. This is the case of the
+	 * teleporters which can be enabled or disabled.
+	 *
+	 * @param element
+	 *            an element. Can't be null.
+	 * @return whether the given element's state is part of the graph.
+	 */
+	public static boolean isDynamic(Element element) {
+		Validate.notNull(element, "The given element is null");
+
+		return Element.Type.TELEPORTER.equals(element.getType());
+	}
+
+	/**
+	 * Returns the number of nodes of the abstract graph (building it if
+	 * necessary).
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public int getNodeCount() {
+		final Graph graph = getGraph();
+
+		graph.build();
+
+		return graph.nodes.size();
+	}
+
+	/**
+	 * Prepares a query for a path from the start position to the goal
+	 * position. Both positions can be on different levels. Must be called by
+	 * the clock's thread: the traversability of the levels is snapshot if the
+	 * abstract graph has to be rebuilt.
+	 *
+	 * @param start
+	 *            the start position. Can't be null.
+	 * @param goal
+	 *            the goal position. Can't be null.
+	 * @param stairs
+	 *            whether the path can take stairs.
+	 * @param teleporters
+	 *            whether the path can go through teleporters.
+	 * @return a new query. Never returns null.
+	 */
+	public Query prepare(Position start, Position goal, boolean stairs, boolean teleporters) {
+		Validate.notNull(start, "The given start position is null");
+		Validate.notNull(goal, "The given goal position is null");
+
+		final Graph graph = getGraph();
+
+		Validate.isTrue(graph.levels.containsKey(start.z), "The given start position " + start
+				+ " isn't inside the dungeon");
+		Validate.isTrue(graph.levels.containsKey(goal.z), "The given goal position " + goal
+				+ " isn't inside the dungeon");
+
+		return new Query(graph, start, goal, stairs, teleporters);
+	}
+
+	/**
+	 * Returns a (near) shortest path from the start position to the goal
+	 * position. Both positions can be on different levels. The search is run
+	 * by the calling thread which must be the clock's thread.
+	 *
+	 * @param start
+	 *            the start position. Can't be null.
+	 * @param goal
+	 *            the goal position. Can't be null.
+	 * @param stairs
+	 *            whether the path can take stairs.
+	 * @param teleporters
+	 *            whether the path can go through teleporters.
+	 * @return a list of elements starting with the start element and ending
+	 *         with the goal element or null if the goal position can't be
+	 *         reached. When taking stairs or teleporters, the path "jumps" from
+	 *         one element to the destination element.
+	 */
+	public List<Element> findBestPath(Position start, Position goal, boolean stairs, boolean teleporters) {
+		return getElements(prepare(start, goal, stairs, teleporters).solve());
+	}
+
+	/**
+	 * Converts the given path found by a {@link Query} into the dungeon's
+	 * elements. Must be called by the clock's thread.
+	 *
+	 * @param path
+	 *            a list of positions. Can be null.
+	 * @return a list of elements or null if the given path is null or if one
+	 *         of its positions is on a level not in the dungeon anymore.
+	 */
+	public List<Element> getElements(List<Position> path) {
+		if (path == null) {
+			return null;
+		}
+
+		final List<Element> elements = new ArrayList<Element>(path.size());
+
+		for (Position position : path) {
+			final Level level = dungeon.getLevel(position.z);
+
+			if (level == null) {
+				return null;
+			}
+
+			elements.add(level.getElement(position.x, position.y));
+		}
+
+		return elements;
+	}
+
+	private Graph getGraph() {
+		if (graph == null) {
+			graph = new Graph();
+		}
+
+		return graph;
+	}
+
+	private static void relax(Node node, Edge edge, int[] costs, Node[] parents, Edge[] parentEdges,
+			boolean[] closed, NodeHeap heap, Node goalNode) {
+
+		final Node target = edge.target;
+
+		if (closed[target.id]) {
+			return;
+		}
+
+		final int cost = costs[node.id] + edge.cost;
+
+		if (cost < costs[target.id]) {
+			costs[target.id] = cost;
+			parents[target.id] = node;
+			parentEdges[target.id] = edge;
+
+			heap.push(cost + estimate(target, goalNode), target.id);
+		}
+	}
+
+	/**
+	 * Admissible estimate of the cost from the given node to the goal: the
+	 * Manhattan distance when both nodes are on the same level, zero
+	 * otherwise.
+	 */
+	private static int estimate(Node node, Node goal) {
+		if (node.level != goal.level) {
+			return 0;
+		}
+
+		return Math.abs(goal.x - node.x) + Math.abs(goal.y - node.y);
+	}
+
+	private EdgeType getPortalType(Element element) {
+		switch (element.getType()) {
+		case STAIRS:
+			final Position stairsDestination = ((Stairs) element).getDestination();
+
+			if ((stairsDestination != null) && (dungeon.getLevel(stairsDestination.z) != null)) {
+				return EdgeType.STAIRS;
+			}
+
+			return null;
+		case TELEPORTER:
+			final Teleporter teleporter = (Teleporter) element;
+			final Position destination = teleporter.getDestination();
+
+			if (teleporter.isEnabled() && (destination != null) && (dungeon.getLevel(destination.z) != null)) {
+				return EdgeType.TELEPORTER;
+			}
+
+			return null;
+		default:
+			return null;
+		}
+	}
+
+	private static Position getDestination(Element element) {
+		if (element instanceof Stairs) {
+			return ((Stairs) element).getDestination();
+		}
+
+		return ((Teleporter) element).getDestination();
+	}
+
+	/**
+	 * Returns the coordinates of the entrances for the given run of
+	 * traversable positions along a cluster border: one entrance in the middle
+	 * of a short run, one entrance at each end of a long run.
+	 */
+	private static int[] getEntrances(int first, int last) {
+		if (last - first + 1 < LONG_RUN) {
+			return new int[] { (first + last) / 2 };
+		}
+
+		return new int[] { first, last };
+	}
+
+	/**
+	 * Links the 2 given adjacent nodes in both directions.
+	 */
+	private static void link(Node node1, Node node2) {
+		final Edge edge1 = new Edge(node2, 1, EdgeType.LOCAL);
+		edge1.path = Collections.singletonList(node2.getPosition());
+
+		final Edge edge2 = new Edge(node1, 1, EdgeType.LOCAL);
+		edge2.path = Collections.singletonList(node1.getPosition());
+
+		node1.edges.add(edge1);
+		node2.edges.add(edge2);
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai.astar;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of graph nodes backed by a primitive array. Each entry packs
+ * a priority (the high 32 bits) and a node index (the low 32 bits) into a long
+ * so that pushing and polling never allocate. Nodes whose priority improves are
+ * simply pushed again: the caller is responsible for skipping the stale
+ * entries when polling (lazy deletion).
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class NodeHeap {
+
+	/**
+	 * The heap entries. Only the first {@link #size} entries are meaningful.
+	 */
+	private long[] entries;
+
+	/**
+	 * The number of entries in the heap.
+	 */
+	private int size;
+
+	NodeHeap(int capacity) {
+		this.entries = new long[Math.max(capacity, 16)];
+	}
+
+	/**
+	 * Pushes the given node with the given priority onto the heap.
+	 *
+	 * @param priority
+	 *            a positive or zero integer. The lower, the sooner the node
+	 *            will be polled.
+	 * @param node
+	 *            a positive or zero integer identifying a node.
+	 */
+	void push(int priority, int node) {
+		if (size == entries.length) {
+			entries = Arrays.copyOf(entries, size * 2);
+		}
+
+		final long entry = ((long) priority << 32) | (node & 0xFFFFFFFFL);
+
+		// Sift up
+		int index = size++;
+
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+
+			if (entries[parent] <= entry) {
+				break;
+			}
+
+			entries[index] = entries[parent];
+			index = parent;
+		}
+
+		entries[index] = entry;
+	}
+
+	/**
+	 * Removes the entry with the lowest priority from the heap and returns its
+	 * node.
+	 *
+	 * @return the node with the lowest priority.
+	 */
+	int poll() {
+		if (size == 0) {
+			throw new IllegalStateException("The heap is empty");
+		}
+
+		final long head = entries[0];
+		final long last = entries[--size];
+
+		// Sift down
+		int index = 0;
+		final int half = size >>> 1;
+
+		while (index < half) {
+			int child = (index << 1) + 1;
+
+			if ((child + 1 < size) && (entries[child + 1] < entries[child])) {
+				child++;
+			}
+
+			if (last <= entries[child]) {
+				break;
+			}
+
+			entries[index] = entries[child];
+			index = child;
+		}
+
+		entries[index] = last;
+
+		return (int) head;
+	}
+
+	boolean isEmpty() {
+		return (size == 0);
+	}
+
+	void clear() {
+		size = 0;
+	}
+}
@@ -1,209 +1,564 @@
 package fr.ritaly.dungeonmaster.ai.astar;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
 
 import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.ai.Materiality;
-import fr.ritaly.dungeonmaster.map.Dungeon;
 import fr.ritaly.dungeonmaster.map.Element;
-import fr.ritaly.dungeonmaster.map.Floor;
 import fr.ritaly.dungeonmaster.map.Level;
 
 /**
- * See http://memoization.com/2008/11/30/a-star-algorithm-in-java/ for the web
- * page where the original source code comes from. The code was refactored so as
- * to make the maze stateless.
+ * A* path finder over the grid of a {@link Level}. The nodes are identified by
+ * their flat index (<code>y * width + x</code>) and the search only uses
+ * primitive arrays: a binary heap of nodes and per-thread scratch arrays (cost,
+ * parent and closed set) reused from one search to the next. The path finder
+ * itself is therefore cheap to create.
+ * <p>
+ * The grid is 4-connected (as defined by {@link Element#getAdjacentElements()})
+ * with a uniform cost. A material creature can't traverse concrete elements
+ * while an immaterial one can traverse any element.
+ * </p>
+ * <p>
+ * The search {@link Strategy} is either a regular A* or a jump point search
+ * which expands far fewer nodes on open levels.
+ * </p>
  */
 public class PathFinder {
 
+	/**
+	 * Enumerates the possible search strategies.
+	 */
+	public static enum Strategy {
+
+		/**
+		 * Regular A* search expanding the nodes one by one.
+		 */
+		A_STAR,
+
+		/**
+		 * Jump point search: only expands the nodes where a path can turn.
+		 * Much faster than A* on levels with large open areas. Returns a
+		 * path as short as A*.
+		 */
+		JUMP_POINT_SEARCH;
+	}
+
+	/**
+	 * The offsets of the 4 neighbours of a node (west, east, north, south).
+	 * Same order as {@link fr.ritaly.dungeonmaster.Position#getAttackablePositions()}.
+	 */
+	private static final int[] DX = { -1, 1, 0, 0 };
+
+	private static final int[] DY = { 0, 0, -1, 1 };
+
+	/**
+	 * The scratch structures used by the searches. Stored per thread so that
+	 * searches never allocate (once the arrays are big enough) and can run
+	 * concurrently.
+	 */
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * Reusable structures for running a search. The costs and parents are only
+	 * valid for the nodes whose stamp matches the current search generation,
+	 * this avoids clearing those arrays before each search.
+	 */
+	static final class Scratch {
+
+		private int generation;
+
+		private int[] stamps = new int[0];
+
+		private int[] costs = new int[0];
+
+		private int[] parents = new int[0];
+
+		private long[] closed = new long[0];
+
+		private final NodeHeap heap = new NodeHeap(64);
+
+		/**
+		 * The number of nodes expanded by the last search.
+		 */
+		private int expanded;
+
+		void prepare(int count) {
+			if (stamps.length < count) {
+				stamps = new int[count];
+				costs = new int[count];
+				parents = new int[count];
+				closed = new long[(count + 63) >>> 6];
+				generation = 0;
+			}
+
+			if (++generation == 0) {
+				// The generation wrapped around, reset the stamps
+				Arrays.fill(stamps, 0);
+				generation = 1;
+			}
+
+			Arrays.fill(closed, 0, (count + 63) >>> 6, 0L);
+
+			heap.clear();
+
+			expanded = 0;
+		}
+
+		boolean isClosed(int node) {
+			return (closed[node >>> 6] & (1L << node)) != 0;
+		}
+
+		void close(int node) {
+			closed[node >>> 6] |= (1L << node);
+		}
+
+		boolean isReached(int node) {
+			return stamps[node] == generation;
+		}
+
+		void reach(int node, int cost, int parent) {
+			stamps[node] = generation;
+			costs[node] = cost;
+			parents[node] = parent;
+		}
+	}
+
+	private final Log log = LogFactory.getLog(PathFinder.class);
+
+	/**
+	 * The level searched. Null when searching a {@link Grid}.
+	 */
 	private final Level level;
 
-	private final Materiality materiality;
+	/**
+	 * The snapshot searched. Null when searching a {@link Level}.
+	 */
+	private final Grid grid;
+
+	private final int width;
 
-	private final List<Element> opened = new ArrayList<Element>();
+	private final int height;
 
-	private final List<Element> closed = new ArrayList<Element>();
+	private final int levelNumber;
+
+	private final Materiality materiality;
 
-	private final List<Element> bestList = new ArrayList<Element>();
+	private final Strategy strategy;
 
-	private final Map<Element, Element> parents = new LinkedHashMap<Element, Element>();
+	/**
+	 * The number of nodes expanded by the last search.
+	 */
+	private int expandedCount;
 
 	public PathFinder(Level level, Materiality materiality) {
+		this(level, materiality, Strategy.A_STAR);
+	}
+
+	public PathFinder(Level level, Materiality materiality, Strategy strategy) {
 		Validate.notNull(level);
 		Validate.notNull(materiality);
+		Validate.notNull(strategy);
 
 		this.level = level;
+		this.grid = null;
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.levelNumber = level.getNumber();
 		this.materiality = materiality;
+		this.strategy = strategy;
 	}
 
+	/**
+	 * Creates a path finder searching the given snapshot. Such a path finder
+	 * can run on any thread but can only return paths as node indices (see
+	 * {@link #findPath(int, int, int, int)}).
+	 *
+	 * @param grid
+	 *            the snapshot to search. Can't be null.
+	 * @param strategy
+	 *            the search strategy. Can't be null.
+	 */
+	public PathFinder(Grid grid, Strategy strategy) {
+		Validate.notNull(grid);
+		Validate.notNull(strategy);
+
+		this.level = null;
+		this.grid = grid;
+		this.width = grid.getWidth();
+		this.height = grid.getHeight();
+		this.levelNumber = grid.getLevelNumber();
+		this.materiality = grid.getMateriality();
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Returns the shortest path from the start position to the end position.
+	 * Only supported by the path finders searching a {@link Level}.
+	 *
+	 * @return a list of elements starting with the start element and ending
+	 *         with the end element or null if the end position can't be
+	 *         reached.
+	 */
 	public List<Element> findBestPath(int startX, int startY, int endX, int endY) {
-		final Element start = level.getElement(startX, startY);
-		final Element goal = level.getElement(endX, endY);
+		if (level == null) {
+			throw new IllegalStateException("This path finder searches a grid, use findPath() instead");
+		}
 
-		System.out.println("Calculating best path...");
+		final int[] nodes = findPath(startX, startY, endX, endY);
 
-		for (Element adjacency : start.getAdjacentElements()) {
-			if (Materiality.IMMATERIAL.equals(materiality)) {
-				// All nodes can be traversed
-			} else {
-				// Only non-concrete nodes can be traversed
-				if (adjacency.isConcrete()) {
-					// Ignore this node
-					continue;
-				}
-			}
+		if (nodes == null) {
+			return null;
+		}
 
-			parents.put(adjacency, start);
+		final List<Element> path = new ArrayList<Element>(nodes.length);
 
-			if (!((adjacency.getPosition().x == startX) && (adjacency.getPosition().y == startY))) {
-				opened.add(adjacency);
-			}
+		for (int node : nodes) {
+			path.add(level.getElement(node % width, node / width));
 		}
 
-		while (opened.size() > 0) {
-			final Element best = findBestPassThrough(goal, startX, startY);
+		return path;
+	}
+
+	/**
+	 * Returns the shortest path from the start position to the end position as
+	 * node indices (<code>y * width + x</code>).
+	 *
+	 * @return an array of node indices starting with the start node and ending
+	 *         with the end node or null if the end position can't be reached.
+	 */
+	public int[] findPath(int startX, int startY, int endX, int endY) {
+		checkCoordinates(startX, startY);
+		checkCoordinates(endX, endY);
 
-			opened.remove(best);
-			closed.add(best);
+		this.expandedCount = 0;
 
-			if ((best.getPosition().x == endX) && (best.getPosition().y == endY)) {
-				System.out.println("Found Goal");
-				populateBestList(goal, startX, startY);
+		final int startNode = (startY * width) + startX;
+		final int goalNode = (endY * width) + endX;
 
-				// Add the start position to the solution
-				bestList.add(start);
+		if (startNode == goalNode) {
+			return new int[] { startNode };
+		}
 
-				// Reverse the traversed node to list from the start position
-				// to the goal
-				Collections.reverse(bestList);
+		if (!isOpen(endX, endY)) {
+			return null;
+		}
 
-				System.out.println(level.draw(bestList));
+		final Scratch scratch = SCRATCH.get();
+		scratch.prepare(width * height);
 
-				return bestList;
-			} else {
-				final List<Element> neighbors = best.getAdjacentElements();
-
-				for (Element neighbor : neighbors) {
-					if (Materiality.IMMATERIAL.equals(materiality)) {
-						// All nodes can be traversed
-					} else {
-						// Only non-concrete nodes can be traversed
-						if (neighbor.isConcrete()) {
-							// Ignore this node
-							continue;
-						}
-					}
-
-					if (opened.contains(neighbor)) {
-						final Floor temp = new Floor();
-						temp.setPosition(neighbor.getPosition());
-						temp.setLevel(level);
-
-						parents.put(temp, best);
-
-						if (getPassThrough(temp, goal, startX, startY) >= getPassThrough(neighbor, goal, startX, startY)) {
-							continue;
-						}
-					}
-
-					if (closed.contains(neighbor)) {
-						final Floor temp = new Floor();
-						temp.setPosition(neighbor.getPosition());
-						temp.setLevel(level);
-
-						parents.put(temp, best);
-
-						if (getPassThrough(temp, goal, startX, startY) >= getPassThrough(neighbor, goal, startX, startY)) {
-							continue;
-						}
-					}
-
-					parents.put(neighbor, best);
-
-					opened.remove(neighbor);
-					closed.remove(neighbor);
-					opened.add(0, neighbor);
-				}
+		scratch.reach(startNode, 0, -1);
+		scratch.heap.push(Math.abs(endX - startX) + Math.abs(endY - startY), startNode);
+
+		final boolean found;
+
+		if (Strategy.JUMP_POINT_SEARCH.equals(strategy)) {
+			found = searchJumpPoints(scratch, goalNode, endX, endY);
+		} else {
+			found = searchAStar(scratch, goalNode, endX, endY);
+		}
+
+		this.expandedCount = scratch.expanded;
+
+		if (!found) {
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("No path from (%d,%d) to (%d,%d) on level %d [%s, %d nodes expanded]",
+						startX, startY, endX, endY, levelNumber, strategy, scratch.expanded));
 			}
+
+			return null;
+		}
+
+		final int[] path = buildPath(scratch, goalNode);
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Found path from (%d,%d) to (%d,%d) on level %d: %d nodes [%s, %d nodes expanded]",
+					startX, startY, endX, endY, levelNumber, path.length, strategy, scratch.expanded));
+		}
+
+		return path;
+	}
+
+	private void checkCoordinates(int x, int y) {
+		if ((x < 0) || (x > width - 1)) {
+			throw new IllegalArgumentException("The given x must be in range [0-" + (width - 1) + "]");
+		}
+		if ((y < 0) || (y > height - 1)) {
+			throw new IllegalArgumentException("The given y must be in range [0-" + (height - 1) + "]");
 		}
+	}
 
-		return null;
+	/**
+	 * Returns the number of nodes expanded by the last search run by this path
+	 * finder. Useful for monitoring and benchmarking.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
 	}
 
-	private Element findBestPassThrough(Element goal, int startX, int startY) {
-		Element best = null;
+	/**
+	 * Returns the level searched by this path finder.
+	 *
+	 * @return a {@link Level} or null if this path finder searches a
+	 *         {@link Grid}.
+	 */
+	public Level getLevel() {
+		return level;
+	}
 
-		for (Element square : opened) {
-			if (best == null || getPassThrough(square, goal, startX, startY) < getPassThrough(best, goal, startX, startY)) {
-				best = square;
+	/**
+	 * Returns the snapshot searched by this path finder.
+	 *
+	 * @return a {@link Grid} or null if this path finder searches a
+	 *         {@link Level}.
+	 */
+	public Grid getGrid() {
+		return grid;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Materiality getMateriality() {
+		return materiality;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	private boolean searchAStar(Scratch scratch, int goalNode, int endX, int endY) {
+		while (!scratch.heap.isEmpty()) {
+			final int node = scratch.heap.poll();
+
+			if (scratch.isClosed(node)) {
+				// Stale entry (the node was reached again with a lower cost)
+				continue;
+			}
+
+			if (node == goalNode) {
+				return true;
+			}
+
+			scratch.close(node);
+			scratch.expanded++;
+
+			final int x = node % width;
+			final int y = node / width;
+			final int cost = scratch.costs[node] + 1;
+
+			for (int i = 0; i < 4; i++) {
+				final int nx = x + DX[i];
+				final int ny = y + DY[i];
+
+				if ((nx < 0) || (nx >= width) || (ny < 0) || (ny >= height)) {
+					continue;
+				}
+
+				final int neighbour = (ny * width) + nx;
+
+				if (scratch.isClosed(neighbour)) {
+					continue;
+				}
+				if (scratch.isReached(neighbour) && (scratch.costs[neighbour] <= cost)) {
+					continue;
+				}
+				if (!isOpen(nx, ny)) {
+					// Never visit this node again
+					scratch.close(neighbour);
+
+					continue;
+				}
+
+				scratch.reach(neighbour, cost, node);
+				scratch.heap.push(cost + Math.abs(endX - nx) + Math.abs(endY - ny), neighbour);
 			}
 		}
 
-		return best;
+		return false;
 	}
 
-	private void populateBestList(Element square, int startX, int startY) {
-		bestList.add(square);
+	/**
+	 * Jump point search adapted to a 4-connected grid. The canonical paths
+	 * move horizontally first: a horizontal move can be followed by any move
+	 * while a vertical move can only turn when forced to (because the position
+	 * beside the previous position is blocked). Only the jump points (where a
+	 * canonical path can turn) are pushed onto the heap.
+	 */
+	private boolean searchJumpPoints(Scratch scratch, int goalNode, int endX, int endY) {
+		while (!scratch.heap.isEmpty()) {
+			final int node = scratch.heap.poll();
+
+			if (scratch.isClosed(node)) {
+				continue;
+			}
+
+			if (node == goalNode) {
+				return true;
+			}
+
+			scratch.close(node);
+			scratch.expanded++;
+
+			final int x = node % width;
+			final int y = node / width;
+			final int parent = scratch.parents[node];
+
+			if (parent == -1) {
+				// The start node, search in all directions
+				for (int i = 0; i < 4; i++) {
+					jump(scratch, node, x, y, DX[i], DY[i], endX, endY);
+				}
+			} else if ((parent / width) == y) {
+				// Horizontal move, all the neighbours are natural (except the
+				// one behind)
+				jump(scratch, node, x, y, (x > parent % width) ? 1 : -1, 0, endX, endY);
+				jump(scratch, node, x, y, 0, -1, endX, endY);
+				jump(scratch, node, x, y, 0, 1, endX, endY);
+			} else {
+				// Vertical move, go on and turn if forced to
+				final int dy = (y > parent / width) ? 1 : -1;
 
-		final Element parent = parents.get(square);
+				jump(scratch, node, x, y, 0, dy, endX, endY);
 
-		if (!((parent.getPosition().x == startX) && (parent.getPosition().y == startY))) {
-			populateBestList(parents.get(square), startX, startY);
+				if (isOpen(x - 1, y) && !isOpen(x - 1, y - dy)) {
+					jump(scratch, node, x, y, -1, 0, endX, endY);
+				}
+				if (isOpen(x + 1, y) && !isOpen(x + 1, y - dy)) {
+					jump(scratch, node, x, y, 1, 0, endX, endY);
+				}
+			}
 		}
+
+		return false;
 	}
 
-	private double getPassThrough(Element square, Element goal, int x, int y) {
-		if ((square.getPosition().x == x) && (square.getPosition().y == y)) {
-			return 0.0;
+	/**
+	 * Jumps from the given node in the given direction and pushes the jump
+	 * point found (if any) onto the heap.
+	 */
+	private void jump(Scratch scratch, int node, int x, int y, int dx, int dy, int endX, int endY) {
+		final int jumpPoint = (dx != 0) ? jumpHorizontally(x, y, dx, endX, endY) : jumpVertically(x, y, dy, endX,
+				endY);
+
+		if ((jumpPoint == -1) || scratch.isClosed(jumpPoint)) {
+			return;
+		}
+
+		final int jx = jumpPoint % width;
+		final int jy = jumpPoint / width;
+		final int cost = scratch.costs[node] + Math.abs(jx - x) + Math.abs(jy - y);
+
+		if (scratch.isReached(jumpPoint) && (scratch.costs[jumpPoint] <= cost)) {
+			return;
 		}
 
-		return getLocalCost(square, goal, x, y) + getParentCost(square, x, y);
+		scratch.reach(jumpPoint, cost, node);
+		scratch.heap.push(cost + Math.abs(endX - jx) + Math.abs(endY - jy), jumpPoint);
 	}
 
-	private double getLocalCost(Element square, Element goal, int x, int y) {
-		if ((square.getPosition().x == x) && (square.getPosition().y == y)) {
-			return 0.0;
+	private int jumpHorizontally(int x, int y, int dx, int endX, int endY) {
+		while (true) {
+			x += dx;
+
+			if (!isOpen(x, y)) {
+				return -1;
+			}
+			if ((x == endX) && (y == endY)) {
+				return (y * width) + x;
+			}
+			if ((jumpVertically(x, y, -1, endX, endY) != -1) || (jumpVertically(x, y, 1, endX, endY) != -1)) {
+				// A canonical path turns here
+				return (y * width) + x;
+			}
 		}
+	}
+
+	private int jumpVertically(int x, int y, int dy, int endX, int endY) {
+		while (true) {
+			y += dy;
 
-		// cost of getting from this square to goal
-		return 1.0 * (Math.abs(x - goal.getPosition().x) + Math.abs(y - goal.getPosition().y));
+			if (!isOpen(x, y)) {
+				return -1;
+			}
+			if ((x == endX) && (y == endY)) {
+				return (y * width) + x;
+			}
+			if ((isOpen(x - 1, y) && !isOpen(x - 1, y - dy)) || (isOpen(x + 1, y) && !isOpen(x + 1, y - dy))) {
+				// Forced neighbour
+				return (y * width) + x;
+			}
+		}
 	}
 
-	private double getParentCost(Element square, int x, int y) {
-		if ((square.getPosition().x == x) && (square.getPosition().y == y)) {
-			return 0.0;
+	/**
+	 * Tells whether the given position exists and can be traversed: a
+	 * material creature can't traverse concrete elements while an immaterial
+	 * one can traverse any element.
+	 */
+	private boolean isOpen(int x, int y) {
+		if (grid != null) {
+			return grid.isTraversable(x, y);
+		}
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return false;
+		}
+
+		if (Materiality.IMMATERIAL.equals(materiality)) {
+			// All nodes can be traversed
+			return true;
 		}
 
-		return 1.0 + .5 * (getParentCost(parents.get(square), x, y) - 1.0);
+		// Read the level's flags rather than the elements themselves
+		return !level.getCellMap().isConcrete(x, y);
 	}
 
-	public static void main(String[] args) {
-		int startX = 0, startY = 0;
-		int goalX = 0, goalY = 0;
+	private int[] buildPath(Scratch scratch, int goalNode) {
+		final int[] path = new int[scratch.costs[goalNode] + 1];
+
+		int index = path.length - 1;
 
-		List<Element> path = null;
+		for (int node = goalNode; node != -1; node = scratch.parents[node]) {
+			final int parent = scratch.parents[node];
 
-		do {
-			Dungeon dungeon = new Dungeon();
-			Level level = new Level(dungeon, 1, 10, 10);
+			path[index--] = node;
+
+			if (parent == -1) {
+				break;
+			}
 
-			Random random = new Random();
+			// Interpolate the positions between 2 jump points (aligned)
+			final int step;
 
-			startX = random.nextInt(10);
-			startY = random.nextInt(10);
+			if ((parent / width) == (node / width)) {
+				// Same row
+				step = (parent > node) ? 1 : -1;
+			} else {
+				// Same column
+				step = (parent > node) ? width : -width;
+			}
 
-			do {
-				goalX = random.nextInt(10);
-				goalY = random.nextInt(10);
-			} while (goalX == startX && goalY == startY);
+			for (int between = node + step; between != parent; between += step) {
+				path[index--] = between;
+			}
+		}
 
-			path = new PathFinder(level, Materiality.MATERIAL).findBestPath(startX, startY, goalX, goalY);
-		} while (path == null);
+		return path;
 	}
-}
\ No newline at end of file
+}
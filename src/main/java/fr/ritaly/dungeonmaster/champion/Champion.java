@@ -18,8 +18,6 @@
  */
 package fr.ritaly.dungeonmaster.champion;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -51,7 +49,6 @@ import fr.ritaly.dungeonmaster.champion.inventory.BackPack;
 import fr.ritaly.dungeonmaster.champion.inventory.Inventory;
 import fr.ritaly.dungeonmaster.champion.inventory.Pouch;
 import fr.ritaly.dungeonmaster.champion.inventory.Quiver;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
@@ -71,9 +68,11 @@ import fr.ritaly.dungeonmaster.magic.Rune;
 import fr.ritaly.dungeonmaster.magic.SkillTooLowException;
 import fr.ritaly.dungeonmaster.magic.Spell;
 import fr.ritaly.dungeonmaster.magic.SpellCaster;
+import fr.ritaly.dungeonmaster.map.CommandRecorder;
 import fr.ritaly.dungeonmaster.map.Element;
 import fr.ritaly.dungeonmaster.projectile.ItemProjectile;
 import fr.ritaly.dungeonmaster.stat.Stat;
+import fr.ritaly.dungeonmaster.stat.StatListener;
 import fr.ritaly.dungeonmaster.stat.Stats;
 
 /**
@@ -81,7 +80,7 @@ import fr.ritaly.dungeonmaster.stat.Stats;
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
-public class Champion implements ChangeEventSource, PropertyChangeListener, ClockListener {
+public class Champion implements ChangeEventSource, StatListener, ClockListener {
 
 	private final Log log = LogFactory.getLog(Champion.class);
 
@@ -656,7 +655,7 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 		this.inventory = new Inventory(this);
 
 		this.stats = new Stats(this);
-		this.stats.addPropertyChangeListener(this);
+		this.stats.addStatListener(Stats.Type.HEALTH, this);
 
 		this.body = new Body(this);
 
@@ -730,6 +729,24 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 		skills.get(skill).setLevel(level);
 	}
 
+	/**
+	 * Restores the champion's level and experience points for the given skill
+	 * as is (the champion's stats aren't improved). Used when reloading a
+	 * champion from a snapshot.
+	 *
+	 * @param skill
+	 *            the skill whose experience is to be restored. Can't be null.
+	 * @param level
+	 *            the level to restore. Can't be null.
+	 * @param points
+	 *            the experience points to restore. Must be positive or zero.
+	 */
+	public void restoreExperience(Skill skill, Level level, int points) {
+		Validate.notNull(skill, "The given skill is null");
+
+		skills.get(skill).restore(level, points);
+	}
+
 	/**
 	 * Returns the champion's experience for the given skill.
 	 *
@@ -766,6 +783,8 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 		Validate.notNull(rune, "The given rune is null");
 		assertAlive();
 
+		CommandRecorder.getRecorder(party).cast(this, rune);
+
 		// Ensure the champion has enough mana to cast the rune
 		final Stat mana = getStats().getMana();
 
@@ -917,6 +936,8 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 
 		assertAlive();
 
+		CommandRecorder.getRecorder(party).castSpell(this);
+
 		// First create the spell without clearing the runes (special use case
 		// when creating potions, see below)
 		final Spell spell = spellCaster.cast(true);
@@ -975,6 +996,11 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 			body.getWeaponHand().disable(duration);
 		}
 
+		if ((party != null) && (party.getDungeon() != null)) {
+			// Casting a spell is noisy, the creatures nearby can hear the party
+			party.getDungeon().makePartyNoise();
+		}
+
 		// Let the spell operate on the champion
 		spell.actUpon(this);
 
@@ -1012,8 +1038,10 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 				log.debug(getName() + " joined the party");
 			}
 
-			// Register this champion
-			Clock.getInstance().register(this);
+			// Animate this champion every time its temporizer triggers
+			if (!temporizer.isStarted()) {
+				temporizer.start(this);
+			}
 		}
 	}
 
@@ -1263,7 +1291,7 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 	}
 
 	protected void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
 	}
 
 	private void kill() {
@@ -1342,16 +1370,13 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 	}
 
 	@Override
-	public void propertyChange(PropertyChangeEvent event) {
-		if (event.getSource() != stats) {
+	public void statChanged(Stats stats, Stats.Type type, int oldHealth, int newHealth) {
+		if (stats != this.stats) {
 			// On ignore cet �v�nement
 			return;
 		}
 
-		if (Stats.PROPERTY_HEALTH.equals(event.getPropertyName())) {
-			final int oldHealth = ((Integer) event.getOldValue()).intValue();
-			final int newHealth = ((Integer) event.getNewValue()).intValue();
-
+		if (Stats.Type.HEALTH.equals(type)) {
 			if ((oldHealth > 0) && (newHealth == 0)) {
 				// Le h�ros vient de mourir
 				if (log.isDebugEnabled()) {
@@ -1370,6 +1395,11 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 		}
 	}
 
+	@Override
+	public void statMaxChanged(Stats stats, Stats.Type type, int oldMax, int newMax) {
+		// Only the base value of the health matters
+	}
+
 	/**
 	 * Indique si le {@link Champion} a faim.
 	 *
@@ -1430,16 +1460,13 @@ public class Champion implements ChangeEventSource, PropertyChangeListener, Cloc
 
 	@Override
 	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			// Dispatcher l'appel aux stats
-			stats.clockTicked();
+		// Dispatcher l'appel aux stats
+		stats.clockTicked();
 
-			// ... et aux sorts du champion
-			spells.clockTicked();
+		// ... et aux sorts du champion
+		spells.clockTicked();
 
-			// ... et au poison
-			poison.clockTicked();
-		}
+		// Note: The poison decays on its own
 
 		// Continuer � animer le champion tant qu'il est dans le groupe et qu'il
 		// est vivant
@@ -24,7 +24,6 @@ import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.Skill;
 import fr.ritaly.dungeonmaster.champion.Champion.Level;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
@@ -129,6 +128,15 @@ public class Experience implements ChangeEventSource {
 		}
 	}
 
+	// This method should only be called from the champion's class
+	void restore(Champion.Level level, int points) {
+		Validate.notNull(level, "The given level is null");
+		Validate.isTrue(points >= 0, String.format("The experience points (%d) must be positive or zero", points));
+
+		this.level = level;
+		this.points = points;
+	}
+
 	// TODO Define an aspect to enforce the rule below
 	// This method should only be called from the champion's class
 	void gain(final int xp) {
@@ -178,7 +186,7 @@ public class Experience implements ChangeEventSource {
 	}
 
 	private void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
 	}
 
 	/**
@@ -28,7 +28,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.Validate;
-import org.apache.commons.lang.math.RandomUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -39,9 +38,13 @@ import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.Location;
 import fr.ritaly.dungeonmaster.Move;
 import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
+import fr.ritaly.dungeonmaster.Sector;
 import fr.ritaly.dungeonmaster.Side;
 import fr.ritaly.dungeonmaster.Speed;
 import fr.ritaly.dungeonmaster.Utils;
+import fr.ritaly.dungeonmaster.ai.FieldOfView;
 import fr.ritaly.dungeonmaster.audio.AudioClip;
 import fr.ritaly.dungeonmaster.audio.AudioListener;
 import fr.ritaly.dungeonmaster.audio.SoundSystem;
@@ -53,6 +56,7 @@ import fr.ritaly.dungeonmaster.event.ChangeListener;
 import fr.ritaly.dungeonmaster.event.DirectionChangeEvent;
 import fr.ritaly.dungeonmaster.event.DirectionChangeListener;
 import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.map.CommandRecorder;
 import fr.ritaly.dungeonmaster.map.Dungeon;
 import fr.ritaly.dungeonmaster.map.Element;
 
@@ -454,6 +458,10 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 			throw new IllegalArgumentException("The given champion hasn't joined this party");
 		}
 
+		if (check) {
+			CommandRecorder.getRecorder(this).setLeader(champion);
+		}
+
 		final Champion previousLeader = this.leader;
 
 		this.leader = champion;
@@ -501,6 +509,8 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 		Validate.notNull(location2, "The given second location is null");
 		Validate.isTrue(location1 != location2, "The two given locations are equal");
 
+		CommandRecorder.getRecorder(this).swap(location1, location2);
+
 		// Remove the 2 champions (can be null)
 		final Champion champion1 = champions.remove(location1);
 		final Champion champion2 = champions.remove(location2);
@@ -520,7 +530,7 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 	}
 
 	private void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
 	}
 
 	@Override
@@ -760,7 +770,7 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 		}
 
 		// Randomly chose a new leader
-		final Champion newLeader = candidates.get(RandomUtils.nextInt(candidates.size()));
+		final Champion newLeader = getRandom().pick(candidates);
 
 		setLeader(newLeader);
 
@@ -796,9 +806,41 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 		return speed;
 	}
 
+	/**
+	 * Picks up the top item lying on the given sector of the given element and
+	 * puts it into the (third) hand of the party's current leader. Unlike
+	 * {@link #grab(Item)}, this command is recorded with the item's origin and
+	 * can therefore be replayed (see {@link CommandRecorder}).
+	 *
+	 * @param element
+	 *            the element where the item lies. Can't be null.
+	 * @param sector
+	 *            the sector where the item lies. Can't be null.
+	 * @return the previously held item or null if there was none.
+	 */
+	public Item grab(Element element, Sector sector) {
+		Validate.notNull(element, "The given element is null");
+		Validate.notNull(sector, "The given sector is null");
+		Validate.isTrue(element.getItemCount(sector) > 0, "There is no item on " + element.getId() + " at "
+				+ sector);
+		if (isEmpty(false)) {
+			throw new IllegalStateException("Unable to grab item with an empty party");
+		}
+		if (leader == null) {
+			throw new IllegalStateException("Unable to grab item for there is no leader");
+		}
+
+		CommandRecorder.getRecorder(this).grab(element, sector);
+
+		return putInHand(element.removeItem(sector));
+	}
+
 	/**
 	 * Puts the given item into the (third) hand of the party's current leader
-	 * and returns the possible previously held item.
+	 * and returns the possible previously held item. The origin of the item
+	 * being unknown, a recording containing this command can't be replayed
+	 * (see {@link CommandRecorder}): the items lying in the dungeon must be
+	 * picked up with {@link #grab(Element, Sector)}.
 	 *
 	 * @param item
 	 *            the item to put into the leader's (third) hand. Can't be null.
@@ -813,6 +855,16 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 			throw new IllegalStateException("Unable to grab item for there is no leader");
 		}
 
+		CommandRecorder.getRecorder(this).grab(item);
+
+		return putInHand(item);
+	}
+
+	/**
+	 * Puts the given item into the leader's (third) hand without recording
+	 * the command.
+	 */
+	private Item putInHand(final Item item) {
 		final Item removed = this.item;
 
 		this.item = item;
@@ -871,6 +923,10 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 
 	/**
 	 * Make the party's current leader drop the item currently held (if any) and returns it.
+	 * The destination of the item being unknown, the replay of this command
+	 * (see {@link CommandRecorder}) only checks that the leader holds the same
+	 * type of item: the items dropped in the dungeon must be released with
+	 * {@link #release(Element, Sector)}.
 	 *
 	 * @return the dropped item or null if the leader isn't holding an item.
 	 */
@@ -879,6 +935,46 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 			throw new IllegalStateException("Unable to release an item for an empty party");
 		}
 
+		CommandRecorder.getRecorder(this).release(item);
+
+		return takeFromHand();
+	}
+
+	/**
+	 * Make the party's current leader drop the item currently held (if any)
+	 * on the given sector of the given element. Unlike {@link #release()},
+	 * this command is recorded with the item's destination and can therefore
+	 * be replayed (see {@link CommandRecorder}).
+	 *
+	 * @param element
+	 *            the element where to drop the item. Can't be null.
+	 * @param sector
+	 *            the sector where to drop the item. Can't be null.
+	 * @return the dropped item or null if the leader isn't holding an item.
+	 */
+	public Item release(Element element, Sector sector) {
+		Validate.notNull(element, "The given element is null");
+		Validate.notNull(sector, "The given sector is null");
+		if (isEmpty(false)) {
+			throw new IllegalStateException("Unable to release an item for an empty party");
+		}
+
+		CommandRecorder.getRecorder(this).release(element, sector, item);
+
+		final Item removed = takeFromHand();
+
+		if (removed != null) {
+			element.addItem(removed, sector);
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Removes the item from the leader's (third) hand without recording the
+	 * command.
+	 */
+	private Item takeFromHand() {
 		final Item removed = this.item;
 
 		if (removed != null) {
@@ -927,6 +1023,21 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 		return dungeon;
 	}
 
+	/**
+	 * Returns the stream of random values used by the champions of this
+	 * party. The values are reproducible once the party is inside a dungeon.
+	 *
+	 * @return a stream. Never returns null.
+	 */
+	public RandomStream getRandom() {
+		if (dungeon == null) {
+			// Not inside a dungeon, the values can't be reproduced
+			return new RandomStream();
+		}
+
+		return dungeon.getRandomStreams().getStream(RandomStreams.CHAMPIONS);
+	}
+
 	/**
 	 * Returns the current element where this party is at.
 	 *
@@ -1108,6 +1219,36 @@ public class Party implements ChangeEventSource, ClockListener, AudioListener, C
 		return getSpells().isSeeThroughWallsActive();
 	}
 
+	/**
+	 * Tells whether the party can see the given position, that is, whether the
+	 * position is within the party's field of view. The walls and closed doors
+	 * hide the positions behind them unless the party sees through walls.
+	 *
+	 * @param targetPosition
+	 *            the position to see. Can't be null.
+	 * @return whether the party can see the given position.
+	 */
+	public boolean canSee(Position targetPosition) {
+		Validate.notNull(targetPosition, "The given position is null");
+
+		final Element element = getElement();
+
+		if (element == null) {
+			// The party isn't inside a dungeon
+			return false;
+		}
+		if (!position.isVisible(targetPosition, lookDirection)) {
+			// The position is outside the cone of view
+			return false;
+		}
+		if (seesThroughWalls()) {
+			return element.getLevel().contains(targetPosition);
+		}
+
+		return element.getLevel().getFieldOfView().isVisible(position, lookDirection, FieldOfView.DEFAULT_RANGE,
+				targetPosition);
+	}
+
 	/**
 	 * Returns the id of the last clock tick during which the party was
 	 * attacked.
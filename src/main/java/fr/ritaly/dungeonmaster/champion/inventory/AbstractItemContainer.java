@@ -27,7 +27,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.champion.Champion;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
@@ -123,6 +122,13 @@ public abstract class AbstractItemContainer implements ChangeEventSource,
 		return list;
 	}
 
+	@Override
+	public Item get(int index) {
+		checkIndex(index);
+
+		return items[index];
+	}
+
 	@Override
 	public boolean isFull() {
 		return getItemCount() == getCapacity();
@@ -134,7 +140,7 @@ public abstract class AbstractItemContainer implements ChangeEventSource,
 	}
 
 	protected void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
 	}
 
 	@Override
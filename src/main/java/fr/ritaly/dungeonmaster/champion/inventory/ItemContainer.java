@@ -57,6 +57,16 @@ public interface ItemContainer {
 	 */
 	public List<Item> getItems();
 
+	/**
+	 * Returns the item located at the given index (if any).
+	 *
+	 * @param index
+	 *            an integer representing the index of the item requested.
+	 *            Must be within [0,capacity[.
+	 * @return the item found or null if there's no item at the given index.
+	 */
+	public Item get(int index);
+
 	/**
 	 * Tells whether the container is full.
 	 *
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Clock;
+
+/**
+ * Coalesces the changes notified during a clock tick. When enabled, the
+ * sources calling {@link ChangeEventSupport#markChanged(Object)} are only
+ * marked dirty and the {@link Clock} delivers a single change event per dirty
+ * source at the end of the tick. The work done by the listeners is therefore
+ * proportional to the number of distinct objects changed during the tick
+ * instead of the number of changes. The coalescing is disabled by default:
+ * the changes are then notified immediately.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class ChangeCoalescer {
+
+	private static final ChangeCoalescer INSTANCE = new ChangeCoalescer();
+
+	private final Log log = LogFactory.getLog(ChangeCoalescer.class);
+
+	private volatile boolean enabled;
+
+	/**
+	 * The supports marked dirty since the last flush. Guarded by this.
+	 */
+	private final List<ChangeEventSupport> dirty = new ArrayList<ChangeEventSupport>();
+
+	private ChangeCoalescer() {
+	}
+
+	public static ChangeCoalescer getInstance() {
+		return INSTANCE;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the coalescing of changes. The pending changes are
+	 * delivered when disabling the coalescing.
+	 *
+	 * @param enabled
+	 *            whether to enable the coalescing.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+
+		if (!enabled) {
+			flush();
+		}
+	}
+
+	/**
+	 * Returns the number of sources marked dirty and not notified yet.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public synchronized int getPendingCount() {
+		return dirty.size();
+	}
+
+	/**
+	 * Marks the given support dirty on behalf of the given source.
+	 *
+	 * @return whether the change was deferred. Returns false if the coalescing
+	 *         is disabled and the change must be notified immediately.
+	 */
+	synchronized boolean mark(ChangeEventSupport support, Object source) {
+		if (!enabled) {
+			return false;
+		}
+
+		if (support.pendingSource == null) {
+			dirty.add(support);
+		}
+
+		support.pendingSource = source;
+
+		return true;
+	}
+
+	/**
+	 * Delivers one change event per source marked dirty since the last flush.
+	 * Called by the {@link Clock} at the end of every tick. The changes marked
+	 * by the listeners while being notified are delivered on the next flush.
+	 */
+	public void flush() {
+		final ChangeEventSupport[] supports;
+		final Object[] sources;
+
+		synchronized (this) {
+			if (dirty.isEmpty()) {
+				return;
+			}
+
+			supports = dirty.toArray(new ChangeEventSupport[dirty.size()]);
+			sources = new Object[supports.length];
+
+			for (int i = 0; i < supports.length; i++) {
+				sources[i] = supports[i].pendingSource;
+
+				supports[i].pendingSource = null;
+			}
+
+			dirty.clear();
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Delivering " + supports.length + " coalesced change(s) ...");
+		}
+
+		for (int i = 0; i < supports.length; i++) {
+			supports[i].fireChange(sources[i]);
+		}
+	}
+
+	/**
+	 * Discards the pending changes without notifying them.
+	 */
+	public synchronized void clear() {
+		for (ChangeEventSupport support : dirty) {
+			support.pendingSource = null;
+		}
+
+		dirty.clear();
+	}
+}
@@ -18,47 +18,61 @@
  */
 package fr.ritaly.dungeonmaster.event;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.commons.lang.Validate;
 
 /**
- * Helper class used for simplifying the notification of change events.
+ * Helper class used for simplifying the notification of change events. The
+ * listeners are stored in a copy-on-write array: the array is copied when a
+ * listener is added or removed but never when an event is fired.
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
 public class ChangeEventSupport implements ChangeEventSource {
 
+	private static final ChangeListener[] NO_LISTENERS = new ChangeListener[0];
+
+	/**
+	 * The listeners to be notified of change events. The array is never
+	 * modified once published, it's replaced by a copy instead.
+	 */
+	private volatile ChangeListener[] listeners = NO_LISTENERS;
+
 	/**
-	 * Lists the listeners to be notified of change events.
+	 * The event reused when firing changes for the same source (see
+	 * {@link #fireChange(Object)}). Created lazily.
 	 */
-	private List<ChangeListener> listeners;
+	private ChangeEvent event;
+
+	/**
+	 * The source to notify when the {@link ChangeCoalescer} flushes the
+	 * changes. Not null when this support is marked dirty. Guarded by the
+	 * coalescer.
+	 */
+	Object pendingSource;
 
 	@Override
-	public void addChangeListener(ChangeListener listener) {
+	public synchronized void addChangeListener(ChangeListener listener) {
 		if (listener != null) {
-			if (listeners == null) {
-				// Create the list only when strictly necessary
-				listeners = new ArrayList<ChangeListener>();
-			}
-
-			listeners.add(listener);
+			listeners = Listeners.add(listeners, listener);
 		}
 	}
 
 	@Override
-	public void removeChangeListener(ChangeListener listener) {
+	public synchronized void removeChangeListener(ChangeListener listener) {
 		if (listener != null) {
-			listeners.remove(listener);
-
-			if (listeners.isEmpty()) {
-				// Get rid of the unnecessary list
-				listeners = null;
-			}
+			listeners = Listeners.remove(listeners, listener, NO_LISTENERS);
 		}
 	}
 
+	/**
+	 * Tells whether there are listeners registered.
+	 *
+	 * @return whether there are listeners registered.
+	 */
+	public boolean hasListeners() {
+		return listeners.length > 0;
+	}
+
 	/**
 	 * Notifies the registered listeners of the given change event.
 	 *
@@ -69,11 +83,61 @@ public class ChangeEventSupport implements ChangeEventSource {
 	public void fireChangeEvent(final ChangeEvent event) {
 		Validate.notNull(event, "The given change event is null");
 
-		if (listeners != null) {
-			// Clone the list to avoid concurrent modifications
-			for (ChangeListener listener : new ArrayList<ChangeListener>(listeners)) {
-				listener.onChangeEvent(event);
-			}
+		// The array can't change while being iterated
+		for (ChangeListener listener : listeners) {
+			listener.onChangeEvent(event);
+		}
+	}
+
+	/**
+	 * Notifies the registered listeners that the given source changed. The
+	 * change event is only created if there are listeners to notify and is
+	 * reused when firing the next changes of the same source.
+	 *
+	 * @param source
+	 *            the object whose state changed. Can't be null.
+	 */
+	public void fireChange(final Object source) {
+		Validate.notNull(source, "The given source is null");
+
+		final ChangeListener[] array = listeners;
+
+		if (array.length == 0) {
+			return;
+		}
+
+		// The event is immutable so it can be shared between notifications
+		ChangeEvent current = event;
+
+		if ((current == null) || (current.getSource() != source)) {
+			event = current = new ChangeEvent(source);
+		}
+
+		for (ChangeListener listener : array) {
+			listener.onChangeEvent(current);
+		}
+	}
+
+	/**
+	 * Notifies the registered listeners that the given source changed. When
+	 * the {@link ChangeCoalescer} is enabled, the notification is deferred
+	 * till the end of the current tick and the changes notified meanwhile are
+	 * merged into a single event. Otherwise the listeners are notified
+	 * immediately (see {@link #fireChange(Object)}).
+	 *
+	 * @param source
+	 *            the object whose state changed. Can't be null.
+	 */
+	public void markChanged(final Object source) {
+		Validate.notNull(source, "The given source is null");
+
+		if (listeners.length == 0) {
+			// Nobody to notify
+			return;
+		}
+
+		if (!ChangeCoalescer.getInstance().mark(this, source)) {
+			fireChange(source);
 		}
 	}
 }
@@ -18,47 +18,50 @@
  */
 package fr.ritaly.dungeonmaster.event;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.commons.lang.Validate;
 
+import fr.ritaly.dungeonmaster.item.Item;
+
 /**
- * Helper class used for simplifying the notification of item events.
+ * Helper class used for simplifying the notification of item events. The
+ * listeners are stored in a copy-on-write array: the array is copied when a
+ * listener is added or removed but never when an event is fired.
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
 public class ItemEventSupport implements ItemEventSource {
 
+	private static final ItemListener[] NO_LISTENERS = new ItemListener[0];
+
 	/**
-	 * Lists the listeners to be notified of item events.
+	 * The listeners to be notified of item events. The array is never modified
+	 * once published, it's replaced by a copy instead.
 	 */
-	private List<ItemListener> listeners;
+	private volatile ItemListener[] listeners = NO_LISTENERS;
 
 	@Override
-	public void addItemListener(ItemListener listener) {
+	public synchronized void addItemListener(ItemListener listener) {
 		if (listener != null) {
-			if (listeners == null) {
-				// Create the list only when strictly necessary
-				listeners = new ArrayList<ItemListener>();
-			}
-
-			listeners.add(listener);
+			listeners = Listeners.add(listeners, listener);
 		}
 	}
 
 	@Override
-	public void removeItemListener(ItemListener listener) {
+	public synchronized void removeItemListener(ItemListener listener) {
 		if (listener != null) {
-			listeners.remove(listener);
-
-			if (listeners.isEmpty()) {
-				// Get rid of the unnecessary list
-				listeners = null;
-			}
+			listeners = Listeners.remove(listeners, listener, NO_LISTENERS);
 		}
 	}
 
+	/**
+	 * Tells whether there are listeners registered.
+	 *
+	 * @return whether there are listeners registered.
+	 */
+	public boolean hasListeners() {
+		return listeners.length > 0;
+	}
+
 	/**
 	 * Notifies the registered listeners of the given item event.
 	 *
@@ -69,11 +72,9 @@ public class ItemEventSupport implements ItemEventSource {
 	public void fireItemRemovedEvent(final ItemEvent event) {
 		Validate.notNull(event, "The given item event is null");
 
-		if (listeners != null) {
-			// Clone the list to avoid concurrent modifications
-			for (ItemListener listener : new ArrayList<ItemListener>(listeners)) {
-				listener.onItemRemoved(event);
-			}
+		// The array can't change while being iterated
+		for (ItemListener listener : listeners) {
+			listener.onItemRemoved(event);
 		}
 	}
 
@@ -87,11 +88,59 @@ public class ItemEventSupport implements ItemEventSource {
 	public void fireItemAddedEvent(final ItemEvent event) {
 		Validate.notNull(event, "The given item event is null");
 
-		if (listeners != null) {
-			// Clone the list to avoid concurrent modifications
-			for (ItemListener listener : new ArrayList<ItemListener>(listeners)) {
-				listener.onItemAdded(event);
-			}
+		// The array can't change while being iterated
+		for (ItemListener listener : listeners) {
+			listener.onItemAdded(event);
+		}
+	}
+
+	/**
+	 * Notifies the registered listeners that the given item was removed. The
+	 * item event is only created if there are listeners to notify.
+	 *
+	 * @param source
+	 *            the object the item was removed from. Can't be null.
+	 * @param item
+	 *            the removed item. Can't be null.
+	 * @param place
+	 *            the place the item was removed from. Can't be null.
+	 */
+	public void fireItemRemoved(final Object source, final Item item, final Object place) {
+		final ItemListener[] array = listeners;
+
+		if (array.length == 0) {
+			return;
+		}
+
+		final ItemEvent event = new ItemEvent(source, item, place);
+
+		for (ItemListener listener : array) {
+			listener.onItemRemoved(event);
+		}
+	}
+
+	/**
+	 * Notifies the registered listeners that the given item was added. The
+	 * item event is only created if there are listeners to notify.
+	 *
+	 * @param source
+	 *            the object the item was added to. Can't be null.
+	 * @param item
+	 *            the added item. Can't be null.
+	 * @param place
+	 *            the place the item was added to. Can't be null.
+	 */
+	public void fireItemAdded(final Object source, final Item item, final Object place) {
+		final ItemListener[] array = listeners;
+
+		if (array.length == 0) {
+			return;
+		}
+
+		final ItemEvent event = new ItemEvent(source, item, place);
+
+		for (ItemListener listener : array) {
+			listener.onItemAdded(event);
 		}
 	}
 }
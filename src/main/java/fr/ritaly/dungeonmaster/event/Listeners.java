@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.event;
+
+import java.util.Arrays;
+
+/**
+ * Helper methods for managing copy-on-write arrays of listeners. The arrays
+ * are never modified: each method returns a new array instead.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class Listeners {
+
+	private Listeners() {
+	}
+
+	/**
+	 * Returns a copy of the given array with the given listener appended.
+	 */
+	public static <T> T[] add(T[] array, T listener) {
+		final T[] copy = Arrays.copyOf(array, array.length + 1);
+
+		copy[array.length] = listener;
+
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the given array without the first occurrence of the
+	 * given listener or the given array itself if the listener wasn't found.
+	 */
+	public static <T> T[] remove(T[] array, T listener, T[] empty) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i].equals(listener)) {
+				if (array.length == 1) {
+					return empty;
+				}
+
+				final T[] copy = Arrays.copyOf(array, array.length - 1);
+
+				System.arraycopy(array, i + 1, copy, i, array.length - i - 1);
+
+				return copy;
+			}
+		}
+
+		return array;
+	}
+}
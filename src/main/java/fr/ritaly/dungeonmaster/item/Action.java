@@ -346,7 +346,11 @@ public enum Action {
 		case STAB:
 		case SWING:
 		case THRUST: {
-			// Those are all the attack actions. Did the action succeed ?
+			// Those are all the attack actions. Fighting is noisy, the
+			// creatures nearby can hear the party
+			dungeon.makePartyNoise();
+
+			// Did the action succeed ?
 			success = isSuccess();
 
 			if (success) {
@@ -73,6 +73,11 @@ public final class Chest extends Item implements ItemContainer {
 		return container.getItems();
 	}
 
+	@Override
+	public Item get(int index) {
+		return container.get(index);
+	}
+
 	@Override
 	public boolean isFull() {
 		return container.isFull();
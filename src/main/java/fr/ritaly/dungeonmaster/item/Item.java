@@ -32,14 +32,15 @@ import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.champion.Champion;
 import fr.ritaly.dungeonmaster.champion.body.BodyPart;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
+import fr.ritaly.dungeonmaster.event.ChangeCoalescer;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
 import fr.ritaly.dungeonmaster.event.DirectionChangeListener;
 import fr.ritaly.dungeonmaster.item.ItemDef.ActionDef;
 import fr.ritaly.dungeonmaster.item.ItemDef.Effect;
 import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.map.CommandRecorder;
 
 /**
  * An item. There are different types of items in the game.<br>
@@ -680,6 +681,47 @@ public abstract class Item implements ChangeEventSource {
 		return isCursed() && curse.isDetected();
 	}
 
+	/**
+	 * Returns the strength of this item's curse.
+	 *
+	 * @return a positive integer or zero if the item isn't cursed.
+	 */
+	public int getCurseStrength() {
+		return isCursed() ? curse.getStrength() : 0;
+	}
+
+	/**
+	 * Restores the curse of this item (typically when loading a saved game).
+	 * Unlike {@link #curse(PowerRune)}, this method doesn't fire any event and
+	 * must be called before the item is put on.
+	 *
+	 * @param strength
+	 *            the strength of the curse. Must be positive or zero (the item
+	 *            isn't cursed).
+	 * @param detected
+	 *            whether the curse has been detected.
+	 */
+	public void restoreCurse(int strength, boolean detected) {
+		Validate.isTrue(strength >= 0, String.format("The curse strength (%d) must be positive or zero", strength));
+
+		if (champion != null) {
+			throw new IllegalStateException(this + " is already worn by " + champion.getName());
+		}
+
+		if (strength == 0) {
+			curse = null;
+
+			return;
+		}
+
+		if (curse == null) {
+			curse = new Curse(this);
+		}
+
+		curse.setStrength(strength);
+		curse.setDetected(detected);
+	}
+
 	/**
 	 * Curses this item (or strengthens the item's curse) with the given power.
 	 *
@@ -773,7 +815,16 @@ public abstract class Item implements ChangeEventSource {
 	}
 
 	protected final void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
+	}
+
+	/**
+	 * Notifies the listeners that this item changed. Unlike
+	 * {@link #fireChangeEvent()}, the notification is coalesced with the other
+	 * changes of the current tick when the {@link ChangeCoalescer} is enabled.
+	 */
+	protected final void markChanged() {
+		eventSupport.markChanged(this);
 	}
 
 	/**
@@ -1040,6 +1091,8 @@ public abstract class Item implements ChangeEventSource {
 			throw new UnsupportedOperationException(String.format("This item isn't held in %s's weapon hand", champion.getName()));
 		}
 
+		CommandRecorder.getRecorder(champion.getParty()).perform(champion, action);
+
 		// Search for the action
 		for (ItemDef.ActionDef actionDef : getType().getActions()) {
 			final Action curAction = actionDef.getAction();
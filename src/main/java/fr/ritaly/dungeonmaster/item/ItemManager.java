@@ -29,8 +29,8 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import fr.ritaly.dungeonmaster.RandomStream;
 import fr.ritaly.dungeonmaster.Sector;
-import fr.ritaly.dungeonmaster.event.ItemEvent;
 import fr.ritaly.dungeonmaster.event.ItemEventSource;
 import fr.ritaly.dungeonmaster.event.ItemEventSupport;
 import fr.ritaly.dungeonmaster.event.ItemListener;
@@ -68,11 +68,11 @@ public class ItemManager implements ItemEventSource, HasItems<Sector> {
 	}
 
 	private void fireItemRemovedEvent(Item item, Sector sector) {
-		eventSupport.fireItemRemovedEvent(new ItemEvent(this, item, sector));
+		eventSupport.fireItemRemoved(this, item, sector);
 	}
 
 	private void fireItemAddedEvent(Item item, Sector sector) {
-		eventSupport.fireItemAddedEvent(new ItemEvent(this, item, sector));
+		eventSupport.fireItemAdded(this, item, sector);
 	}
 
 	@Override
@@ -96,10 +96,24 @@ public class ItemManager implements ItemEventSource, HasItems<Sector> {
 	}
 
 	@Override
-	public synchronized Sector addItem(Item item) {
+	public Sector addItem(Item item) {
+		return addItem(item, new RandomStream());
+	}
+
+	/**
+	 * Adds the given item to a sector drawn from the given random stream.
+	 *
+	 * @param item
+	 *            the item to add. Can't be null.
+	 * @param random
+	 *            the stream to draw the sector from. Can't be null.
+	 * @return the sector where the item was added. Never returns null.
+	 */
+	public synchronized Sector addItem(Item item, RandomStream random) {
 		Validate.notNull(item, "The given item is null");
+		Validate.notNull(random, "The given random stream is null");
 
-		final Sector sector = Sector.random();
+		final Sector sector = Sector.random(random);
 		addItem(item, sector);
 
 		return sector;
@@ -134,21 +148,21 @@ public class ItemManager implements ItemEventSource, HasItems<Sector> {
 	}
 
 	@Override
-	public synchronized Item removeItem() {
-		if (items == null) {
-			return null;
-		}
-
-		final List<Sector> sectors = new ArrayList<Sector>(items.keySet());
-
-		if (sectors.isEmpty()) {
-			// Not supposed to happen
-			return null;
-		}
+	public Item removeItem() {
+		return removeItem(new RandomStream());
+	}
 
-		Collections.shuffle(sectors);
+	/**
+	 * Removes the top item from a sector drawn from the given random stream.
+	 *
+	 * @param random
+	 *            the stream to draw the sector from. Can't be null.
+	 * @return the removed item or null if there are no items.
+	 */
+	public synchronized Item removeItem(RandomStream random) {
+		final Sector sector = getRandomPlace(random);
 
-		return removeItem(sectors.iterator().next());
+		return (sector != null) ? removeItem(sector) : null;
 	}
 
 	@Override
@@ -248,6 +262,19 @@ public class ItemManager implements ItemEventSource, HasItems<Sector> {
 
 	@Override
 	public Sector getRandomPlace() {
+		return getRandomPlace(new RandomStream());
+	}
+
+	/**
+	 * Returns a sector holding items drawn from the given random stream.
+	 *
+	 * @param random
+	 *            the stream to draw the sector from. Can't be null.
+	 * @return a sector or null if there are no items.
+	 */
+	public synchronized Sector getRandomPlace(RandomStream random) {
+		Validate.notNull(random, "The given random stream is null");
+
 		if (items == null) {
 			return null;
 		}
@@ -259,8 +286,6 @@ public class ItemManager implements ItemEventSource, HasItems<Sector> {
 			return null;
 		}
 
-		Collections.shuffle(sectors);
-
-		return sectors.iterator().next();
+		return random.pick(sectors);
 	}
 }
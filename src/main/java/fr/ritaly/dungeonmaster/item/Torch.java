@@ -18,13 +18,14 @@
  */
 package fr.ritaly.dungeonmaster.item;
 
+import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.Constants;
 import fr.ritaly.dungeonmaster.Temporizer;
+import fr.ritaly.dungeonmaster.event.ChangeCoalescer;
 
 /**
  * A torch. The torch is useful for providing light. The torch decays over time.
@@ -33,6 +34,13 @@ import fr.ritaly.dungeonmaster.Temporizer;
  */
 public class Torch extends Item implements ClockListener {
 
+	/**
+	 * The number of distinct light levels of a torch. When the changes are
+	 * coalesced (see {@link ChangeCoalescer}), the change events are only fired
+	 * when the torch's light level changes.
+	 */
+	public static final int LIGHT_LEVELS = 7;
+
 	private final Log log = LogFactory.getLog(Torch.class);
 
 	/**
@@ -65,18 +73,19 @@ public class Torch extends Item implements ClockListener {
 
 	@Override
 	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			if (isBurning()) {
-				final int oldLight = light;
+		if (isBurning()) {
+			final int oldLight = light;
 
-				light--;
+			light--;
 
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("%s.%s.Light: %d -> %d", owner, this, oldLight, light));
-				}
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("%s.%s.Light: %d -> %d", owner, this, oldLight, light));
+			}
 
-				// TODO Limit the events raised (there are only 7 states possible for a torch)
-				fireChangeEvent();
+			if (!ChangeCoalescer.getInstance().isEnabled() || (getLightLevel(oldLight) != getLightLevel(light))) {
+				// When coalescing the changes, only notify when the torch
+				// reaches its next light level
+				markChanged();
 			}
 		}
 
@@ -92,8 +101,11 @@ public class Torch extends Item implements ClockListener {
 		// Light the torch
 		light();
 
-		// Register the torch and listen to clock ticks
-		Clock.getInstance().register(this);
+		// Let the torch burn (unless it's still animated since it was
+		// previously put on)
+		if (!temporizer.isStarted()) {
+			temporizer.start(this);
+		}
 	}
 
 	@Override
@@ -139,4 +151,34 @@ public class Torch extends Item implements ClockListener {
 	public int getLight() {
 		return light;
 	}
+
+	/**
+	 * Restores the remaining light of this torch (typically when loading a
+	 * saved game).
+	 *
+	 * @param light
+	 *            an integer within range [0,255] representing the remaining
+	 *            light.
+	 */
+	public void restoreLight(int light) {
+		Validate.isTrue((light >= 0) && (light <= Constants.MAX_LIGHT), String.format(
+				"The light (%d) must be within [0,%d]", light, Constants.MAX_LIGHT));
+
+		this.light = light;
+	}
+
+	/**
+	 * Returns the remaining light for this torch as a level within range
+	 * [0,{@link #LIGHT_LEVELS}[. The level only changes every
+	 * (256 / {@link #LIGHT_LEVELS}) units of light.
+	 *
+	 * @return an integer representing the torch's light level.
+	 */
+	public int getLightLevel() {
+		return getLightLevel(light);
+	}
+
+	private static int getLightLevel(int light) {
+		return (light * LIGHT_LEVELS) / (Constants.MAX_LIGHT + 1);
+	}
 }
\ No newline at end of file
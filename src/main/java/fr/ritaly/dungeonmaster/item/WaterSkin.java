@@ -71,6 +71,30 @@ public class WaterSkin extends Item {
 		return (doses == MAX_DOSES);
 	}
 
+	/**
+	 * Returns the remaining water doses in the water skin.
+	 *
+	 * @return an integer within range [0,3].
+	 */
+	public int getDoses() {
+		return doses;
+	}
+
+	/**
+	 * Restores the remaining water doses in the water skin (typically when
+	 * loading a saved game). Unlike {@link #fill()}, this method doesn't play
+	 * any sound.
+	 *
+	 * @param doses
+	 *            an integer within range [0,3].
+	 */
+	public void restoreDoses(int doses) {
+		Validate.isTrue((doses >= 0) && (doses <= MAX_DOSES), String.format("The doses (%d) must be within [0,%d]",
+				doses, MAX_DOSES));
+
+		this.doses = doses;
+	}
+
 	/**
 	 * Drinks one dose of water from the water skin.
 	 */
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+
+import org.apache.commons.lang.Validate;
+
+import fr.ritaly.dungeonmaster.log.FlightRecorder.EventType;
+
+/**
+ * Decodes the dumps written by the {@link FlightRecorder} into a readable
+ * text, one line per record. Can be run from the command line with the path
+ * of the dump as argument.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class FlightRecordDecoder {
+
+	private FlightRecordDecoder() {
+		// Static methods only
+	}
+
+	/**
+	 * Decodes the dump read from the given stream and writes the decoded
+	 * records to the given writer.
+	 *
+	 * @param stream
+	 *            the stream to read from. Can't be null.
+	 * @param writer
+	 *            the writer to write to. Can't be null.
+	 * @return the number of records decoded.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the dump is corrupted.
+	 */
+	public static int decode(InputStream stream, Writer writer) throws IOException {
+		Validate.notNull(stream, "The given stream is null");
+		Validate.notNull(writer, "The given writer is null");
+
+		final DataInputStream input = new DataInputStream(stream);
+
+		if (input.readInt() != FlightRecorder.MAGIC) {
+			throw new StreamCorruptedException("Not a flight record dump");
+		}
+
+		final int version = input.readInt();
+
+		if (version != FlightRecorder.VERSION) {
+			throw new StreamCorruptedException("Unsupported dump version " + version);
+		}
+
+		final int recordSize = input.readInt();
+
+		if (recordSize != FlightRecorder.RECORD_SIZE) {
+			throw new StreamCorruptedException("Unexpected record size " + recordSize);
+		}
+
+		final int count = input.readInt();
+
+		final StringBuilder builder = new StringBuilder(128);
+		final int[] values = new int[4];
+
+		for (int i = 0; i < count; i++) {
+			final long tick = input.readLong();
+			final int ordinal = input.readInt();
+			final int entity = input.readInt();
+
+			for (int j = 0; j < values.length; j++) {
+				values[j] = input.readInt();
+			}
+
+			final EventType type = FlightRecorder.getType(ordinal);
+
+			builder.setLength(0);
+			builder.append('#').append(tick).append(' ');
+
+			if (type != null) {
+				builder.append(type.name());
+			} else {
+				builder.append("UNKNOWN(").append(ordinal).append(')');
+			}
+
+			builder.append(" entity=").append(entity);
+
+			for (int j = 0; j < values.length; j++) {
+				final String label = (type != null) ? type.getLabel(j) : Integer.toString(j);
+
+				if (label != null) {
+					builder.append(' ').append(label).append('=').append(values[j]);
+				}
+			}
+
+			builder.append('\n');
+
+			writer.write(builder.toString());
+		}
+
+		writer.flush();
+
+		return count;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: FlightRecordDecoder <dump file>");
+			System.exit(1);
+		}
+
+		final InputStream stream = new BufferedInputStream(new FileInputStream(args[0]));
+
+		try {
+			decode(stream, new OutputStreamWriter(System.out));
+		} finally {
+			stream.close();
+		}
+	}
+}
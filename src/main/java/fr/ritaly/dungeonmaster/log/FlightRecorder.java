@@ -0,0 +1,339 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.log;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Always-on recorder of the game events. The events are stored as fixed-size
+ * binary records into a ring buffer allocated outside of the heap so that
+ * recording an event neither allocates nor formats any string. When the buffer
+ * is full, the oldest records are overwritten.<br>
+ * <br>
+ * The buffer can be dumped to a file on demand (see {@link #dump(File)}) or
+ * when a thread dies because of an exception (see
+ * {@link #dumpOnUncaughtException(File)}). The dumps are decoded with the
+ * {@link FlightRecordDecoder}.<br>
+ * <br>
+ * Each record is made of the clock tick when the event occurred (a long), the
+ * event type (an int), the identifier of the entity concerned (an int) and 4
+ * ints whose meaning depends on the event type (see {@link EventType}).
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class FlightRecorder {
+
+	/**
+	 * Enumerates the types of events recorded.
+	 *
+	 * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+	 */
+	public static enum EventType {
+		/**
+		 * The clock ticked. Value #1: the number of clock listeners.
+		 */
+		TICK("listeners"),
+
+		/**
+		 * The party moved. Values: the new position (x, y, z) and the ordinal
+		 * of the direction the party looks to.
+		 */
+		PARTY_MOVED("x", "y", "z", "direction"),
+
+		/**
+		 * A champion's stat changed. The entity is the ordinal of the
+		 * champion's name. Values: the ordinal of the stat type, the old and
+		 * new values.
+		 */
+		STAT_CHANGED("stat", "old", "new"),
+
+		/**
+		 * The maximum value of a champion's stat changed. The entity is the
+		 * ordinal of the champion's name. Values: the ordinal of the stat
+		 * type, the old and new maximum values.
+		 */
+		STAT_MAX_CHANGED("stat", "old", "new"),
+
+		/**
+		 * A projectile's state changed. The entity is the projectile's
+		 * identifier. Values: the ordinals of the old and new states.
+		 */
+		PROJECTILE_STATE("old", "new"),
+
+		/**
+		 * A creature's state changed. The entity is the creature's
+		 * identifier. Values: the ordinals of the old and new states.
+		 */
+		CREATURE_STATE("old", "new");
+
+		/**
+		 * The labels of the values stored in a record of this type.
+		 */
+		private final String[] labels;
+
+		private EventType(String... labels) {
+			this.labels = labels;
+		}
+
+		/**
+		 * Returns the label of the value with the given index.
+		 *
+		 * @param index
+		 *            the index of the value within [0,3].
+		 * @return a string or null if the value is unused by this event type.
+		 */
+		public String getLabel(int index) {
+			return (index < labels.length) ? labels[index] : null;
+		}
+	}
+
+	/**
+	 * The magic number at the start of a dump ("DMFR").
+	 */
+	static final int MAGIC = 0x444D4652;
+
+	/**
+	 * The version of the dump format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The size (in bytes) of a record.
+	 */
+	public static final int RECORD_SIZE = 32;
+
+	/**
+	 * The number of records stored by the ring buffer. Must be a power of 2.
+	 */
+	public static final int CAPACITY = 1 << 16;
+
+	private static final int MASK = CAPACITY - 1;
+
+	private static final Log log = LogFactory.getLog(FlightRecorder.class);
+
+	private static final ByteBuffer BUFFER = ByteBuffer.allocateDirect(CAPACITY * RECORD_SIZE);
+
+	/**
+	 * The sequence number of the next record.
+	 */
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	private static final EventType[] TYPES = EventType.values();
+
+	private static volatile boolean enabled = true;
+
+	/**
+	 * The current clock tick, stamped on the records.
+	 */
+	private static volatile long tick;
+
+	private FlightRecorder() {
+		// Static methods only
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		FlightRecorder.enabled = enabled;
+	}
+
+	/**
+	 * Records a clock tick. The given tick is stamped on the subsequent
+	 * records.
+	 *
+	 * @param tickCount
+	 *            the clock's current tick.
+	 * @param listeners
+	 *            the number of clock listeners.
+	 */
+	public static void tick(long tickCount, int listeners) {
+		tick = tickCount;
+
+		record(EventType.TICK, 0, listeners, 0, 0, 0);
+	}
+
+	public static void record(EventType type, int entity, int a, int b) {
+		record(type, entity, a, b, 0, 0);
+	}
+
+	public static void record(EventType type, int entity, int a, int b, int c) {
+		record(type, entity, a, b, c, 0);
+	}
+
+	/**
+	 * Records an event with the given type.
+	 *
+	 * @param type
+	 *            the type of event to record. Can't be null.
+	 * @param entity
+	 *            the identifier of the entity concerned.
+	 * @param a
+	 *            the first value.
+	 * @param b
+	 *            the second value.
+	 * @param c
+	 *            the third value.
+	 * @param d
+	 *            the fourth value.
+	 */
+	public static void record(EventType type, int entity, int a, int b, int c, int d) {
+		if (!enabled) {
+			return;
+		}
+
+		// Absolute puts don't change the buffer's position so the threads
+		// can safely write distinct records concurrently
+		final int offset = (int) (SEQUENCE.getAndIncrement() & MASK) * RECORD_SIZE;
+
+		BUFFER.putLong(offset, tick);
+		BUFFER.putInt(offset + 8, type.ordinal());
+		BUFFER.putInt(offset + 12, entity);
+		BUFFER.putInt(offset + 16, a);
+		BUFFER.putInt(offset + 20, b);
+		BUFFER.putInt(offset + 24, c);
+		BUFFER.putInt(offset + 28, d);
+	}
+
+	/**
+	 * Returns the number of records currently stored in the ring buffer.
+	 *
+	 * @return an integer within [0, {@link #CAPACITY}].
+	 */
+	public static int size() {
+		return (int) Math.min(SEQUENCE.get(), CAPACITY);
+	}
+
+	/**
+	 * Discards all the records.
+	 */
+	public static void clear() {
+		SEQUENCE.set(0);
+		tick = 0;
+	}
+
+	/**
+	 * Writes the records currently stored in the ring buffer (from the oldest
+	 * to the most recent) to the given stream. The records written while this
+	 * method executes may be inconsistent.
+	 *
+	 * @param stream
+	 *            the stream to write to. Can't be null.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static void dump(OutputStream stream) throws IOException {
+		Validate.notNull(stream, "The given stream is null");
+
+		final long last = SEQUENCE.get();
+		final long first = Math.max(0, last - CAPACITY);
+
+		final DataOutputStream output = new DataOutputStream(stream);
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(RECORD_SIZE);
+		output.writeInt((int) (last - first));
+
+		final byte[] record = new byte[RECORD_SIZE];
+
+		// Read through a duplicate not to alter the position of the shared
+		// buffer
+		final ByteBuffer buffer = BUFFER.duplicate();
+
+		for (long sequence = first; sequence < last; sequence++) {
+			buffer.position((int) (sequence & MASK) * RECORD_SIZE);
+			buffer.get(record);
+
+			output.write(record);
+		}
+
+		output.flush();
+	}
+
+	/**
+	 * Writes the records currently stored in the ring buffer to the given
+	 * file.
+	 *
+	 * @param file
+	 *            the file to write to. Can't be null.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static void dump(File file) throws IOException {
+		Validate.notNull(file, "The given file is null");
+
+		final OutputStream stream = new FileOutputStream(file);
+
+		try {
+			dump(stream);
+		} finally {
+			stream.close();
+		}
+
+		if (log.isInfoEnabled()) {
+			log.info("Dumped " + size() + " flight record(s) to " + file);
+		}
+	}
+
+	/**
+	 * Installs a default uncaught exception handler dumping the records to
+	 * the given file when a thread dies because of an exception. The handler
+	 * previously installed (if any) is still invoked.
+	 *
+	 * @param file
+	 *            the file to write to. Can't be null.
+	 */
+	public static void dumpOnUncaughtException(final File file) {
+		Validate.notNull(file, "The given file is null");
+
+		final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread thread, Throwable throwable) {
+				try {
+					dump(file);
+				} catch (IOException e) {
+					log.error("Unable to dump the flight records to " + file, e);
+				}
+
+				if (previous != null) {
+					previous.uncaughtException(thread, throwable);
+				} else {
+					log.error("Uncaught exception in thread " + thread.getName(), throwable);
+				}
+			}
+		});
+	}
+
+	static EventType getType(int ordinal) {
+		return ((ordinal >= 0) && (ordinal < TYPES.length)) ? TYPES[ordinal] : null;
+	}
+}
@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Records the method and constructor executions woven by the
+ * {@link TracingAspect} into a preallocated ring buffer. Tracing is disabled
+ * by default: the woven code then only tests the {@link #enabled} flag.
+ * Tracing can be enabled per package at runtime with
+ * {@link #enable(String)} or at startup with the system property
+ * {@value #PROPERTY_PACKAGES} (a comma-separated list of package names). The
+ * classes the aspect doesn't weave (the hot paths) are never traced.<br>
+ * <br>
+ * The call depth is maintained per thread. When the buffer is full, the
+ * oldest records are overwritten.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class Tracer {
+
+	/**
+	 * The system property listing the packages traced at startup.
+	 */
+	public static final String PROPERTY_PACKAGES = "dungeonmaster.trace";
+
+	/**
+	 * The number of records stored by the ring buffer. Must be a power of 2.
+	 */
+	public static final int CAPACITY = 1 << 14;
+
+	private static final int MASK = CAPACITY - 1;
+
+	/**
+	 * Whether at least one package is traced. This is the only field read by
+	 * the woven code when tracing is disabled.
+	 */
+	static volatile boolean enabled;
+
+	/**
+	 * The names of the traced packages. Replaced (never modified) each time a
+	 * package is enabled or disabled.
+	 */
+	private static volatile String[] packages = new String[0];
+
+	/**
+	 * Caches whether a class is traced. Cleared when the traced packages
+	 * change.
+	 */
+	private static final Map<Class<?>, Boolean> TRACED = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	/**
+	 * The sequence number of the next record.
+	 */
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	// The ring buffer's columns
+	private static final Object[] SITES = new Object[CAPACITY];
+
+	private static final long[] TIMES = new long[CAPACITY];
+
+	private static final long[] THREADS = new long[CAPACITY];
+
+	private static final int[] DEPTHS = new int[CAPACITY];
+
+	private static final boolean[] ENTRIES = new boolean[CAPACITY];
+
+	/**
+	 * The current call depth of each thread.
+	 */
+	private static final ThreadLocal<int[]> DEPTH = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	static {
+		final String property = System.getProperty(PROPERTY_PACKAGES);
+
+		if (!StringUtils.isBlank(property)) {
+			for (String name : StringUtils.split(property, ", ")) {
+				enable(name);
+			}
+		}
+	}
+
+	/**
+	 * A record read from the ring buffer.
+	 */
+	public static final class Record {
+
+		private final long threadId;
+
+		private final long time;
+
+		private final int depth;
+
+		private final boolean entry;
+
+		private final String site;
+
+		private Record(long threadId, long time, int depth, boolean entry, String site) {
+			this.threadId = threadId;
+			this.time = time;
+			this.depth = depth;
+			this.entry = entry;
+			this.site = site;
+		}
+
+		/**
+		 * Returns the identifier of the thread which executed the traced
+		 * method.
+		 *
+		 * @return a long.
+		 */
+		public long getThreadId() {
+			return threadId;
+		}
+
+		/**
+		 * Returns the time (as returned by {@link System#nanoTime()}) when the
+		 * record was created.
+		 *
+		 * @return a long.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the thread's call depth when entering the traced method.
+		 *
+		 * @return a positive or zero integer.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * Tells whether this record denotes the entry into (or the exit from)
+		 * the traced method.
+		 *
+		 * @return whether this record denotes a method entry.
+		 */
+		public boolean isEntry() {
+			return entry;
+		}
+
+		/**
+		 * Returns a description of the traced method.
+		 *
+		 * @return a string.
+		 */
+		public String getSite() {
+			return site;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("[%d] %s%s %s", threadId, StringUtils.repeat("-", depth), entry ? ">" : "<", site);
+		}
+	}
+
+	private Tracer() {
+		// Static methods only
+	}
+
+	/**
+	 * Enables the tracing of the classes from the given package and its
+	 * sub-packages.
+	 *
+	 * @param packageName
+	 *            the name of the package to trace. Can't be blank.
+	 */
+	public static synchronized void enable(String packageName) {
+		Validate.isTrue(!StringUtils.isBlank(packageName),
+				String.format("The given package name '%s' is blank", packageName));
+
+		if (Arrays.asList(packages).contains(packageName)) {
+			return;
+		}
+
+		final String[] array = Arrays.copyOf(packages, packages.length + 1);
+
+		array[packages.length] = packageName;
+
+		update(array);
+	}
+
+	/**
+	 * Disables the tracing of the given package (previously enabled with
+	 * {@link #enable(String)}).
+	 *
+	 * @param packageName
+	 *            the name of the package. Can't be blank.
+	 */
+	public static synchronized void disable(String packageName) {
+		Validate.isTrue(!StringUtils.isBlank(packageName),
+				String.format("The given package name '%s' is blank", packageName));
+
+		final List<String> list = new ArrayList<String>(Arrays.asList(packages));
+
+		if (list.remove(packageName)) {
+			update(list.toArray(new String[list.size()]));
+		}
+	}
+
+	/**
+	 * Disables the tracing of all the packages.
+	 */
+	public static synchronized void disableAll() {
+		update(new String[0]);
+	}
+
+	private static void update(String[] array) {
+		packages = array;
+
+		TRACED.clear();
+
+		enabled = (array.length > 0);
+	}
+
+	/**
+	 * Tells whether the tracing is enabled for at least one package.
+	 *
+	 * @return whether the tracing is enabled.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Tells whether the given class is traced.
+	 *
+	 * @param type
+	 *            the class to test. Can't be null.
+	 * @return whether the given class is traced.
+	 */
+	public static boolean isTraced(Class<?> type) {
+		Validate.notNull(type, "The given class is null");
+
+		final Boolean cached = TRACED.get(type);
+
+		if (cached != null) {
+			return cached.booleanValue();
+		}
+
+		final String name = type.getName();
+
+		boolean traced = false;
+
+		for (String packageName : packages) {
+			if (name.startsWith(packageName) && (name.length() > packageName.length())
+					&& (name.charAt(packageName.length()) == '.')) {
+
+				traced = true;
+				break;
+			}
+		}
+
+		TRACED.put(type, Boolean.valueOf(traced));
+
+		return traced;
+	}
+
+	/**
+	 * Records the entry into a method of the given class. Only invoked when
+	 * the tracing is enabled.
+	 *
+	 * @param type
+	 *            the class declaring the method.
+	 * @param site
+	 *            an object describing the method. Its string representation
+	 *            is only computed when reading the records.
+	 */
+	static void enter(Class<?> type, Object site) {
+		if (!isTraced(type)) {
+			return;
+		}
+
+		final int[] depth = DEPTH.get();
+
+		record(site, depth[0]++, true);
+	}
+
+	/**
+	 * Records the exit from a method of the given class. Only invoked when the
+	 * tracing is enabled.
+	 *
+	 * @param type
+	 *            the class declaring the method.
+	 * @param site
+	 *            an object describing the method.
+	 */
+	static void exit(Class<?> type, Object site) {
+		if (!isTraced(type)) {
+			return;
+		}
+
+		final int[] depth = DEPTH.get();
+
+		if (depth[0] > 0) {
+			// The depth can be zero if the tracing was enabled while the
+			// method was executing
+			depth[0]--;
+		}
+
+		record(site, depth[0], false);
+	}
+
+	private static void record(Object site, int depth, boolean entry) {
+		final int index = (int) (SEQUENCE.getAndIncrement() & MASK);
+
+		SITES[index] = site;
+		TIMES[index] = System.nanoTime();
+		THREADS[index] = Thread.currentThread().getId();
+		DEPTHS[index] = depth;
+		ENTRIES[index] = entry;
+	}
+
+	/**
+	 * Returns the records currently stored in the ring buffer from the oldest
+	 * to the most recent. The records written while this method executes may
+	 * be inconsistent, the tracing should be disabled before reading them.
+	 *
+	 * @return a list of records. Never returns null.
+	 */
+	public static List<Record> getRecords() {
+		final long last = SEQUENCE.get();
+		final long first = Math.max(0, last - CAPACITY);
+
+		final List<Record> records = new ArrayList<Record>((int) (last - first));
+
+		for (long sequence = first; sequence < last; sequence++) {
+			final int index = (int) (sequence & MASK);
+
+			records.add(new Record(THREADS[index], TIMES[index], DEPTHS[index], ENTRIES[index], String
+					.valueOf(SITES[index])));
+		}
+
+		return records;
+	}
+
+	/**
+	 * Clears the records stored in the ring buffer and resets the current
+	 * thread's call depth.
+	 */
+	public static synchronized void clear() {
+		SEQUENCE.set(0);
+
+		Arrays.fill(SITES, null);
+
+		DEPTH.remove();
+	}
+}
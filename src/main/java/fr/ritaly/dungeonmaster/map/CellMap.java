@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.Validate;
+
+import fr.ritaly.dungeonmaster.ai.FieldOfView;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.champion.Party;
+
+/**
+ * Compact mirror of the elements of a {@link Level} storing for each position
+ * a set of flags (concrete, traversable, opaque, etc) in a flat byte array
+ * indexed by <code>y * width + x</code>. The hot traversability and opacity
+ * checks (path finding, flow fields, field of view) read the flags instead of
+ * calling the elements. The map is kept up to date by the level when an
+ * element is set, when a dynamic element (door, pit, etc) changes and when the
+ * occupants of an element change.
+ * <p>
+ * A missing element (or a position outside the level) is {@link #CONCRETE}
+ * and {@link #OPAQUE} and can't be traversed.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class CellMap {
+
+	/**
+	 * Flag set when the element is concrete (see {@link Element#isConcrete()}).
+	 */
+	public static final int CONCRETE = 1;
+
+	/**
+	 * Flag set when the element can be traversed by the party.
+	 */
+	public static final int PARTY_TRAVERSABLE = 1 << 1;
+
+	/**
+	 * Flag set when the element can be traversed by a material creature, that
+	 * is, when it isn't concrete and isn't a closed door, a closed
+	 * retractable wall or a (real) open pit.
+	 */
+	public static final int MATERIAL_TRAVERSABLE = 1 << 2;
+
+	/**
+	 * Flag set when the element can be traversed by an immaterial creature.
+	 */
+	public static final int IMMATERIAL_TRAVERSABLE = 1 << 3;
+
+	/**
+	 * Flag set when the element can be traversed by a projectile.
+	 */
+	public static final int PROJECTILE_TRAVERSABLE = 1 << 4;
+
+	/**
+	 * Flag set when the element blocks the sight (see
+	 * {@link FieldOfView#isOpaque(Element)}).
+	 */
+	public static final int OPAQUE = 1 << 5;
+
+	/**
+	 * Flag set when the element is occupied by the party or by at least one
+	 * creature.
+	 */
+	public static final int OCCUPIED = 1 << 6;
+
+	/**
+	 * The flags of a missing element.
+	 */
+	private static final byte EMPTY = CONCRETE | OPAQUE;
+
+	/**
+	 * Party used for testing the traversability of elements. The
+	 * traversability of an element by the party doesn't depend on the party's
+	 * state.
+	 */
+	private static final Party PROBE = new Party();
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The flags of the positions indexed by <code>y * width + x</code>.
+	 */
+	private final byte[] flags;
+
+	CellMap(Level level) {
+		Validate.notNull(level, "The given level is null");
+
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.flags = new byte[width * height];
+
+		Arrays.fill(flags, EMPTY);
+	}
+
+	/**
+	 * Sets the flags of the given position.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @param value
+	 *            the new flags of the position.
+	 */
+	void update(int x, int y, byte value) {
+		flags[(y * width) + x] = value;
+	}
+
+	/**
+	 * Recomputes the occupancy flag of the given element's position.
+	 *
+	 * @param element
+	 *            the element whose occupants changed. Can't be null.
+	 */
+	void updateOccupancy(Element element) {
+		final int node = (element.getPosition().y * width) + element.getPosition().x;
+
+		if (element.isOccupied()) {
+			flags[node] |= OCCUPIED;
+		} else {
+			flags[node] &= ~OCCUPIED;
+		}
+	}
+
+	/**
+	 * Resets the flags of all the positions as if the elements were missing.
+	 */
+	void clear() {
+		Arrays.fill(flags, EMPTY);
+	}
+
+	/**
+	 * Computes the flags of the given element.
+	 *
+	 * @param element
+	 *            the element to test. Can be null.
+	 * @return the flags of the element.
+	 */
+	static byte getFlags(Element element) {
+		if (element == null) {
+			return EMPTY;
+		}
+
+		int result = IMMATERIAL_TRAVERSABLE;
+
+		if (element.isConcrete()) {
+			result |= CONCRETE;
+		}
+		if (element.isTraversable(PROBE)) {
+			result |= PARTY_TRAVERSABLE;
+		}
+		if (isTraversable(element, Materiality.MATERIAL)) {
+			result |= MATERIAL_TRAVERSABLE;
+		}
+		if (element.isTraversableByProjectile()) {
+			result |= PROJECTILE_TRAVERSABLE;
+		}
+		if (FieldOfView.isOpaque(element)) {
+			result |= OPAQUE;
+		}
+		if (element.isOccupied()) {
+			result |= OCCUPIED;
+		}
+
+		return (byte) result;
+	}
+
+	/**
+	 * Tells whether the given element can be traversed by a creature with the
+	 * given materiality. A material creature can't traverse concrete elements,
+	 * closed doors, closed retractable walls and (real) open pits. An
+	 * immaterial creature can traverse any element.
+	 *
+	 * @param element
+	 *            the element to test. Can be null.
+	 * @param materiality
+	 *            the materiality of the creature. Can't be null.
+	 * @return whether the given element can be traversed.
+	 */
+	public static boolean isTraversable(Element element, Materiality materiality) {
+		Validate.notNull(materiality, "The given materiality is null");
+
+		if (element == null) {
+			return false;
+		}
+		if (Materiality.IMMATERIAL.equals(materiality)) {
+			// All elements can be traversed
+			return true;
+		}
+		if (element.isConcrete()) {
+			return false;
+		}
+
+		switch (element.getType()) {
+		case DOOR:
+			return !Door.State.CLOSED.equals(((Door) element).getState());
+		case RETRACTABLE_WALL:
+			return ((RetractableWall) element).isOpen();
+		case PIT:
+			final Pit pit = (Pit) element;
+
+			return pit.isIllusion() || pit.isClosed();
+		default:
+			return true;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the flags of the given position.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @return the flags of the position. A position outside the level is
+	 *         {@link #CONCRETE} and {@link #OPAQUE}.
+	 */
+	public int getFlags(int x, int y) {
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return EMPTY;
+		}
+
+		return flags[(y * width) + x];
+	}
+
+	/**
+	 * Tells whether all the given flags are set for the given position.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @param mask
+	 *            the flags to test.
+	 * @return whether all the flags are set.
+	 */
+	public boolean is(int x, int y, int mask) {
+		return (getFlags(x, y) & mask) == mask;
+	}
+
+	public boolean isConcrete(int x, int y) {
+		return is(x, y, CONCRETE);
+	}
+
+	public boolean isOpaque(int x, int y) {
+		return is(x, y, OPAQUE);
+	}
+
+	public boolean isOccupied(int x, int y) {
+		return is(x, y, OCCUPIED);
+	}
+
+	public boolean isTraversableByParty(int x, int y) {
+		return is(x, y, PARTY_TRAVERSABLE);
+	}
+
+	public boolean isTraversableByProjectile(int x, int y) {
+		return is(x, y, PROJECTILE_TRAVERSABLE);
+	}
+
+	/**
+	 * Tells whether the given position can be traversed by a creature with the
+	 * given materiality (see {@link #isTraversable(Element, Materiality)}).
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @param materiality
+	 *            the materiality of the creature. Can't be null.
+	 * @return whether the position can be traversed.
+	 */
+	public boolean isTraversable(int x, int y, Materiality materiality) {
+		return is(x, y, Materiality.IMMATERIAL.equals(materiality) ? IMMATERIAL_TRAVERSABLE : MATERIAL_TRAVERSABLE);
+	}
+}
@@ -0,0 +1,687 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Location;
+import fr.ritaly.dungeonmaster.Move;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.audio.AudioClip;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.item.Action;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.magic.AlignmentRune;
+import fr.ritaly.dungeonmaster.magic.ElementRune;
+import fr.ritaly.dungeonmaster.magic.FormRune;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.magic.Rune;
+import fr.ritaly.dungeonmaster.magic.SpellException;
+
+/**
+ * Records the external commands issued to a {@link Dungeon} (the party's
+ * moves, the runes and spells cast, the actions performed, the items picked
+ * up from the dungeon / released, the champions swapped and the changes of
+ * leader) along with the
+ * clock tick when they were issued. Once attached to a dungeon (see
+ * {@link Dungeon#setCommandRecorder(CommandRecorder)}), the recorder writes
+ * compact binary records (same encoding as the snapshots). The commands
+ * issued by the game itself during a clock tick aren't recorded as the replay
+ * will issue them again.
+ * <p>
+ * Replaying a recording against a dungeon built the same way (same map, same
+ * party and same random seed, see {@link Dungeon#Dungeon(long)}) with
+ * {@link #replay(Dungeon, InputStream)} drives the clock as fast as possible
+ * and brings the dungeon into the same state (see
+ * {@link DungeonSnapshot#checksum(Dungeon)}).
+ * </p>
+ * <p>
+ * The items grabbed with {@link Party#grab(Item)} are recorded without their
+ * origin: the replay of such a pick-up fails with a
+ * {@link StreamCorruptedException} instead of silently diverging. The same
+ * goes for the release of an item the replayed party doesn't hold.
+ * </p>
+ * <p>
+ * An I/O error while recording a command disables the recorder and is
+ * rethrown by the next call to {@link #flush()} or {@link #close()}.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class CommandRecorder {
+
+	/**
+	 * The magic number at the start of a recording ("DMCR").
+	 */
+	private static final int MAGIC = 0x444D4352;
+
+	/**
+	 * The version of the recording format.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int TAG_START = 0;
+
+	private static final int TAG_END = 1;
+
+	private static final int TAG_MOVE = 2;
+
+	private static final int TAG_CAST_RUNE = 3;
+
+	private static final int TAG_CAST_SPELL = 4;
+
+	private static final int TAG_PERFORM = 5;
+
+	private static final int TAG_GRAB = 6;
+
+	private static final int TAG_RELEASE = 7;
+
+	private static final int TAG_SWAP = 8;
+
+	private static final int TAG_LEADER = 9;
+
+	private static final int TAG_GRAB_ITEM = 10;
+
+	private static final int TAG_DROP = 11;
+
+	private static final Log log = LogFactory.getLog(CommandRecorder.class);
+
+	/**
+	 * The recorder ignoring the commands issued to the dungeons without a
+	 * recorder attached.
+	 */
+	private static final CommandRecorder NONE = new CommandRecorder();
+
+	private final SnapshotOutput output;
+
+	/**
+	 * The clock tick of the last record written. The records store the number
+	 * of ticks elapsed since the previous record.
+	 */
+	private int tick;
+
+	/**
+	 * The number of commands recorded so far.
+	 */
+	private int count;
+
+	/**
+	 * The error which disabled the recorder (if any).
+	 */
+	private IOException failure;
+
+	private boolean started;
+
+	private boolean closed;
+
+	/**
+	 * Creates a new recorder writing its records to the given stream.
+	 *
+	 * @param stream
+	 *            the stream to write to. Can't be null.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public CommandRecorder(OutputStream stream) throws IOException {
+		this.output = new SnapshotOutput(stream);
+
+		output.writeInt(MAGIC);
+		output.writeVarInt(VERSION);
+		output.flush();
+	}
+
+	private CommandRecorder() {
+		this.output = null;
+		this.closed = true;
+	}
+
+	/**
+	 * Returns the recorder of the commands issued to the dungeon of the given
+	 * party. The commands are issued through this method so that the callers
+	 * don't have to test whether a recorder is attached.
+	 *
+	 * @param party
+	 *            a party. Can be null.
+	 * @return the recorder attached to the party's dungeon or a recorder
+	 *         ignoring the commands if the party isn't inside a dungeon or if
+	 *         no recorder is attached. Never returns null.
+	 */
+	public static CommandRecorder getRecorder(Party party) {
+		if ((party == null) || (party.getDungeon() == null) || (party.getDungeon().getCommandRecorder() == null)) {
+			return NONE;
+		}
+
+		return party.getDungeon().getCommandRecorder();
+	}
+
+	/**
+	 * Returns the number of commands recorded so far.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public synchronized int getCommandCount() {
+		return count;
+	}
+
+	/**
+	 * Pushes the buffered records to the underlying stream.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs or if the recorder was disabled by an
+	 *             earlier error.
+	 */
+	public synchronized void flush() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (!closed) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * Records the current clock tick as the end of the recording, then
+	 * flushes and closes this recorder. The commands issued after this call
+	 * aren't recorded anymore.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs or if the recorder was disabled by an
+	 *             earlier error.
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		if (started && isRecording()) {
+			try {
+				writeHeader(TAG_END);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+
+		try {
+			flush();
+		} finally {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Writes the start record. Invoked when the recorder is attached to the
+	 * given dungeon.
+	 */
+	synchronized void start(Dungeon dungeon) {
+		if (started) {
+			throw new IllegalStateException("The recorder has already been attached to a dungeon");
+		}
+
+		started = true;
+
+		if (!isRecording()) {
+			return;
+		}
+
+		tick = Clock.getInstance().getTickId();
+
+		try {
+			output.writeVarInt(TAG_START);
+			final long seed = dungeon.getRandomStreams().getSeed();
+
+			output.writeInt((int) (seed >>> 32));
+			output.writeInt((int) seed);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Tells whether this recorder can still record commands. The commands
+	 * issued while the clock is ticking come from the game itself and are
+	 * ignored.
+	 */
+	private boolean isRecording() {
+		return !closed && (failure == null);
+	}
+
+	private boolean accepts() {
+		return started && isRecording() && !Clock.getInstance().isTicking();
+	}
+
+	/**
+	 * Disables this recorder after the given error.
+	 */
+	private void fail(IOException e) {
+		log.error("Unable to write command record, recording disabled", e);
+
+		this.failure = e;
+	}
+
+	private void writeHeader(int tag) throws IOException {
+		final int current = Clock.getInstance().getTickId();
+
+		output.writeVarInt(tag);
+		output.writeVarInt(current - tick);
+
+		tick = current;
+	}
+
+	public synchronized void moveParty(Move move, boolean now, AudioClip clip) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_MOVE);
+			output.writeEnum(move);
+			output.writeBoolean(now);
+			output.writeEnum(clip);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	public synchronized void cast(Champion champion, Rune rune) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_CAST_RUNE);
+			output.writeEnum(DungeonSnapshot.getName(champion));
+			output.writeEnum(rune.getType());
+			output.writeEnum((Enum<?>) rune);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	public synchronized void castSpell(Champion champion) {
+		writeChampion(TAG_CAST_SPELL, champion);
+	}
+
+	public synchronized void perform(Champion champion, Action action) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_PERFORM);
+			output.writeEnum(DungeonSnapshot.getName(champion));
+			output.writeEnum(action);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	public synchronized void grab(Element element, Sector sector) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_GRAB);
+			ElementCodec.writePosition(element.getPosition(), output);
+			output.writeEnum(sector);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	public synchronized void grab(Item item) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_GRAB_ITEM);
+			output.writeEnum(item.getType());
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records the release of the given item (the item held by the party).
+	 *
+	 * @param item
+	 *            the item released. Can be null.
+	 */
+	public synchronized void release(Item item) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_RELEASE);
+			output.writeEnum((item != null) ? item.getType() : null);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records the release of the given item (the item held by the party) on
+	 * the given sector of the given element.
+	 *
+	 * @param item
+	 *            the item released. Can be null.
+	 */
+	public synchronized void release(Element element, Sector sector, Item item) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_DROP);
+			ElementCodec.writePosition(element.getPosition(), output);
+			output.writeEnum(sector);
+			output.writeEnum((item != null) ? item.getType() : null);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	public synchronized void swap(Location location1, Location location2) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(TAG_SWAP);
+			output.writeEnum(location1);
+			output.writeEnum(location2);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	public synchronized void setLeader(Champion champion) {
+		writeChampion(TAG_LEADER, champion);
+	}
+
+	private void writeChampion(int tag, Champion champion) {
+		if (!accepts()) {
+			return;
+		}
+
+		try {
+			writeHeader(tag);
+			output.writeEnum(DungeonSnapshot.getName(champion));
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Replays the commands read from the given stream against the given
+	 * dungeon. The dungeon must have been built the same way as the recorded
+	 * one. The clock is ticked manually (it mustn't be started) as fast as
+	 * possible until the end of the recording.
+	 *
+	 * @param dungeon
+	 *            the dungeon to replay the commands against. Can't be null.
+	 *            Must not have a recorder attached.
+	 * @param stream
+	 *            the stream to read from. Can't be null.
+	 * @return the number of commands replayed.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the recording is invalid.
+	 */
+	public static int replay(Dungeon dungeon, InputStream stream) throws IOException {
+		Validate.notNull(dungeon, "The given dungeon is null");
+		if (dungeon.getCommandRecorder() != null) {
+			throw new IllegalStateException("The dungeon has a command recorder attached");
+		}
+
+		final long start = System.nanoTime();
+
+		final SnapshotInput input = new SnapshotInput(stream);
+
+		if (input.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Not a command recording");
+		}
+
+		final int version = input.readVarInt();
+
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported recording version %d (expected: %d)", version, VERSION));
+		}
+
+		if (input.readVarInt() != TAG_START) {
+			throw new StreamCorruptedException("Missing start record");
+		}
+
+		final long high = input.readInt();
+		final long low = input.readInt();
+		final long seed = (high << 32) | (low & 0xFFFFFFFFL);
+
+		if (seed != dungeon.getRandomStreams().getSeed()) {
+			throw new IllegalArgumentException(String.format(
+					"The dungeon's seed %d differs from the recorded one %d", dungeon.getRandomStreams().getSeed(),
+					seed));
+		}
+
+		final Clock clock = Clock.getInstance();
+
+		int count = 0;
+
+		while (true) {
+			final int tag;
+
+			try {
+				tag = input.readVarInt();
+			} catch (EOFException e) {
+				// The recorder wasn't closed
+				break;
+			}
+
+			final int elapsed = input.readVarInt();
+
+			if (elapsed > 0) {
+				clock.tick(elapsed);
+			}
+
+			if (tag == TAG_END) {
+				break;
+			}
+
+			replay(dungeon, tag, input);
+
+			count++;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Replayed %d command(s) in %d ms", count, (System.nanoTime() - start) / 1000000));
+		}
+
+		return count;
+	}
+
+	private static void replay(Dungeon dungeon, int tag, SnapshotInput input) throws IOException {
+		try {
+			switch (tag) {
+			case TAG_MOVE: {
+				final Move move = input.readEnum(Move.class);
+				final boolean now = input.readBoolean();
+				final AudioClip clip = input.readEnum(AudioClip.class);
+
+				if (clip != null) {
+					dungeon.moveParty(move, now, clip);
+				} else {
+					dungeon.moveParty(move, now);
+				}
+				break;
+			}
+			case TAG_CAST_RUNE: {
+				final Champion champion = getChampion(dungeon, input);
+				final Rune.Type type = input.readEnum(Rune.Type.class);
+
+				champion.cast(readRune(type, input));
+				break;
+			}
+			case TAG_CAST_SPELL:
+				getChampion(dungeon, input).castSpell();
+				break;
+			case TAG_PERFORM: {
+				final Champion champion = getChampion(dungeon, input);
+				final Action action = input.readEnum(Action.class);
+				final Item item = champion.getBody().getWeaponHand().getItem();
+
+				if (item == null) {
+					throw new StreamCorruptedException("No item in the weapon hand of " + champion.getName());
+				}
+
+				item.perform(action);
+				break;
+			}
+			case TAG_GRAB: {
+				final Element element = Journal.getElement(dungeon, input);
+				final Sector sector = input.readEnum(Sector.class);
+
+				if ((sector == null) || (element.getItemCount(sector) == 0)) {
+					throw new StreamCorruptedException("No item to grab on " + element.getId() + " at " + sector);
+				}
+
+				getParty(dungeon).grab(element, sector);
+				break;
+			}
+			case TAG_GRAB_ITEM:
+				// The item may have been picked up anywhere (from a chest, from a
+				// champion's inventory, etc) or created out of nowhere
+				throw new StreamCorruptedException("The origin of the grabbed item "
+						+ input.readEnum(Item.Type.class) + " wasn't recorded");
+			case TAG_RELEASE:
+				checkItem(getParty(dungeon), input.readEnum(Item.Type.class)).release();
+				break;
+			case TAG_DROP: {
+				final Element element = Journal.getElement(dungeon, input);
+				final Sector sector = input.readEnum(Sector.class);
+
+				if (sector == null) {
+					throw new StreamCorruptedException("Missing sector to drop the item on " + element.getId());
+				}
+
+				checkItem(getParty(dungeon), input.readEnum(Item.Type.class)).release(element, sector);
+				break;
+			}
+			case TAG_SWAP: {
+				final Location location1 = input.readEnum(Location.class);
+				final Location location2 = input.readEnum(Location.class);
+
+				getParty(dungeon).swap(location1, location2);
+				break;
+			}
+			case TAG_LEADER:
+				getParty(dungeon).setLeader(getChampion(dungeon, input));
+				break;
+			default:
+				throw new StreamCorruptedException("Unknown command record " + tag);
+			}
+		} catch (SpellException e) {
+			// The command failed the same way when it was recorded (not
+			// enough mana, etc)
+			if (log.isDebugEnabled()) {
+				log.debug("Replayed command failed: " + e.getClass().getSimpleName());
+			}
+		}
+	}
+
+	private static Rune readRune(Rune.Type type, SnapshotInput input) throws IOException {
+		if (type == null) {
+			throw new StreamCorruptedException("Missing rune type");
+		}
+
+		switch (type) {
+		case POWER:
+			return input.readEnum(PowerRune.class);
+		case ELEMENT:
+			return input.readEnum(ElementRune.class);
+		case FORM:
+			return input.readEnum(FormRune.class);
+		case ALIGNMENT:
+			return input.readEnum(AlignmentRune.class);
+		default:
+			throw new StreamCorruptedException("Unexpected rune type " + type);
+		}
+	}
+
+	/**
+	 * Checks that the given party holds an item of the given type before
+	 * replaying its release.
+	 */
+	private static Party checkItem(Party party, Item.Type type) throws IOException {
+		final Item.Type held = party.hasItem() ? party.getItem().getType() : null;
+
+		if (held != type) {
+			throw new StreamCorruptedException(String.format("The party holds %s instead of %s", held, type));
+		}
+
+		return party;
+	}
+
+	private static Party getParty(Dungeon dungeon) throws IOException {
+		if (!dungeon.hasParty()) {
+			throw new StreamCorruptedException("The dungeon has no party");
+		}
+
+		return dungeon.getParty();
+	}
+
+	private static Champion getChampion(Dungeon dungeon, SnapshotInput input) throws IOException {
+		final Champion.Name name = input.readEnum(Champion.Name.class);
+
+		for (Champion champion : getParty(dungeon).getChampions(true)) {
+			if (name == DungeonSnapshot.getName(champion)) {
+				return champion;
+			}
+		}
+
+		throw new StreamCorruptedException("No champion " + name + " in the party");
+	}
+}
@@ -25,7 +25,6 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.Orientation;
@@ -43,11 +42,31 @@ import fr.ritaly.dungeonmaster.champion.Party;
 /**
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
-public final class Door extends FloorTile implements ClockListener, Triggerable {
+public final class Door extends FloorTile implements Triggerable {
 
 	private final Log log = LogFactory.getLog(Door.class);
 
-	private final Temporizer temporizer = new Temporizer("Temporizer.Door", 4);
+	/**
+	 * The number of clock ticks between 2 steps of the door's animation.
+	 */
+	private static final int ANIMATION_PERIOD = 4;
+
+	private final Temporizer temporizer = new Temporizer("Temporizer.Door", ANIMATION_PERIOD);
+
+	/**
+	 * The listener animating the door when its temporizer triggers.
+	 */
+	private final ClockListener animator = new ClockListener() {
+		@Override
+		public boolean clockTicked() {
+			return animate();
+		}
+
+		@Override
+		public String toString() {
+			return Door.this + ".Animator";
+		}
+	};
 
 	private final Orientation orientation;
 
@@ -351,150 +370,164 @@ public final class Door extends FloorTile implements ClockListener, Triggerable
 			fireChangeEvent();
 
 			// Animer la porte
-			Clock.getInstance().register(this);
+			if (!temporizer.isStarted()) {
+				temporizer.start(animator);
+			}
 		}
 	}
 
-	@Override
-	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			if (State.BROKEN.equals(state)) {
-				return false;
-			}
-			if (Motion.IDLE.equals(motion)) {
-				return false;
+	/**
+	 * Animates the door while it's moving. Called every time the door's
+	 * temporizer triggers and returns whether the door is still moving.
+	 *
+	 * @return whether the door must keep on being animated.
+	 */
+	private boolean animate() {
+		if (State.BROKEN.equals(state)) {
+			return false;
+		}
+		if (Motion.IDLE.equals(motion)) {
+			return false;
+		}
+		if (Motion.OPENING.equals(motion)) {
+			// Transition d'�tat
+			final State oldState = state;
+
+			state = state.next(motion);
+
+			if (log.isDebugEnabled()) {
+				log.debug("Door.State: " + oldState + " -> " + state);
 			}
-			if (Motion.OPENING.equals(motion)) {
-				// Transition d'�tat
-				final State oldState = state;
 
-				state = state.next(motion);
+			// The state change can alter the door's traversability / opacity
+			fireChangeEvent();
+
+			final boolean open = State.OPEN.equals(state);
 
+			if (open) {
 				if (log.isDebugEnabled()) {
-					log.debug("Door.State: " + oldState + " -> " + state);
+					log.debug("Door is open");
 				}
 
-				final boolean open = State.OPEN.equals(state);
+				motion = Motion.IDLE;
+			}
 
-				if (open) {
-					if (log.isDebugEnabled()) {
-						log.debug("Door is open");
-					}
+			return !open;
+		}
+		if (Motion.CLOSING.equals(motion)) {
+			// Transition d'�tat
+			final State oldState = state;
 
-					motion = Motion.IDLE;
-				}
+			state = state.next(motion);
 
-				return !open;
+			if (log.isDebugEnabled()) {
+				log.debug("Door.State: " + oldState + " -> " + state);
 			}
-			if (Motion.CLOSING.equals(motion)) {
-				// Transition d'�tat
-				final State oldState = state;
 
-				state = state.next(motion);
+			// The state change can alter the door's traversability / opacity
+			fireChangeEvent();
 
-				if (log.isDebugEnabled()) {
-					log.debug("Door.State: " + oldState + " -> " + state);
+			if (hasParty()) {
+				if (!State.THREE_FOURTH_OPEN.equals(state)) {
+					// On v�rifie que l'�tat de la porte est coh�rent
+					throw new IllegalStateException("Unexpected state <"
+							+ state + ">. Should be "
+							+ State.THREE_FOURTH_OPEN);
 				}
 
-				if (hasParty()) {
-					if (!State.THREE_FOURTH_OPEN.equals(state)) {
-						// On v�rifie que l'�tat de la porte est coh�rent
-						throw new IllegalStateException("Unexpected state <"
-								+ state + ">. Should be "
-								+ State.THREE_FOURTH_OPEN);
-					}
-
-					// TODO Cogner la t�te des h�ros si pr�sents dessous (+
-					// d�g�ts visibles) + si casque d�g�ts r�duits
+				// TODO Cogner la t�te des h�ros si pr�sents dessous (+
+				// d�g�ts visibles) + si casque d�g�ts r�duits
 
-					SoundSystem.getInstance().play(AudioClip.BONG);
+				SoundSystem.getInstance().play(AudioClip.BONG);
 
-					// La porte rebondit
-					motion = Motion.OPENING_AFTER_REBOUND;
-				} else if (hasCreatures()) {
-					// Frapper les monstres. On d�termine la hauteur de la plus
-					// grande des cr�atures
-					final Creature.Height height = getCreatureManager()
-							.getTallestCreatureHeight();
+				// La porte rebondit
+				motion = Motion.OPENING_AFTER_REBOUND;
+			} else if (hasCreatures()) {
+				// Frapper les monstres. On d�termine la hauteur de la plus
+				// grande des cr�atures
+				final Creature.Height height = getCreatureManager()
+						.getTallestCreatureHeight();
 
-					if ((height != null)
-							&& !Creature.Height.UNDEFINED.equals(height)) {
+				if ((height != null)
+						&& !Creature.Height.UNDEFINED.equals(height)) {
 
-						// Hauteur d�finie, la porte rebondit si la hauteur
-						// "matche" avec celle de la cr�ature la plus grande
-						if (State.THREE_FOURTH_OPEN.equals(state)
-								&& Creature.Height.GIANT.equals(height)) {
+					// Hauteur d�finie, la porte rebondit si la hauteur
+					// "matche" avec celle de la cr�ature la plus grande
+					if (State.THREE_FOURTH_OPEN.equals(state)
+							&& Creature.Height.GIANT.equals(height)) {
 
-							// FIXME Blesser les monstres
+						// FIXME Blesser les monstres
 
-							// Jouer le son
-							SoundSystem.getInstance().play(getPartyPosition(),
-									AudioClip.BONG);
+						// Jouer le son
+						SoundSystem.getInstance().play(getPartyPosition(),
+								AudioClip.BONG);
 
-							// La porte rebondit
-							motion = Motion.OPENING_AFTER_REBOUND;
+						// La porte rebondit
+						motion = Motion.OPENING_AFTER_REBOUND;
 
-						} else if (State.HALF_OPEN.equals(state)
-								&& Creature.Height.MEDIUM.equals(height)) {
+					} else if (State.HALF_OPEN.equals(state)
+							&& Creature.Height.MEDIUM.equals(height)) {
 
-							// FIXME Blesser les monstres
+						// FIXME Blesser les monstres
 
-							// Jouer le son
-							SoundSystem.getInstance().play(getPartyPosition(),
-									AudioClip.BONG);
+						// Jouer le son
+						SoundSystem.getInstance().play(getPartyPosition(),
+								AudioClip.BONG);
 
-							// La porte rebondit
-							motion = Motion.OPENING_AFTER_REBOUND;
+						// La porte rebondit
+						motion = Motion.OPENING_AFTER_REBOUND;
 
-						} else if (State.ONE_FOURTH_OPEN.equals(state)
-								&& Creature.Height.SMALL.equals(height)) {
+					} else if (State.ONE_FOURTH_OPEN.equals(state)
+							&& Creature.Height.SMALL.equals(height)) {
 
-							// FIXME Blesser les monstres
+						// FIXME Blesser les monstres
 
-							// Jouer le son
-							SoundSystem.getInstance().play(getPartyPosition(),
-									AudioClip.BONG);
+						// Jouer le son
+						SoundSystem.getInstance().play(getPartyPosition(),
+								AudioClip.BONG);
 
-							// La porte rebondit
-							motion = Motion.OPENING_AFTER_REBOUND;
-						} else {
-							// La porte se ferme simplement et rebondira au tour
-							// d'apr�s
-						}
+						// La porte rebondit
+						motion = Motion.OPENING_AFTER_REBOUND;
 					} else {
-						// Pas de hauteur d�termin�e. Survient pour les
-						// cr�atures immat�rielles
+						// La porte se ferme simplement et rebondira au tour
+						// d'apr�s
 					}
+				} else {
+					// Pas de hauteur d�termin�e. Survient pour les
+					// cr�atures immat�rielles
 				}
+			}
 
-				final boolean closed = State.CLOSED.equals(state);
-
-				if (closed) {
-					if (log.isDebugEnabled()) {
-						log.debug("Door is closed");
-					}
+			final boolean closed = State.CLOSED.equals(state);
 
-					motion = Motion.IDLE;
+			if (closed) {
+				if (log.isDebugEnabled()) {
+					log.debug("Door is closed");
 				}
 
-				return !closed;
+				motion = Motion.IDLE;
 			}
-			if (Motion.OPENING_AFTER_REBOUND.equals(motion)) {
-				// Transition d'�tat
-				final State oldState = state;
-
-				// La porte rebondit
-				state = state.next(motion);
 
-				if (log.isDebugEnabled()) {
-					log.debug("Door.State: " + oldState + " -> " + state);
-				}
+			return !closed;
+		}
+		if (Motion.OPENING_AFTER_REBOUND.equals(motion)) {
+			// Transition d'�tat
+			final State oldState = state;
 
-				// La porte retombe au tour d'apr�s
-				motion = Motion.CLOSING;
+			// La porte rebondit
+			state = state.next(motion);
 
-				return true;
+			if (log.isDebugEnabled()) {
+				log.debug("Door.State: " + oldState + " -> " + state);
 			}
+
+			// The state change can alter the door's traversability / opacity
+			fireChangeEvent();
+
+			// La porte retombe au tour d'apr�s
+			motion = Motion.CLOSING;
+
+			return true;
 		}
 
 		// Animer tant que la porte n'est pas au repos
@@ -513,7 +546,58 @@ public final class Door extends FloorTile implements ClockListener, Triggerable
 			fireChangeEvent();
 
 			// Animer la porte
-			Clock.getInstance().register(this);
+			if (!temporizer.isStarted()) {
+				temporizer.start(animator);
+			}
+		}
+	}
+
+	/**
+	 * Restores the door's state and motion. Used when replaying a
+	 * {@link Journal}.
+	 *
+	 * @param state
+	 *            the door's state. Can't be null.
+	 * @param motion
+	 *            the door's motion. Can't be null.
+	 */
+	void restore(State state, Motion motion) {
+		Validate.notNull(state, "The given door state is null");
+		Validate.notNull(motion, "The given door motion is null");
+
+		this.state = state;
+		this.motion = motion;
+
+		if (!Motion.IDLE.equals(motion) && !temporizer.isStarted()) {
+			// Resume the door's animation
+			temporizer.start(animator);
+		}
+
+		fireChangeEvent();
+	}
+
+	/**
+	 * Stops the door's animation (if any) without changing its state and
+	 * motion. Used when a level is evicted from memory (see
+	 * {@link LevelResidency}).
+	 */
+	void freeze() {
+		temporizer.stop();
+	}
+
+	/**
+	 * Runs the steps of the door's animation which would have occurred during
+	 * the given number of clock ticks. Used when a level is reloaded (see
+	 * {@link LevelResidency}).
+	 *
+	 * @param ticks
+	 *            the number of clock ticks elapsed. Must be positive or zero.
+	 */
+	void fastForward(int ticks) {
+		Validate.isTrue(ticks >= 0, String.format("The given number of ticks %d must be positive or zero", ticks));
+
+		for (int steps = ticks / ANIMATION_PERIOD; (steps > 0) && animate(); steps--) {
+			// Nothing to do
 		}
 	}
 
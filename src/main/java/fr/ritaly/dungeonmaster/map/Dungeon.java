@@ -19,8 +19,8 @@
 package fr.ritaly.dungeonmaster.map;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,55 +31,166 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import fr.ritaly.dungeonmaster.Clock;
-import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.DeferredCommand;
 import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.Move;
 import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
 import fr.ritaly.dungeonmaster.Side;
 import fr.ritaly.dungeonmaster.Teleport;
 import fr.ritaly.dungeonmaster.Utils;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.ai.PathCache;
+import fr.ritaly.dungeonmaster.ai.PathRequestQueue;
+import fr.ritaly.dungeonmaster.ai.astar.HierarchicalPathFinder;
 import fr.ritaly.dungeonmaster.audio.AudioClip;
 import fr.ritaly.dungeonmaster.audio.SoundSystem;
 import fr.ritaly.dungeonmaster.champion.Champion;
 import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.log.FlightRecorder;
+import fr.ritaly.dungeonmaster.log.FlightRecorder.EventType;
 
 /**
  * A dungeon. A {@link Dungeon} is made of one to several {@link Level}s.
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
-public class Dungeon implements ClockListener {
+public class Dungeon {
 
 	/**
-	 * Creates a new empty dungeon.
+	 * Creates a new empty dungeon whose random values aren't reproducible.
 	 */
 	public Dungeon() {
-		Clock.getInstance().register(this);
+		this(new RandomStream().nextLong());
 	}
 
+	/**
+	 * Creates a new empty dungeon whose random values are derived from the
+	 * given seed. Two dungeons built and played the same way with the same
+	 * seed draw the same random values.
+	 *
+	 * @param seed
+	 *            the seed of the dungeon's random streams.
+	 */
+	public Dungeon(long seed) {
+		this.randomStreams = new RandomStreams(seed);
+	}
+
+	/**
+	 * The source of the random values drawn by the dungeon's subsystems and
+	 * entities.
+	 */
+	private final RandomStreams randomStreams;
+
 	private final Log log = LogFactory.getLog(Dungeon.class);
 
 	/**
-	 * The dungeon levels stored by level number.
+	 * The dungeon levels resident in memory stored by level number.
 	 */
 	private final Map<Integer, Level> levels = new HashMap<Integer, Level>();
 
+	/**
+	 * Manages the levels evicted from memory.
+	 */
+	private final LevelResidency residency = new LevelResidency(this);
+
 	/**
 	 * The {@link Party} of champions inside the dungeon.
 	 */
 	private Party party;
 
+	/**
+	 * The queued party moves. The moves are run one after the other: only the
+	 * first command of the queue is scheduled on the clock at a given time.
+	 */
 	private final LinkedList<DeferredCommand> partyMoves = new LinkedList<DeferredCommand>();
 
+	/**
+	 * The cache of the paths computed inside this dungeon.
+	 */
+	private final PathCache pathCache = new PathCache();
+
+	/**
+	 * The queue of the path requests solved asynchronously. The worker threads
+	 * are only created when a request is dispatched.
+	 */
+	private final PathRequestQueue pathRequestQueue = new PathRequestQueue();
+
+	/**
+	 * The hierarchical path finders indexed by materiality (see
+	 * {@link Materiality#ordinal()}). Created lazily.
+	 */
+	private final HierarchicalPathFinder[] pathFinders = new HierarchicalPathFinder[Materiality.values().length];
+
+	/**
+	 * The journal recording the mutations of this dungeon. Can be null.
+	 */
+	private Journal journal;
+
+	/**
+	 * The recorder of the commands issued to this dungeon. Can be null.
+	 */
+	private CommandRecorder commandRecorder;
+
 	/**
 	 * Returns the number of levels composing this dungeon.
 	 *
 	 * @return an int.
 	 */
 	public int getLevelCount() {
-		return levels.size();
+		return levels.size() + residency.getEvictedCount();
+	}
+
+	/**
+	 * Returns the numbers of the dungeon's levels (whether they're resident in
+	 * memory or not) in ascending order.
+	 *
+	 * @return a {@link List} of level numbers. Never returns null.
+	 */
+	public List<Integer> getLevelNumbers() {
+		final List<Integer> list = new ArrayList<Integer>(levels.keySet());
+
+		list.addAll(residency.getEvictedNumbers());
+
+		Collections.sort(list);
+
+		return list;
+	}
+
+	/**
+	 * Returns the object managing the levels evicted from memory.
+	 *
+	 * @return a {@link LevelResidency}. Never returns null.
+	 */
+	public LevelResidency getResidency() {
+		return residency;
+	}
+
+	/**
+	 * Returns the levels currently resident in memory.
+	 */
+	Collection<Level> getResidentLevels() {
+		return Collections.unmodifiableCollection(levels.values());
+	}
+
+	/**
+	 * Returns the level with the given number if it's resident in memory.
+	 *
+	 * @return a {@link Level} or null.
+	 */
+	Level getResidentLevel(int number) {
+		return levels.get(number);
+	}
+
+	/**
+	 * Removes the level with the given number from memory. The level must
+	 * have been saved by the {@link LevelResidency} first.
+	 */
+	void removeResidentLevel(int number) {
+		levels.remove(number);
+
+		invalidatePathFinders();
 	}
 
 	/**
@@ -97,19 +208,17 @@ public class Dungeon implements ClockListener {
 	}
 
 	/**
-	 * Returns the dungeon's levels.
+	 * Returns the dungeon's levels. The levels evicted from memory are
+	 * reloaded (see {@link LevelResidency}).
 	 *
 	 * @return a {@link List} of {@link Level}s. Never returns null.
 	 */
 	public List<Level> getLevels() {
-		final ArrayList<Level> list = new ArrayList<Level>(levels.values());
+		final ArrayList<Level> list = new ArrayList<Level>();
 
-		Collections.sort(list, new Comparator<Level>() {
-			@Override
-			public int compare(Level level1, Level level2) {
-				return level1.getNumber() - level2.getNumber();
-			}
-		});
+		for (Integer number : getLevelNumbers()) {
+			list.add(getLevel(number.intValue()));
+		}
 
 		return list;
 	}
@@ -124,7 +233,23 @@ public class Dungeon implements ClockListener {
 	public Level getLevel(int level) {
 		Validate.isTrue((level >= 0), "The given level number " + level + " must be positive or zero");
 
-		return levels.get(level);
+		final Level result = levels.get(level);
+
+		if ((result == null) && residency.isEvicted(level)) {
+			// Reload the level evicted from memory
+			return residency.load(level);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the source of the random values drawn inside this dungeon.
+	 *
+	 * @return a {@link RandomStreams}. Never returns null.
+	 */
+	public RandomStreams getRandomStreams() {
+		return randomStreams;
 	}
 
 	/**
@@ -136,6 +261,75 @@ public class Dungeon implements ClockListener {
 		return party;
 	}
 
+	/**
+	 * Returns the cache of the paths computed inside this dungeon. The
+	 * creatures looking for a path should use this cache instead of running a
+	 * new search every time.
+	 *
+	 * @return a {@link PathCache}. Never returns null.
+	 */
+	public PathCache getPathCache() {
+		return pathCache;
+	}
+
+	/**
+	 * Returns the queue where to submit the path requests solved
+	 * asynchronously (outside the clock's thread).
+	 *
+	 * @return a {@link PathRequestQueue}. Never returns null.
+	 */
+	public PathRequestQueue getPathRequestQueue() {
+		return pathRequestQueue;
+	}
+
+	/**
+	 * Returns the path finder searching the paths across the levels of this
+	 * dungeon for the given materiality. The path finder is kept up to date
+	 * when the elements change.
+	 *
+	 * @param materiality
+	 *            the materiality of the creatures searching a path. Can't be
+	 *            null.
+	 * @return a {@link HierarchicalPathFinder}. Never returns null.
+	 */
+	public HierarchicalPathFinder getHierarchicalPathFinder(Materiality materiality) {
+		Validate.notNull(materiality, "The given materiality is null");
+
+		HierarchicalPathFinder pathFinder = pathFinders[materiality.ordinal()];
+
+		if (pathFinder == null) {
+			pathFinder = new HierarchicalPathFinder(this, materiality);
+
+			pathFinders[materiality.ordinal()] = pathFinder;
+		}
+
+		return pathFinder;
+	}
+
+	/**
+	 * Notifies the path finders that the element at the given position
+	 * changed.
+	 */
+	void elementChanged(Level level, int x, int y) {
+		for (HierarchicalPathFinder pathFinder : pathFinders) {
+			if (pathFinder != null) {
+				pathFinder.elementChanged(level, x, y);
+			}
+		}
+	}
+
+	/**
+	 * Discards the abstract graphs of the path finders. Called when the
+	 * dungeon's levels change.
+	 */
+	void invalidatePathFinders() {
+		for (HierarchicalPathFinder pathFinder : pathFinders) {
+			if (pathFinder != null) {
+				pathFinder.invalidate();
+			}
+		}
+	}
+
 	/**
 	 * Tells whether there is a {@link Party} inside this dungeon.
 	 *
@@ -145,6 +339,61 @@ public class Dungeon implements ClockListener {
 		return (party != null);
 	}
 
+	/**
+	 * Returns the journal recording the mutations of this dungeon (if any).
+	 *
+	 * @return a {@link Journal} or null.
+	 */
+	public Journal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the journal recording the mutations of this dungeon. The journal is
+	 * supposed to follow a snapshot of the dungeon in its current state (see
+	 * {@link DungeonSnapshot}).
+	 *
+	 * @param journal
+	 *            the journal to attach. Can be null to stop recording the
+	 *            mutations.
+	 */
+	public void setJournal(Journal journal) {
+		if (this.journal != null) {
+			this.journal.setParty(null);
+		}
+
+		this.journal = journal;
+
+		if (journal != null) {
+			journal.setParty(party);
+		}
+	}
+
+	/**
+	 * Returns the recorder of the commands issued to this dungeon (if any).
+	 *
+	 * @return a {@link CommandRecorder} or null.
+	 */
+	public CommandRecorder getCommandRecorder() {
+		return commandRecorder;
+	}
+
+	/**
+	 * Sets the recorder of the commands issued to this dungeon. A recorder can
+	 * only be attached once.
+	 *
+	 * @param recorder
+	 *            the recorder to attach. Can be null to stop recording the
+	 *            commands.
+	 */
+	public void setCommandRecorder(CommandRecorder recorder) {
+		if (recorder != null) {
+			recorder.start(this);
+		}
+
+		this.commandRecorder = recorder;
+	}
+
 	/**
 	 * Sets this dungeon's party and installs it to the given {@link Position}.
 	 *
@@ -192,6 +441,15 @@ public class Dungeon implements ClockListener {
 		// "Placer" le groupe sur l'endroit cible (le faire marcher dessus)
 		element.setParty(party);
 
+		makeNoise(element);
+
+		if (journal != null) {
+			journal.setParty(party);
+			journal.partyMoved(party);
+		}
+
+		recordPartyMove();
+
 		if (log.isInfoEnabled()) {
 			log.info("Party installed at " + position);
 		}
@@ -251,7 +509,7 @@ public class Dungeon implements ClockListener {
 		Validate.isTrue(height > 0, "The given height <" + height + "> must be positive");
 		Validate.isTrue(width > 0, "The given width <" + width + "> must be positive");
 
-		if (levels.containsKey(number)) {
+		if (levels.containsKey(number) || residency.isEvicted(number)) {
 			throw new IllegalArgumentException("There is already a level with number <" + number + ">");
 		}
 
@@ -259,6 +517,8 @@ public class Dungeon implements ClockListener {
 
 		levels.put(number, level);
 
+		invalidatePathFinders();
+
 		return level;
 	}
 
@@ -266,21 +526,11 @@ public class Dungeon implements ClockListener {
 		Validate.isTrue(number > 0, "The level number <" + number + "> must be positive");
 		Validate.notNull(level, "The given level is null");
 
-		levels.put(number, level);
-	}
+		residency.discard(number);
 
-	@Override
-	public boolean clockTicked() {
-		if (!partyMoves.isEmpty()) {
-			final DeferredCommand command = partyMoves.getFirst();
-
-			if (!command.clockTicked()) {
-				// L'action s'est d�clench�e. La supprimer l'entr�e de la liste
-				partyMoves.removeFirst();
-			}
-		}
+		levels.put(number, level);
 
-		return true;
+		invalidatePathFinders();
 	}
 
 	public boolean moveParty(final Move move, boolean now, final AudioClip clip) {
@@ -304,6 +554,10 @@ public class Dungeon implements ClockListener {
 			throw new IllegalStateException("The party isn't defined");
 		}
 
+		if (commandRecorder != null) {
+			commandRecorder.moveParty(move, now, clip);
+		}
+
 		if (now) {
 			return movePartyNow(move, clip);
 		} else {
@@ -313,19 +567,31 @@ public class Dungeon implements ClockListener {
 			partyMoves.add(new DeferredCommand("Dungeon.PartyMover", delay) {
 
 				@Override
-				protected void run() {
+				public void run() {
 					if (log.isDebugEnabled()) {
 						log.debug("Running delayed command. Moving party ...");
 					}
 
+					partyMoves.removeFirst();
+
 					movePartyNow(move, clip);
 
 					if (log.isDebugEnabled()) {
 						log.debug("Ran delayed command");
 					}
+
+					if (!partyMoves.isEmpty()) {
+						// Schedule the next queued move
+						partyMoves.getFirst().schedule();
+					}
 				}
 			});
 
+			if (partyMoves.size() == 1) {
+				// No move pending, schedule this one right away
+				partyMoves.getFirst().schedule();
+			}
+
 			if (log.isDebugEnabled()) {
 				log.debug("Queued party move <" + move + "> [delay=" + delay
 						+ " ticks]");
@@ -363,6 +629,12 @@ public class Dungeon implements ClockListener {
 			// Notification (pour les escaliers entre autres)
 			element.partyTurned();
 
+			if (journal != null) {
+				journal.partyMoved(party);
+			}
+
+			recordPartyMove();
+
 			return true;
 		}
 
@@ -404,6 +676,8 @@ public class Dungeon implements ClockListener {
 
 			SoundSystem.getInstance().play(AudioClip.BONG);
 
+			makeNoise(sourceElement);
+
 			// Appliquer des d�g�ts aux champions. Champions concern�s ?
 			final Set<Champion> champions;
 
@@ -429,7 +703,7 @@ public class Dungeon implements ClockListener {
 			if (champions != null) {
 				for (Champion champion : champions) {
 					// Blesser chaque champion
-					champion.hit(Utils.random(10, 30));
+					champion.hit(randomStreams.getStream(RandomStreams.HAZARDS).nextInt(10, 30));
 				}
 			}
 
@@ -450,6 +724,8 @@ public class Dungeon implements ClockListener {
 			return false;
 		}
 
+		final int previousLevel = party.getPosition().z;
+
 		// Quitter la position actuelle
 		sourceElement.removeParty();
 
@@ -465,6 +741,18 @@ public class Dungeon implements ClockListener {
 		// Occuper la position cible
 		destinationElement.setParty(party);
 
+		makeNoise(destinationElement);
+
+		if (journal != null) {
+			journal.partyMoved(party);
+		}
+
+		recordPartyMove();
+
+		if (previousLevel != party.getPosition().z) {
+			residency.partyChangedLevel();
+		}
+
 		if (log.isInfoEnabled()) {
 			log.info("Party moved");
 		}
@@ -527,6 +815,8 @@ public class Dungeon implements ClockListener {
 			return false;
 		}
 
+		final int previousLevel = party.getPosition().z;
+
 		// Quitter la position actuelle
 		sourceElement.removeParty();
 
@@ -544,6 +834,18 @@ public class Dungeon implements ClockListener {
 		// Occuper la position cible
 		destinationElement.setParty(party);
 
+		makeNoise(destinationElement);
+
+		if (journal != null) {
+			journal.partyMoved(party);
+		}
+
+		recordPartyMove();
+
+		if (previousLevel != destination.z) {
+			residency.partyChangedLevel();
+		}
+
 		if (log.isInfoEnabled()) {
 			log.info("Teleported party");
 		}
@@ -551,12 +853,85 @@ public class Dungeon implements ClockListener {
 		return true;
 	}
 
+	private void recordPartyMove() {
+		final Position position = party.getPosition();
+
+		FlightRecorder.record(EventType.PARTY_MOVED, 0, position.x, position.y, position.z, party.getLookDirection()
+				.ordinal());
+	}
+
+	/**
+	 * Moves the party to the given position and makes it look in the given
+	 * direction without any check or side effect. Used when replaying a
+	 * {@link Journal}.
+	 */
+	void placeParty(Position position, Direction direction) {
+		Validate.notNull(position, "The given position is null");
+		Validate.notNull(direction, "The given direction is null");
+		if (this.party == null) {
+			throw new IllegalStateException("There is no party set");
+		}
+
+		getElement(party.getPosition()).removeParty();
+
+		party.setLookDirection(direction);
+		party.setPosition(position);
+
+		getElement(position).setParty(party);
+	}
+
+	/**
+	 * Floods the noise made by the party from its current position, for
+	 * instance when fighting or casting a spell. Does nothing if there's no
+	 * party in the dungeon.
+	 */
+	public void makePartyNoise() {
+		if (party != null) {
+			makeNoise(getElement(party.getPosition()));
+		}
+	}
+
+	/**
+	 * Floods the noise made by the party on the given element through its
+	 * level so that the creatures can tell whether they hear the party.
+	 *
+	 * @param element
+	 *            the element where the party made a noise. Can't be null.
+	 */
+	private void makeNoise(Element element) {
+		final Position position = element.getPosition();
+
+		element.getLevel().getNoiseMap().emit(position.x, position.y);
+	}
+
+	/**
+	 * Validates the dungeon.
+	 *
+	 * @throws ValidationException
+	 *             the first violation found if the dungeon isn't valid.
+	 * @see #validateAll()
+	 */
 	public void validate() throws ValidationException {
-		for (Level level : levels.values()) {
-			level.validate();
+		final List<ValidationException> violations = validateAll();
+
+		if (!violations.isEmpty()) {
+			throw violations.get(0);
 		}
 	}
 
+	/**
+	 * Validates the dungeon and returns all the violations found. The levels
+	 * are validated in parallel. The destinations of the stairs and
+	 * teleporters must exist and be traversable and the targets of the
+	 * actuators must be installed in the dungeon.
+	 *
+	 * @return a list of {@link ValidationException}s sorted by level. Empty if
+	 *         the dungeon is valid. Never returns null.
+	 */
+	public List<ValidationException> validateAll() {
+		return new DungeonValidator(this).validate();
+	}
+
 	/**
 	 * Retourne la luminosit� totale en prennant en compte celle g�n�r�e par les
 	 * {@link Champion}s (amulettes, torches, sorts...) et celle naturelle du
@@ -0,0 +1,819 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Place;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStreams;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.actuator.HasActuator;
+import fr.ritaly.dungeonmaster.actuator.HasActuators;
+import fr.ritaly.dungeonmaster.actuator.SimpleActuator;
+import fr.ritaly.dungeonmaster.actuator.TriggerAction;
+import fr.ritaly.dungeonmaster.actuator.TriggerType;
+import fr.ritaly.dungeonmaster.actuator.Triggerable;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.magic.Spell;
+import fr.ritaly.dungeonmaster.projectile.ItemProjectileFactory;
+import fr.ritaly.dungeonmaster.projectile.ProjectileFactory;
+import fr.ritaly.dungeonmaster.projectile.SpellProjectileFactory;
+
+/**
+ * Reads a {@link Dungeon} from a line-oriented text map. The map is streamed
+ * line by line (it's never buffered as a whole) and the levels are built
+ * directly into their compact grid so loading a map is linear in its size.
+ * <p>
+ * Each line is a directive made of whitespace-separated tokens (a token can be
+ * quoted with double quotes to embed blanks). Blank lines and lines starting
+ * with '#' are ignored. The supported directives are:
+ * <ul>
+ * <li><code>level &lt;number&gt; &lt;width&gt; &lt;height&gt;</code>: creates
+ * a level and makes it the current one. The directive must be followed by
+ * exactly <code>height</code> lines of <code>width</code> characters describing
+ * the level's grid: 'W' (wall), ' ' or '.' (floor), 'M' (fake wall), 'I'
+ * (invisible wall), 'P' (pillar), 'R' (retractable wall), 'O' (pit) and '4'
+ * (four-side alcove).</li>
+ * <li><code>light &lt;value&gt;</code> and
+ * <code>experience &lt;multiplier&gt;</code>: set the ambient light and the
+ * experience multiplier of the current level.</li>
+ * <li><code>&lt;ELEMENT_TYPE&gt; &lt;x&gt; &lt;y&gt; [parameters]</code>:
+ * replaces the element at the given position of the current level by a new
+ * element of the given {@link Element.Type}. The parameters depend on the type
+ * (e.g. <code>DOOR 3 4 WOODEN NORTH_SOUTH CLOSED</code> or
+ * <code>STAIRS 2 2 EAST true 5 5 1</code>).</li>
+ * <li><code>item &lt;x&gt; &lt;y&gt; &lt;place&gt; &lt;type&gt;</code>: puts a
+ * new item on the element at the given position. The place is a
+ * {@link Sector} or, for alcoves and altars, a {@link Direction}.</li>
+ * <li><code>creature &lt;x&gt; &lt;y&gt; &lt;type&gt; &lt;direction&gt; [place]</code>:
+ * puts a new creature on the element at the given position.</li>
+ * <li><code>actuator &lt;x&gt; &lt;y&gt; [trigger] &lt;count&gt; &lt;action&gt; &lt;x&gt; &lt;y&gt; &lt;z&gt; ...</code>:
+ * wires the element at the given position to the targets whose positions
+ * follow. The trigger type is only required for floor switches.</li>
+ * <li><code>party &lt;x&gt; &lt;y&gt; &lt;z&gt; &lt;direction&gt; &lt;champion&gt; ...</code>:
+ * installs the party at the given position.</li>
+ * </ul>
+ * Actuators and the party are resolved once the whole map has been read so
+ * they can refer to elements defined later (or on other levels). The map isn't
+ * validated: call {@link Dungeon#validate()} once loaded if needed.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class DungeonReader {
+
+	/**
+	 * An actuator whose wiring is deferred till the end of the map.
+	 */
+	private static final class Wiring {
+
+		private final Line line;
+
+		private final Position source;
+
+		private final TriggerType triggerType;
+
+		private final int count;
+
+		private final TriggerAction action;
+
+		private final List<Position> targets = new ArrayList<Position>();
+
+		private Wiring(Line line, Position source, TriggerType triggerType, int count, TriggerAction action) {
+			this.line = line;
+			this.source = source;
+			this.triggerType = triggerType;
+			this.count = count;
+			this.action = action;
+		}
+	}
+
+	/**
+	 * A line split into tokens. Remembers the column of each token to report
+	 * accurate error positions.
+	 */
+	private static final class Line {
+
+		private final int number;
+
+		private final List<String> tokens = new ArrayList<String>();
+
+		private final List<Integer> columns = new ArrayList<Integer>();
+
+		/**
+		 * The index of the next token to consume.
+		 */
+		private int index;
+
+		private Line(int number, String text) throws MapFormatException {
+			this.number = number;
+
+			int i = 0;
+
+			while (i < text.length()) {
+				final char c = text.charAt(i);
+
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '"') {
+					final int end = text.indexOf('"', i + 1);
+
+					if (end == -1) {
+						throw new MapFormatException("Unterminated quoted token", number, i + 1);
+					}
+
+					tokens.add(text.substring(i + 1, end));
+					columns.add(i + 1);
+
+					i = end + 1;
+				} else {
+					final int start = i;
+
+					while ((i < text.length()) && !Character.isWhitespace(text.charAt(i))) {
+						i++;
+					}
+
+					tokens.add(text.substring(start, i));
+					columns.add(start + 1);
+				}
+			}
+		}
+
+		private boolean isEmpty() {
+			return tokens.isEmpty() || tokens.get(0).startsWith("#");
+		}
+
+		private boolean hasNext() {
+			return index < tokens.size();
+		}
+
+		private String peek() {
+			return hasNext() ? tokens.get(index) : null;
+		}
+
+		private String next(String expected) throws MapFormatException {
+			if (!hasNext()) {
+				throw error("Missing " + expected);
+			}
+
+			return tokens.get(index++);
+		}
+
+		private int nextInt(String expected) throws MapFormatException {
+			final String token = next(expected);
+
+			try {
+				return Integer.parseInt(token);
+			} catch (NumberFormatException e) {
+				throw previousError("Expected " + expected + " (an integer) but got '" + token + "'");
+			}
+		}
+
+		private boolean nextBoolean(String expected) throws MapFormatException {
+			final String token = next(expected);
+
+			if ("true".equals(token)) {
+				return true;
+			}
+			if ("false".equals(token)) {
+				return false;
+			}
+
+			throw previousError("Expected " + expected + " (true or false) but got '" + token + "'");
+		}
+
+		private boolean nextBoolean(String expected, boolean defaultValue) throws MapFormatException {
+			return hasNext() ? nextBoolean(expected) : defaultValue;
+		}
+
+		private <E extends Enum<E>> E nextEnum(Class<E> type) throws MapFormatException {
+			final String token = next(type.getSimpleName());
+
+			try {
+				return Enum.valueOf(type, token);
+			} catch (IllegalArgumentException e) {
+				throw previousError("Unknown " + type.getSimpleName() + " '" + token + "'");
+			}
+		}
+
+		/**
+		 * Consumes the next token if it's a constant of the given enum and
+		 * returns it, otherwise returns null.
+		 */
+		private <E extends Enum<E>> E nextEnumIfAny(Class<E> type) {
+			if (hasNext()) {
+				for (E constant : type.getEnumConstants()) {
+					if (constant.name().equals(peek())) {
+						index++;
+
+						return constant;
+					}
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Consumes the next token as a place: a {@link Sector} or a
+		 * {@link Direction}.
+		 */
+		private Place nextPlace() throws MapFormatException {
+			final Sector sector = nextEnumIfAny(Sector.class);
+
+			if (sector != null) {
+				return sector;
+			}
+
+			final Direction direction = nextEnumIfAny(Direction.class);
+
+			if (direction != null) {
+				return direction;
+			}
+
+			throw error("Expected a sector or a direction but got '" + next("place") + "'");
+		}
+
+		private void end() throws MapFormatException {
+			if (hasNext()) {
+				throw error("Unexpected token '" + peek() + "'");
+			}
+		}
+
+		/**
+		 * Returns an exception pointing to the next token (or the end of the
+		 * line if all the tokens were consumed).
+		 */
+		private MapFormatException error(String message) {
+			return new MapFormatException(message, number, getColumn(index));
+		}
+
+		/**
+		 * Returns an exception pointing to the token just consumed.
+		 */
+		private MapFormatException previousError(String message) {
+			return new MapFormatException(message, number, getColumn(index - 1));
+		}
+
+		private int getColumn(int tokenIndex) {
+			if (tokenIndex < columns.size()) {
+				return columns.get(tokenIndex);
+			}
+
+			// Point just after the last token
+			final int last = tokens.size() - 1;
+
+			return (last >= 0) ? columns.get(last) + tokens.get(last).length() + 1 : 1;
+		}
+	}
+
+	private final Log log = LogFactory.getLog(DungeonReader.class);
+
+	private final BufferedReader reader;
+
+	/**
+	 * The number of the last line read.
+	 */
+	private int lineNumber;
+
+	private Dungeon dungeon;
+
+	/**
+	 * The level the element directives currently apply to.
+	 */
+	private Level level;
+
+	private final List<Wiring> wirings = new ArrayList<Wiring>();
+
+	/**
+	 * The party directive (if any) resolved once the map has been read.
+	 */
+	private Line party;
+
+	public DungeonReader(Reader reader) {
+		Validate.notNull(reader, "The given reader is null");
+
+		this.reader = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	/**
+	 * Reads the map into a new {@link Dungeon}.
+	 *
+	 * @return a new {@link Dungeon}. Never returns null.
+	 * @throws MapFormatException
+	 *             if the map is malformed.
+	 * @throws IOException
+	 *             if an error occurs when reading the map.
+	 */
+	public Dungeon read() throws IOException {
+		final Dungeon dungeon = new Dungeon();
+
+		read(dungeon);
+
+		return dungeon;
+	}
+
+	/**
+	 * Reads the map into the given {@link Dungeon}. The levels defined by the
+	 * map must not already exist in the dungeon.
+	 *
+	 * @param dungeon
+	 *            the dungeon to populate. Can't be null.
+	 * @throws MapFormatException
+	 *             if the map is malformed.
+	 * @throws IOException
+	 *             if an error occurs when reading the map.
+	 */
+	public void read(Dungeon dungeon) throws IOException {
+		Validate.notNull(dungeon, "The given dungeon is null");
+
+		this.dungeon = dungeon;
+
+		if (log.isDebugEnabled()) {
+			log.debug("Reading dungeon map ...");
+		}
+
+		String text;
+
+		while ((text = reader.readLine()) != null) {
+			final Line line = new Line(++lineNumber, text);
+
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			try {
+				readDirective(line);
+			} catch (IllegalArgumentException e) {
+				// Raised when an element rejects its parameters
+				throw new MapFormatException(e.getMessage(), line.number, 1, e);
+			} catch (IllegalStateException e) {
+				throw new MapFormatException(e.getMessage(), line.number, 1, e);
+			}
+		}
+
+		for (Wiring wiring : wirings) {
+			wire(wiring);
+		}
+
+		if (party != null) {
+			try {
+				installParty(party);
+			} catch (IllegalArgumentException e) {
+				throw new MapFormatException(e.getMessage(), party.number, 1, e);
+			} catch (IllegalStateException e) {
+				throw new MapFormatException(e.getMessage(), party.number, 1, e);
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Read dungeon map (" + lineNumber + " lines)");
+		}
+	}
+
+	private void readDirective(Line line) throws IOException {
+		final String keyword = line.next("directive");
+
+		if ("level".equals(keyword)) {
+			readLevel(line);
+		} else if ("light".equals(keyword)) {
+			getLevel(line).setAmbientLight(line.nextInt("ambient light"));
+			line.end();
+		} else if ("experience".equals(keyword)) {
+			getLevel(line).setExperienceMultiplier(line.nextInt("experience multiplier"));
+			line.end();
+		} else if ("item".equals(keyword)) {
+			readItem(line);
+		} else if ("creature".equals(keyword)) {
+			readCreature(line);
+		} else if ("actuator".equals(keyword)) {
+			readActuator(line);
+		} else if ("party".equals(keyword)) {
+			if (party != null) {
+				throw new MapFormatException("The party is already defined", line.number, 1);
+			}
+
+			party = line;
+		} else {
+			final Element.Type type;
+
+			try {
+				type = Element.Type.valueOf(keyword);
+			} catch (IllegalArgumentException e) {
+				throw new MapFormatException("Unknown directive '" + keyword + "'", line.number, 1);
+			}
+
+			readElement(type, line);
+		}
+	}
+
+	private void readLevel(Line line) throws IOException {
+		final int number = line.nextInt("level number");
+		final int width = line.nextInt("level width");
+		final int height = line.nextInt("level height");
+
+		line.end();
+
+		this.level = dungeon.createLevel(number, height, width);
+
+		for (int y = 0; y < height; y++) {
+			final String text = reader.readLine();
+
+			if (text == null) {
+				throw new MapFormatException("Missing row " + y + " of level " + number, lineNumber + 1, 1);
+			}
+
+			lineNumber++;
+
+			if (text.length() != width) {
+				throw new MapFormatException("Row " + y + " of level " + number + " has " + text.length()
+						+ " characters (expected " + width + ")", lineNumber, Math.min(text.length(), width) + 1);
+			}
+
+			for (int x = 0; x < width; x++) {
+				readCell(x, y, text.charAt(x));
+			}
+		}
+	}
+
+	private void readCell(int x, int y, char c) throws MapFormatException {
+		switch (c) {
+		case 'W':
+			setPlaceholder(x, y, Element.Type.WALL);
+			break;
+		case ' ':
+		case '.':
+			setPlaceholder(x, y, Element.Type.FLOOR);
+			break;
+		case 'M':
+			level.setElement(x, y, new FakeWall());
+			break;
+		case 'I':
+			level.setElement(x, y, new InvisibleWall());
+			break;
+		case 'P':
+			level.setElement(x, y, new Pillar());
+			break;
+		case 'R':
+			level.setElement(x, y, new RetractableWall());
+			break;
+		case 'O':
+			level.setElement(x, y, new Pit());
+			break;
+		case '4':
+			level.setElement(x, y, new FourSideAlcove());
+			break;
+		default:
+			throw new MapFormatException("Unexpected character '" + c + "'", lineNumber, x + 1);
+		}
+	}
+
+	/**
+	 * Sets a plain wall or floor tile in the level's compact grid. The level
+	 * already starts with walls all around and floor tiles in between so most
+	 * cells don't need any update.
+	 */
+	private void setPlaceholder(int x, int y, Element.Type type) {
+		if (!type.equals(level.getPlaceholderType(x, y))) {
+			level.setPlaceholder(x, y, type);
+		}
+	}
+
+	private void readElement(Element.Type type, Line line) throws IOException {
+		final Level level = getLevel(line);
+		final int x = nextX(line, level);
+		final int y = nextY(line, level);
+
+		final Element element;
+
+		switch (type) {
+		case WALL:
+		case FLOOR:
+			line.end();
+
+			setPlaceholder(x, y, type);
+
+			return;
+		case FAKE_WALL:
+			element = new FakeWall();
+			break;
+		case INVISIBLE_WALL:
+			element = new InvisibleWall();
+			break;
+		case PILLAR:
+			element = new Pillar();
+			break;
+		case FOUR_SIDE_ALCOVE:
+			element = new FourSideAlcove();
+			break;
+		case RETRACTABLE_WALL:
+			final RetractableWall wall = new RetractableWall();
+
+			if (line.nextBoolean("open flag", false)) {
+				wall.open();
+			}
+
+			element = wall;
+			break;
+		case PIT:
+			final boolean fake = line.nextBoolean("fake flag", false);
+
+			element = new Pit(fake, line.nextBoolean("open flag", true));
+			break;
+		case FLOOR_SWITCH:
+			element = new FloorSwitch(line.nextBoolean("visible flag", true));
+			break;
+		case DECORATED_FLOOR:
+			element = new DecoratedFloor(line.nextEnum(DecoratedFloor.Style.class));
+			break;
+		case DOOR:
+			final Door.Style style = line.nextEnum(Door.Style.class);
+			final Orientation orientation = line.nextEnum(Orientation.class);
+
+			element = line.hasNext() ? new Door(style, orientation, line.nextEnum(Door.State.class)) : new Door(style,
+					orientation);
+			break;
+		case TELEPORTER:
+			final DirectionTransform transform = line.nextEnum(DirectionTransform.class);
+			final boolean silent = line.nextBoolean("silent flag");
+
+			element = line.hasNext() ? new Teleporter(nextPosition(line), transform, silent) : new Teleporter(
+					transform, silent);
+			break;
+		case STAIRS:
+			final Direction stairsDirection = line.nextEnum(Direction.class);
+			final boolean ascending = line.nextBoolean("ascending flag");
+
+			element = new Stairs(stairsDirection, ascending, nextPosition(line));
+			break;
+		case GENERATOR:
+			final Creature.Type creatureType = line.nextEnum(Creature.Type.class);
+
+			element = new Generator(creatureType, line.nextInt("health multiplier"));
+			break;
+		default:
+			// The remaining elements are directed elements
+			element = readDirectedElement(type, line.nextEnum(Direction.class), line);
+			break;
+		}
+
+		line.end();
+
+		level.setElement(x, y, element);
+	}
+
+	private Element readDirectedElement(Element.Type type, Direction direction, Line line) throws IOException {
+		switch (type) {
+		case WALL_SWITCH:
+			final boolean pressed = line.nextBoolean("pressed flag", false);
+
+			return new WallSwitch(direction, pressed, line.nextBoolean("push button flag", false));
+		case WALL_LOCK:
+			return new WallLock(direction, line.nextEnum(Item.Type.class));
+		case WALL_SLOT:
+			final Item.Type slotType = line.nextEnum(Item.Type.class);
+
+			return line.hasNext() ? new WallSlot(direction, slotType, line.nextInt("max count")) : new WallSlot(
+					direction, slotType);
+		case ALCOVE:
+			return line.hasNext() ? new Alcove(direction, line.nextEnum(Item.Type.class)) : new Alcove(direction);
+		case FOUNTAIN:
+			return new Fountain(direction);
+		case LEVER:
+			return new Lever(direction, line.nextBoolean("up flag", false));
+		case TORCH_WALL:
+			return new TorchWall(direction, line.nextBoolean("torch flag", true));
+		case ALTAR:
+			return new Altar(direction);
+		case TEXT_WALL:
+			final List<String> lines = new ArrayList<String>();
+
+			while (line.hasNext()) {
+				lines.add(line.next("text"));
+			}
+
+			return new TextWall(direction, lines);
+		case PORTRAIT:
+			final Champion.Name name = line.nextEnum(Champion.Name.class);
+
+			return new Portrait(direction, ChampionFactory.getFactory().newChampion(name));
+		case DECORATED_WALL:
+			return new DecoratedWall(direction, line.nextEnum(DecoratedWall.Style.class));
+		case PROJECTILE_LAUNCHER:
+			return new ProjectileLauncher(direction, readProjectileFactory(line));
+		default:
+			throw new UnsupportedOperationException("Unsupported element type " + type);
+		}
+	}
+
+	private ProjectileFactory readProjectileFactory(Line line) throws IOException {
+		final String kind = line.next("projectile kind (item or spell)");
+
+		if ("item".equals(kind)) {
+			return new ItemProjectileFactory(ItemFactory.getFactory(), line.nextEnum(Item.Type.class));
+		}
+		if ("spell".equals(kind)) {
+			final PowerRune power = line.nextEnum(PowerRune.class);
+
+			return new SpellProjectileFactory(new Spell(power, line.nextEnum(Spell.Type.class)));
+		}
+
+		throw line.previousError("Expected item or spell but got '" + kind + "'");
+	}
+
+	private void readItem(Line line) throws IOException {
+		final Level level = getLevel(line);
+		final Element element = level.getElement(nextX(line, level), nextY(line, level));
+		final Place place = line.nextPlace();
+		final Item item = ItemFactory.getFactory().newItem(line.nextEnum(Item.Type.class));
+
+		line.end();
+
+		if (place instanceof Sector) {
+			element.addItem(item, (Sector) place);
+		} else if (element instanceof Alcove) {
+			((Alcove) element).dropItem(item, (Direction) place);
+		} else if (element instanceof Altar) {
+			((Altar) element).dropItem(item, (Direction) place);
+		} else if (element instanceof FourSideAlcove) {
+			((FourSideAlcove) element).dropItem(item, (Direction) place);
+		} else {
+			throw new MapFormatException("The " + element.getType() + " element doesn't accept items by direction",
+					line.number, 1);
+		}
+	}
+
+	private void readCreature(Line line) throws IOException {
+		final Level level = getLevel(line);
+		final Element element = level.getElement(nextX(line, level), nextY(line, level));
+		final Creature.Type type = line.nextEnum(Creature.Type.class);
+		final Creature creature = new Creature(type, 1, line.nextEnum(Direction.class), level.getDungeon()
+				.getRandomStreams().newStream(RandomStreams.CREATURES));
+
+		if (line.hasNext()) {
+			final Place place = line.nextPlace();
+
+			line.end();
+
+			element.addCreature(creature, place);
+		} else {
+			element.addCreature(creature);
+		}
+	}
+
+	private void readActuator(Line line) throws IOException {
+		final Level level = getLevel(line);
+		final Position source = new Position(nextX(line, level), nextY(line, level), level.getNumber());
+		final TriggerType triggerType = line.nextEnumIfAny(TriggerType.class);
+		final int count = line.nextInt("count");
+		final Wiring wiring = new Wiring(line, source, triggerType, count, line.nextEnum(TriggerAction.class));
+
+		do {
+			wiring.targets.add(nextPosition(line));
+		} while (line.hasNext());
+
+		wirings.add(wiring);
+	}
+
+	private void wire(Wiring wiring) throws IOException {
+		final int number = wiring.line.number;
+
+		final Triggerable[] targets = new Triggerable[wiring.targets.size()];
+
+		for (int i = 0; i < targets.length; i++) {
+			final Element target = getElement(wiring.targets.get(i), number);
+
+			if (!(target instanceof Triggerable)) {
+				throw new MapFormatException("The " + target.getType() + " element at " + wiring.targets.get(i)
+						+ " can't be triggered", number, 1);
+			}
+
+			targets[i] = (Triggerable) target;
+		}
+
+		final SimpleActuator actuator;
+
+		try {
+			actuator = new SimpleActuator(wiring.count, wiring.action, targets);
+		} catch (IllegalArgumentException e) {
+			throw new MapFormatException(e.getMessage(), number, 1, e);
+		}
+
+		final Element element = getElement(wiring.source, number);
+
+		if (element instanceof HasActuators) {
+			if (wiring.triggerType == null) {
+				throw new MapFormatException("The " + element.getType() + " element requires a trigger type", number,
+						1);
+			}
+
+			((HasActuators) element).addActuator(wiring.triggerType, actuator);
+		} else if (element instanceof HasActuator) {
+			((HasActuator) element).addActuator(actuator);
+		} else {
+			throw new MapFormatException("The " + element.getType() + " element at " + wiring.source
+					+ " doesn't support actuators", number, 1);
+		}
+	}
+
+	private void installParty(Line line) throws IOException {
+		final Position position = nextPosition(line);
+		final Direction direction = line.nextEnum(Direction.class);
+		final List<Champion> champions = new ArrayList<Champion>();
+
+		while (line.hasNext()) {
+			champions.add(ChampionFactory.getFactory().newChampion(line.nextEnum(Champion.Name.class)));
+		}
+
+		// Check the position before installing the party
+		getElement(position, line.number);
+
+		final Party party = new Party(champions.toArray(new Champion[champions.size()]));
+
+		dungeon.setParty(position, party);
+
+		party.setLookDirection(direction);
+	}
+
+	private Level getLevel(Line line) throws MapFormatException {
+		if (level == null) {
+			throw new MapFormatException("No level defined", line.number, 1);
+		}
+
+		return level;
+	}
+
+	private Element getElement(Position position, int line) throws MapFormatException {
+		final Level level = (position.z >= 0) ? dungeon.getLevel(position.z) : null;
+
+		if (level == null) {
+			throw new MapFormatException("Unknown level " + position.z, line, 1);
+		}
+
+		if (!level.contains(position)) {
+			throw new MapFormatException("The position " + position + " is outside level " + position.z, line, 1);
+		}
+
+		return level.getElement(position.x, position.y);
+	}
+
+	private static int nextX(Line line, Level level) throws MapFormatException {
+		final int x = line.nextInt("x");
+
+		if ((x < 0) || (x >= level.getWidth())) {
+			throw line.previousError("The x coordinate " + x + " is outside level " + level.getNumber());
+		}
+
+		return x;
+	}
+
+	private static int nextY(Line line, Level level) throws MapFormatException {
+		final int y = line.nextInt("y");
+
+		if ((y < 0) || (y >= level.getHeight())) {
+			throw line.previousError("The y coordinate " + y + " is outside level " + level.getNumber());
+		}
+
+		return y;
+	}
+
+	private static Position nextPosition(Line line) throws MapFormatException {
+		final int x = line.nextInt("x");
+		final int y = line.nextInt("y");
+
+		return new Position(x, y, line.nextInt("z"));
+	}
+}
@@ -0,0 +1,657 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Location;
+import fr.ritaly.dungeonmaster.Place;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.Skill;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Experience;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.champion.body.BodyPart;
+import fr.ritaly.dungeonmaster.champion.inventory.Inventory;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.stat.Stat;
+import fr.ritaly.dungeonmaster.stat.Stats;
+
+/**
+ * Saves / loads a {@link Dungeon} to / from a compact binary snapshot. The
+ * snapshot stores the party (position, direction, champions with their stats,
+ * experience, worn items and inventories, item held by the leader), the levels
+ * with their elements (see {@link ElementCodec}) and the items (see
+ * {@link ItemCodec}) and creatures on the elements. The integers are written as
+ * variable-length quantities and the strings (enum constants, etc) are stored
+ * once in a string table. Each level is written as a standalone block with its
+ * own string table so that a level evicted from memory (see
+ * {@link LevelResidency}) can be copied as is. The plain walls and floor tiles not materialized
+ * yet (see {@link Level#isMaterialized(int, int)}) are written as runs and
+ * aren't materialized by the reader either.
+ * <p>
+ * The projectiles, the poison clouds, the flux cages and the actuators aren't
+ * saved (an element wired to an actuator is saved without it). The clock
+ * listeners (creatures, generators, animated doors, burning torches) are
+ * registered on the clock when the snapshot is read.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class DungeonSnapshot {
+
+	/**
+	 * The magic number at the start (and the end) of a snapshot ("DMSN").
+	 */
+	private static final int MAGIC = 0x444D534E;
+
+	/**
+	 * The current version of the snapshot format.
+	 */
+	public static final int VERSION = 3;
+
+	// The tags identifying the content of a position
+	private static final int TAG_PLACEHOLDERS = 0;
+
+	private static final int TAG_MISSING = 1;
+
+	private static final int TAG_ELEMENT = 2;
+
+	/**
+	 * The names of the champion stats saved.
+	 */
+	private static final String[] STATS = { Stats.PROPERTY_HEALTH, Stats.PROPERTY_STAMINA, Stats.PROPERTY_MANA,
+			Stats.PROPERTY_STRENGTH, Stats.PROPERTY_DEXTERITY, Stats.PROPERTY_WISDOM, Stats.PROPERTY_VITALITY,
+			Stats.PROPERTY_ANTI_FIRE, Stats.PROPERTY_ANTI_MAGIC, Stats.PROPERTY_LUCK, Stats.PROPERTY_FOOD,
+			Stats.PROPERTY_WATER, Stats.PROPERTY_SHIELD, Stats.PROPERTY_MAX_LOAD_BOOST };
+
+	private static final Log log = LogFactory.getLog(DungeonSnapshot.class);
+
+	private DungeonSnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of the given dungeon to the given stream. The stream
+	 * is flushed but not closed.
+	 *
+	 * @param dungeon
+	 *            the dungeon to save. Can't be null.
+	 * @param stream
+	 *            the stream to write to. Can't be null.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the dungeon contains an
+	 *             unsupported element.
+	 */
+	public static void write(Dungeon dungeon, OutputStream stream) throws IOException {
+		Validate.notNull(dungeon, "The given dungeon is null");
+
+		final long start = System.nanoTime();
+
+		final SnapshotOutput output = new SnapshotOutput(stream);
+
+		output.writeInt(MAGIC);
+		output.writeVarInt(VERSION);
+
+		// The champions are written first: the bones on the levels refer to
+		// them
+		final Party party = dungeon.getParty();
+
+		writeParty(party, output);
+
+		final List<Integer> levels = dungeon.getLevelNumbers();
+
+		output.writeVarInt(levels.size());
+
+		for (Integer number : levels) {
+			// The levels evicted from memory are already serialized
+			final byte[] bytes = dungeon.getResidency().getBytes(number.intValue());
+
+			output.writeBytes((bytes != null) ? bytes : toBytes(dungeon.getLevel(number.intValue())));
+		}
+
+		if (party != null) {
+			ElementCodec.writePosition(party.getPosition(), output);
+
+			output.writeEnum(party.getLookDirection());
+		}
+
+		output.writeInt(MAGIC);
+		output.flush();
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Wrote snapshot of %d level(s) in %d ms", levels.size(),
+					(System.nanoTime() - start) / 1000000));
+		}
+	}
+
+	/**
+	 * Returns a checksum of the given dungeon's state computed over its
+	 * snapshot. Two dungeons in the same state have the same checksum.
+	 *
+	 * @param dungeon
+	 *            the dungeon whose checksum is requested. Can't be null.
+	 * @return a long.
+	 * @throws IOException
+	 *             if the dungeon contains an unsupported element.
+	 */
+	public static long checksum(Dungeon dungeon) throws IOException {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream(4096);
+
+		write(dungeon, stream);
+
+		final CRC32 crc = new CRC32();
+		crc.update(stream.toByteArray());
+
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads a snapshot written by {@link #write(Dungeon, OutputStream)} and
+	 * rebuilds the dungeon.
+	 *
+	 * @param stream
+	 *            the stream to read from. Can't be null.
+	 * @return a new dungeon. Never returns null.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the snapshot is invalid.
+	 */
+	public static Dungeon read(InputStream stream) throws IOException {
+		final long start = System.nanoTime();
+
+		final SnapshotInput input = new SnapshotInput(stream);
+
+		if (input.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Not a dungeon snapshot");
+		}
+
+		final int version = input.readVarInt();
+
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported snapshot version %d (expected: %d)", version, VERSION));
+		}
+
+		final Dungeon dungeon = new Dungeon();
+
+		final Party party = readParty(input);
+
+		final int count = input.readVarInt();
+
+		for (int i = 0; i < count; i++) {
+			fromBytes(dungeon, input.readBytes(), party);
+		}
+
+		if (party != null) {
+			final Position position = ElementCodec.readPosition(input);
+
+			if (position != null) {
+				dungeon.setParty(position, party);
+			}
+
+			party.setLookDirection(input.readEnum(Direction.class));
+		}
+
+		if (input.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Truncated dungeon snapshot");
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Read snapshot of %d level(s) in %d ms", count, (System.nanoTime() - start) / 1000000));
+		}
+
+		return dungeon;
+	}
+
+	/**
+	 * Serializes the given level into a standalone array of bytes (with its own
+	 * string table).
+	 */
+	static byte[] toBytes(Level level) throws IOException {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream(1024);
+		final SnapshotOutput output = new SnapshotOutput(stream);
+
+		writeLevel(level, output);
+
+		output.flush();
+
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Rebuilds the level serialized by {@link #toBytes(Level)} inside the
+	 * given dungeon.
+	 */
+	static Level fromBytes(Dungeon dungeon, byte[] bytes) throws IOException {
+		return fromBytes(dungeon, bytes, dungeon.getParty());
+	}
+
+	/**
+	 * Rebuilds the level serialized by {@link #toBytes(Level)} inside the
+	 * given dungeon. The bones on the level refer to the champions of the
+	 * given party (if any).
+	 */
+	private static Level fromBytes(Dungeon dungeon, byte[] bytes, Party party) throws IOException {
+		final SnapshotInput input = new SnapshotInput(new ByteArrayInputStream(bytes));
+
+		input.setParty(party);
+
+		return readLevel(dungeon, input);
+	}
+
+	private static void writeLevel(Level level, SnapshotOutput output) throws IOException {
+		output.writeVarInt(level.getNumber());
+		output.writeVarInt(level.getWidth());
+		output.writeVarInt(level.getHeight());
+		output.writeSignedVarInt(level.getExperienceMultiplier());
+		output.writeSignedVarInt(level.getAmbientLight());
+
+		final int width = level.getWidth();
+		final int size = width * level.getHeight();
+
+		for (int node = 0; node < size;) {
+			final int x = node % width, y = node / width;
+
+			final Element.Type placeholder = level.getPlaceholderType(x, y);
+
+			if (placeholder != null) {
+				// Write the run of identical plain elements
+				int run = 1;
+
+				while ((node + run < size)
+						&& placeholder.equals(level.getPlaceholderType((node + run) % width, (node + run) / width))) {
+					run++;
+				}
+
+				output.writeVarInt(TAG_PLACEHOLDERS);
+				output.writeEnum(placeholder);
+				output.writeVarInt(run);
+
+				node += run;
+
+				continue;
+			}
+
+			final Element element = level.getElement(x, y);
+
+			if (element == null) {
+				output.writeVarInt(TAG_MISSING);
+			} else {
+				output.writeVarInt(TAG_ELEMENT);
+
+				writeElement(element, output);
+			}
+
+			node++;
+		}
+	}
+
+	private static Level readLevel(Dungeon dungeon, SnapshotInput input) throws IOException {
+		final int number = input.readVarInt();
+		final int width = input.readVarInt();
+		final int height = input.readVarInt();
+
+		final Level level = dungeon.createLevel(number, height, width);
+
+		level.setExperienceMultiplier(input.readSignedVarInt());
+		level.setAmbientLight(input.readSignedVarInt());
+
+		final int size = width * height;
+
+		for (int node = 0; node < size;) {
+			final int x = node % width, y = node / width;
+
+			switch (input.readVarInt()) {
+			case TAG_PLACEHOLDERS:
+				final Element.Type type = input.readEnum(Element.Type.class);
+				final int run = input.readVarInt();
+
+				if (type == null) {
+					throw new StreamCorruptedException("Missing placeholder type at " + x + "," + y);
+				}
+				if ((run <= 0) || (node + run > size)) {
+					throw new StreamCorruptedException("Invalid run length " + run + " at " + x + "," + y);
+				}
+
+				try {
+					for (int i = node; i < node + run; i++) {
+						if (!type.equals(level.getPlaceholderType(i % width, i / width))) {
+							level.setPlaceholder(i % width, i / width, type);
+						}
+					}
+				} catch (IllegalArgumentException e) {
+					throw new StreamCorruptedException("Invalid placeholder type " + type + " at " + x + "," + y);
+				}
+
+				node += run;
+				break;
+			case TAG_MISSING:
+				level.removeElement(x, y);
+
+				node++;
+				break;
+			case TAG_ELEMENT:
+				readElement(level, x, y, input);
+
+				node++;
+				break;
+			default:
+				throw new StreamCorruptedException("Invalid tag at " + x + "," + y);
+			}
+		}
+
+		return level;
+	}
+
+	private static void writeElement(Element element, SnapshotOutput output) throws IOException {
+		final ElementCodec codec = ElementCodec.get(element);
+
+		output.writeEnum(codec);
+
+		codec.write(element, output);
+
+		codec.writeItems(element, output);
+
+		// Creatures with the sectors they occupy
+		final Set<Creature> creatures = new LinkedHashSet<Creature>(element.getCreatureMap().values());
+
+		output.writeVarInt(creatures.size());
+
+		for (Creature creature : creatures) {
+			writeCreature(element, creature, output);
+		}
+	}
+
+	/**
+	 * Writes the given creature along with the sectors it occupies on the
+	 * given element.
+	 */
+	static void writeCreature(Element element, Creature creature, SnapshotOutput output) throws IOException {
+		output.writeEnum(creature.getType());
+		output.writeEnum(creature.getDirection());
+		output.writeVarInt(creature.getHealth());
+		output.writeVarInt(creature.getMaxHealth());
+		output.writeVarInt(getSectors(element, creature));
+	}
+
+	/**
+	 * Reads a creature written by
+	 * {@link #writeCreature(Element, Creature, SnapshotOutput)} and adds it to
+	 * the given element.
+	 */
+	static void readCreature(Element element, SnapshotInput input) throws IOException {
+		final Creature creature = new Creature(input.readEnum(Creature.Type.class), 1, input.readEnum(Direction.class));
+
+		final int health = input.readVarInt();
+
+		creature.restoreHealth(health, input.readVarInt());
+
+		element.addCreature(creature, getPlace(input.readVarInt()));
+	}
+
+	/**
+	 * Returns the sectors occupied by the given creature on the given element
+	 * as a bit mask (one bit per sector ordinal).
+	 */
+	static int getSectors(Element element, Creature creature) {
+		int sectors = 0;
+
+		for (Map.Entry<Sector, Creature> entry : element.getCreatureMap().entrySet()) {
+			if (entry.getValue() == creature) {
+				sectors |= 1 << entry.getKey().ordinal();
+			}
+		}
+
+		return sectors;
+	}
+
+	/**
+	 * Returns the enum constant identifying the given champion.
+	 */
+	static Champion.Name getName(Champion champion) throws IOException {
+		try {
+			return Champion.Name.valueOf(champion.getName().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unsupported champion " + champion.getName());
+		}
+	}
+
+	private static void readElement(Level level, int x, int y, SnapshotInput input) throws IOException {
+		final ElementCodec codec = input.readEnum(ElementCodec.class);
+
+		if (codec == null) {
+			throw new StreamCorruptedException("Missing element codec at " + x + "," + y);
+		}
+
+		final Element element = codec.read(input);
+
+		level.setElement(x, y, element);
+
+		codec.readItems(element, input);
+
+		final int count = input.readVarInt();
+
+		for (int i = 0; i < count; i++) {
+			readCreature(element, input);
+		}
+	}
+
+	/**
+	 * Returns the place (a sector, a direction or null) matching the given
+	 * sectors occupied by a creature.
+	 *
+	 * @see #getSectors(Element, Creature)
+	 */
+	static Place getPlace(int mask) throws IOException {
+		final EnumSet<Sector> sectors = EnumSet.noneOf(Sector.class);
+
+		for (Sector sector : Sector.values()) {
+			if ((mask & (1 << sector.ordinal())) != 0) {
+				sectors.add(sector);
+			}
+		}
+
+		switch (sectors.size()) {
+		case 1:
+			return sectors.iterator().next();
+		case 2:
+			for (Direction direction : Direction.values()) {
+				if (sectors.containsAll(Sector.getVisibleSectors(direction))) {
+					return direction;
+				}
+			}
+
+			throw new StreamCorruptedException("Invalid creature sectors " + sectors);
+		case 4:
+			return null;
+		default:
+			throw new StreamCorruptedException("Invalid creature sectors " + sectors);
+		}
+	}
+
+	private static void writeParty(Party party, SnapshotOutput output) throws IOException {
+		output.writeBoolean(party != null);
+
+		if (party == null) {
+			return;
+		}
+
+		final List<Champion> champions = party.getChampions(true);
+
+		output.writeVarInt(champions.size());
+
+		for (Champion champion : champions) {
+			output.writeEnum(getName(champion));
+			output.writeEnum(champion.getLocation());
+			output.writeBoolean(champion == party.getLeader());
+		}
+
+		for (Champion champion : champions) {
+			for (BodyPart.Type type : BodyPart.Type.values()) {
+				writeItem(champion.getBody().getPart(type).getItem(), output);
+			}
+
+			final Inventory inventory = champion.getInventory();
+
+			ItemCodec.writeItems(inventory.getBackPack(), output);
+			ItemCodec.writeItems(inventory.getPouch(), output);
+			ItemCodec.writeItems(inventory.getQuiver(), output);
+
+			for (String property : STATS) {
+				final Stat stat = champion.getStats().getStat(property);
+
+				output.writeString(property);
+				output.writeSignedVarInt(stat.baseMaxValue());
+				output.writeSignedVarInt(stat.baseValue());
+			}
+
+			for (Skill skill : Skill.values()) {
+				final Experience experience = champion.getExperience(skill);
+
+				output.writeEnum(experience.getLevel());
+				output.writeVarInt(experience.getPoints());
+			}
+		}
+
+		writeItem(party.getItem(), output);
+	}
+
+	/**
+	 * Reads the party written by {@link #writeParty(Party, SnapshotOutput)}.
+	 * The party is returned as is and must be put into the dungeon once the
+	 * levels have been read.
+	 */
+	private static Party readParty(SnapshotInput input) throws IOException {
+		if (!input.readBoolean()) {
+			return null;
+		}
+
+		final Party party = new Party();
+
+		// The bones in the inventories refer to the champions of the party
+		input.setParty(party);
+
+		Champion leader = null;
+
+		final int count = input.readVarInt();
+
+		final List<Champion> champions = new ArrayList<Champion>(count);
+
+		for (int i = 0; i < count; i++) {
+			final Champion champion = ChampionFactory.getFactory().newChampion(input.readEnum(Champion.Name.class));
+			final Location location = input.readEnum(Location.class);
+
+			if (input.readBoolean()) {
+				leader = champion;
+			}
+
+			final Location added = party.addChampion(champion);
+
+			if ((location != null) && (added != location)) {
+				party.swap(added, location);
+			}
+
+			champions.add(champion);
+		}
+
+		if (leader != null) {
+			party.setLeader(leader);
+		}
+
+		for (Champion champion : champions) {
+			// Put on the items before restoring the stats: the items alter
+			// the stats of the champion wearing them
+			for (BodyPart.Type type : BodyPart.Type.values()) {
+				final Item item = readItem(input);
+
+				if (item != null) {
+					final BodyPart part = champion.getBody().getPart(type);
+
+					part.putOn(item);
+
+					if (part.getItem() != item) {
+						throw new StreamCorruptedException("The " + type.getLabel() + " of " + champion.getName()
+								+ " rejected " + item);
+					}
+				}
+			}
+
+			final Inventory inventory = champion.getInventory();
+
+			ItemCodec.readItems(inventory.getBackPack(), input);
+			ItemCodec.readItems(inventory.getPouch(), input);
+			ItemCodec.readItems(inventory.getQuiver(), input);
+
+			for (int j = 0; j < STATS.length; j++) {
+				final Stat stat = champion.getStats().getStat(input.readString());
+
+				stat.baseMaxValue(input.readSignedVarInt());
+				stat.baseValue(input.readSignedVarInt());
+			}
+
+			for (Skill skill : Skill.values()) {
+				champion.restoreExperience(skill, input.readEnum(Champion.Level.class), input.readVarInt());
+			}
+		}
+
+		final Item item = readItem(input);
+
+		if (item != null) {
+			party.grab(item);
+		}
+
+		return party;
+	}
+
+	/**
+	 * Writes the given item (if any).
+	 */
+	private static void writeItem(Item item, SnapshotOutput output) throws IOException {
+		output.writeBoolean(item != null);
+
+		if (item != null) {
+			ItemCodec.writeItem(item, output);
+		}
+	}
+
+	/**
+	 * Reads the item written by {@link #writeItem(Item, SnapshotOutput)}.
+	 */
+	private static Item readItem(SnapshotInput input) throws IOException {
+		return input.readBoolean() ? ItemCodec.readItem(input) : null;
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.ClockListener;
+import fr.ritaly.dungeonmaster.Timeout;
+
+/**
+ * Stores a {@link Dungeon} in a directory as a snapshot (see
+ * {@link DungeonSnapshot}) followed by a journal of the mutations occurring
+ * after the snapshot (see {@link Journal}). Taking a checkpoint writes a new
+ * snapshot and starts a new (empty) journal. Recovering the dungeon after a
+ * crash reads the latest snapshot and replays its journal.
+ * <p>
+ * The files of a given generation are named &lt;name&gt;-&lt;generation&gt;.snapshot
+ * and &lt;name&gt;-&lt;generation&gt;.journal. A snapshot is written to a temporary
+ * file first and renamed once complete so that a crash while checkpointing
+ * leaves the previous generation intact. The files of the previous
+ * generations are deleted once the new generation is in place.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class DungeonStore {
+
+	private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+	private static final String JOURNAL_EXTENSION = ".journal";
+
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+
+	private final Log log = LogFactory.getLog(DungeonStore.class);
+
+	/**
+	 * The directory storing the files.
+	 */
+	private final File directory;
+
+	/**
+	 * The prefix of the files.
+	 */
+	private final String name;
+
+	/**
+	 * The pattern matching the names of the snapshot files.
+	 */
+	private final Pattern pattern;
+
+	/**
+	 * The current generation. Zero if no checkpoint was taken yet.
+	 */
+	private int generation;
+
+	/**
+	 * The journal of the current generation. Can be null.
+	 */
+	private Journal journal;
+
+	/**
+	 * The stream the journal writes to. Can be null.
+	 */
+	private FileOutputStream journalStream;
+
+	/**
+	 * The dungeon the journal is attached to. Can be null.
+	 */
+	private Dungeon dungeon;
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param directory
+	 *            the directory storing the files. Can't be null. Must exist.
+	 * @param name
+	 *            the prefix of the files. Can't be blank.
+	 */
+	public DungeonStore(File directory, String name) {
+		Validate.notNull(directory, "The given directory is null");
+		Validate.isTrue(directory.isDirectory(), "The given file " + directory + " isn't a directory");
+		Validate.notEmpty(name, "The given name is blank");
+
+		this.directory = directory;
+		this.name = name;
+		this.pattern = Pattern.compile(Pattern.quote(name) + "-(\\d+)" + Pattern.quote(SNAPSHOT_EXTENSION));
+	}
+
+	/**
+	 * Returns the latest generation found in the directory.
+	 *
+	 * @return a positive or zero integer. Zero if the directory doesn't contain
+	 *         any snapshot.
+	 */
+	private int getLatestGeneration() {
+		int latest = 0;
+
+		final String[] names = directory.list();
+
+		if (names != null) {
+			for (String file : names) {
+				final Matcher matcher = pattern.matcher(file);
+
+				if (matcher.matches()) {
+					latest = Math.max(latest, Integer.parseInt(matcher.group(1)));
+				}
+			}
+		}
+
+		return latest;
+	}
+
+	File getSnapshotFile(int generation) {
+		return new File(directory, name + "-" + generation + SNAPSHOT_EXTENSION);
+	}
+
+	File getJournalFile(int generation) {
+		return new File(directory, name + "-" + generation + JOURNAL_EXTENSION);
+	}
+
+	/**
+	 * Tells whether the directory contains a snapshot which can be recovered.
+	 *
+	 * @return whether the directory contains a snapshot.
+	 */
+	public synchronized boolean exists() {
+		return getLatestGeneration() > 0;
+	}
+
+	/**
+	 * Returns the current generation.
+	 *
+	 * @return a positive or zero integer. Zero if no checkpoint was taken yet.
+	 */
+	public synchronized int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Writes a snapshot of the given dungeon, starts a new journal and
+	 * attaches it to the dungeon. The files of the previous generations are
+	 * deleted.
+	 *
+	 * @param dungeon
+	 *            the dungeon to save. Can't be null.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public synchronized void checkpoint(Dungeon dungeon) throws IOException {
+		Validate.notNull(dungeon, "The given dungeon is null");
+
+		final long start = System.nanoTime();
+
+		final int next = Math.max(generation, getLatestGeneration()) + 1;
+
+		// Write the snapshot to a temporary file first
+		final File snapshot = getSnapshotFile(next);
+		final File temporary = new File(directory, snapshot.getName() + TEMPORARY_EXTENSION);
+
+		final FileOutputStream stream = new FileOutputStream(temporary);
+
+		try {
+			DungeonSnapshot.write(dungeon, stream);
+
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+
+		if (!temporary.renameTo(snapshot)) {
+			temporary.delete();
+
+			throw new IOException("Unable to rename " + temporary + " into " + snapshot);
+		}
+
+		// The new generation is in place, the previous journal is obsolete
+		try {
+			closeJournal();
+		} catch (IOException e) {
+			log.warn("Unable to close the previous journal", e);
+		}
+
+		this.journalStream = new FileOutputStream(getJournalFile(next));
+		this.journal = new Journal(new BufferedOutputStream(journalStream));
+		this.dungeon = dungeon;
+		this.generation = next;
+
+		dungeon.setJournal(journal);
+
+		deletePreviousGenerations();
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Checkpoint #%d taken in %d ms", next, (System.nanoTime() - start) / 1000000));
+		}
+	}
+
+	/**
+	 * Deletes the files of the generations preceding the current one.
+	 */
+	private void deletePreviousGenerations() {
+		final String[] names = directory.list();
+
+		if (names == null) {
+			return;
+		}
+
+		for (String file : names) {
+			final Matcher matcher = pattern.matcher(file);
+
+			if (!matcher.matches() || (Integer.parseInt(matcher.group(1)) >= generation)) {
+				continue;
+			}
+
+			final int previous = Integer.parseInt(matcher.group(1));
+
+			for (File obsolete : new File[] { getJournalFile(previous), getSnapshotFile(previous) }) {
+				if (obsolete.exists() && !obsolete.delete()) {
+					log.warn("Unable to delete " + obsolete);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores the dungeon from the latest snapshot and replays its journal
+	 * (if any). A new checkpoint is then taken so that the returned dungeon is
+	 * journaled.
+	 *
+	 * @return the restored dungeon. Never returns null.
+	 * @throws IOException
+	 *             if an I/O error occurs or if there's no snapshot to
+	 *             recover.
+	 */
+	public synchronized Dungeon recover() throws IOException {
+		final int latest = getLatestGeneration();
+
+		if (latest == 0) {
+			throw new FileNotFoundException("No snapshot named " + name + " found in " + directory);
+		}
+
+		final long start = System.nanoTime();
+
+		final Dungeon restored;
+
+		InputStream stream = new FileInputStream(getSnapshotFile(latest));
+
+		try {
+			restored = DungeonSnapshot.read(stream);
+		} finally {
+			stream.close();
+		}
+
+		int count = 0;
+
+		final File file = getJournalFile(latest);
+
+		if (file.exists()) {
+			stream = new FileInputStream(file);
+
+			try {
+				count = Journal.replay(restored, stream);
+			} finally {
+				stream.close();
+			}
+		}
+
+		if (log.isInfoEnabled()) {
+			log.info(String.format("Recovered generation #%d (%d journal record(s)) in %d ms", latest, count,
+					(System.nanoTime() - start) / 1000000));
+		}
+
+		this.generation = Math.max(generation, latest);
+
+		checkpoint(restored);
+
+		return restored;
+	}
+
+	/**
+	 * Schedules on the clock the periodic flushing of the journal (every
+	 * second) and the periodic checkpointing of the dungeon the journal is
+	 * attached to.
+	 *
+	 * @param period
+	 *            the number of clock ticks between 2 checkpoints. Must be
+	 *            positive.
+	 * @return the {@link Timeout} which can be used for cancelling the
+	 *         schedule. Never returns null.
+	 */
+	public Timeout schedule(final int period) {
+		Validate.isTrue(period > 0, String.format("The given period %d must be positive", period));
+
+		return Clock.getInstance().scheduleRepeating(Clock.ONE_SECOND, new ClockListener() {
+
+			private int elapsed;
+
+			@Override
+			public boolean clockTicked() {
+				elapsed += Clock.ONE_SECOND;
+
+				try {
+					synchronized (DungeonStore.this) {
+						if (dungeon == null) {
+							return true;
+						}
+
+						if (elapsed >= period) {
+							elapsed = 0;
+
+							checkpoint(dungeon);
+						} else {
+							journal.flush();
+						}
+					}
+				} catch (IOException e) {
+					log.error("Unable to save the dungeon", e);
+				}
+
+				return true;
+			}
+
+			@Override
+			public String toString() {
+				return "DungeonStore[" + name + "].Scheduler";
+			}
+		});
+	}
+
+	/**
+	 * Detaches, flushes and closes the current journal (if any).
+	 */
+	private void closeJournal() throws IOException {
+		if (journal == null) {
+			return;
+		}
+
+		if ((dungeon != null) && (dungeon.getJournal() == journal)) {
+			dungeon.setJournal(null);
+		}
+
+		try {
+			journal.close();
+		} finally {
+			journalStream.close();
+
+			this.journal = null;
+			this.journalStream = null;
+			this.dungeon = null;
+		}
+	}
+
+	/**
+	 * Flushes and closes the current journal. The dungeon's mutations aren't
+	 * recorded anymore.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public synchronized void close() throws IOException {
+		closeJournal();
+	}
+}
@@ -43,6 +43,7 @@ public class DungeonUtils {
 	 * @param levelNumber
 	 *            the number of level to build.
 	 * @return the built level. Never returns null.
+	 * @see DungeonReader
 	 */
 	public static Level parse(final List<String> input, final Dungeon dungeon, final int levelNumber) {
 		Validate.notNull(input, "The given list of lines is null");
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.actuator.Actuator;
+import fr.ritaly.dungeonmaster.actuator.HasActuator;
+import fr.ritaly.dungeonmaster.actuator.HasActuators;
+import fr.ritaly.dungeonmaster.actuator.LoopingActuator;
+import fr.ritaly.dungeonmaster.actuator.SequentialActuator;
+import fr.ritaly.dungeonmaster.actuator.SimpleActuator;
+import fr.ritaly.dungeonmaster.actuator.TriggerType;
+import fr.ritaly.dungeonmaster.actuator.Triggerable;
+
+/**
+ * Validates a {@link Dungeon} and collects all the violations found. The
+ * levels are validated in parallel (each level by a single thread) then the
+ * links between the levels (the destinations of the teleporters and the
+ * targets of the actuators) are checked by the calling thread.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class DungeonValidator {
+
+	private static final Log log = LogFactory.getLog(DungeonValidator.class);
+
+	private final Dungeon dungeon;
+
+	DungeonValidator(Dungeon dungeon) {
+		this.dungeon = dungeon;
+	}
+
+	/**
+	 * Validates the dungeon and returns the violations found sorted by level
+	 * number. The violations of the links between levels come last.
+	 *
+	 * @return a list of {@link ValidationException}s. Never returns null.
+	 */
+	List<ValidationException> validate() {
+		// Reload the evicted levels first, the workers must not alter the
+		// dungeon
+		final List<Level> levels = dungeon.getLevels();
+
+		final List<ValidationException> violations = new ArrayList<ValidationException>();
+
+		final int threadCount = Math.min(levels.size(), Runtime.getRuntime().availableProcessors());
+
+		if (threadCount <= 1) {
+			for (Level level : levels) {
+				level.validate(violations);
+			}
+		} else {
+			validate(levels, threadCount, violations);
+		}
+
+		for (Level level : levels) {
+			validateLinks(level, violations);
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Validated " + levels.size() + " level(s) with " + threadCount + " thread(s): "
+					+ violations.size() + " violation(s) found");
+		}
+
+		return violations;
+	}
+
+	private void validate(List<Level> levels, int threadCount, List<ValidationException> violations) {
+		final List<Callable<List<ValidationException>>> tasks = new ArrayList<Callable<List<ValidationException>>>(
+				levels.size());
+
+		for (final Level level : levels) {
+			tasks.add(new Callable<List<ValidationException>>() {
+				@Override
+				public List<ValidationException> call() {
+					final List<ValidationException> list = new ArrayList<ValidationException>();
+
+					level.validate(list);
+
+					return list;
+				}
+			});
+		}
+
+		final ExecutorService service = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Validator-" + count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		try {
+			// The futures are returned in the order of the levels
+			for (Future<List<ValidationException>> future : service.invokeAll(tasks)) {
+				violations.addAll(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException("Interrupted while validating the dungeon", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * Checks the links of the given level's elements towards the rest of the
+	 * dungeon.
+	 */
+	private void validateLinks(Level level, List<ValidationException> violations) {
+		for (Element element : level.getMaterializedElements()) {
+			if (element instanceof Teleporter) {
+				final Position destination = ((Teleporter) element).getDestination();
+
+				if (destination != null) {
+					validateDestination(element, destination, violations);
+				}
+			}
+
+			if (element instanceof HasActuator) {
+				validateTargets(element, ((HasActuator) element).getActuator(), violations);
+			}
+			if (element instanceof HasActuators) {
+				for (TriggerType triggerType : TriggerType.values()) {
+					validateTargets(element, ((HasActuators) element).getActuator(triggerType), violations);
+				}
+			}
+		}
+	}
+
+	private void validateDestination(Element element, Position destination, List<ValidationException> violations) {
+		final Level level = getLevel(destination);
+
+		if (level == null) {
+			violations.add(new ValidationException("The destination of the " + element.getType() + " at "
+					+ element.getPosition() + " (" + destination + ") is outside the dungeon"));
+		} else if (!level.getCellMap().isTraversableByParty(destination.x, destination.y)) {
+			violations.add(new ValidationException("The destination of the " + element.getType() + " at "
+					+ element.getPosition() + " (" + destination + ") isn't traversable"));
+		}
+	}
+
+	private void validateTargets(Element element, Actuator actuator, List<ValidationException> violations) {
+		if (actuator instanceof SimpleActuator) {
+			for (Triggerable target : ((SimpleActuator) actuator).getTargets()) {
+				if (!isOnMap(target)) {
+					violations.add(new ValidationException("The actuator of the " + element.getType() + " at "
+							+ element.getPosition() + " targets an element outside the dungeon [" + target + "]"));
+				}
+			}
+		} else if (actuator instanceof SequentialActuator) {
+			for (Actuator child : ((SequentialActuator) actuator).getActuators()) {
+				validateTargets(element, child, violations);
+			}
+		} else if (actuator instanceof LoopingActuator) {
+			validateTargets(element, ((LoopingActuator) actuator).getPrototype(), violations);
+		}
+	}
+
+	/**
+	 * Tells whether the given target is an element installed in the dungeon.
+	 */
+	private boolean isOnMap(Triggerable target) {
+		if (!(target instanceof Element)) {
+			// Not an element, can't be checked
+			return true;
+		}
+
+		final Element element = (Element) target;
+
+		if (element.getPosition() == null) {
+			return false;
+		}
+
+		final Level level = getLevel(element.getPosition());
+
+		return (level == element.getLevel())
+				&& (level.peekElement(element.getPosition().x, element.getPosition().y) == element);
+	}
+
+	/**
+	 * Returns the level containing the given position or null if the position
+	 * is outside the dungeon.
+	 */
+	private Level getLevel(Position position) {
+		if (position.z < 0) {
+			return null;
+		}
+
+		final Level level = dungeon.getLevel(position.z);
+
+		return ((level != null) && level.contains(position)) ? level : null;
+	}
+}
@@ -30,11 +30,13 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.HasPosition;
+import fr.ritaly.dungeonmaster.Offsets;
 import fr.ritaly.dungeonmaster.Place;
 import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
 import fr.ritaly.dungeonmaster.Sector;
 import fr.ritaly.dungeonmaster.Teleport;
 import fr.ritaly.dungeonmaster.ai.Creature;
@@ -45,6 +47,8 @@ import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
+import fr.ritaly.dungeonmaster.event.ItemEvent;
+import fr.ritaly.dungeonmaster.event.ItemListener;
 import fr.ritaly.dungeonmaster.item.HasItems;
 import fr.ritaly.dungeonmaster.item.Item;
 import fr.ritaly.dungeonmaster.item.ItemManager;
@@ -338,6 +342,34 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 	 */
 	private final ItemManager itemManager = new ItemManager();
 
+	/**
+	 * Listener keeping the level's spatial index up to date (and journaling the
+	 * change) when items are dropped on / picked from this element.
+	 */
+	private final ItemListener itemListener = new ItemListener() {
+		@Override
+		public void onItemAdded(ItemEvent event) {
+			occupantsChanged();
+
+			final Journal journal = getJournal();
+
+			if (journal != null) {
+				journal.itemAdded(Element.this, event.getItem(), (Sector) event.getPlace());
+			}
+		}
+
+		@Override
+		public void onItemRemoved(ItemEvent event) {
+			occupantsChanged();
+
+			final Journal journal = getJournal();
+
+			if (journal != null) {
+				journal.itemRemoved(Element.this, event.getItem(), (Sector) event.getPlace());
+			}
+		}
+	};
+
 	/**
 	 * Support class used for firing change events.
 	 */
@@ -347,6 +379,32 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 		Validate.notNull(type, "The given type is null");
 
 		this.type = type;
+
+		itemManager.addItemListener(itemListener);
+	}
+
+	/**
+	 * Notifies this element's level (if any) that the occupants of this
+	 * element changed to update its spatial index and its cell map.
+	 */
+	private void occupantsChanged() {
+		if ((level != null) && (position != null)) {
+			level.occupantsChanged(this);
+		}
+	}
+
+	/**
+	 * Returns the journal recording the mutations of this element's dungeon
+	 * (if any).
+	 *
+	 * @return a {@link Journal} or null.
+	 */
+	private Journal getJournal() {
+		if ((level != null) && (position != null)) {
+			return level.getDungeon().getJournal();
+		}
+
+		return null;
 	}
 
 	@Override
@@ -509,6 +567,8 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 		// M�moriser le projectile
 		projectiles.put(sector, projectile);
 
+		occupantsChanged();
+
 		afterProjectileArrived(projectile);
 	}
 
@@ -543,6 +603,8 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 			projectiles = null;
 		}
 
+		occupantsChanged();
+
 		afterProjectileLeft(projectile);
 	}
 
@@ -584,6 +646,8 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 		// M�moriser la r�f�rence
 		this.party = party;
 
+		occupantsChanged();
+
 		afterPartySteppedOn();
 	}
 
@@ -624,6 +688,8 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 		final Party backup = this.party;
 		this.party = null;
 
+		occupantsChanged();
+
 		if (log.isDebugEnabled()) {
 			log.debug("Party stepped off " + getId());
 		}
@@ -732,7 +798,7 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 	}
 
 	protected final void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
 	}
 
 	/**
@@ -921,20 +987,38 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 	}
 
 	public Place removeCreature(Creature creature) {
+		final Journal journal = getJournal();
+		final int sectors = (journal != null) ? DungeonSnapshot.getSectors(this, creature) : 0;
+
 		final Place place = creatureManager.removeCreature(creature);
 
 		creature.setElement(null);
 
+		occupantsChanged();
+
+		if (journal != null) {
+			journal.creatureRemoved(this, creature, sectors);
+		}
+
 		afterCreatureSteppedOff(creature);
 
 		return place;
 	}
 
 	public void removeCreature(Creature creature, Place place) {
+		final Journal journal = getJournal();
+		final int sectors = (journal != null) ? DungeonSnapshot.getSectors(this, creature) : 0;
+
 		creatureManager.removeCreature(creature, place);
 
 		creature.setElement(null);
 
+		occupantsChanged();
+
+		if (journal != null) {
+			journal.creatureRemoved(this, creature, sectors);
+		}
+
 		afterCreatureSteppedOff(creature);
 	}
 
@@ -943,6 +1027,14 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 
 		creature.setElement(this);
 
+		occupantsChanged();
+
+		final Journal journal = getJournal();
+
+		if (journal != null) {
+			journal.creatureAdded(this, creature);
+		}
+
 		afterCreatureSteppedOn(creature);
 	}
 
@@ -951,6 +1043,14 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 
 		creature.setElement(this);
 
+		occupantsChanged();
+
+		final Journal journal = getJournal();
+
+		if (journal != null) {
+			journal.creatureAdded(this, creature);
+		}
+
 		afterCreatureSteppedOn(creature);
 	}
 
@@ -1002,7 +1102,7 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 		}
 
 		// Enregistrer ce nuage
-		Clock.getInstance().register(poisonCloud);
+		poisonCloud.start();
 	}
 
 	public boolean hasFluxCage() {
@@ -1043,22 +1143,11 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 		}
 
 		// Enregistrer la cage
-		Clock.getInstance().register(fluxCage);
+		fluxCage.start();
 	}
 
 	public List<Element> getSurroundingElements() {
-		final List<Element> elements = new ArrayList<Element>();
-
-		for (Position position : getPosition().getSurroundingPositions()) {
-			if (!getLevel().contains(position)) {
-				// Position situ�e en dehors des limites du niveau
-				continue;
-			}
-
-			elements.add(getLevel().getElement(position.x, position.y));
-		}
-
-		return elements;
+		return getElements(Offsets.surrounding(1), 8);
 	}
 
 	public List<Element> getAdjacentElements() {
@@ -1067,15 +1156,24 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 
 	public List<Element> getAdjacentElements(boolean material) {
 		// At best 4 positions are adjacent (north, sourth, east & west)
-		final List<Element> result = new ArrayList<Element>(4);
+		return getElements(Offsets.attackable(1), 4);
+	}
+
+	private List<Element> getElements(Offsets offsets, int capacity) {
+		final List<Element> result = new ArrayList<Element>(capacity);
+
+		final Position position = getPosition();
+
+		for (int i = 0; i < offsets.size(); i++) {
+			final int x = position.x + offsets.getX(i);
+			final int y = position.y + offsets.getY(i);
 
-		for (Position position : getPosition().getAttackablePositions()) {
-			if (!level.contains(position)) {
+			if ((x < 0) || (x >= level.getWidth()) || (y < 0) || (y >= level.getHeight())) {
 				// The position doesn't exist for this level
 				continue;
 			}
 
-			result.add(level.getElement(position.x, position.y));
+			result.add(level.getElement(x, y));
 		}
 
 		return result;
@@ -1083,7 +1181,7 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 
 	@Override
 	public Sector addItem(Item item) {
-		final Sector sector = itemManager.addItem(item);
+		final Sector sector = itemManager.addItem(item, getRandom(RandomStreams.ITEMS));
 
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("%s dropped on %s at %s", item, getId(), sector));
@@ -1110,7 +1208,25 @@ public abstract class Element implements ChangeEventSource, HasPosition, HasPart
 
 	@Override
 	public Sector getRandomPlace() {
-		return itemManager.getRandomPlace();
+		return itemManager.getRandomPlace(getRandom(RandomStreams.ITEMS));
+	}
+
+	/**
+	 * Returns the stream of random values of the given subsystem inside this
+	 * element's dungeon. The values are reproducible once the element has
+	 * been placed inside a dungeon.
+	 *
+	 * @param subsystem
+	 *            the name of a subsystem (see {@link RandomStreams}).
+	 * @return a stream. Never returns null.
+	 */
+	protected final RandomStream getRandom(String subsystem) {
+		if ((level == null) || (level.getDungeon() == null)) {
+			// Not inside a dungeon yet, the values can't be reproduced
+			return new RandomStream();
+		}
+
+		return level.getDungeon().getRandomStreams().getStream(subsystem);
 	}
 
 	/**
@@ -0,0 +1,654 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.actuator.HasActuator;
+import fr.ritaly.dungeonmaster.actuator.HasActuators;
+import fr.ritaly.dungeonmaster.actuator.TriggerType;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.magic.Spell;
+import fr.ritaly.dungeonmaster.projectile.ItemProjectileFactory;
+import fr.ritaly.dungeonmaster.projectile.ProjectileFactory;
+import fr.ritaly.dungeonmaster.projectile.SpellProjectileFactory;
+
+/**
+ * Enumerates the codecs used for writing / reading the elements of a dungeon
+ * snapshot (see {@link DungeonSnapshot}). Each codec handles a concrete
+ * element class and only writes the state needed for rebuilding the element
+ * and the items it holds (see {@link ItemCodec}).
+ * The actuators aren't supported: an element wired to an actuator is written
+ * without its actuator (see {@link #hasActuator(Element)}).
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+enum ElementCodec {
+	FLOOR(Floor.class) {
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Floor();
+		}
+	},
+	WALL(Wall.class) {
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Wall();
+		}
+	},
+	FAKE_WALL(FakeWall.class) {
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new FakeWall();
+		}
+	},
+	INVISIBLE_WALL(InvisibleWall.class) {
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new InvisibleWall();
+		}
+	},
+	PILLAR(Pillar.class) {
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Pillar();
+		}
+	},
+	FOUR_SIDE_ALCOVE(FourSideAlcove.class) {
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new FourSideAlcove();
+		}
+
+		@Override
+		void writeItems(Element element, SnapshotOutput output) throws IOException {
+			final FourSideAlcove alcove = (FourSideAlcove) element;
+
+			output.writeVarInt(alcove.getItemCount());
+
+			for (Direction direction : SIDES) {
+				writeItems(direction, alcove.getItems(direction), output);
+			}
+		}
+
+		@Override
+		void readItems(Element element, SnapshotInput input) throws IOException {
+			final int count = input.readVarInt();
+
+			for (int i = 0; i < count; i++) {
+				final Direction direction = input.readEnum(Direction.class);
+
+				((FourSideAlcove) element).dropItem(ItemCodec.readItem(input), direction);
+			}
+		}
+	},
+	DOOR(Door.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Door door = (Door) element;
+
+			output.writeEnum(door.getStyle());
+			output.writeEnum(door.getOrientation());
+			output.writeEnum(door.getState());
+			output.writeEnum(door.getMotion());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final Door door = new Door(input.readEnum(Door.Style.class), input.readEnum(Orientation.class),
+					input.readEnum(Door.State.class));
+
+			// Resume the door's animation (if any)
+			switch (input.readEnum(Door.Motion.class)) {
+			case OPENING:
+			case OPENING_AFTER_REBOUND:
+				door.open();
+				break;
+			case CLOSING:
+				door.close();
+				break;
+			default:
+				break;
+			}
+
+			return door;
+		}
+	},
+	PIT(Pit.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Pit pit = (Pit) element;
+
+			output.writeBoolean(pit.isIllusion());
+			output.writeBoolean(pit.isOpen());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Pit(input.readBoolean(), input.readBoolean());
+		}
+	},
+	RETRACTABLE_WALL(RetractableWall.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			output.writeBoolean(((RetractableWall) element).isOpen());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final RetractableWall wall = new RetractableWall();
+
+			if (input.readBoolean()) {
+				wall.open();
+			}
+
+			return wall;
+		}
+	},
+	STAIRS(Stairs.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Stairs stairs = (Stairs) element;
+
+			output.writeEnum(stairs.getDirection());
+			output.writeBoolean(stairs.isAscending());
+			writePosition(stairs.getDestination(), output);
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Stairs(input.readEnum(Direction.class), input.readBoolean(), readPosition(input));
+		}
+	},
+	TELEPORTER(Teleporter.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Teleporter teleporter = (Teleporter) element;
+
+			output.writeEnum(teleporter.getDirectionTransform());
+			output.writeBoolean(teleporter.isSilent());
+			output.writeBoolean(teleporter.isEnabled());
+			writePosition(teleporter.getDestination(), output);
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final DirectionTransform transform = input.readEnum(DirectionTransform.class);
+			final boolean silent = input.readBoolean();
+			final boolean enabled = input.readBoolean();
+			final Position destination = readPosition(input);
+
+			final Teleporter teleporter = (destination != null) ? new Teleporter(destination, transform, silent)
+					: new Teleporter(transform, silent);
+
+			if (!enabled) {
+				teleporter.disable();
+			}
+
+			return teleporter;
+		}
+	},
+	FLOOR_SWITCH(FloorSwitch.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			output.writeBoolean(((FloorSwitch) element).isPressurePadVisible());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new FloorSwitch(input.readBoolean());
+		}
+	},
+	ALCOVE(Alcove.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Alcove alcove = (Alcove) element;
+
+			output.writeEnum(alcove.getDirection());
+			output.writeEnum(alcove.getItemType());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final Direction direction = input.readEnum(Direction.class);
+			final Item.Type itemType = input.readEnum(Item.Type.class);
+
+			return (itemType != null) ? new Alcove(direction, itemType) : new Alcove(direction);
+		}
+
+		@Override
+		void writeItems(Element element, SnapshotOutput output) throws IOException {
+			final Alcove alcove = (Alcove) element;
+
+			output.writeVarInt(alcove.getItemCount());
+
+			for (Direction direction : SIDES) {
+				writeItems(direction, alcove.getItems(direction), output);
+			}
+		}
+
+		@Override
+		void readItems(Element element, SnapshotInput input) throws IOException {
+			final int count = input.readVarInt();
+
+			for (int i = 0; i < count; i++) {
+				final Direction direction = input.readEnum(Direction.class);
+
+				((Alcove) element).dropItem(ItemCodec.readItem(input), direction);
+			}
+		}
+	},
+	ALTAR(Altar.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			output.writeEnum(((Altar) element).getDirection());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Altar(input.readEnum(Direction.class));
+		}
+
+		@Override
+		void writeItems(Element element, SnapshotOutput output) throws IOException {
+			final Altar altar = (Altar) element;
+
+			output.writeVarInt(altar.getItemCount());
+
+			for (Direction direction : SIDES) {
+				writeItems(direction, altar.getItems(direction), output);
+			}
+		}
+
+		@Override
+		void readItems(Element element, SnapshotInput input) throws IOException {
+			final int count = input.readVarInt();
+
+			for (int i = 0; i < count; i++) {
+				final Direction direction = input.readEnum(Direction.class);
+
+				((Altar) element).dropItem(ItemCodec.readItem(input), direction);
+			}
+		}
+	},
+	FOUNTAIN(Fountain.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			output.writeEnum(((Fountain) element).getDirection());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Fountain(input.readEnum(Direction.class));
+		}
+	},
+	LEVER(Lever.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Lever lever = (Lever) element;
+
+			output.writeEnum(lever.getDirection());
+			output.writeBoolean(lever.isLeverUp());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Lever(input.readEnum(Direction.class), input.readBoolean());
+		}
+	},
+	TORCH_WALL(TorchWall.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final TorchWall wall = (TorchWall) element;
+
+			output.writeEnum(wall.getDirection());
+			output.writeBoolean(wall.hasTorch());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new TorchWall(input.readEnum(Direction.class), input.readBoolean());
+		}
+	},
+	TEXT_WALL(TextWall.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final TextWall wall = (TextWall) element;
+
+			output.writeEnum(wall.getDirection());
+			output.writeVarInt(wall.getLines().size());
+
+			for (String line : wall.getLines()) {
+				output.writeString(line);
+			}
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final Direction direction = input.readEnum(Direction.class);
+			final int count = input.readVarInt();
+
+			final List<String> lines = new ArrayList<String>(count);
+
+			for (int i = 0; i < count; i++) {
+				lines.add(input.readString());
+			}
+
+			return new TextWall(direction, lines);
+		}
+	},
+	DECORATED_FLOOR(DecoratedFloor.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			output.writeEnum(((DecoratedFloor) element).getStyle());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new DecoratedFloor(input.readEnum(DecoratedFloor.Style.class));
+		}
+	},
+	DECORATED_WALL(DecoratedWall.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final DecoratedWall wall = (DecoratedWall) element;
+
+			output.writeEnum(wall.getDirection());
+			output.writeEnum(wall.getStyle());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new DecoratedWall(input.readEnum(Direction.class), input.readEnum(DecoratedWall.Style.class));
+		}
+	},
+	WALL_SWITCH(WallSwitch.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final WallSwitch wallSwitch = (WallSwitch) element;
+
+			output.writeEnum(wallSwitch.getDirection());
+			output.writeBoolean(wallSwitch.isPressed());
+			output.writeBoolean(wallSwitch.isPushButton());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new WallSwitch(input.readEnum(Direction.class), input.readBoolean(), input.readBoolean());
+		}
+	},
+	GENERATOR(Generator.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Generator generator = (Generator) element;
+
+			output.writeEnum(generator.getCreatureType());
+			output.writeVarInt(generator.getHealthMultiplier());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			return new Generator(input.readEnum(Creature.Type.class), input.readVarInt());
+		}
+	},
+	WALL_LOCK(WallLock.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final WallLock lock = (WallLock) element;
+
+			output.writeEnum(lock.getDirection());
+			output.writeEnum(lock.getKeyType());
+			output.writeBoolean(lock.isUnlocked());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final WallLock lock = new WallLock(input.readEnum(Direction.class), input.readEnum(Item.Type.class));
+
+			lock.setUnlocked(input.readBoolean());
+
+			return lock;
+		}
+	},
+	WALL_SLOT(WallSlot.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final WallSlot slot = (WallSlot) element;
+
+			output.writeEnum(slot.getDirection());
+			output.writeEnum(slot.getItemType());
+			output.writeVarInt(slot.getMaxUseCount());
+			output.writeVarInt(slot.getUseCount());
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final WallSlot slot = new WallSlot(input.readEnum(Direction.class), input.readEnum(Item.Type.class),
+					input.readVarInt());
+
+			slot.setUseCount(input.readVarInt());
+
+			return slot;
+		}
+	},
+	PORTRAIT(Portrait.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final Portrait portrait = (Portrait) element;
+
+			output.writeEnum(portrait.getDirection());
+			output.writeEnum(portrait.hasChampion() ? DungeonSnapshot.getName(portrait.getChampion()) : null);
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final Direction direction = input.readEnum(Direction.class);
+			final Champion.Name name = input.readEnum(Champion.Name.class);
+
+			// The champion was reincarnated when no name was written
+			return (name != null) ? new Portrait(direction, ChampionFactory.getFactory().newChampion(name))
+					: new Portrait(direction);
+		}
+	},
+	PROJECTILE_LAUNCHER(ProjectileLauncher.class) {
+		@Override
+		void write(Element element, SnapshotOutput output) throws IOException {
+			final ProjectileLauncher launcher = (ProjectileLauncher) element;
+			final ProjectileFactory factory = launcher.getFactory();
+
+			output.writeEnum(launcher.getDirection());
+
+			if (factory instanceof ItemProjectileFactory) {
+				output.writeBoolean(false);
+				output.writeEnum(((ItemProjectileFactory) factory).getType());
+			} else if (factory instanceof SpellProjectileFactory) {
+				final Spell spell = ((SpellProjectileFactory) factory).getSpell();
+
+				output.writeBoolean(true);
+				output.writeEnum(spell.getPower());
+				output.writeEnum(spell.getType());
+			} else {
+				throw new IOException("Unsupported projectile factory on element " + element.getId() + " ("
+						+ factory.getClass().getSimpleName() + ")");
+			}
+		}
+
+		@Override
+		Element read(SnapshotInput input) throws IOException {
+			final Direction direction = input.readEnum(Direction.class);
+
+			final ProjectileFactory factory;
+
+			if (input.readBoolean()) {
+				factory = new SpellProjectileFactory(new Spell(input.readEnum(PowerRune.class),
+						input.readEnum(Spell.Type.class)));
+			} else {
+				factory = new ItemProjectileFactory(ItemFactory.getFactory(), input.readEnum(Item.Type.class));
+			}
+
+			return new ProjectileLauncher(direction, factory);
+		}
+	};
+
+	/**
+	 * The codecs indexed by element class.
+	 */
+	private static final Map<Class<? extends Element>, ElementCodec> CODECS = new HashMap<Class<? extends Element>, ElementCodec>();
+
+	static {
+		for (ElementCodec codec : values()) {
+			CODECS.put(codec.elementClass, codec);
+		}
+	}
+
+	private final Class<? extends Element> elementClass;
+
+	private ElementCodec(Class<? extends Element> elementClass) {
+		this.elementClass = elementClass;
+	}
+
+	/**
+	 * Writes the state of the given element. Does nothing by default.
+	 */
+	void write(Element element, SnapshotOutput output) throws IOException {
+	}
+
+	/**
+	 * Reads the state written by {@link #write(Element, SnapshotOutput)} and
+	 * creates the corresponding element.
+	 */
+	abstract Element read(SnapshotInput input) throws IOException;
+
+	/**
+	 * The directions used for storing the items in (or on) a wall element.
+	 */
+	private static final Direction[] SIDES = { Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
+
+	/**
+	 * Writes the items on the given element (sector by sector).
+	 */
+	void writeItems(Element element, SnapshotOutput output) throws IOException {
+		if (!element.hasItems()) {
+			output.writeVarInt(0);
+
+			return;
+		}
+
+		output.writeVarInt(element.getItemCount());
+
+		for (Sector sector : Sector.values()) {
+			writeItems(sector, element.getItems(sector), output);
+		}
+	}
+
+	/**
+	 * Reads the items written by {@link #writeItems(Element, SnapshotOutput)}
+	 * and drops them on the given element.
+	 */
+	void readItems(Element element, SnapshotInput input) throws IOException {
+		final int count = input.readVarInt();
+
+		for (int i = 0; i < count; i++) {
+			final Sector sector = input.readEnum(Sector.class);
+
+			element.addItem(ItemCodec.readItem(input), sector);
+		}
+	}
+
+	/**
+	 * Writes the given items along with their place (a sector or a direction).
+	 */
+	static void writeItems(Enum<?> place, List<Item> items, SnapshotOutput output) throws IOException {
+		for (Item item : items) {
+			output.writeEnum(place);
+
+			ItemCodec.writeItem(item, output);
+		}
+	}
+
+	/**
+	 * Returns the codec handling the given element.
+	 *
+	 * @param element
+	 *            the element to write. Can't be null.
+	 * @return the codec found.
+	 * @throws IOException
+	 *             if the element isn't supported.
+	 */
+	static ElementCodec get(Element element) throws IOException {
+		final ElementCodec codec = CODECS.get(element.getClass());
+
+		if (codec == null) {
+			throw new IOException("Unsupported element " + element.getId() + " ("
+					+ element.getClass().getSimpleName() + ")");
+		}
+		return codec;
+	}
+
+	/**
+	 * Tells whether the given element is wired to an actuator. Such an
+	 * element is written without its actuator.
+	 */
+	static boolean hasActuator(Element element) {
+		if (element instanceof HasActuator) {
+			return (((HasActuator) element).getActuator() != null);
+		}
+		if (element instanceof HasActuators) {
+			for (TriggerType triggerType : TriggerType.values()) {
+				if (((HasActuators) element).getActuator(triggerType) != null) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	static void writePosition(Position position, SnapshotOutput output) throws IOException {
+		output.writeBoolean(position != null);
+
+		if (position != null) {
+			output.writeVarInt(position.x);
+			output.writeVarInt(position.y);
+			output.writeVarInt(position.z);
+		}
+	}
+
+	static Position readPosition(SnapshotInput input) throws IOException {
+		if (!input.readBoolean()) {
+			return null;
+		}
+
+		return new Position(input.readVarInt(), input.readVarInt(), input.readVarInt());
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+/**
+ * An object visiting the {@link Element}s of a {@link Level}. See
+ * {@link Level#visitElements(fr.ritaly.dungeonmaster.Position, fr.ritaly.dungeonmaster.Offsets, ElementVisitor)}.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public interface ElementVisitor {
+
+	/**
+	 * Visits the given element and returns whether the visit must continue.
+	 *
+	 * @param element
+	 *            the element visited. Never null.
+	 * @return whether the next elements must be visited.
+	 */
+	public boolean visit(Element element);
+}
@@ -25,7 +25,6 @@ import org.apache.commons.logging.LogFactory;
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.Temporizer;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
@@ -69,25 +68,31 @@ public class FluxCage implements ClockListener, ChangeEventSource {
 	}
 
 	private void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
+	}
+
+	/**
+	 * Starts animating the flux cage. The flux cage is animated every
+	 * second until its life time is exhausted.
+	 */
+	public void start() {
+		temporizer.start(this);
 	}
 
 	@Override
 	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			// The life time diminishes
-			final int backup = lifeTime;
+		// The life time diminishes
+		final int backup = lifeTime;
 
-			final boolean again = --lifeTime > 0;
+		final boolean again = --lifeTime > 0;
 
-			if (log.isDebugEnabled()) {
-				log.debug(this + ".LifeTime: " + backup + " -> " + lifeTime + " [-1]");
-			}
+		if (log.isDebugEnabled()) {
+			log.debug(this + ".LifeTime: " + backup + " -> " + lifeTime + " [-1]");
+		}
 
-			if (!again) {
-				// Notify the end of the flux cage
-				fireChangeEvent();
-			}
+		if (!again) {
+			// Notify the end of the flux cage
+			fireChangeEvent();
 		}
 
 		return (lifeTime > 0);
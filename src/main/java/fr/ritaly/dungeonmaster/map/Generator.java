@@ -25,7 +25,9 @@ import org.apache.commons.logging.LogFactory;
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.Temporizer;
-import fr.ritaly.dungeonmaster.Utils;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
 import fr.ritaly.dungeonmaster.ai.Creature;
 import fr.ritaly.dungeonmaster.champion.Party;
 
@@ -62,6 +64,12 @@ public final class Generator extends FloorTile implements ClockListener {
 
 	private final int healthMultiplier;
 
+	/**
+	 * The stream of random values used for generating the creatures. Lazily
+	 * split from the dungeon's streams.
+	 */
+	private RandomStream random;
+
 	public Generator(Creature.Type creatureType, int healthMultiplier) {
 		super(Type.GENERATOR);
 
@@ -73,6 +81,28 @@ public final class Generator extends FloorTile implements ClockListener {
 		this.healthMultiplier = healthMultiplier;
 	}
 
+	private RandomStream getRandom() {
+		if (random == null) {
+			if ((getLevel() == null) || (getLevel().getDungeon() == null)) {
+				// The generator isn't inside a dungeon, the values can't be
+				// reproduced
+				return new RandomStream();
+			}
+
+			random = getLevel().getDungeon().getRandomStreams().newStream(RandomStreams.CREATURES);
+		}
+
+		return random;
+	}
+
+	public Creature.Type getCreatureType() {
+		return creatureType;
+	}
+
+	public int getHealthMultiplier() {
+		return healthMultiplier;
+	}
+
 	@Override
 	public boolean isTraversable(Party party) {
 		return true;
@@ -110,10 +140,10 @@ public final class Generator extends FloorTile implements ClockListener {
 
 				switch (creatureType.getSize()) {
 				case ONE:
-					count = Utils.random(2, 4);
+					count = getRandom().nextInt(2, 4);
 					break;
 				case TWO:
-					count = Utils.random(1, 2);
+					count = getRandom().nextInt(1, 2);
 					break;
 				case FOUR:
 					count = 1;
@@ -142,7 +172,7 @@ public final class Generator extends FloorTile implements ClockListener {
 
 					// Cr�er la cr�ature
 					final Creature creature = new Creature(creatureType,
-							multiplier);
+							multiplier, Direction.NORTH, getRandom().split());
 
 					// Ajouter la cr�ature � un emplacement tir� au hasard
 					addCreature(creature);
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.ritaly.dungeonmaster.Constants;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.champion.inventory.ItemContainer;
+import fr.ritaly.dungeonmaster.item.Bones;
+import fr.ritaly.dungeonmaster.item.Chest;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.item.Potion;
+import fr.ritaly.dungeonmaster.item.Scroll;
+import fr.ritaly.dungeonmaster.item.Torch;
+import fr.ritaly.dungeonmaster.item.WaterSkin;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+
+/**
+ * Writes / reads the items of a dungeon snapshot (see {@link DungeonSnapshot})
+ * with their state: the poison and the curse of any item, the strength of a
+ * potion, the text of a scroll, the remaining light of a torch, the doses of a
+ * water skin, the champion whose bones those are and the content of a chest.
+ * The bones refer to a champion of the party set on the {@link SnapshotInput}
+ * (if any).
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class ItemCodec {
+
+	private ItemCodec() {
+	}
+
+	/**
+	 * Writes the given item along with its state.
+	 */
+	static void writeItem(Item item, SnapshotOutput output) throws IOException {
+		output.writeEnum(item.getType());
+		output.writeEnum(item.getPoisonStrength());
+		output.writeVarInt(item.getCurseStrength());
+
+		if (item.isCursed()) {
+			output.writeBoolean(item.isCurseDetected());
+		}
+
+		if (item instanceof Potion) {
+			output.writeEnum(((Potion) item).getStrength());
+		} else if (item instanceof Scroll) {
+			final List<String> text = ((Scroll) item).getText();
+
+			output.writeVarInt(text.size());
+
+			for (String line : text) {
+				output.writeString(line);
+			}
+		} else if (item instanceof Torch) {
+			output.writeVarInt(((Torch) item).getLight());
+		} else if (item.getType() == Item.Type.WATER_SKIN) {
+			output.writeVarInt((item instanceof WaterSkin) ? ((WaterSkin) item).getDoses() : 0);
+		} else if (item instanceof Bones) {
+			final Champion champion = ((Bones) item).getChampion();
+
+			output.writeEnum((champion != null) ? DungeonSnapshot.getName(champion) : null);
+		} else if (item instanceof Chest) {
+			writeItems((Chest) item, output);
+		}
+	}
+
+	/**
+	 * Reads an item written by {@link #writeItem(Item, SnapshotOutput)}.
+	 */
+	static Item readItem(SnapshotInput input) throws IOException {
+		final Item.Type type = input.readEnum(Item.Type.class);
+
+		if (type == null) {
+			throw new StreamCorruptedException("Missing item type");
+		}
+
+		final PowerRune poisonStrength = input.readEnum(PowerRune.class);
+		final int curseStrength = input.readVarInt();
+		final boolean curseDetected = (curseStrength > 0) && input.readBoolean();
+
+		final Item item;
+
+		if (Item.Type.getPotionTypes().contains(type)) {
+			item = new Potion(type, readPowerRune(input));
+		} else if (type == Item.Type.SCROLL) {
+			final int count = input.readVarInt();
+
+			if (count == 0) {
+				throw new StreamCorruptedException("Scroll without text");
+			}
+
+			final List<String> text = new ArrayList<String>(count);
+
+			for (int i = 0; i < count; i++) {
+				text.add(input.readString());
+			}
+
+			item = new Scroll(text);
+		} else if (type == Item.Type.TORCH) {
+			final Torch torch = new Torch();
+
+			torch.restoreLight(readValue(input, 0, Constants.MAX_LIGHT));
+
+			item = torch;
+		} else if (type == Item.Type.WATER_SKIN) {
+			final WaterSkin waterSkin = new WaterSkin();
+
+			waterSkin.restoreDoses(readValue(input, 0, 3));
+
+			item = waterSkin;
+		} else if (type == Item.Type.BONES) {
+			final Champion.Name name = input.readEnum(Champion.Name.class);
+
+			item = (name != null) ? new Bones(getChampion(input.getParty(), name)) : new Bones();
+		} else if (type == Item.Type.CHEST) {
+			final Chest chest = new Chest();
+
+			readItems(chest, input);
+
+			item = chest;
+		} else {
+			item = ItemFactory.getFactory().newItem(type);
+		}
+
+		item.setPoisonStrength(poisonStrength);
+		item.restoreCurse(curseStrength, curseDetected);
+
+		return item;
+	}
+
+	/**
+	 * Writes the items in the given container along with their index.
+	 */
+	static void writeItems(ItemContainer container, SnapshotOutput output) throws IOException {
+		output.writeVarInt(container.getItemCount());
+
+		for (int i = 0; i < container.getCapacity(); i++) {
+			final Item item = container.get(i);
+
+			if (item != null) {
+				output.writeVarInt(i);
+
+				writeItem(item, output);
+			}
+		}
+	}
+
+	/**
+	 * Reads the items written by
+	 * {@link #writeItems(ItemContainer, SnapshotOutput)} and puts them back
+	 * into the given container.
+	 */
+	static void readItems(ItemContainer container, SnapshotInput input) throws IOException {
+		final int count = input.readVarInt();
+
+		for (int i = 0; i < count; i++) {
+			final int index = readValue(input, 0, container.getCapacity() - 1);
+			final Item item = readItem(input);
+
+			container.set(index, item);
+
+			if (container.get(index) != item) {
+				throw new StreamCorruptedException("The container rejected " + item + " at index " + index);
+			}
+		}
+	}
+
+	private static PowerRune readPowerRune(SnapshotInput input) throws IOException {
+		final PowerRune rune = input.readEnum(PowerRune.class);
+
+		if (rune == null) {
+			throw new StreamCorruptedException("Missing potion strength");
+		}
+
+		return rune;
+	}
+
+	private static int readValue(SnapshotInput input, int min, int max) throws IOException {
+		final int value = input.readVarInt();
+
+		if ((value < min) || (value > max)) {
+			throw new StreamCorruptedException(String.format("Value %d out of range [%d,%d]", value, min, max));
+		}
+
+		return value;
+	}
+
+	/**
+	 * Returns the champion of the given party with the given name. When the
+	 * champion isn't (yet) in the party, the bones refer to a new champion.
+	 */
+	private static Champion getChampion(Party party, Champion.Name name) throws IOException {
+		if (party != null) {
+			for (Champion champion : party.getChampions(true)) {
+				if (name.equals(DungeonSnapshot.getName(champion))) {
+					return champion;
+				}
+			}
+		}
+
+		return ChampionFactory.getFactory().newChampion(name);
+	}
+}
@@ -0,0 +1,642 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.event.ChangeEvent;
+import fr.ritaly.dungeonmaster.event.ChangeListener;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.stat.Stat;
+import fr.ritaly.dungeonmaster.stat.StatListener;
+import fr.ritaly.dungeonmaster.stat.Stats;
+
+/**
+ * Append-only journal of the mutations of a {@link Dungeon} since its last
+ * snapshot (see {@link DungeonSnapshot}). Once attached to a dungeon (see
+ * {@link Dungeon#setJournal(Journal)}), the journal records the moves of the
+ * party, the changes of the champions' stats, the items dropped on / picked
+ * from the floor, the creatures entering / leaving an element and the state
+ * changes of the doors, pits and retractable walls as compact binary records
+ * (same encoding as the snapshots). Replaying the journal on top of the
+ * snapshot it follows restores the dungeon as it was when the last record was
+ * written (see {@link #replay(Dungeon, InputStream)}).
+ * <p>
+ * The records are buffered. Call {@link #flush()} to push them to the
+ * underlying stream. An I/O error while recording a mutation disables the
+ * journal and is rethrown by the next call to {@link #flush()} or
+ * {@link #close()}.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class Journal {
+
+	/**
+	 * The magic number at the start of a journal ("DMJL").
+	 */
+	private static final int MAGIC = 0x444D4A4C;
+
+	/**
+	 * The version of the journal format.
+	 */
+	public static final int VERSION = 2;
+
+	private static final int TAG_PARTY = 0;
+
+	private static final int TAG_STAT = 1;
+
+	private static final int TAG_ITEM_ADDED = 2;
+
+	private static final int TAG_ITEM_REMOVED = 3;
+
+	private static final int TAG_CREATURE_ADDED = 4;
+
+	private static final int TAG_CREATURE_REMOVED = 5;
+
+	private static final int TAG_DOOR = 6;
+
+	private static final int TAG_PIT = 7;
+
+	private static final int TAG_RETRACTABLE_WALL = 8;
+
+	private static final Log log = LogFactory.getLog(Journal.class);
+
+	private final SnapshotOutput output;
+
+	/**
+	 * The number of records written so far.
+	 */
+	private int count;
+
+	/**
+	 * The error which disabled the journal (if any).
+	 */
+	private IOException failure;
+
+	private boolean closed;
+
+	/**
+	 * The party whose champions are watched. Can be null.
+	 */
+	private Party party;
+
+	/**
+	 * The champions whose stats are watched.
+	 */
+	private final Set<Champion> champions = new HashSet<Champion>();
+
+	/**
+	 * Listener recording the changes of the champions' stats.
+	 */
+	private final StatListener statListener = new StatListener() {
+		@Override
+		public void statChanged(Stats stats, Stats.Type type, int oldValue, int newValue) {
+			Journal.this.statChanged(stats.getChampion(), stats.getStat(type));
+		}
+
+		@Override
+		public void statMaxChanged(Stats stats, Stats.Type type, int oldMax, int newMax) {
+			Journal.this.statChanged(stats.getChampion(), stats.getStat(type));
+		}
+	};
+
+	/**
+	 * Listener watching the champions joining / leaving the party.
+	 */
+	private final ChangeListener partyListener = new ChangeListener() {
+		@Override
+		public void onChangeEvent(ChangeEvent event) {
+			watchChampions();
+		}
+	};
+
+	/**
+	 * Creates a new journal writing its records to the given stream.
+	 *
+	 * @param stream
+	 *            the stream to write to. Can't be null.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public Journal(OutputStream stream) throws IOException {
+		this.output = new SnapshotOutput(stream);
+
+		output.writeInt(MAGIC);
+		output.writeVarInt(VERSION);
+		output.flush();
+	}
+
+	/**
+	 * Returns the number of records written so far.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public synchronized int getRecordCount() {
+		return count;
+	}
+
+	/**
+	 * Pushes the buffered records to the underlying stream.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs or if the journal was disabled by an
+	 *             earlier error.
+	 */
+	public synchronized void flush() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (!closed) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * Flushes and closes this journal. The mutations occurring after this call
+	 * aren't recorded anymore.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs or if the journal was disabled by an
+	 *             earlier error.
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		setParty(null);
+
+		try {
+			flush();
+		} finally {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Sets the party whose champions' stats are recorded.
+	 */
+	synchronized void setParty(Party party) {
+		if (this.party == party) {
+			return;
+		}
+
+		if (this.party != null) {
+			this.party.removeChangeListener(partyListener);
+		}
+
+		this.party = party;
+
+		if (party != null) {
+			party.addChangeListener(partyListener);
+		}
+
+		watchChampions();
+	}
+
+	/**
+	 * Listens to the stats of the party's champions (and stops listening to
+	 * the champions who left the party).
+	 */
+	private synchronized void watchChampions() {
+		final Set<Champion> members = new HashSet<Champion>();
+
+		if (party != null) {
+			members.addAll(party.getChampions(true));
+		}
+
+		for (Iterator<Champion> it = champions.iterator(); it.hasNext();) {
+			final Champion champion = it.next();
+
+			if (!members.contains(champion)) {
+				champion.getStats().removeStatListener(statListener);
+
+				it.remove();
+			}
+		}
+
+		for (Champion champion : members) {
+			if (champions.add(champion)) {
+				champion.getStats().addStatListener(statListener);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether this journal can still record mutations.
+	 */
+	private boolean isRecording() {
+		return !closed && (failure == null);
+	}
+
+	/**
+	 * Disables this journal after the given error.
+	 */
+	private void fail(IOException e) {
+		log.error("Unable to write journal record, journaling disabled", e);
+
+		this.failure = e;
+	}
+
+	synchronized void partyMoved(Party party) {
+		if (!isRecording()) {
+			return;
+		}
+
+		try {
+			output.writeVarInt(TAG_PARTY);
+
+			ElementCodec.writePosition(party.getPosition(), output);
+
+			output.writeEnum(party.getLookDirection());
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	synchronized void statChanged(Champion champion, Stat stat) {
+		if (!isRecording()) {
+			return;
+		}
+
+		try {
+			output.writeVarInt(TAG_STAT);
+			output.writeEnum(DungeonSnapshot.getName(champion));
+			output.writeString(stat.getName());
+			output.writeSignedVarInt(stat.baseMaxValue());
+			output.writeSignedVarInt(stat.baseValue());
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	synchronized void itemAdded(Element element, Item item, Sector sector) {
+		writeItem(TAG_ITEM_ADDED, element, item, sector);
+	}
+
+	synchronized void itemRemoved(Element element, Item item, Sector sector) {
+		writeItem(TAG_ITEM_REMOVED, element, item, sector);
+	}
+
+	private void writeItem(int tag, Element element, Item item, Sector sector) {
+		if (!isRecording()) {
+			return;
+		}
+
+		try {
+			output.writeVarInt(tag);
+
+			ElementCodec.writePosition(element.getPosition(), output);
+
+			output.writeEnum(sector);
+
+			if (tag == TAG_ITEM_ADDED) {
+				// The item dropped is written with its state
+				ItemCodec.writeItem(item, output);
+			} else {
+				output.writeEnum(item.getType());
+			}
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	synchronized void creatureAdded(Element element, Creature creature) {
+		if (!isRecording()) {
+			return;
+		}
+
+		try {
+			output.writeVarInt(TAG_CREATURE_ADDED);
+
+			ElementCodec.writePosition(element.getPosition(), output);
+
+			DungeonSnapshot.writeCreature(element, creature, output);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records the given creature left the given element.
+	 *
+	 * @param sectors
+	 *            the sectors occupied by the creature before it left the
+	 *            element (see
+	 *            {@link DungeonSnapshot#getSectors(Element, Creature)}).
+	 */
+	synchronized void creatureRemoved(Element element, Creature creature, int sectors) {
+		if (!isRecording()) {
+			return;
+		}
+
+		try {
+			output.writeVarInt(TAG_CREATURE_REMOVED);
+
+			ElementCodec.writePosition(element.getPosition(), output);
+
+			output.writeEnum(creature.getType());
+			output.writeVarInt(sectors);
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records the state of the given element (if it's a door, a pit or a
+	 * retractable wall).
+	 */
+	synchronized void elementChanged(Element element) {
+		if (!isRecording()) {
+			return;
+		}
+
+		try {
+			if (element instanceof Door) {
+				final Door door = (Door) element;
+
+				output.writeVarInt(TAG_DOOR);
+
+				ElementCodec.writePosition(element.getPosition(), output);
+
+				output.writeEnum(door.getState());
+				output.writeEnum(door.getMotion());
+			} else if (element instanceof Pit) {
+				output.writeVarInt(TAG_PIT);
+
+				ElementCodec.writePosition(element.getPosition(), output);
+
+				output.writeBoolean(((Pit) element).isOpen());
+			} else if (element instanceof RetractableWall) {
+				output.writeVarInt(TAG_RETRACTABLE_WALL);
+
+				ElementCodec.writePosition(element.getPosition(), output);
+
+				output.writeBoolean(((RetractableWall) element).isOpen());
+			} else {
+				return;
+			}
+
+			count++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Replays the records of the journal read from the given stream on the
+	 * given dungeon (which must have been restored from the snapshot preceding
+	 * the journal). A record truncated by a crash ends the replay.
+	 *
+	 * @param dungeon
+	 *            the dungeon to update. Can't be null. Must not have a journal
+	 *            attached.
+	 * @param stream
+	 *            the stream to read from. Can't be null.
+	 * @return the number of records replayed.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the journal is invalid.
+	 */
+	public static int replay(Dungeon dungeon, InputStream stream) throws IOException {
+		Validate.notNull(dungeon, "The given dungeon is null");
+		if (dungeon.getJournal() != null) {
+			throw new IllegalStateException("The dungeon has a journal attached");
+		}
+
+		final long start = System.nanoTime();
+
+		final SnapshotInput input = new SnapshotInput(stream);
+
+		if (input.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Not a dungeon journal");
+		}
+
+		final int version = input.readVarInt();
+
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported journal version %d (expected: %d)", version, VERSION));
+		}
+
+		// The bones dropped refer to the champions of the party
+		input.setParty(dungeon.getParty());
+
+		int count = 0;
+
+		while (true) {
+			final int tag;
+
+			try {
+				tag = input.readVarInt();
+			} catch (EOFException e) {
+				// End of the journal
+				break;
+			}
+
+			try {
+				replay(dungeon, tag, input);
+			} catch (EOFException e) {
+				// The last record was only partially written
+				if (log.isWarnEnabled()) {
+					log.warn("Ignoring truncated journal record #" + count);
+				}
+
+				break;
+			}
+
+			count++;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Replayed %d journal record(s) in %d ms", count,
+					(System.nanoTime() - start) / 1000000));
+		}
+
+		return count;
+	}
+
+	private static void replay(Dungeon dungeon, int tag, SnapshotInput input) throws IOException {
+		switch (tag) {
+		case TAG_PARTY: {
+			final Position position = ElementCodec.readPosition(input);
+			final Direction direction = input.readEnum(Direction.class);
+
+			dungeon.placeParty(position, direction);
+			break;
+		}
+		case TAG_STAT: {
+			final Champion.Name name = input.readEnum(Champion.Name.class);
+			final String property = input.readString();
+			final int maxValue = input.readSignedVarInt();
+			final int value = input.readSignedVarInt();
+
+			final Stat stat = getChampion(dungeon, name).getStats().getStat(property);
+
+			stat.baseMaxValue(maxValue);
+			stat.baseValue(value);
+			break;
+		}
+		case TAG_ITEM_ADDED: {
+			final Element element = getElement(dungeon, input);
+			final Sector sector = input.readEnum(Sector.class);
+
+			element.addItem(ItemCodec.readItem(input), sector);
+			break;
+		}
+		case TAG_ITEM_REMOVED: {
+			final Element element = getElement(dungeon, input);
+			final Sector sector = input.readEnum(Sector.class);
+			final Item.Type type = input.readEnum(Item.Type.class);
+
+			final List<Item> items = element.getItems(sector);
+
+			// The items are always picked from the top of the sector's stack
+			if (items.isEmpty() || (items.get(items.size() - 1).getType() != type)) {
+				throw new StreamCorruptedException("No " + type + " to remove at " + element.getPosition() + ", "
+						+ sector);
+			}
+
+			element.removeItem(sector);
+			break;
+		}
+		case TAG_CREATURE_ADDED: {
+			DungeonSnapshot.readCreature(getElement(dungeon, input), input);
+			break;
+		}
+		case TAG_CREATURE_REMOVED: {
+			final Element element = getElement(dungeon, input);
+			final Creature.Type type = input.readEnum(Creature.Type.class);
+			final int sectors = input.readVarInt();
+
+			Creature removed = null;
+
+			for (Creature creature : element.getCreatures()) {
+				if ((creature.getType() == type) && (DungeonSnapshot.getSectors(element, creature) == sectors)) {
+					removed = creature;
+					break;
+				}
+			}
+
+			if (removed == null) {
+				throw new StreamCorruptedException("No " + type + " to remove at " + element.getPosition());
+			}
+
+			element.removeCreature(removed);
+			break;
+		}
+		case TAG_DOOR: {
+			final Door door = getElement(dungeon, input, Door.class);
+
+			door.restore(input.readEnum(Door.State.class), input.readEnum(Door.Motion.class));
+			break;
+		}
+		case TAG_PIT: {
+			final Pit pit = getElement(dungeon, input, Pit.class);
+
+			if (input.readBoolean()) {
+				pit.open();
+			} else {
+				pit.close();
+			}
+			break;
+		}
+		case TAG_RETRACTABLE_WALL: {
+			final RetractableWall wall = getElement(dungeon, input, RetractableWall.class);
+
+			if (input.readBoolean()) {
+				wall.open();
+			} else {
+				wall.close();
+			}
+			break;
+		}
+		default:
+			throw new StreamCorruptedException("Unknown journal record " + tag);
+		}
+	}
+
+	static Element getElement(Dungeon dungeon, SnapshotInput input) throws IOException {
+		final Position position = ElementCodec.readPosition(input);
+
+		if (position == null) {
+			throw new StreamCorruptedException("Missing element position");
+		}
+
+		final Level level = dungeon.getLevel(position.z);
+
+		if ((level == null) || !level.contains(position)) {
+			throw new StreamCorruptedException("Invalid element position " + position);
+		}
+
+		return level.getElement(position.x, position.y);
+	}
+
+	private static <T extends Element> T getElement(Dungeon dungeon, SnapshotInput input, Class<T> clazz)
+			throws IOException {
+
+		final Element element = getElement(dungeon, input);
+
+		if (!clazz.isInstance(element)) {
+			throw new StreamCorruptedException("Expected a " + clazz.getSimpleName() + " at " + element.getPosition()
+					+ " [actual=" + element.getType() + "]");
+		}
+
+		return clazz.cast(element);
+	}
+
+	private static Champion getChampion(Dungeon dungeon, Champion.Name name) throws IOException {
+		if (dungeon.hasParty()) {
+			for (Champion champion : dungeon.getParty().getChampions(true)) {
+				if (name.equals(DungeonSnapshot.getName(champion))) {
+					return champion;
+				}
+			}
+		}
+
+		throw new StreamCorruptedException("No champion " + name + " in the party");
+	}
+}
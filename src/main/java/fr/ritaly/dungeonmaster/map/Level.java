@@ -19,6 +19,7 @@
 package fr.ritaly.dungeonmaster.map;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang.Validate;
@@ -28,8 +29,16 @@ import org.apache.commons.logging.LogFactory;
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
 import fr.ritaly.dungeonmaster.Constants;
+import fr.ritaly.dungeonmaster.Offsets;
 import fr.ritaly.dungeonmaster.Position;
 import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.ai.FieldOfView;
+import fr.ritaly.dungeonmaster.ai.FlowField;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.ai.NoiseMap;
+import fr.ritaly.dungeonmaster.ai.astar.HierarchicalPathFinder;
+import fr.ritaly.dungeonmaster.event.ChangeEvent;
+import fr.ritaly.dungeonmaster.event.ChangeListener;
 import fr.ritaly.dungeonmaster.map.Element.Type;
 import fr.ritaly.dungeonmaster.projectile.Projectile;
 
@@ -38,6 +47,45 @@ import fr.ritaly.dungeonmaster.projectile.Projectile;
  */
 public class Level {
 
+	/**
+	 * Enumerates the plain elements (walls and floor tiles) created lazily by
+	 * the level.
+	 */
+	private static enum Placeholder {
+		WALL(ElementFactory.WALL_FACTORY),
+		FLOOR(ElementFactory.FLOOR_FACTORY);
+
+		/**
+		 * The factory used for materializing the element.
+		 */
+		private final ElementFactory factory;
+
+		/**
+		 * The flags (see {@link CellMap}) of the plain element.
+		 */
+		private final byte flags;
+
+		private final String symbol;
+
+		private Placeholder(ElementFactory factory) {
+			final Element element = factory.createElement();
+
+			this.factory = factory;
+			this.flags = CellMap.getFlags(element);
+			this.symbol = Type.FLOOR.equals(element.getType()) ? " " : element.getSymbol();
+		}
+
+		private static Placeholder get(ElementFactory factory) {
+			for (Placeholder placeholder : values()) {
+				if (placeholder.factory == factory) {
+					return placeholder;
+				}
+			}
+
+			return null;
+		}
+	}
+
 	private final Log log = LogFactory.getLog(Level.class);
 
 	/**
@@ -60,6 +108,16 @@ public class Level {
 	 */
 	private final Element[][] elements;
 
+	/**
+	 * The plain elements (walls and floor tiles) not materialized yet indexed
+	 * by <code>y * width + x</code>. The value is the ordinal of the
+	 * {@link Placeholder} plus one or zero if the element is materialized (or
+	 * missing). A plain element is only created when first requested (see
+	 * {@link #getElement(int, int)}) so that the walls and floor tiles nobody
+	 * ever looks at don't cost a full {@link Element}.
+	 */
+	private final byte[] placeholders;
+
 	/**
 	 * The dungeon this level is bound to.
 	 */
@@ -77,6 +135,56 @@ public class Level {
 	 */
 	private int ambientLight;
 
+	/**
+	 * The flow fields towards the party indexed by materiality (see
+	 * {@link Materiality#ordinal()}). Created lazily.
+	 */
+	private final FlowField[] flowFields = new FlowField[Materiality.values().length];
+
+	/**
+	 * The field of view of this level. Created lazily.
+	 */
+	private FieldOfView fieldOfView;
+
+	/**
+	 * The map of the noises made by the party on this level. Created lazily.
+	 */
+	private NoiseMap noiseMap;
+
+	/**
+	 * The index of the creatures, projectiles and items located on this level.
+	 */
+	private final SpatialIndex spatialIndex;
+
+	/**
+	 * The flags of the elements of this level.
+	 */
+	private final CellMap cellMap;
+
+	/**
+	 * Listener notified when an element whose traversability can change (door,
+	 * pit, teleporter, etc) changes. Used for invalidating the flow fields, the
+	 * field of view, the noise map and the dungeon's path finders and for
+	 * journaling the element's new state.
+	 */
+	private final ChangeListener elementListener = new ChangeListener() {
+		@Override
+		public void onChangeEvent(ChangeEvent event) {
+			final Element element = (Element) event.getSource();
+			final Position position = element.getPosition();
+
+			if (position != null) {
+				elementChanged(position.x, position.y);
+
+				final Journal journal = dungeon.getJournal();
+
+				if (journal != null) {
+					journal.elementChanged(element);
+				}
+			}
+		}
+	};
+
 	public Level(Dungeon dungeon, int number, int height, int width) {
 		Validate.notNull(dungeon, "The given dungeon is null");
 		Validate.isTrue(number > 0, String.format("The given level number %d must be positive", number));
@@ -88,6 +196,9 @@ public class Level {
 		this.height = height;
 		this.width = width;
 		this.elements = new Element[width][height];
+		this.placeholders = new byte[width * height];
+		this.spatialIndex = new SpatialIndex(this);
+		this.cellMap = new CellMap(this);
 
 		init();
 	}
@@ -120,9 +231,37 @@ public class Level {
 					removed.setPosition(null);
 
 					elements[x][y] = null;
+
+					if (isDynamic(removed)) {
+						removed.removeChangeListener(elementListener);
+					}
 				}
 			}
 		}
+
+		Arrays.fill(placeholders, (byte) 0);
+
+		// The flow fields, the field of view and the noise map are now
+		// meaningless
+		Arrays.fill(flowFields, null);
+
+		fieldOfView = null;
+		noiseMap = null;
+
+		spatialIndex.clear();
+		cellMap.clear();
+
+		dungeon.invalidatePathFinders();
+	}
+
+	/**
+	 * Tells whether the level must listen to the given element because its
+	 * traversability can change (see {@link FlowField#isDynamic(Element)}) or
+	 * because it can be enabled or disabled (see
+	 * {@link HierarchicalPathFinder#isDynamic(Element)}).
+	 */
+	private static boolean isDynamic(Element element) {
+		return FlowField.isDynamic(element) || HierarchicalPathFinder.isDynamic(element);
 	}
 
 	/**
@@ -135,6 +274,8 @@ public class Level {
 	public void fill(ElementFactory factory) {
 		Validate.notNull(factory, "The given element factory is null");
 
+		final Placeholder placeholder = Placeholder.get(factory);
+
 		for (int x = 0; x < width; x++) {
 			final boolean borderX = (x == 0) || (x == width - 1);
 
@@ -142,7 +283,11 @@ public class Level {
 				final boolean borderY = (y == 0) || (y == height - 1);
 
 				if (!borderX && !borderY) {
-					setElement(x, y, factory.createElement());
+					if (placeholder != null) {
+						setPlaceholder(x, y, placeholder);
+					} else {
+						setElement(x, y, factory.createElement());
+					}
 				}
 			}
 		}
@@ -163,6 +308,8 @@ public class Level {
 	public void surround(ElementFactory factory) {
 		Validate.notNull(factory, "The given element factory is null");
 
+		final Placeholder placeholder = Placeholder.get(factory);
+
 		for (int x = 0; x < width; x++) {
 			final boolean borderX = (x == 0) || (x == width - 1);
 
@@ -170,7 +317,11 @@ public class Level {
 				final boolean borderY = (y == 0) || (y == height - 1);
 
 				if (borderX || borderY) {
-					setElement(x, y, factory.createElement());
+					if (placeholder != null) {
+						setPlaceholder(x, y, placeholder);
+					} else {
+						setElement(x, y, factory.createElement());
+					}
 				}
 			}
 		}
@@ -210,16 +361,78 @@ public class Level {
 			checkX(x);
 			checkY(y);
 
-			return elements[x][y];
+			return materialize(x, y);
 		} else {
 			if ((x >= 0) && (x <= width - 1) && (y >= 0) && (y <= height - 1)) {
-				return elements[x][y];
+				return materialize(x, y);
 			}
 
 			return null;
 		}
 	}
 
+	/**
+	 * Returns the element located at the given position and creates it first
+	 * if it's a plain element not materialized yet.
+	 */
+	private Element materialize(int x, int y) {
+		final Element element = elements[x][y];
+
+		if (element != null) {
+			return element;
+		}
+
+		final int node = (y * width) + x;
+
+		if (placeholders[node] == 0) {
+			// Missing element
+			return null;
+		}
+
+		final Element created = Placeholder.values()[placeholders[node] - 1].factory.createElement();
+
+		// Walls and floor tiles aren't dynamic nor clock listeners and the
+		// flags of the position don't change
+		created.setLevel(this);
+		created.setPosition(new Position(x, y, number));
+
+		elements[x][y] = created;
+		placeholders[node] = 0;
+
+		return created;
+	}
+
+	/**
+	 * Returns the element at the given position without creating it if it's a
+	 * plain element not materialized yet.
+	 *
+	 * @return the element found or null.
+	 */
+	Element peekElement(int x, int y) {
+		checkX(x);
+		checkY(y);
+
+		return elements[x][y];
+	}
+
+	/**
+	 * Tells whether the element at the given position has been created. A
+	 * plain wall or floor tile set by {@link #fill(ElementFactory)} or
+	 * {@link #surround(ElementFactory)} is only created when first requested.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @return whether the element at the given position exists as an object.
+	 */
+	public boolean isMaterialized(int x, int y) {
+		checkX(x);
+		checkY(y);
+
+		return (elements[x][y] != null);
+	}
+
 	public int getNumber() {
 		return number;
 	}
@@ -237,8 +450,95 @@ public class Level {
 		checkY(y);
 		Validate.notNull(element, "The given element is null");
 
+		detach(x, y);
+
+		// Attach the new element to this level
+		element.setLevel(this);
+		element.setPosition(new Position(x, y, number));
+
+		// Swap the elements
+		elements[x][y] = element;
+
+		// Index the occupants of the new element (this also discards the ones
+		// of the removed element)
+		spatialIndex.update(element);
+
+		if (element instanceof ClockListener) {
+			Clock.getInstance().register((ClockListener) element);
+		}
+
+		if (isDynamic(element)) {
+			// Listen to the element to invalidate the flow fields and the field
+			// of view when its traversability or opacity changes
+			element.addChangeListener(elementListener);
+		}
+
+		elementChanged(x, y);
+	}
+
+	/**
+	 * Returns the type of the plain element at the given position if it hasn't
+	 * been materialized yet.
+	 *
+	 * @return {@link Type#WALL}, {@link Type#FLOOR} or null if the element was
+	 *         materialized or is missing.
+	 */
+	Type getPlaceholderType(int x, int y) {
+		final int placeholder = placeholders[(y * width) + x];
+
+		return (placeholder != 0) ? Placeholder.values()[placeholder - 1].factory.getType() : null;
+	}
+
+	/**
+	 * Sets a plain element of the given type ({@link Type#WALL} or
+	 * {@link Type#FLOOR}) at the given position without creating it.
+	 */
+	void setPlaceholder(int x, int y, Type type) {
+		for (Placeholder placeholder : Placeholder.values()) {
+			if (placeholder.factory.getType().equals(type)) {
+				setPlaceholder(x, y, placeholder);
+
+				return;
+			}
+		}
+
+		throw new IllegalArgumentException("Unsupported placeholder type " + type);
+	}
+
+	/**
+	 * Removes the element at the given position (if any).
+	 */
+	void removeElement(int x, int y) {
+		detach(x, y);
+
+		spatialIndex.reset(x, y);
+
+		elementChanged(x, y);
+	}
+
+	/**
+	 * Sets a plain element at the given position. The element will only be
+	 * created when requested.
+	 */
+	private void setPlaceholder(int x, int y, Placeholder placeholder) {
+		detach(x, y);
+
+		placeholders[(y * width) + x] = (byte) (placeholder.ordinal() + 1);
+
+		// The position is now empty
+		spatialIndex.reset(x, y);
+
+		elementChanged(x, y);
+	}
+
+	/**
+	 * Detaches the element at the given position (if any) from this level.
+	 */
+	private void detach(int x, int y) {
 		final Element removed = elements[x][y];
 
+		placeholders[(y * width) + x] = 0;
+
 		if (removed != null) {
 			// Detach the element from its parent level
 			removed.setLevel(null);
@@ -247,20 +547,124 @@ public class Level {
 			elements[x][y] = null;
 
 			if (removed instanceof ClockListener) {
-				Clock.getInstance().unregister((ClockListener) element);
+				Clock.getInstance().unregister((ClockListener) removed);
+			}
+
+			if (isDynamic(removed)) {
+				removed.removeChangeListener(elementListener);
 			}
 		}
+	}
 
-		// Attach the new element to this level
-		element.setLevel(this);
-		element.setPosition(new Position(x, y, number));
+	private void elementChanged(int x, int y) {
+		// Update the flags first, the flow fields and the field of view read
+		// them
+		final int placeholder = placeholders[(y * width) + x];
 
-		// Swap the elements
-		elements[x][y] = element;
+		if (placeholder == 0) {
+			cellMap.update(x, y, CellMap.getFlags(elements[x][y]));
+		} else {
+			cellMap.update(x, y, Placeholder.values()[placeholder - 1].flags);
+		}
 
-		if (element instanceof ClockListener) {
-			Clock.getInstance().register((ClockListener) element);
+		for (FlowField flowField : flowFields) {
+			if (flowField != null) {
+				flowField.elementChanged(x, y);
+			}
+		}
+
+		if (fieldOfView != null) {
+			fieldOfView.elementChanged(x, y);
+		}
+		if (noiseMap != null) {
+			noiseMap.elementChanged(x, y);
+		}
+
+		dungeon.elementChanged(this, x, y);
+	}
+
+	/**
+	 * Returns the flow field (distance field) of this level for the given
+	 * materiality. The field is shared by all the creatures of this level
+	 * stalking the party.
+	 *
+	 * @param materiality
+	 *            the materiality of the creatures using the field. Can't be
+	 *            null.
+	 * @return a {@link FlowField}. Never returns null.
+	 */
+	public FlowField getFlowField(Materiality materiality) {
+		Validate.notNull(materiality, "The given materiality is null");
+
+		FlowField flowField = flowFields[materiality.ordinal()];
+
+		if (flowField == null) {
+			flowField = new FlowField(this, materiality);
+
+			flowFields[materiality.ordinal()] = flowField;
+		}
+
+		return flowField;
+	}
+
+	/**
+	 * Returns the field of view of this level. The field is shared by the
+	 * creatures and the party located on this level.
+	 *
+	 * @return a {@link FieldOfView}. Never returns null.
+	 */
+	public FieldOfView getFieldOfView() {
+		if (fieldOfView == null) {
+			fieldOfView = new FieldOfView(this);
+		}
+
+		return fieldOfView;
+	}
+
+	/**
+	 * Returns the map of the noises made by the party on this level. The map
+	 * is shared by all the creatures of this level.
+	 *
+	 * @return a {@link NoiseMap}. Never returns null.
+	 */
+	public NoiseMap getNoiseMap() {
+		if (noiseMap == null) {
+			noiseMap = new NoiseMap(this);
 		}
+
+		return noiseMap;
+	}
+
+	/**
+	 * Returns the index of the creatures, projectiles and items located on
+	 * this level.
+	 *
+	 * @return a {@link SpatialIndex}. Never returns null.
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Returns the flags (concrete, traversable, opaque, etc) of the elements
+	 * of this level.
+	 *
+	 * @return a {@link CellMap}. Never returns null.
+	 */
+	public CellMap getCellMap() {
+		return cellMap;
+	}
+
+	/**
+	 * Notifies the level that the occupants (creatures, projectiles, items or
+	 * party) of the given element changed.
+	 *
+	 * @param element
+	 *            the element whose occupants changed. Can't be null.
+	 */
+	void occupantsChanged(Element element) {
+		spatialIndex.update(element);
+		cellMap.updateOccupancy(element);
 	}
 
 	public Dungeon getDungeon() {
@@ -322,27 +726,67 @@ public class Level {
 	 *             if the level isn't valid.
 	 */
 	public void validate() throws ValidationException {
+		final List<ValidationException> violations = new ArrayList<ValidationException>();
+
+		validate(violations);
+
+		if (!violations.isEmpty()) {
+			throw violations.get(0);
+		}
+	}
+
+	/**
+	 * Validates the level and collects all the violations found instead of
+	 * stopping on the first one. Only the elements of this level are created
+	 * (if needed) so distinct levels can be validated in parallel.
+	 *
+	 * @param violations
+	 *            the list where to add the violations found. Can't be null.
+	 */
+	public void validate(List<ValidationException> violations) {
+		Validate.notNull(violations, "The given list of violations is null");
+
 		for (int x = 0; x < width; x++) {
 			final boolean borderX = (x == 0) || (x == width - 1);
 
 			for (int y = 0; y < height; y++) {
 				final boolean borderY = (y == 0) || (y == height - 1);
 
+				final int placeholder = placeholders[(y * width) + x];
+
+				if (placeholder != 0) {
+					// Plain wall or floor tile, only check its concreteness
+					if ((borderX || borderY)
+							&& ((Placeholder.values()[placeholder - 1].flags & CellMap.CONCRETE) == 0)) {
+						violations.add(new ValidationException("The element at [" + x + "," + y
+								+ "] must be concrete"));
+					}
+
+					continue;
+				}
+
 				final Element element = elements[x][y];
 
 				if (element == null) {
 					// All elements should be set
-					throw new ValidationException("The element at [" + x + "," + y + "] isn't set");
+					violations.add(new ValidationException("The element at [" + x + "," + y + "] isn't set"));
+
+					continue;
 				}
 
 				if (borderX || borderY) {
 					// The border elements must be concrete (walls, not floor tiles)
 					if (!element.isConcrete()) {
-						throw new ValidationException("The element at [" + x + "," + y + "] must be concrete");
+						violations.add(new ValidationException("The element at [" + x + "," + y
+								+ "] must be concrete"));
 					}
 				}
 
-				element.validate();
+				try {
+					element.validate();
+				} catch (ValidationException e) {
+					violations.add(e);
+				}
 			}
 		}
 	}
@@ -394,13 +838,15 @@ public class Level {
 			builder.append("|");
 
 			for (int x = 0; x < width; x++) {
-				final Element element = getElement(x, y);
+				// Don't materialize the plain elements for rendering them
+				final Element element = elements[x][y];
+				final int placeholder = placeholders[(y * width) + x];
 
 				builder.append(" ");
 
 				final boolean drawn;
 
-				if (pathDefined) {
+				if (pathDefined && (element != null)) {
 					if (element.equals(start)) {
 						builder.append("S");
 
@@ -428,6 +874,8 @@ public class Level {
 						} else {
 							builder.append(element.getSymbol());
 						}
+					} else if (placeholder != 0) {
+						builder.append(Placeholder.values()[placeholder - 1].symbol);
 					} else {
 						builder.append("?");
 					}
@@ -456,13 +904,19 @@ public class Level {
 	 * @return a {@link List} of {@link Projectile}s. Never returns null.
 	 */
 	public List<Projectile> getProjectiles() {
-		final List<Projectile> projectiles = new ArrayList<Projectile>();
+		final List<Projectile> projectiles = new ArrayList<Projectile>(
+				spatialIndex.getCount(SpatialIndex.Kind.PROJECTILE));
 
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				projectiles.addAll(getElement(x, y).getProjectiles().values());
-			}
-		}
+		// Only visit the elements occupied by projectiles
+		spatialIndex.visitRectangle(SpatialIndex.Kind.PROJECTILE, 0, 0, width - 1, height - 1,
+				new ElementVisitor() {
+					@Override
+					public boolean visit(Element element) {
+						projectiles.addAll(element.getProjectiles().values());
+
+						return true;
+					}
+				});
 
 		return projectiles;
 	}
@@ -473,14 +927,49 @@ public class Level {
 	 * @return a {@link List} of {@link Creatures}s. Never returns null.
 	 */
 	public List<Creature> getCreatures() {
-		final List<Creature> creatures = new ArrayList<Creature>();
+		final List<Creature> creatures = new ArrayList<Creature>(spatialIndex.getCount(SpatialIndex.Kind.CREATURE));
 
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				creatures.addAll(getElement(x, y).getCreatures());
+		// Only visit the elements occupied by creatures
+		spatialIndex.visitRectangle(SpatialIndex.Kind.CREATURE, 0, 0, width - 1, height - 1, new ElementVisitor() {
+			@Override
+			public boolean visit(Element element) {
+				creatures.addAll(element.getCreatures());
+
+				return true;
 			}
+		});
+
+		return creatures;
+	}
+
+	/**
+	 * Returns the creatures located within the given radius from the given
+	 * position (the position included).
+	 *
+	 * @param position
+	 *            the center position. Can't be null.
+	 * @param radius
+	 *            the radius as a number of steps. Must be positive or zero.
+	 * @return a {@link List} of {@link Creatures}s. Never returns null.
+	 */
+	public List<Creature> getCreatures(Position position, int radius) {
+		Validate.notNull(position, "The given position is null");
+
+		final List<Creature> creatures = new ArrayList<Creature>();
+
+		if (position.z != number) {
+			return creatures;
 		}
 
+		spatialIndex.visitRadius(SpatialIndex.Kind.CREATURE, position.x, position.y, radius, new ElementVisitor() {
+			@Override
+			public boolean visit(Element element) {
+				creatures.addAll(element.getCreatures());
+
+				return true;
+			}
+		});
+
 		return creatures;
 	}
 
@@ -490,18 +979,69 @@ public class Level {
 	 * @return a number of creatures.
 	 */
 	public int getCreatureCount() {
-		int count = 0;
+		return spatialIndex.getCount(SpatialIndex.Kind.CREATURE);
+	}
+
+	/**
+	 * Returns the elements of this level already materialized (see
+	 * {@link #isMaterialized(int, int)}).
+	 *
+	 * @return a list of elements. Never returns null.
+	 */
+	List<Element> getMaterializedElements() {
+		final List<Element> list = new ArrayList<Element>();
 
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
-				count += getElement(x, y).getCreatureCount();
+				if (elements[x][y] != null) {
+					list.add(elements[x][y]);
+				}
 			}
 		}
 
-		return count;
+		return list;
 	}
 
-	// TODO Method to retrieve the projectiles on a level
+	/**
+	 * Stops the clock listeners of this level (elements, creatures and door
+	 * animations) before the level is evicted from memory (see
+	 * {@link LevelResidency}).
+	 */
+	void freeze() {
+		for (Creature creature : getCreatures()) {
+			Clock.getInstance().unregister(creature);
+		}
+
+		for (Element element : getMaterializedElements()) {
+			if (element instanceof ClockListener) {
+				Clock.getInstance().unregister((ClockListener) element);
+			}
+			if (element instanceof Door) {
+				((Door) element).freeze();
+			}
+		}
+	}
+
+	/**
+	 * Catches up with the given number of clock ticks elapsed while this level
+	 * was evicted from memory (see {@link LevelResidency}). The doors complete
+	 * the part of their animation which would have occurred in the meantime.
+	 * The other clock listeners (creatures, generators, teleporters) simply
+	 * resume where they stopped: a level hosting objects whose state depends
+	 * on the elapsed time (actuators, projectiles, etc) is never evicted.
+	 *
+	 * @param ticks
+	 *            the number of clock ticks elapsed. Must be positive or zero.
+	 */
+	void catchUp(int ticks) {
+		Validate.isTrue(ticks >= 0, String.format("The given number of ticks %d must be positive or zero", ticks));
+
+		for (Element element : getMaterializedElements()) {
+			if (element instanceof Door) {
+				((Door) element).fastForward(ticks);
+			}
+		}
+	}
 
 	/**
 	 * Returns the elements corresponding to the given positions.
@@ -530,4 +1070,40 @@ public class Level {
 
 		return result;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Visits the elements of this level located at the given offsets relative
+	 * to the given origin. The offsets falling outside the level are skipped.
+	 * Unlike {@link #getElements(List)}, this method doesn't allocate any
+	 * object.
+	 *
+	 * @param origin
+	 *            the position the offsets are relative to. Can't be null.
+	 * @param offsets
+	 *            the offsets of the elements to visit. Can't be null.
+	 * @param visitor
+	 *            the visitor to notify. Can't be null.
+	 * @return whether all the elements were visited, that is, false if the
+	 *         visitor interrupted the visit.
+	 */
+	public boolean visitElements(Position origin, Offsets offsets, ElementVisitor visitor) {
+		Validate.notNull(origin, "The given position is null");
+		Validate.notNull(offsets, "The given offsets are null");
+		Validate.notNull(visitor, "The given visitor is null");
+
+		if (origin.z != this.number) {
+			// Position located on another level, nothing to visit
+			return true;
+		}
+
+		for (int i = 0; i < offsets.size(); i++) {
+			final Element element = getElement(origin.x + offsets.getX(i), origin.y + offsets.getY(i), false);
+
+			if ((element != null) && !visitor.visit(element)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,422 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Position;
+
+/**
+ * Keeps in memory the levels of a {@link Dungeon} close to the party and
+ * evicts the other ones. An evicted level is serialized (see
+ * {@link DungeonSnapshot}) and its clock listeners (creatures, generators,
+ * door animations, etc) are stopped so that the memory used and the work done
+ * per clock tick depend on the levels around the party, not on the size of
+ * the dungeon. An evicted level is transparently reloaded when requested (see
+ * {@link Dungeon#getLevel(int)}) and catches up with the time elapsed while it
+ * was evicted (see {@link Level#catchUp(int)}).
+ * <p>
+ * The levels kept in memory are the party's level and the levels reachable
+ * from it through at most {@link #getRadius()} stairs, teleporters or pits
+ * (in either direction). The automatic eviction is disabled by default (see
+ * {@link #setEnabled(boolean)}). A level containing an element which can't be
+ * serialized, an element wired to an actuator (the actuators aren't
+ * serialized) or hosting transient objects registered with the clock
+ * (projectiles, poison clouds and flux cages) is never evicted.
+ * </p>
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class LevelResidency {
+
+	/**
+	 * A level evicted from memory.
+	 */
+	private static final class Frozen {
+
+		/**
+		 * The serialized level.
+		 */
+		private final byte[] bytes;
+
+		/**
+		 * The numbers of the levels reachable from this level.
+		 */
+		private final Set<Integer> exits;
+
+		/**
+		 * The clock tick when the level was evicted.
+		 */
+		private final int tick;
+
+		private Frozen(byte[] bytes, Set<Integer> exits, int tick) {
+			this.bytes = bytes;
+			this.exits = exits;
+			this.tick = tick;
+		}
+	}
+
+	private final Log log = LogFactory.getLog(LevelResidency.class);
+
+	private final Dungeon dungeon;
+
+	/**
+	 * The levels evicted from memory stored by level number.
+	 */
+	private final Map<Integer, Frozen> evicted = new HashMap<Integer, Frozen>();
+
+	/**
+	 * Whether the levels are automatically evicted / reloaded when the party
+	 * changes level.
+	 */
+	private boolean enabled;
+
+	/**
+	 * The maximal number of links (stairs, teleporters, pits) between the
+	 * party's level and the levels kept in memory.
+	 */
+	private int radius = 1;
+
+	LevelResidency(Dungeon dungeon) {
+		Validate.notNull(dungeon, "The given dungeon is null");
+
+		this.dungeon = dungeon;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the automatic eviction of the levels far from the
+	 * party. Enabling it immediately updates the levels in memory.
+	 *
+	 * @param enabled
+	 *            whether the automatic eviction is enabled.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+
+		if (enabled) {
+			update();
+		}
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+	public void setRadius(int radius) {
+		Validate.isTrue(radius >= 0, String.format("The given radius %d must be positive or zero", radius));
+
+		this.radius = radius;
+	}
+
+	/**
+	 * Tells whether the level with the given number is evicted from memory.
+	 *
+	 * @param number
+	 *            a level number.
+	 * @return whether the level is evicted from memory.
+	 */
+	public boolean isEvicted(int number) {
+		return evicted.containsKey(number);
+	}
+
+	/**
+	 * Returns the number of levels evicted from memory.
+	 *
+	 * @return a positive or zero integer.
+	 */
+	public int getEvictedCount() {
+		return evicted.size();
+	}
+
+	/**
+	 * Returns the numbers of the levels evicted from memory.
+	 */
+	Set<Integer> getEvictedNumbers() {
+		return Collections.unmodifiableSet(evicted.keySet());
+	}
+
+	/**
+	 * Returns the serialized level with the given number if the level is
+	 * evicted from memory.
+	 *
+	 * @return an array of bytes or null if the level is resident.
+	 */
+	byte[] getBytes(int number) {
+		final Frozen frozen = evicted.get(number);
+
+		return (frozen != null) ? frozen.bytes : null;
+	}
+
+	/**
+	 * Forgets the serialized level with the given number (if any).
+	 */
+	void discard(int number) {
+		evicted.remove(number);
+	}
+
+	/**
+	 * Evicts the level with the given number from memory.
+	 *
+	 * @param number
+	 *            a level number.
+	 * @return whether the level was evicted. Returns false if the level isn't
+	 *         resident, hosts the party, hosts transient objects or can't be
+	 *         serialized.
+	 */
+	public boolean evict(int number) {
+		final Level level = dungeon.getResidentLevel(number);
+
+		if (level == null) {
+			return false;
+		}
+		if (dungeon.hasParty() && (dungeon.getParty().getPosition().z == number)) {
+			return false;
+		}
+		if (hasUnsavedObjects(level)) {
+			// The level is pinned in memory (until those objects vanish)
+			if (log.isDebugEnabled()) {
+				log.debug("Level " + number + " can't be evicted: it hosts actuators or transient objects");
+			}
+
+			return false;
+		}
+
+		final byte[] bytes;
+
+		try {
+			bytes = DungeonSnapshot.toBytes(level);
+		} catch (IOException e) {
+			// The level is pinned in memory
+			if (log.isDebugEnabled()) {
+				log.debug("Level " + number + " can't be evicted: " + e.getMessage());
+			}
+
+			return false;
+		}
+
+		level.freeze();
+
+		dungeon.removeResidentLevel(number);
+
+		evicted.put(number, new Frozen(bytes, getExits(level), Clock.getInstance().getTickId()));
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Evicted level %d (%d bytes)", number, bytes.length));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tells whether the given level hosts objects which aren't serialized: the
+	 * actuators wired to its elements and the transient objects animated by
+	 * the clock (projectiles, poison clouds, flux cages).
+	 */
+	private static boolean hasUnsavedObjects(Level level) {
+		for (Element element : level.getMaterializedElements()) {
+			if (element.hasProjectiles() || element.hasPoisonClouds() || element.hasFluxCage()
+					|| ElementCodec.hasActuator(element)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reloads the evicted level with the given number.
+	 *
+	 * @param number
+	 *            the number of an evicted level.
+	 * @return the reloaded level. Never returns null.
+	 */
+	Level load(int number) {
+		final Frozen frozen = evicted.remove(number);
+
+		if (frozen == null) {
+			throw new IllegalArgumentException("The level " + number + " isn't evicted");
+		}
+
+		final Level level;
+
+		try {
+			level = DungeonSnapshot.fromBytes(dungeon, frozen.bytes);
+		} catch (IOException e) {
+			// Not supposed to happen, the bytes were written by this class
+			throw new IllegalStateException("Unable to reload level " + number, e);
+		}
+
+		final int elapsed = Clock.getInstance().getTickId() - frozen.tick;
+
+		level.catchUp(Math.max(0, elapsed));
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Reloaded level %d (%d ticks elapsed)", number, elapsed));
+		}
+
+		return level;
+	}
+
+	/**
+	 * Returns the numbers of the levels reachable from the given level through
+	 * its stairs, teleporters and pits.
+	 */
+	static Set<Integer> getExits(Level level) {
+		final Set<Integer> exits = new HashSet<Integer>();
+
+		for (Element element : level.getMaterializedElements()) {
+			final Position destination;
+
+			if (element instanceof Stairs) {
+				destination = ((Stairs) element).getDestination();
+			} else if (element instanceof Teleporter) {
+				destination = ((Teleporter) element).getDestination();
+			} else if ((element instanceof Pit) && ((Pit) element).isReal()) {
+				exits.add(level.getNumber() + 1);
+
+				continue;
+			} else {
+				continue;
+			}
+
+			if (destination != null) {
+				exits.add(destination.z);
+			}
+		}
+
+		exits.remove(level.getNumber());
+
+		return exits;
+	}
+
+	/**
+	 * Returns the numbers of the levels within the radius of the given level.
+	 *
+	 * @param number
+	 *            a level number.
+	 * @return a set of level numbers including the given one. Never returns
+	 *         null.
+	 */
+	public Set<Integer> getNeighbourhood(int number) {
+		// The links between levels, in both directions
+		final Map<Integer, Set<Integer>> links = new HashMap<Integer, Set<Integer>>();
+
+		for (Level level : dungeon.getResidentLevels()) {
+			link(links, level.getNumber(), getExits(level));
+		}
+		for (Map.Entry<Integer, Frozen> entry : evicted.entrySet()) {
+			link(links, entry.getKey(), entry.getValue().exits);
+		}
+
+		// Breadth-first search from the given level
+		final Set<Integer> result = new HashSet<Integer>();
+		result.add(number);
+
+		List<Integer> frontier = Collections.singletonList(number);
+
+		for (int depth = 0; (depth < radius) && !frontier.isEmpty(); depth++) {
+			final List<Integer> next = new LinkedList<Integer>();
+
+			for (Integer level : frontier) {
+				final Set<Integer> neighbours = links.get(level);
+
+				if (neighbours == null) {
+					continue;
+				}
+
+				for (Integer neighbour : neighbours) {
+					if (result.add(neighbour)) {
+						next.add(neighbour);
+					}
+				}
+			}
+
+			frontier = next;
+		}
+
+		return result;
+	}
+
+	private static void link(Map<Integer, Set<Integer>> links, Integer level, Set<Integer> exits) {
+		for (Integer exit : exits) {
+			getLinks(links, level).add(exit);
+			getLinks(links, exit).add(level);
+		}
+	}
+
+	private static Set<Integer> getLinks(Map<Integer, Set<Integer>> links, Integer level) {
+		Set<Integer> set = links.get(level);
+
+		if (set == null) {
+			links.put(level, set = new HashSet<Integer>());
+		}
+
+		return set;
+	}
+
+	/**
+	 * Notifies this object that the party moved to another level.
+	 */
+	void partyChangedLevel() {
+		if (enabled) {
+			update();
+		}
+	}
+
+	/**
+	 * Evicts the levels outside the party's neighbourhood and reloads the
+	 * evicted levels inside it. Does nothing if there's no party.
+	 */
+	public void update() {
+		if (!dungeon.hasParty()) {
+			return;
+		}
+
+		final Set<Integer> neighbourhood = getNeighbourhood(dungeon.getParty().getPosition().z);
+
+		for (Level level : new ArrayList<Level>(dungeon.getResidentLevels())) {
+			if (!neighbourhood.contains(level.getNumber())) {
+				evict(level.getNumber());
+			}
+		}
+
+		for (Integer number : neighbourhood) {
+			if (isEvicted(number.intValue())) {
+				load(number.intValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.IOException;
+
+/**
+ * Exception raised by a {@link DungeonReader} when the map being read is
+ * malformed. The exception carries the position (line and column) of the
+ * offending token.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public class MapFormatException extends IOException {
+
+	private static final long serialVersionUID = 4719276381254170183L;
+
+	/**
+	 * The number of the line where the error was detected (starting at 1).
+	 */
+	private final int line;
+
+	/**
+	 * The number of the column where the error was detected (starting at 1).
+	 */
+	private final int column;
+
+	public MapFormatException(String message, int line, int column) {
+		super(String.format("Line %d, column %d: %s", line, column, message));
+
+		this.line = line;
+		this.column = column;
+	}
+
+	public MapFormatException(String message, int line, int column, Throwable cause) {
+		super(String.format("Line %d, column %d: %s", line, column, message), cause);
+
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * Returns the number of the line where the error was detected.
+	 *
+	 * @return a positive integer.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Returns the number of the column where the error was detected.
+	 *
+	 * @return a positive integer.
+	 */
+	public int getColumn() {
+		return column;
+	}
+}
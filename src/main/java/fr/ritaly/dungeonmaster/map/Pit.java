@@ -24,8 +24,9 @@ import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.Move;
 import fr.ritaly.dungeonmaster.Place;
 import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
 import fr.ritaly.dungeonmaster.Sector;
-import fr.ritaly.dungeonmaster.Utils;
 import fr.ritaly.dungeonmaster.actuator.TriggerAction;
 import fr.ritaly.dungeonmaster.actuator.Triggerable;
 import fr.ritaly.dungeonmaster.ai.Creature;
@@ -148,6 +149,8 @@ public class Pit extends FloorTile implements Triggerable {
 
 				// FIXME Handle the fall through several stacked pits
 
+				final RandomStream random = getRandom(RandomStreams.HAZARDS);
+
 				// Hurt the champions because of the fall
 				for (Champion champion : party.getChampions(false)) {
 					final Item boots = champion.getBody().getFeet().getItem();
@@ -156,10 +159,10 @@ public class Pit extends FloorTile implements Triggerable {
 
 					if (boots != null) {
 						// The boots protect the champion during the fall
-						damage = Utils.random(7, 21);
+						damage = random.nextInt(7, 21);
 					} else {
 						// No boots, the damage is worst
-						damage = Utils.random(10, 30);
+						damage = random.nextInt(10, 30);
 					}
 
 					champion.hit(damage);
@@ -168,12 +171,12 @@ public class Pit extends FloorTile implements Triggerable {
 						// Is the champion injured to the feet ?
 						if (boots != null) {
 							// Odds of being wounded: 25%
-							if (Utils.random(1, 4) > 3) {
+							if (random.nextInt(1, 4) > 3) {
 								champion.getBody().getFeet().wound();
 							}
 						} else {
 							// Odds of being wounded: 50%
-							if (Utils.random(1, 2) > 1) {
+							if (random.nextInt(1, 2) > 1) {
 								champion.getBody().getFeet().wound();
 							}
 						}
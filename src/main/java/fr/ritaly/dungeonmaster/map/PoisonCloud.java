@@ -27,11 +27,11 @@ import org.apache.commons.logging.LogFactory;
 
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
+import fr.ritaly.dungeonmaster.RandomStream;
+import fr.ritaly.dungeonmaster.RandomStreams;
 import fr.ritaly.dungeonmaster.Temporizer;
-import fr.ritaly.dungeonmaster.Utils;
 import fr.ritaly.dungeonmaster.ai.Creature;
 import fr.ritaly.dungeonmaster.champion.Champion;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
@@ -79,44 +79,51 @@ public class PoisonCloud implements ClockListener, ChangeEventSource {
 	}
 
 	private void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.fireChange(this);
+	}
+
+	/**
+	 * Starts animating the poison cloud. The poison cloud is animated every
+	 * second until its life time is exhausted.
+	 */
+	public void start() {
+		temporizer.start(this);
 	}
 
 	@Override
 	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			// The poison cloud attacks the champions and creatures inside
-			if (element.hasParty()) {
-				// Get all living champions
-				final List<Champion> champions = element.getParty().getChampions(false);
-
-				for (Champion champion : champions) {
-					// TODO Pass as a parameter the damage type
-					// TODO Take into account the strength of the poison
-					champion.hit(Utils.random(5, 20));
-				}
-			} else if (element.hasCreatures()) {
-				final Set<Creature> creatures = element.getCreatures();
-
-				for (Creature creature : creatures) {
-					// TODO Attack the creature
-					// TODO Pass as a parameter the damage type
-					// TODO Take into account the strength of the poison
-				}
+		// The poison cloud attacks the champions and creatures inside
+		if (element.hasParty()) {
+			// Get all living champions
+			final List<Champion> champions = element.getParty().getChampions(false);
+			final RandomStream random = element.getRandom(RandomStreams.HAZARDS);
+
+			for (Champion champion : champions) {
+				// TODO Pass as a parameter the damage type
+				// TODO Take into account the strength of the poison
+				champion.hit(random.nextInt(5, 20));
+			}
+		} else if (element.hasCreatures()) {
+			final Set<Creature> creatures = element.getCreatures();
+
+			for (Creature creature : creatures) {
+				// TODO Attack the creature
+				// TODO Pass as a parameter the damage type
+				// TODO Take into account the strength of the poison
 			}
+		}
 
-			final int backup = lifeTime;
+		final int backup = lifeTime;
 
-			final boolean again = --lifeTime > 0;
+		final boolean again = --lifeTime > 0;
 
-			if (log.isDebugEnabled()) {
-				log.debug(this + ".LifeTime: " + backup + " -> " + lifeTime + " [-1]");
-			}
+		if (log.isDebugEnabled()) {
+			log.debug(this + ".LifeTime: " + backup + " -> " + lifeTime + " [-1]");
+		}
 
-			if (!again) {
-				// Notify the end of the poison cloud
-				fireChangeEvent();
-			}
+		if (!again) {
+			// Notify the end of the poison cloud
+			fireChangeEvent();
 		}
 
 		return (lifeTime > 0);
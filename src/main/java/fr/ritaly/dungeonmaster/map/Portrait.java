@@ -48,6 +48,14 @@ public final class Portrait extends DirectedElement {
 		this.champion = champion;
 	}
 
+	/**
+	 * Creates a portrait whose champion has already been reincarnated (when
+	 * reading a snapshot).
+	 */
+	Portrait(Direction direction) {
+		super(Element.Type.PORTRAIT, direction);
+	}
+
 	public Champion getChampion() {
 		return champion;
 	}
@@ -53,6 +53,10 @@ public class ProjectileLauncher extends DirectedElement implements Triggerable {
 		this.factory = factory;
 	}
 
+	public ProjectileFactory getFactory() {
+		return factory;
+	}
+
 	@Override
 	public boolean isTraversable(Party party) {
 		return false;
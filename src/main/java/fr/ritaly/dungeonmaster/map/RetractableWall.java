@@ -62,6 +62,8 @@ public class RetractableWall extends FloorTile implements Triggerable {
 				log.debug(this + " open");
 			}
 
+			fireChangeEvent();
+
 			return true;
 		}
 
@@ -80,6 +82,8 @@ public class RetractableWall extends FloorTile implements Triggerable {
 				log.debug(this + " closed");
 			}
 
+			fireChangeEvent();
+
 			return true;
 		}
 
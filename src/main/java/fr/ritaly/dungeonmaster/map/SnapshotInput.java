@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+import fr.ritaly.dungeonmaster.champion.Party;
+
+/**
+ * Low-level reader of a dungeon snapshot written by a {@link SnapshotOutput}.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class SnapshotInput {
+
+	private final DataInputStream input;
+
+	/**
+	 * The strings read so far indexed by their index in the string table.
+	 */
+	private final List<String> strings = new ArrayList<String>();
+
+	/**
+	 * The party whose champions the bones read refer to (see
+	 * {@link ItemCodec}). Can be null.
+	 */
+	private Party party;
+
+	SnapshotInput(InputStream stream) {
+		Validate.notNull(stream, "The given input stream is null");
+
+		this.input = new DataInputStream(new BufferedInputStream(stream, 8192));
+	}
+
+	Party getParty() {
+		return party;
+	}
+
+	void setParty(Party party) {
+		this.party = party;
+	}
+
+	int readInt() throws IOException {
+		return input.readInt();
+	}
+
+	int readVarInt() throws IOException {
+		int value = 0;
+
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = input.readUnsignedByte();
+
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new StreamCorruptedException("Malformed variable-length integer");
+	}
+
+	int readSignedVarInt() throws IOException {
+		final int value = readVarInt();
+
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	boolean readBoolean() throws IOException {
+		return input.readBoolean();
+	}
+
+	String readString() throws IOException {
+		final int code = readVarInt();
+
+		if (code == 0) {
+			return null;
+		}
+		if (code == 1) {
+			final String value = input.readUTF();
+
+			strings.add(value);
+
+			return value;
+		}
+		if (code - 2 >= strings.size()) {
+			throw new StreamCorruptedException("Invalid string reference " + (code - 2));
+		}
+
+		return strings.get(code - 2);
+	}
+
+	/**
+	 * Reads a length-prefixed array of bytes.
+	 */
+	byte[] readBytes() throws IOException {
+		final byte[] bytes = new byte[readVarInt()];
+
+		input.readFully(bytes);
+
+		return bytes;
+	}
+
+	/**
+	 * Reads the name of an enum constant and returns the matching constant of
+	 * the given type (or null).
+	 *
+	 * @throws StreamCorruptedException
+	 *             if the type has no constant with the name read.
+	 */
+	<E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+		final String name = readString();
+
+		if (name == null) {
+			return null;
+		}
+
+		try {
+			return Enum.valueOf(type, name);
+		} catch (IllegalArgumentException e) {
+			throw new StreamCorruptedException("Unknown " + type.getSimpleName() + " constant " + name);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Low-level writer of a dungeon snapshot (see {@link DungeonSnapshot}). The
+ * integers are written as variable-length quantities (7 bits per byte) and the
+ * strings (including the names of the enum constants) are written once and
+ * then referenced by their index in a string table built on the fly.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+final class SnapshotOutput {
+
+	private final DataOutputStream output;
+
+	/**
+	 * The strings already written mapped to their index.
+	 */
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+	SnapshotOutput(OutputStream stream) {
+		Validate.notNull(stream, "The given output stream is null");
+
+		this.output = new DataOutputStream(new BufferedOutputStream(stream, 8192));
+	}
+
+	void writeInt(int value) throws IOException {
+		output.writeInt(value);
+	}
+
+	/**
+	 * Writes the given positive or zero integer as a variable-length quantity.
+	 */
+	void writeVarInt(int value) throws IOException {
+		Validate.isTrue(value >= 0, String.format("The given value %d must be positive or zero", value));
+
+		writeUnsignedVarInt(value);
+	}
+
+	/**
+	 * Writes the given integer as a variable-length quantity (the integer is
+	 * considered unsigned).
+	 */
+	private void writeUnsignedVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+
+			value >>>= 7;
+		}
+
+		output.writeByte(value);
+	}
+
+	/**
+	 * Writes the given (possibly negative) integer as a zigzag-encoded
+	 * variable-length quantity.
+	 */
+	void writeSignedVarInt(int value) throws IOException {
+		writeUnsignedVarInt((value << 1) ^ (value >> 31));
+	}
+
+	void writeBoolean(boolean value) throws IOException {
+		output.writeBoolean(value);
+	}
+
+	/**
+	 * Writes the given string (which can be null) as a reference to the string
+	 * table. The string is written in full the first time only.
+	 */
+	void writeString(String value) throws IOException {
+		if (value == null) {
+			writeVarInt(0);
+
+			return;
+		}
+
+		final Integer index = strings.get(value);
+
+		if (index != null) {
+			writeVarInt(index.intValue() + 2);
+		} else {
+			strings.put(value, strings.size());
+
+			writeVarInt(1);
+
+			output.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Writes the given array of bytes prefixed with its length.
+	 */
+	void writeBytes(byte[] bytes) throws IOException {
+		writeVarInt(bytes.length);
+
+		output.write(bytes);
+	}
+
+	/**
+	 * Writes the name of the given enum constant (which can be null).
+	 */
+	void writeEnum(Enum<?> value) throws IOException {
+		writeString((value != null) ? value.name() : null);
+	}
+
+	void flush() throws IOException {
+		output.flush();
+	}
+}
@@ -0,0 +1,412 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Index of the creatures, projectiles and items located on a {@link Level}.
+ * For each kind of occupant, the index maintains an occupancy bitmap of the
+ * level (one bit per position) and the number of occupants per position. The
+ * occupants themselves remain stored by the elements. The index is kept up to
+ * date by the elements (see {@link #update(Element)}) and answers rectangle,
+ * radius and line queries by scanning the bitmaps instead of visiting every
+ * element of the level.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class SpatialIndex {
+
+	/**
+	 * Enumerates the kinds of occupants indexed.
+	 */
+	public static enum Kind {
+		CREATURE,
+		PROJECTILE,
+		ITEM;
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final Level level;
+
+	/**
+	 * The occupancy bitmaps indexed by [kind][word]. The bit of a position is
+	 * <code>y * width + x</code>.
+	 */
+	private final long[][] occupancy;
+
+	/**
+	 * The number of occupants indexed by [kind][y * width + x].
+	 */
+	private final int[][] counts;
+
+	/**
+	 * The total number of occupants per kind.
+	 */
+	private final int[] totals = new int[Kind.values().length];
+
+	SpatialIndex(Level level) {
+		Validate.notNull(level, "The given level is null");
+
+		this.level = level;
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.occupancy = new long[Kind.values().length][((width * height) + 63) >>> 6];
+		this.counts = new int[Kind.values().length][width * height];
+	}
+
+	/**
+	 * Updates the index after the occupants of the given element changed.
+	 *
+	 * @param element
+	 *            the element whose occupants changed. Can't be null.
+	 */
+	void update(Element element) {
+		final int node = (element.getPosition().y * width) + element.getPosition().x;
+
+		set(Kind.CREATURE, node, element.getCreatureCount());
+		set(Kind.PROJECTILE, node, element.hasProjectiles() ? element.getProjectiles().size() : 0);
+		set(Kind.ITEM, node, element.getItemCount());
+	}
+
+	/**
+	 * Removes the occupants of the given position from the index.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 */
+	void reset(int x, int y) {
+		final int node = (y * width) + x;
+
+		for (Kind kind : Kind.values()) {
+			set(kind, node, 0);
+		}
+	}
+
+	/**
+	 * Resets the index.
+	 */
+	void clear() {
+		for (int kind = 0; kind < counts.length; kind++) {
+			Arrays.fill(occupancy[kind], 0L);
+			Arrays.fill(counts[kind], 0);
+		}
+
+		Arrays.fill(totals, 0);
+	}
+
+	private void set(Kind kind, int node, int count) {
+		final int ordinal = kind.ordinal();
+
+		totals[ordinal] += count - counts[ordinal][node];
+		counts[ordinal][node] = count;
+
+		if (count > 0) {
+			occupancy[ordinal][node >>> 6] |= (1L << node);
+		} else {
+			occupancy[ordinal][node >>> 6] &= ~(1L << node);
+		}
+	}
+
+	/**
+	 * Returns the number of occupants of the given kind on the level.
+	 *
+	 * @param kind
+	 *            the kind of occupants. Can't be null.
+	 * @return a positive or zero integer.
+	 */
+	public int getCount(Kind kind) {
+		Validate.notNull(kind, "The given kind is null");
+
+		return totals[kind.ordinal()];
+	}
+
+	/**
+	 * Returns the number of occupants of the given kind at the given position.
+	 *
+	 * @param kind
+	 *            the kind of occupants. Can't be null.
+	 * @param x
+	 *            the x coordinate of the position.
+	 * @param y
+	 *            the y coordinate of the position.
+	 * @return a positive or zero integer.
+	 */
+	public int getCount(Kind kind, int x, int y) {
+		Validate.notNull(kind, "The given kind is null");
+
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return 0;
+		}
+
+		return counts[kind.ordinal()][(y * width) + x];
+	}
+
+	/**
+	 * Tells whether the given position is occupied by at least one occupant of
+	 * the given kind.
+	 *
+	 * @param kind
+	 *            the kind of occupants. Can't be null.
+	 * @param x
+	 *            the x coordinate of the position.
+	 * @param y
+	 *            the y coordinate of the position.
+	 * @return whether the position is occupied.
+	 */
+	public boolean isOccupied(Kind kind, int x, int y) {
+		return getCount(kind, x, y) > 0;
+	}
+
+	/**
+	 * Visits the elements occupied by the given kind of occupants inside the
+	 * given rectangle (bounds included). The rectangle is clipped to the level.
+	 * The elements are visited row by row.
+	 *
+	 * @param kind
+	 *            the kind of occupants. Can't be null.
+	 * @param x1
+	 *            the x coordinate of the top-left corner.
+	 * @param y1
+	 *            the y coordinate of the top-left corner.
+	 * @param x2
+	 *            the x coordinate of the bottom-right corner.
+	 * @param y2
+	 *            the y coordinate of the bottom-right corner.
+	 * @param visitor
+	 *            the visitor to notify. Can't be null.
+	 * @return whether all the elements were visited, that is, false if the
+	 *         visitor interrupted the visit.
+	 */
+	public boolean visitRectangle(Kind kind, int x1, int y1, int x2, int y2, ElementVisitor visitor) {
+		Validate.notNull(kind, "The given kind is null");
+		Validate.notNull(visitor, "The given visitor is null");
+
+		final long[] bits = occupancy[kind.ordinal()];
+
+		final int minX = Math.max(0, Math.min(x1, x2)), maxX = Math.min(width - 1, Math.max(x1, x2));
+		final int minY = Math.max(0, Math.min(y1, y2)), maxY = Math.min(height - 1, Math.max(y1, y2));
+
+		if ((minX > maxX) || (minY > maxY) || (totals[kind.ordinal()] == 0)) {
+			return true;
+		}
+
+		for (int y = minY; y <= maxY; y++) {
+			final int end = (y * width) + maxX;
+
+			for (int node = nextSetBit(bits, (y * width) + minX, end); node != -1; node = nextSetBit(bits,
+					node + 1, end)) {
+
+				if (!visitor.visit(level.getElement(node % width, y))) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Visits the elements occupied by the given kind of occupants within the
+	 * given radius from the given position (the position included). Uses the
+	 * same distance as {@link fr.ritaly.dungeonmaster.Position#getSurroundingPositions(int)}
+	 * .
+	 *
+	 * @param kind
+	 *            the kind of occupants. Can't be null.
+	 * @param x
+	 *            the x coordinate of the center.
+	 * @param y
+	 *            the y coordinate of the center.
+	 * @param radius
+	 *            the radius as a number of steps. Must be positive or zero.
+	 * @param visitor
+	 *            the visitor to notify. Can't be null.
+	 * @return whether all the elements were visited.
+	 */
+	public boolean visitRadius(Kind kind, final int x, final int y, int radius, final ElementVisitor visitor) {
+		Validate.isTrue(radius >= 0, String.format("The given radius %d must be positive or zero", radius));
+		Validate.notNull(visitor, "The given visitor is null");
+
+		// Comparing squared distances avoids computing square roots
+		final int limit = (radius * radius) + radius;
+
+		return visitRectangle(kind, x - radius, y - radius, x + radius, y + radius, new ElementVisitor() {
+			@Override
+			public boolean visit(Element element) {
+				final int dx = element.getPosition().x - x, dy = element.getPosition().y - y;
+
+				if ((dx * dx) + (dy * dy) > limit) {
+					return true;
+				}
+
+				return visitor.visit(element);
+			}
+		});
+	}
+
+	/**
+	 * Visits the elements occupied by the given kind of occupants along the
+	 * line between the 2 given positions (both included), in order from the
+	 * first position. The line is traced with Bresenham's algorithm.
+	 *
+	 * @param kind
+	 *            the kind of occupants. Can't be null.
+	 * @param x1
+	 *            the x coordinate of the first position.
+	 * @param y1
+	 *            the y coordinate of the first position.
+	 * @param x2
+	 *            the x coordinate of the second position.
+	 * @param y2
+	 *            the y coordinate of the second position.
+	 * @param visitor
+	 *            the visitor to notify. Can't be null.
+	 * @return whether all the elements were visited.
+	 */
+	public boolean visitLine(Kind kind, int x1, int y1, int x2, int y2, ElementVisitor visitor) {
+		Validate.notNull(kind, "The given kind is null");
+		Validate.notNull(visitor, "The given visitor is null");
+
+		final long[] bits = occupancy[kind.ordinal()];
+
+		final int dx = Math.abs(x2 - x1), dy = -Math.abs(y2 - y1);
+		final int sx = (x1 < x2) ? 1 : -1, sy = (y1 < y2) ? 1 : -1;
+
+		int x = x1, y = y1, error = dx + dy;
+
+		while (true) {
+			if ((x >= 0) && (x < width) && (y >= 0) && (y < height)) {
+				final int node = (y * width) + x;
+
+				if (((bits[node >>> 6] & (1L << node)) != 0) && !visitor.visit(level.getElement(x, y))) {
+					return false;
+				}
+			}
+
+			if ((x == x2) && (y == y2)) {
+				break;
+			}
+
+			final int error2 = 2 * error;
+
+			if (error2 >= dy) {
+				error += dy;
+				x += sx;
+			}
+			if (error2 <= dx) {
+				error += dx;
+				y += sy;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the elements occupied by the given kind of occupants inside the
+	 * given rectangle. See
+	 * {@link #visitRectangle(Kind, int, int, int, int, ElementVisitor)}.
+	 *
+	 * @return a list of elements. Never returns null.
+	 */
+	public List<Element> findInRectangle(Kind kind, int x1, int y1, int x2, int y2) {
+		final Collector collector = new Collector();
+
+		visitRectangle(kind, x1, y1, x2, y2, collector);
+
+		return collector.elements;
+	}
+
+	/**
+	 * Returns the elements occupied by the given kind of occupants within the
+	 * given radius. See {@link #visitRadius(Kind, int, int, int, ElementVisitor)}
+	 * .
+	 *
+	 * @return a list of elements. Never returns null.
+	 */
+	public List<Element> findInRadius(Kind kind, int x, int y, int radius) {
+		final Collector collector = new Collector();
+
+		visitRadius(kind, x, y, radius, collector);
+
+		return collector.elements;
+	}
+
+	/**
+	 * Returns the elements occupied by the given kind of occupants along the
+	 * given line. See {@link #visitLine(Kind, int, int, int, int, ElementVisitor)}.
+	 *
+	 * @return a list of elements. Never returns null.
+	 */
+	public List<Element> findOnLine(Kind kind, int x1, int y1, int x2, int y2) {
+		final Collector collector = new Collector();
+
+		visitLine(kind, x1, y1, x2, y2, collector);
+
+		return collector.elements;
+	}
+
+	/**
+	 * Returns the index of the first bit set in [from, to] or -1 if none.
+	 */
+	private static int nextSetBit(long[] bits, int from, int to) {
+		if (from > to) {
+			return -1;
+		}
+
+		int index = from >>> 6;
+
+		long word = bits[index] & (-1L << from);
+
+		while (true) {
+			if (word != 0) {
+				final int node = (index << 6) + Long.numberOfTrailingZeros(word);
+
+				return (node <= to) ? node : -1;
+			}
+			if (++index > (to >>> 6)) {
+				return -1;
+			}
+
+			word = bits[index];
+		}
+	}
+
+	private static final class Collector implements ElementVisitor {
+
+		private final List<Element> elements = new ArrayList<Element>();
+
+		@Override
+		public boolean visit(Element element) {
+			elements.add(element);
+
+			return true;
+		}
+	}
+}
@@ -168,7 +168,16 @@ public final class Stairs extends DirectedElement {
 		}
 
 		// La destination d'un escalier doit �tre un autre escalier
-		final Element target = getLevel().getDungeon().getElement(getDestination());
+		// Don't create the destination if it's a plain element: the levels can
+		// be validated in parallel
+		final Level level = getLevel().getDungeon().getLevel(getDestination().z);
+
+		if ((level == null) || !level.contains(getDestination())) {
+			throw new ValidationException("The destination of the stairs at " + getPosition() + " ("
+					+ getDestination() + ") is outside the dungeon");
+		}
+
+		final Element target = level.peekElement(getDestination().x, getDestination().y);
 
 		if (!(target instanceof Stairs)) {
 			throw new ValidationException("The element at " + getDestination() + " must be a " + Type.STAIRS);
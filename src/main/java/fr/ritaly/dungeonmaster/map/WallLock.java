@@ -107,6 +107,14 @@ public final class WallLock extends DirectedElement implements HasActuator {
 		return !unlocked;
 	}
 
+	/**
+	 * Restores whether the lock has been unlocked (when reading a snapshot).
+	 * Doesn't trigger the actuator.
+	 */
+	void setUnlocked(boolean unlocked) {
+		this.unlocked = unlocked;
+	}
+
 	/**
 	 * Tente de d�verrouiller la serrure avec la cl� donn�e et retourne si
 	 * l'op�ration a r�ussi.
@@ -110,6 +110,35 @@ public final class WallSlot extends DirectedElement implements HasActuator {
 		return (useCount == maxUseCount);
 	}
 
+	/**
+	 * Returns the number of times the slot has been used / triggered.
+	 *
+	 * @return an integer within [0,maxUseCount].
+	 */
+	public int getUseCount() {
+		return useCount;
+	}
+
+	/**
+	 * Returns the maximal number of times the slot can be used / triggered.
+	 *
+	 * @return a positive integer.
+	 */
+	public int getMaxUseCount() {
+		return maxUseCount;
+	}
+
+	/**
+	 * Restores the number of times the slot has been used (when reading a
+	 * snapshot). Doesn't trigger the actuator.
+	 */
+	void setUseCount(int useCount) {
+		Validate.isTrue((useCount >= 0) && (useCount <= maxUseCount), "The given use count " + useCount
+				+ " must be within [0," + maxUseCount + "]");
+
+		this.useCount = useCount;
+	}
+
 	/**
 	 * Tries to use / trigger the slot by using the given item and returns
 	 * whether the operation succeeded.
@@ -24,11 +24,12 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.Direction;
 import fr.ritaly.dungeonmaster.Position;
 import fr.ritaly.dungeonmaster.Sector;
 import fr.ritaly.dungeonmaster.Temporizer;
+import fr.ritaly.dungeonmaster.log.FlightRecorder;
+import fr.ritaly.dungeonmaster.log.FlightRecorder.EventType;
 import fr.ritaly.dungeonmaster.map.Dungeon;
 import fr.ritaly.dungeonmaster.map.Element;
 
@@ -157,8 +158,8 @@ abstract class AbstractProjectile implements Projectile {
 		// Install the projectile in the dungeon
 		this.dungeon.getElement(position).addProjectile(this, sector);
 
-		// Listen to clock ticks (to animate the projectile)
-		Clock.getInstance().register(this);
+		// Animate the projectile every time the temporizer triggers
+		temporizer.start(this);
 
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("%s created at %s", getId(), position));
@@ -202,6 +203,8 @@ abstract class AbstractProjectile implements Projectile {
 				throw new IllegalArgumentException("Transition from " + this.state + " to " + state + " is forbidden");
 			}
 
+			FlightRecorder.record(EventType.PROJECTILE_STATE, id, this.state.ordinal(), state.ordinal());
+
 			if (log.isDebugEnabled()) {
 				log.debug(String.format("%s.State: %s -> %s", getId(), this.state, state));
 			}
@@ -220,147 +223,143 @@ abstract class AbstractProjectile implements Projectile {
 
 	@Override
 	public boolean clockTicked() {
-		if (temporizer.trigger()) {
-			if (log.isDebugEnabled()) {
-				log.debug(String.format("Moving %s ...", getId()));
-			}
-
-			// The door is a special element because contrary to other elements
-			// when hit by a projectile, the projectile explodes on the door and
-			// possibly explodes it. For others elements, the projectile
-			// explodes next to the hit element
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Moving %s ...", getId()));
+		}
 
-			switch (state) {
-			case FLYING: {
-				// Should the projectile explode because it's hitting a closed
-				// door ?
-				final Element currentElement = dungeon.getElement(position);
+		// The door is a special element because contrary to other elements
+		// when hit by a projectile, the projectile explodes on the door and
+		// possibly explodes it. For others elements, the projectile
+		// explodes next to the hit element
 
-				if (currentElement.getType().equals(Element.Type.DOOR) && !currentElement.isTraversableByProjectile()) {
-					// It's a non-traversable door, the projectile explodes
-					setState(State.EXPLODING);
+		switch (state) {
+		case FLYING: {
+			// Should the projectile explode because it's hitting a closed
+			// door ?
+			final Element currentElement = dungeon.getElement(position);
 
-					if (log.isDebugEnabled()) {
-						log.debug(String.format("%s is about to explode in %s", getId(), currentElement.getId()));
-					}
+			if (currentElement.getType().equals(Element.Type.DOOR) && !currentElement.isTraversableByProjectile()) {
+				// It's a non-traversable door, the projectile explodes
+				setState(State.EXPLODING);
 
-					return true;
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("%s is about to explode in %s", getId(), currentElement.getId()));
 				}
 
-				// The projectile moves, does the position change ?
-				final boolean changesPosition = sector.changesPosition(direction);
+				return true;
+			}
 
-				// What's the next position ?
-				final Position targetPosition;
+			// The projectile moves, does the position change ?
+			final boolean changesPosition = sector.changesPosition(direction);
 
-				if (changesPosition) {
-					targetPosition = position.towards(direction);
-				} else {
-					targetPosition = position;
-				}
+			// What's the next position ?
+			final Position targetPosition;
 
-				// What's the next sector ?
-				final Sector targetSector = sector.towards(direction);
+			if (changesPosition) {
+				targetPosition = position.towards(direction);
+			} else {
+				targetPosition = position;
+			}
 
-				final Element targetElement = dungeon.getElement(targetPosition);
+			// What's the next sector ?
+			final Sector targetSector = sector.towards(direction);
 
-				if (targetElement == null) {
-					// Shouldn't happen
-					throw new IllegalStateException("Unable to determine element with position " + targetPosition);
-				}
+			final Element targetElement = dungeon.getElement(targetPosition);
 
-				// TODO Can the poison cloud spell traverse a grate ?
-				// Is this element traversable by the projectile ?
-				if (!targetElement.isTraversableByProjectile() && !targetElement.getType().equals(Element.Type.DOOR)) {
-					// If the target is a door, the projectile explodes on it
+			if (targetElement == null) {
+				// Shouldn't happen
+				throw new IllegalStateException("Unable to determine element with position " + targetPosition);
+			}
 
-					// The projectile explodes on its current position
-					setState(State.EXPLODING);
+			// TODO Can the poison cloud spell traverse a grate ?
+			// Is this element traversable by the projectile ?
+			if (!targetElement.isTraversableByProjectile() && !targetElement.getType().equals(Element.Type.DOOR)) {
+				// If the target is a door, the projectile explodes on it
 
-					if (log.isDebugEnabled()) {
-						log.debug(String.format("%s is about to explode because of facing %s", getId(), targetElement.getId()));
-					}
+				// The projectile explodes on its current position
+				setState(State.EXPLODING);
 
-					return true;
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("%s is about to explode because of facing %s", getId(), targetElement.getId()));
 				}
 
-				// --- Move the projectile --- //
+				return true;
+			}
 
-				// The projectile leaves its current position
-				dungeon.getElement(position).removeProjectile(this, sector);
+			// --- Move the projectile --- //
 
-				// The projectile moves, the remaining distance decreases
-				this.position = targetPosition;
-				this.sector = targetSector;
+			// The projectile leaves its current position
+			dungeon.getElement(position).removeProjectile(this, sector);
 
-				final int backup = range;
+			// The projectile moves, the remaining distance decreases
+			this.position = targetPosition;
+			this.sector = targetSector;
 
-				this.range--;
+			final int backup = range;
 
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("%s.Range: %s -> %s [-1]", getId(), backup, + range));
-				}
+			this.range--;
 
-				// The projectile enters the new position
-				targetElement.addProjectile(this, targetSector);
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("%s.Range: %s -> %s [-1]", getId(), backup, + range));
+			}
 
-				// Is the target element occupied by a creature ?
-				if (targetElement.getCreature(targetSector) != null) {
-					// Yes, the projectile explodes
-					setState(State.EXPLODING);
+			// The projectile enters the new position
+			targetElement.addProjectile(this, targetSector);
 
-					if (log.isDebugEnabled()) {
-						log.debug(String.format("%s is about to explode because of facing %s", getId(), targetElement
-								.getCreature(targetSector).getId()));
-					}
+			// Is the target element occupied by a creature ?
+			if (targetElement.getCreature(targetSector) != null) {
+				// Yes, the projectile explodes
+				setState(State.EXPLODING);
 
-					return true;
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("%s is about to explode because of facing %s", getId(), targetElement
+							.getCreature(targetSector).getId()));
 				}
 
-				if (this.range == 0) {
-					// The projectile can move any further, it explodes
-					setState(State.EXPLODING);
+				return true;
+			}
 
-					if (log.isDebugEnabled()) {
-						log.debug(String.format("%s is about to explode because it wore off", getId()));
-					}
+			if (this.range == 0) {
+				// The projectile can move any further, it explodes
+				setState(State.EXPLODING);
 
-					return true;
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("%s is about to explode because it wore off", getId()));
 				}
 
-				// The projectile keeps on moving
 				return true;
 			}
-			case EXPLODING: {
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("%s is exploding ...", getId()));
-				}
-
-				// Let the projectile operate
-				projectileDied();
-
-				setState(State.EXPLODED);
 
-				return true;
+			// The projectile keeps on moving
+			return true;
+		}
+		case EXPLODING: {
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("%s is exploding ...", getId()));
 			}
-			case EXPLODED: {
-				// The projectile disappears
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("%s vanishes into thin air", getId()));
-				}
 
-				// Remove the projectile
-				dungeon.getElement(position).removeProjectile(this, sector);
+			// Let the projectile operate
+			projectileDied();
 
-				return false;
-			}
+			setState(State.EXPLODED);
 
-			default:
-				throw new UnsupportedOperationException("Unsupported state " + state);
+			return true;
+		}
+		case EXPLODED: {
+			// The projectile disappears
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("%s vanishes into thin air", getId()));
 			}
+
+			// Remove the projectile
+			dungeon.getElement(position).removeProjectile(this, sector);
+
+			return false;
 		}
 
-		return true;
+		default:
+			throw new UnsupportedOperationException("Unsupported state " + state);
+		}
 	}
 
 	/**
@@ -44,6 +44,10 @@ public class ItemProjectileFactory implements ProjectileFactory {
 		this.type = type;
 	}
 
+	public Item.Type getType() {
+		return type;
+	}
+
 	@Override
 	public Projectile createProjectile(Dungeon dungeon, Position position, Direction direction, Sector sector) {
 		// TODO Compute how far the projectile will go (depends on the champion's strength)
@@ -41,6 +41,10 @@ public class SpellProjectileFactory implements ProjectileFactory {
 		this.spell = spell;
 	}
 
+	public Spell getSpell() {
+		return spell;
+	}
+
 	@Override
 	public Projectile createProjectile(Dungeon dungeon, Position position, Direction direction, Sector sector) {
 		return new SpellProjectile(spell, dungeon, position, direction, sector);
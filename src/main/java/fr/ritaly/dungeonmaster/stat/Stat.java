@@ -23,9 +23,7 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.DeferredCommand;
-import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeEventSource;
 import fr.ritaly.dungeonmaster.event.ChangeEventSupport;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
@@ -152,8 +150,10 @@ public final class Stat implements ChangeEventSource {
 		eventSupport.removeChangeListener(listener);
 	}
 
+	// The stats may change several times per tick, the changes are
+	// coalesced when the ChangeCoalescer is enabled
 	private void fireChangeEvent() {
-		eventSupport.fireChangeEvent(new ChangeEvent(this));
+		eventSupport.markChanged(this);
 	}
 
 	/**
@@ -286,10 +286,10 @@ public final class Stat implements ChangeEventSource {
 		if (duration > 0) {
 			// Create a DeferredCommand to reset the boost after the given
 			// duration
-			Clock.getInstance().register(new DeferredCommand(name + ".Boost.DeferredCommand", duration) {
+			new DeferredCommand(name + ".Boost.DeferredCommand", duration) {
 
 				@Override
-				protected void run() {
+				public void run() {
 					decBoost(n);
 				}
 
@@ -297,7 +297,7 @@ public final class Stat implements ChangeEventSource {
 				public String toString() {
 					return name + ".Boost.DeferredCommand";
 				}
-			});
+			}.schedule();
 		}
 
 		fireChangeEvent();
@@ -405,9 +405,9 @@ public final class Stat implements ChangeEventSource {
 		if (duration > 0) {
 			// Create a DeferredCommand to reset the boost after the given
 			// duration
-			Clock.getInstance().register(new DeferredCommand(name + ".Boost.DeferredCommand", duration) {
+			new DeferredCommand(name + ".Boost.DeferredCommand", duration) {
 				@Override
-				protected void run() {
+				public void run() {
 					incBoost(n);
 				}
 
@@ -415,7 +415,7 @@ public final class Stat implements ChangeEventSource {
 				public String toString() {
 					return name + ".Boost.DeferredCommand";
 				}
-			});
+			}.schedule();
 		}
 
 		fireChangeEvent();
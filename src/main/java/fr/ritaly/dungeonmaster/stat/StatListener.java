@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.stat;
+
+/**
+ * A listener of the changes of a champion's {@link Stats}. The values are
+ * passed as primitives so that notifying a listener doesn't allocate any
+ * object.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public interface StatListener {
+
+	/**
+	 * Notifies the listener that the base value of the given stat just
+	 * changed.
+	 *
+	 * @param stats
+	 *            the stats owning the changed stat.
+	 * @param type
+	 *            the type of the changed stat.
+	 * @param oldValue
+	 *            the stat's previous base value.
+	 * @param newValue
+	 *            the stat's new base value.
+	 */
+	public void statChanged(Stats stats, Stats.Type type, int oldValue, int newValue);
+
+	/**
+	 * Notifies the listener that the base maximum value of the given stat just
+	 * changed.
+	 *
+	 * @param stats
+	 *            the stats owning the changed stat.
+	 * @param type
+	 *            the type of the changed stat.
+	 * @param oldMax
+	 *            the stat's previous base maximum value.
+	 * @param newMax
+	 *            the stat's new base maximum value.
+	 */
+	public void statMaxChanged(Stats stats, Stats.Type type, int oldMax, int newMax);
+}
@@ -20,18 +20,22 @@ package fr.ritaly.dungeonmaster.stat;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.Arrays;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
-import org.apache.commons.lang.math.RandomUtils;
 
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.ClockListener;
+import fr.ritaly.dungeonmaster.RandomStream;
 import fr.ritaly.dungeonmaster.Temporizer;
 import fr.ritaly.dungeonmaster.Utils;
 import fr.ritaly.dungeonmaster.champion.Champion;
 import fr.ritaly.dungeonmaster.event.ChangeEvent;
 import fr.ritaly.dungeonmaster.event.ChangeListener;
+import fr.ritaly.dungeonmaster.event.Listeners;
+import fr.ritaly.dungeonmaster.log.FlightRecorder;
+import fr.ritaly.dungeonmaster.log.FlightRecorder.EventType;
 
 /**
  * Defines all the stats of a champion.<br>
@@ -41,7 +45,7 @@ import fr.ritaly.dungeonmaster.event.ChangeListener;
  *
  * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
  */
-public final class Stats implements ChangeListener, ClockListener {
+public final class Stats implements ClockListener {
 
 	public static final String PROPERTY_WATER = "Water";
 
@@ -71,6 +75,45 @@ public final class Stats implements ChangeListener, ClockListener {
 
 	public static final String PROPERTY_MAX_LOAD_BOOST = "MaxLoadBoost";
 
+	/**
+	 * Enumerates the stats of a champion. The ordinal of a type is used for
+	 * indexing the stats and their listeners.
+	 *
+	 * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+	 */
+	public static enum Type {
+		WATER(PROPERTY_WATER),
+		FOOD(PROPERTY_FOOD),
+		HEALTH(PROPERTY_HEALTH),
+		STRENGTH(PROPERTY_STRENGTH),
+		STAMINA(PROPERTY_STAMINA),
+		MANA(PROPERTY_MANA),
+		DEXTERITY(PROPERTY_DEXTERITY),
+		WISDOM(PROPERTY_WISDOM),
+		VITALITY(PROPERTY_VITALITY),
+		ANTI_FIRE(PROPERTY_ANTI_FIRE),
+		ANTI_MAGIC(PROPERTY_ANTI_MAGIC),
+		LUCK(PROPERTY_LUCK),
+		SHIELD(PROPERTY_SHIELD),
+		MAX_LOAD_BOOST(PROPERTY_MAX_LOAD_BOOST);
+
+		/**
+		 * The name of the property associated to this stat when the changes
+		 * are propagated as {@link java.beans.PropertyChangeEvent}s.
+		 */
+		private final String propertyName;
+
+		private Type(String propertyName) {
+			this.propertyName = propertyName;
+		}
+
+		public String getPropertyName() {
+			return propertyName;
+		}
+	}
+
+	private static final StatListener[] NO_LISTENERS = new StatListener[0];
+
 	private final Champion champion;
 
 	/**
@@ -167,7 +210,44 @@ public final class Stats implements ChangeListener, ClockListener {
 
 	private boolean initialized;
 
-	private final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
+	/**
+	 * The stats indexed by {@link Type} ordinal.
+	 */
+	private final Stat[] stats = new Stat[Type.values().length];
+
+	/**
+	 * The last base value notified to the listeners for each stat (indexed by
+	 * {@link Type} ordinal). Used as the old value of the next notification so
+	 * that the changes coalesced during a clock tick are reported as a single
+	 * change.
+	 */
+	private final int[] notified = new int[stats.length];
+
+	/**
+	 * The last base maximum value notified to the listeners for each stat
+	 * (indexed by {@link Type} ordinal).
+	 */
+	private final int[] notifiedMax = new int[stats.length];
+
+	/**
+	 * The listeners registered for each stat (indexed by {@link Type}
+	 * ordinal). The arrays are never modified once published (see
+	 * {@link Listeners}), new arrays are created each time a listener is added
+	 * or removed.
+	 */
+	private volatile StatListener[][] listeners;
+
+	/**
+	 * The identifier of the champion in the flight records (the ordinal of
+	 * the champion's name or -1 if the name isn't a known one).
+	 */
+	private final int championId;
+
+	/**
+	 * Lazily created when the first {@link PropertyChangeListener} is
+	 * registered. Guarded by this object's lock.
+	 */
+	private PropertyChangeSupport changeSupport;
 
 	private final Temporizer temporizer;
 
@@ -175,6 +255,7 @@ public final class Stats implements ChangeListener, ClockListener {
 		Validate.notNull(champion, "The given champion is null");
 
 		this.champion = champion;
+		this.championId = getChampionId(champion);
 
 		food = new Stat(champion.getName(), PROPERTY_FOOD, 1500, 1500);
 		water = new Stat(champion.getName(), PROPERTY_WATER, 1500, 1500);
@@ -191,26 +272,50 @@ public final class Stats implements ChangeListener, ClockListener {
 		maxLoadBoost = new Stat(champion.getName(), PROPERTY_MAX_LOAD_BOOST);
 		shield = new Stat(champion.getName(), PROPERTY_SHIELD);
 
-		// Listen to the events fire by those stats
-		food.addChangeListener(this);
-		water.addChangeListener(this);
-		health.addChangeListener(this);
-		strength.addChangeListener(this);
-		stamina.addChangeListener(this);
-		mana.addChangeListener(this);
-		dexterity.addChangeListener(this);
-		wisdom.addChangeListener(this);
-		vitality.addChangeListener(this);
-		antiFire.addChangeListener(this);
-		antiMagic.addChangeListener(this);
-		luck.addChangeListener(this);
-		maxLoadBoost.addChangeListener(this);
-		shield.addChangeListener(this);
+		stats[Type.FOOD.ordinal()] = food;
+		stats[Type.WATER.ordinal()] = water;
+		stats[Type.HEALTH.ordinal()] = health;
+		stats[Type.STRENGTH.ordinal()] = strength;
+		stats[Type.STAMINA.ordinal()] = stamina;
+		stats[Type.MANA.ordinal()] = mana;
+		stats[Type.DEXTERITY.ordinal()] = dexterity;
+		stats[Type.WISDOM.ordinal()] = wisdom;
+		stats[Type.VITALITY.ordinal()] = vitality;
+		stats[Type.ANTI_FIRE.ordinal()] = antiFire;
+		stats[Type.ANTI_MAGIC.ordinal()] = antiMagic;
+		stats[Type.LUCK.ordinal()] = luck;
+		stats[Type.MAX_LOAD_BOOST.ordinal()] = maxLoadBoost;
+		stats[Type.SHIELD.ordinal()] = shield;
+
+		final StatListener[][] array = new StatListener[stats.length][];
+
+		Arrays.fill(array, NO_LISTENERS);
+
+		this.listeners = array;
+
+		// Listen to the events fire by those stats. Each stat gets its own
+		// forwarder so that the stat type needn't be looked up
+		for (Type type : Type.values()) {
+			final Stat stat = stats[type.ordinal()];
+
+			notified[type.ordinal()] = stat.baseValue();
+			notifiedMax[type.ordinal()] = stat.baseMaxValue();
+
+			stat.addChangeListener(new Forwarder(type));
+		}
 
 		// Stats are updated every 5 seconds
 		temporizer = new Temporizer(champion.getName() + ".Stats", 5 * Clock.ONE_SECOND);
 	}
 
+	private static int getChampionId(Champion champion) {
+		try {
+			return Champion.Name.valueOf(champion.getName().toUpperCase()).ordinal();
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
 	private void assertInitialized() {
 		if (!initialized) {
 			throw new IllegalStateException("The stats haven't been initialized");
@@ -239,24 +344,186 @@ public final class Stats implements ChangeListener, ClockListener {
 		return water;
 	}
 
-	@Override
-	public void onChangeEvent(ChangeEvent event) {
-		// Propagate the event as a property change event
-		firePropertyChangeEvent(event.getSource());
+	/**
+	 * Forwards the change events fired by a stat to the {@link StatListener}s
+	 * registered for this stat.
+	 */
+	private final class Forwarder implements ChangeListener {
+
+		private final Type type;
+
+		private Forwarder(Type type) {
+			this.type = type;
+		}
+
+		@Override
+		public void onChangeEvent(ChangeEvent event) {
+			fireStatChanged(type);
+		}
+	}
+
+	private void fireStatChanged(Type type) {
+		final int index = type.ordinal();
+		final int oldMax = notifiedMax[index];
+		final int newMax = stats[index].baseMaxValue();
+		final int oldValue = notified[index];
+		final int newValue = stats[index].baseValue();
+
+		// The maximum and the value are notified separately (and only when
+		// they changed like a PropertyChangeSupport)
+		if (oldMax != newMax) {
+			notifiedMax[index] = newMax;
+
+			FlightRecorder.record(EventType.STAT_MAX_CHANGED, championId, index, oldMax, newMax);
+
+			final StatListener[] array = listeners[index];
+
+			for (int i = 0; i < array.length; i++) {
+				array[i].statMaxChanged(this, type, oldMax, newMax);
+			}
+		}
+		if (oldValue != newValue) {
+			notified[index] = newValue;
+
+			FlightRecorder.record(EventType.STAT_CHANGED, championId, index, oldValue, newValue);
+
+			final StatListener[] array = listeners[index];
+
+			for (int i = 0; i < array.length; i++) {
+				array[i].statChanged(this, type, oldValue, newValue);
+			}
+		}
+	}
+
+	/**
+	 * Registers the given listener for the changes of all the stats.
+	 *
+	 * @param listener
+	 *            the listener to register. Can't be null.
+	 */
+	public void addStatListener(StatListener listener) {
+		Validate.notNull(listener, "The given listener is null");
+
+		for (Type type : Type.values()) {
+			addStatListener(type, listener);
+		}
+	}
+
+	/**
+	 * Registers the given listener for the changes of the stat with the given
+	 * type.
+	 *
+	 * @param type
+	 *            the type of stat to listen to. Can't be null.
+	 * @param listener
+	 *            the listener to register. Can't be null.
+	 */
+	public synchronized void addStatListener(Type type, StatListener listener) {
+		Validate.notNull(type, "The given stat type is null");
+		Validate.notNull(listener, "The given listener is null");
+
+		final StatListener[][] copy = listeners.clone();
+
+		copy[type.ordinal()] = Listeners.add(copy[type.ordinal()], listener);
+
+		listeners = copy;
+	}
+
+	/**
+	 * Unregisters the given listener from the changes of all the stats.
+	 *
+	 * @param listener
+	 *            the listener to unregister. Can't be null.
+	 */
+	public void removeStatListener(StatListener listener) {
+		Validate.notNull(listener, "The given listener is null");
+
+		for (Type type : Type.values()) {
+			removeStatListener(type, listener);
+		}
 	}
 
-	public void addPropertyChangeListener(PropertyChangeListener listener) {
+	/**
+	 * Unregisters the given listener from the changes of the stat with the
+	 * given type. Does nothing if the listener isn't registered.
+	 *
+	 * @param type
+	 *            the type of stat. Can't be null.
+	 * @param listener
+	 *            the listener to unregister. Can't be null.
+	 */
+	public synchronized void removeStatListener(Type type, StatListener listener) {
+		Validate.notNull(type, "The given stat type is null");
+		Validate.notNull(listener, "The given listener is null");
+
+		final StatListener[] array = listeners[type.ordinal()];
+		final StatListener[] removed = Listeners.remove(array, listener, NO_LISTENERS);
+
+		if (removed != array) {
+			final StatListener[][] copy = listeners.clone();
+
+			copy[type.ordinal()] = removed;
+
+			listeners = copy;
+		}
+	}
+
+	/**
+	 * Adapts the {@link StatListener} callbacks into
+	 * {@link java.beans.PropertyChangeEvent}s. Only registered once a
+	 * {@link PropertyChangeListener} has been added so that the values are
+	 * boxed only when needed.
+	 */
+	private final StatListener propertyChangeAdapter = new StatListener() {
+		@Override
+		public void statChanged(Stats stats, Type type, int oldValue, int newValue) {
+			final PropertyChangeSupport support;
+
+			synchronized (Stats.this) {
+				support = changeSupport;
+			}
+
+			if (support != null) {
+				support.firePropertyChange(type.getPropertyName(), Integer.valueOf(oldValue),
+						Integer.valueOf(newValue));
+			}
+		}
+
+		@Override
+		public void statMaxChanged(Stats stats, Type type, int oldMax, int newMax) {
+			// The property change events only report the base values
+		}
+	};
+
+	public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
+		if (changeSupport == null) {
+			changeSupport = new PropertyChangeSupport(this);
+
+			addStatListener(propertyChangeAdapter);
+		}
+
 		changeSupport.addPropertyChangeListener(listener);
 	}
 
-	public void removePropertyChangeListener(PropertyChangeListener listener) {
-		changeSupport.removePropertyChangeListener(listener);
+	public synchronized void removePropertyChangeListener(PropertyChangeListener listener) {
+		if (changeSupport != null) {
+			changeSupport.removePropertyChangeListener(listener);
+		}
 	}
 
-	protected void firePropertyChangeEvent(Object source) {
-		final Stat stat = (Stat) source;
+	/**
+	 * Returns the stat with the given type.
+	 *
+	 * @param type
+	 *            the type of the requested stat. Can't be null.
+	 * @return a stat. Never returns null.
+	 */
+	public Stat getStat(Type type) {
+		Validate.notNull(type, "The given stat type is null");
 
-		changeSupport.firePropertyChange(stat.getName(), Integer.valueOf(stat.getPrevious()), Integer.valueOf(stat.baseValue()));
+		assertInitialized();
+
+		return stats[type.ordinal()];
 	}
 
 	public Stat getHealth() {
@@ -481,7 +748,10 @@ public final class Stats implements ChangeListener, ClockListener {
 	 */
 	public int getQuickness() {
 		// See Character.cpp (TAG016610)
-		float quickness = dexterity.value() + RandomUtils.nextInt(8);
+		final RandomStream random = (champion.getParty() != null) ? champion.getParty().getRandom()
+				: new RandomStream();
+
+		float quickness = dexterity.value() + random.nextInt(8);
 
 		final float d0l = (quickness / 2) * champion.getLoad();
 		final float d1l = champion.getMaxLoad();
@@ -494,8 +764,8 @@ public final class Stats implements ChangeListener, ClockListener {
 
 		quickness /= 2;
 
-		final int min = 1 + RandomUtils.nextInt(8);
-		final int max = 100 - RandomUtils.nextInt(8);
+		final int min = 1 + random.nextInt(8);
+		final int max = 100 - random.nextInt(8);
 
 		return Utils.bind((int) quickness, min, max);
 	}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import junit.framework.TestCase;
+
+public class ClockTest extends TestCase {
+
+	public ClockTest() {
+	}
+
+	public ClockTest(String name) {
+		super(name);
+	}
+
+	public void testScheduledCommandRunsAfterDelay() {
+		final int[] runs = new int[1];
+
+		Clock.getInstance().schedule(3, new Runnable() {
+			@Override
+			public void run() {
+				runs[0]++;
+			}
+		});
+
+		assertEquals(1, Clock.getInstance().getScheduledCount());
+
+		Clock.getInstance().tick(2);
+
+		assertEquals(0, runs[0]);
+
+		Clock.getInstance().tick();
+
+		assertEquals(1, runs[0]);
+		assertEquals(0, Clock.getInstance().getScheduledCount());
+
+		// The command only runs once
+		Clock.getInstance().tick(10);
+
+		assertEquals(1, runs[0]);
+	}
+
+	public void testCommandScheduledDuringTickRunsAfterDelay() {
+		final int[] ticks = new int[2];
+
+		Clock.getInstance().schedule(1, new Runnable() {
+			@Override
+			public void run() {
+				ticks[0] = Clock.getInstance().getTickId();
+
+				Clock.getInstance().schedule(4, new Runnable() {
+					@Override
+					public void run() {
+						ticks[1] = Clock.getInstance().getTickId();
+					}
+				});
+			}
+		});
+
+		Clock.getInstance().tick(10);
+
+		assertEquals(1, ticks[0]);
+		assertEquals(5, ticks[1]);
+	}
+
+	public void testRepeatingListener() {
+		final int[] count = new int[1];
+
+		final Timeout timeout = Clock.getInstance().scheduleRepeating(2, new ClockListener() {
+			@Override
+			public boolean clockTicked() {
+				return ++count[0] < 3;
+			}
+		});
+
+		Clock.getInstance().tick(5);
+
+		assertEquals(2, count[0]);
+		assertTrue(timeout.isPending());
+
+		Clock.getInstance().tick(5);
+
+		assertEquals(3, count[0]);
+		assertTrue(timeout.isExpired());
+	}
+
+	public void testCancelledCommandNeverRuns() {
+		final int[] runs = new int[1];
+
+		final Timeout timeout = Clock.getInstance().schedule(3, new Runnable() {
+			@Override
+			public void run() {
+				runs[0]++;
+			}
+		});
+
+		Clock.getInstance().tick();
+
+		assertTrue(timeout.cancel());
+
+		Clock.getInstance().tick(5);
+
+		assertEquals(0, runs[0]);
+	}
+
+	public void testResetCancelsScheduledTimeouts() {
+		final Timeout timeout = Clock.getInstance().scheduleRepeating(10, new ClockListener() {
+			@Override
+			public boolean clockTicked() {
+				return true;
+			}
+		});
+
+		Clock.getInstance().reset();
+
+		assertTrue(timeout.isCancelled());
+		assertEquals(0, Clock.getInstance().getScheduledCount());
+	}
+
+	public void testListenersNotifiedInRegistrationOrder() {
+		final StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 20; i++) {
+			final int index = i;
+
+			Clock.getInstance().register(new ClockListener() {
+				@Override
+				public boolean clockTicked() {
+					builder.append(index).append(' ');
+
+					return false;
+				}
+			});
+		}
+
+		Clock.getInstance().tick();
+
+		assertEquals("0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 ", builder.toString());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
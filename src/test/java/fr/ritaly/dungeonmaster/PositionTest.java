@@ -18,6 +18,9 @@
  */
 package fr.ritaly.dungeonmaster;
 
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 public class PositionTest extends TestCase {
@@ -196,4 +199,83 @@ public class PositionTest extends TestCase {
 
 		assertEquals(136, new Position(1,1,1).getSurroundingPositions(6).size());
 	}
-}
\ No newline at end of file
+
+	public void testGetVisiblePositions() throws Exception {
+		final Position position = new Position(5, 5, 1);
+
+		assertEquals(Arrays.asList(new Position(4, 4, 1), new Position(5, 4, 1), new Position(6, 4, 1),
+				new Position(4, 3, 1), new Position(5, 3, 1), new Position(6, 3, 1), new Position(3, 2, 1),
+				new Position(4, 2, 1), new Position(5, 2, 1), new Position(6, 2, 1), new Position(7, 2, 1)),
+				position.getVisiblePositions(Direction.NORTH));
+
+		assertEquals(Arrays.asList(new Position(6, 4, 1), new Position(6, 5, 1), new Position(6, 6, 1),
+				new Position(7, 4, 1), new Position(7, 5, 1), new Position(7, 6, 1), new Position(8, 3, 1),
+				new Position(8, 4, 1), new Position(8, 5, 1), new Position(8, 6, 1), new Position(8, 7, 1)),
+				position.getVisiblePositions(Direction.EAST));
+	}
+
+	public void testGetAttackablePositions() throws Exception {
+		final Position position = new Position(5, 5, 1);
+
+		// The order (west, east, north, south) matters
+		assertEquals(Arrays.asList(new Position(4, 5, 1), new Position(6, 5, 1), new Position(5, 4, 1),
+				new Position(5, 6, 1), new Position(3, 5, 1), new Position(7, 5, 1), new Position(5, 3, 1),
+				new Position(5, 7, 1)), position.getAttackablePositions(2));
+	}
+
+	public void testGetSurroundingPositionsMatchesDistance() throws Exception {
+		final Position position = new Position(0, 0, 1);
+
+		for (int radius = 1; radius <= 20; radius++) {
+			final List<Position> positions = position.getSurroundingPositions(radius);
+
+			int count = 0;
+
+			for (int x = -radius; x <= radius; x++) {
+				for (int y = -radius; y <= radius; y++) {
+					if ((x == 0) && (y == 0)) {
+						continue;
+					}
+
+					final boolean inside = (Math.sqrt((x * x) + (y * y)) <= radius + 0.5d);
+
+					if (inside) {
+						count++;
+					}
+
+					assertEquals(inside, positions.contains(new Position(x, y, 1)));
+					assertEquals(inside, position.isSurrounding(new Position(x, y, 1), radius));
+				}
+			}
+
+			assertEquals(count, positions.size());
+		}
+	}
+
+	public void testMembershipTestsMatchLists() throws Exception {
+		final Position position = new Position(5, 5, 1);
+
+		for (int x = 0; x <= 10; x++) {
+			for (int y = 0; y <= 10; y++) {
+				final Position target = new Position(x, y, 1);
+
+				for (Direction direction : Arrays.asList(Direction.NORTH, Direction.EAST, Direction.SOUTH,
+						Direction.WEST)) {
+
+					assertEquals(position.getVisiblePositions(direction).contains(target),
+							position.isVisible(target, direction));
+				}
+
+				for (int range = 1; range <= 3; range++) {
+					assertEquals(position.getAttackablePositions(range).contains(target),
+							position.isAttackable(target, range));
+				}
+			}
+		}
+
+		// Positions on another level never match
+		assertFalse(position.isVisible(new Position(5, 4, 2), Direction.NORTH));
+		assertFalse(position.isSurrounding(new Position(5, 4, 2), 1));
+		assertFalse(position.isAttackable(new Position(5, 4, 2), 1));
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Element;
+
+public class RandomStreamTest extends TestCase {
+
+	public RandomStreamTest() {
+	}
+
+	public RandomStreamTest(String name) {
+		super(name);
+	}
+
+	public void testSameSeedProducesSameValues() {
+		final RandomStream stream1 = new RandomStream(42);
+		final RandomStream stream2 = new RandomStream(42);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(stream1.nextLong(), stream2.nextLong());
+		}
+
+		// The split streams are reproducible too
+		final RandomStream split1 = stream1.split();
+		final RandomStream split2 = stream2.split();
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(split1.nextInt(), split2.nextInt());
+		}
+
+		// And differ from their parent
+		assertFalse(stream1.nextLong() == split1.nextLong());
+	}
+
+	public void testNextIntStaysWithinBounds() {
+		final RandomStream stream = new RandomStream(7);
+
+		final boolean[] drawn = new boolean[6];
+
+		for (int i = 0; i < 1000; i++) {
+			final int value = stream.nextInt(5, 10);
+
+			assertTrue(value >= 5);
+			assertTrue(value <= 10);
+
+			drawn[value - 5] = true;
+
+			final int bounded = stream.nextInt(3);
+
+			assertTrue(bounded >= 0);
+			assertTrue(bounded < 3);
+		}
+
+		for (int i = 0; i < drawn.length; i++) {
+			assertTrue(drawn[i]);
+		}
+	}
+
+	public void testShuffleIsAPermutation() {
+		final List<Integer> list = new ArrayList<Integer>(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+
+		new RandomStream(3).shuffle(list);
+
+		assertEquals(10, list.size());
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(list.contains(Integer.valueOf(i)));
+		}
+	}
+
+	public void testSubsystemStreamsDontDependOnTheirCreationOrder() {
+		final RandomStreams streams1 = new RandomStreams(1234);
+		final RandomStreams streams2 = new RandomStreams(1234);
+
+		final long value1 = streams1.getStream(RandomStreams.CREATURES).nextLong();
+
+		// The placement stream is created first this time
+		streams2.getStream(RandomStreams.PLACEMENT).nextLong();
+
+		final long value2 = streams2.getStream(RandomStreams.CREATURES).nextLong();
+
+		assertEquals(value1, value2);
+
+		assertSame(streams1.getStream(RandomStreams.CREATURES), streams1.getStream(RandomStreams.CREATURES));
+		assertNotSame(streams1.newStream(RandomStreams.CREATURES), streams1.newStream(RandomStreams.CREATURES));
+	}
+
+	public void testDungeonsWithSameSeedDrawSameValues() {
+		final Dungeon dungeon1 = new Dungeon(99);
+		final Dungeon dungeon2 = new Dungeon(99);
+
+		assertEquals(99, dungeon1.getRandomStreams().getSeed());
+
+		final RandomStream stream1 = dungeon1.getRandomStreams().newStream(RandomStreams.CREATURES);
+		final RandomStream stream2 = dungeon2.getRandomStreams().newStream(RandomStreams.CREATURES);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(stream1.nextInt(0, 255), stream2.nextInt(0, 255));
+		}
+	}
+
+	public void testItemsDroppedAtRandomAreReproducible() {
+		final Dungeon dungeon1 = new Dungeon(99);
+		final Dungeon dungeon2 = new Dungeon(99);
+
+		final Element element1 = dungeon1.createLevel(1, 5, 5).getElement(2, 2);
+		final Element element2 = dungeon2.createLevel(1, 5, 5).getElement(2, 2);
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(element1.addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE)),
+					element2.addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE)));
+		}
+	}
+}
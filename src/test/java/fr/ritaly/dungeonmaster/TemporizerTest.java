@@ -58,4 +58,76 @@ public class TemporizerTest extends TestCase {
 			assertTrue(temporizer.trigger());
 		}
 	}
-}
\ No newline at end of file
+
+	public void testStartedTemporizerNotifiesListener() {
+		final Temporizer temporizer = new Temporizer("Test", 3);
+
+		final int[] count = new int[1];
+
+		temporizer.start(new ClockListener() {
+			@Override
+			public boolean clockTicked() {
+				return ++count[0] < 2;
+			}
+		});
+
+		assertTrue(temporizer.isStarted());
+
+		try {
+			temporizer.start(new ClockListener() {
+				@Override
+				public boolean clockTicked() {
+					return false;
+				}
+			});
+
+			fail("A temporizer can't be started twice");
+		} catch (IllegalStateException e) {
+			// OK
+		}
+
+		Clock.getInstance().tick(2);
+
+		assertEquals(0, count[0]);
+
+		Clock.getInstance().tick();
+
+		assertEquals(1, count[0]);
+
+		Clock.getInstance().tick(3);
+
+		// The listener asked to stop being notified
+		assertEquals(2, count[0]);
+		assertFalse(temporizer.isStarted());
+	}
+
+	public void testStoppedTemporizerDoesntNotifyListener() {
+		final Temporizer temporizer = new Temporizer("Test", 3);
+
+		final int[] count = new int[1];
+
+		temporizer.start(new ClockListener() {
+			@Override
+			public boolean clockTicked() {
+				count[0]++;
+
+				return true;
+			}
+		});
+
+		Clock.getInstance().tick(2);
+
+		temporizer.stop();
+
+		assertFalse(temporizer.isStarted());
+
+		Clock.getInstance().tick(5);
+
+		assertEquals(0, count[0]);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
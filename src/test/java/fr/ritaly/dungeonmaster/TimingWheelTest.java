@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TimingWheelTest extends TestCase {
+
+	/**
+	 * Listener recording the wheel's time when notified.
+	 */
+	private static class Recorder implements ClockListener {
+
+		private final TimingWheel wheel;
+
+		private final List<Long> times = new ArrayList<Long>();
+
+		private int count;
+
+		private Recorder(TimingWheel wheel, int count) {
+			this.wheel = wheel;
+			this.count = count;
+		}
+
+		@Override
+		public boolean clockTicked() {
+			times.add(wheel.getTime());
+
+			return --count > 0;
+		}
+	}
+
+	public TimingWheelTest() {
+	}
+
+	public TimingWheelTest(String name) {
+		super(name);
+	}
+
+	public void testOneShotTimeoutsExpireAtTheirDeadline() {
+		final TimingWheel wheel = new TimingWheel();
+
+		final int[] delays = { 1, 2, 63, 64, 65, 127, 128, 4095, 4096, 4097, 5000, 262143, 262144, 300000 };
+
+		final List<Recorder> recorders = new ArrayList<Recorder>();
+
+		for (int delay : delays) {
+			final Recorder recorder = new Recorder(wheel, 1);
+
+			wheel.schedule(recorder, delay, 0);
+
+			recorders.add(recorder);
+		}
+
+		assertEquals(delays.length, wheel.size());
+
+		for (int i = 0; i < 300000; i++) {
+			wheel.advance();
+		}
+
+		assertEquals(0, wheel.size());
+
+		for (int i = 0; i < delays.length; i++) {
+			assertEquals(1, recorders.get(i).times.size());
+			assertEquals(delays[i], recorders.get(i).times.get(0).longValue());
+		}
+	}
+
+	public void testTimeoutsScheduledLaterExpireAtTheirDeadline() {
+		final TimingWheel wheel = new TimingWheel();
+
+		// Advance the wheel so that its time isn't aligned on a bucket
+		for (int i = 0; i < 4100; i++) {
+			wheel.advance();
+		}
+
+		final Recorder recorder1 = new Recorder(wheel, 1);
+		final Recorder recorder2 = new Recorder(wheel, 1);
+
+		wheel.schedule(recorder1, 4090, 0);
+		wheel.schedule(recorder2, 70, 0);
+
+		for (int i = 0; i < 4090; i++) {
+			wheel.advance();
+		}
+
+		assertEquals(4100 + 70, recorder2.times.get(0).longValue());
+		assertEquals(4100 + 4090, recorder1.times.get(0).longValue());
+	}
+
+	public void testDelayBeyondTheWheelCapacity() {
+		final TimingWheel wheel = new TimingWheel();
+
+		final int delay = (int) TimingWheel.MAX_DELAY + 100;
+
+		final Recorder recorder = new Recorder(wheel, 1);
+
+		wheel.schedule(recorder, delay, 0);
+
+		for (int i = 0; i < delay; i++) {
+			wheel.advance();
+		}
+
+		assertEquals(1, recorder.times.size());
+		assertEquals(delay, recorder.times.get(0).longValue());
+	}
+
+	public void testRepeatingTimeoutStopsWhenListenerReturnsFalse() {
+		final TimingWheel wheel = new TimingWheel();
+
+		final Recorder recorder = new Recorder(wheel, 3);
+
+		final Timeout timeout = wheel.schedule(recorder, 3, 3);
+
+		for (int i = 0; i < 20; i++) {
+			wheel.advance();
+		}
+
+		assertEquals(3, recorder.times.size());
+		assertEquals(3, recorder.times.get(0).longValue());
+		assertEquals(6, recorder.times.get(1).longValue());
+		assertEquals(9, recorder.times.get(2).longValue());
+
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.isPending());
+		assertEquals(0, wheel.size());
+	}
+
+	public void testCancelledTimeoutNeverExpires() {
+		final TimingWheel wheel = new TimingWheel();
+
+		final Recorder recorder = new Recorder(wheel, 1);
+
+		final Timeout timeout = wheel.schedule(recorder, 100, 0);
+
+		wheel.advance();
+
+		assertTrue(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		assertEquals(0, wheel.size());
+
+		// A timeout can only be cancelled once
+		assertFalse(timeout.cancel());
+
+		for (int i = 0; i < 200; i++) {
+			wheel.advance();
+		}
+
+		assertTrue(recorder.times.isEmpty());
+	}
+
+	public void testClearCancelsPendingTimeouts() {
+		final TimingWheel wheel = new TimingWheel();
+
+		final Timeout timeout1 = wheel.schedule(new Recorder(wheel, 1), 10, 0);
+		final Timeout timeout2 = wheel.schedule(new Recorder(wheel, 1), 10000, 10);
+
+		wheel.clear();
+
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.getTime());
+		assertTrue(timeout1.isCancelled());
+		assertTrue(timeout2.isCancelled());
+	}
+}
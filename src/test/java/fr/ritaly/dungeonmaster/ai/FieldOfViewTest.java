@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.map.Door;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Floor;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Wall;
+
+public class FieldOfViewTest extends TestCase {
+
+	public FieldOfViewTest() {
+	}
+
+	public FieldOfViewTest(String name) {
+		super(name);
+	}
+
+	public void testViewInOpenSpaceMatchesVisiblePositions() {
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+
+		final FieldOfView fieldOfView = level.getFieldOfView();
+
+		final Position position = new Position(4, 7, 1);
+
+		for (Direction direction : new Direction[] { Direction.NORTH, Direction.EAST, Direction.SOUTH,
+				Direction.WEST }) {
+
+			for (int x = 0; x < 9; x++) {
+				for (int y = 0; y < 9; y++) {
+					final Position target = new Position(x, y, 1);
+
+					final boolean expected = level.contains(target) && position.isVisible(target, direction);
+
+					assertEquals("Position " + target + " when looking " + direction, expected,
+							fieldOfView.isVisible(position, direction, FieldOfView.DEFAULT_RANGE, target));
+				}
+			}
+		}
+	}
+
+	public void testWallHidesPositionsBehind() {
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | . | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | . | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | . | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | . | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | x | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | W | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | P | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+---+---+
+
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+		level.setElement(4, 6, new Wall());
+
+		final FieldOfView fieldOfView = level.getFieldOfView();
+
+		final FieldOfView.View view = fieldOfView.getView(4, 7, Direction.NORTH, 3);
+
+		// The wall itself is visible but hides the positions behind it
+		assertTrue(view.isVisible(4, 6));
+		assertTrue(view.isVisible(3, 6));
+		assertTrue(view.isVisible(5, 6));
+		assertFalse(view.isVisible(4, 5));
+		assertFalse(view.isVisible(4, 4));
+
+		// The positions behind the viewer are never visible
+		assertFalse(view.isVisible(4, 7));
+		assertFalse(view.isVisible(4, 8));
+	}
+
+	public void testDoorTransparency() {
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+
+		final Door wooden = new Door(Door.Style.WOODEN, Orientation.NORTH_SOUTH);
+		final Door grate = new Door(Door.Style.GRATE, Orientation.NORTH_SOUTH);
+
+		level.setElement(2, 6, wooden);
+		level.setElement(6, 6, grate);
+
+		final FieldOfView fieldOfView = level.getFieldOfView();
+
+		// One can't see through a closed wooden door
+		assertFalse(fieldOfView.getView(2, 7, Direction.NORTH, 3).isVisible(2, 5));
+
+		// But one can see through a grate
+		assertTrue(fieldOfView.getView(6, 7, Direction.NORTH, 3).isVisible(6, 5));
+
+		// Breaking the wooden door invalidates the cached view
+		assertTrue(wooden.destroy());
+
+		assertTrue(fieldOfView.getView(2, 7, Direction.NORTH, 3).isVisible(2, 5));
+	}
+
+	public void testViewIsInvalidatedWhenDoorOpens() {
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+
+		final Door door = new Door(Door.Style.WOODEN, Orientation.NORTH_SOUTH);
+
+		level.setElement(4, 6, door);
+
+		final FieldOfView fieldOfView = level.getFieldOfView();
+
+		final Position position = new Position(4, 7, 1);
+		final Position target = new Position(4, 5, 1);
+
+		assertFalse(fieldOfView.isVisible(position, Direction.NORTH, 3, target));
+
+		door.open();
+
+		// The door isn't open enough yet
+		Clock.getInstance().tick(8);
+
+		assertEquals(Door.State.HALF_OPEN, door.getState());
+		assertFalse(fieldOfView.isVisible(position, Direction.NORTH, 3, target));
+
+		Clock.getInstance().tick(8);
+
+		assertEquals(Door.State.OPEN, door.getState());
+		assertTrue(fieldOfView.isVisible(position, Direction.NORTH, 3, target));
+	}
+
+	public void testViewsAreCached() {
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+
+		final FieldOfView fieldOfView = level.getFieldOfView();
+
+		assertSame(fieldOfView, level.getFieldOfView());
+
+		final FieldOfView.View view = fieldOfView.getView(4, 7, Direction.NORTH, 3);
+
+		assertEquals(11, view.getCount());
+		assertEquals(1, fieldOfView.getMissCount());
+
+		assertSame(view, fieldOfView.getView(4, 7, Direction.NORTH, 3));
+		assertEquals(1, fieldOfView.getHitCount());
+		assertEquals(1, fieldOfView.getCacheSize());
+
+		// Changing an element without altering its opacity keeps the view
+		level.setElement(2, 2, new Wall());
+		level.setElement(2, 2, new Floor());
+
+		assertSame(view, fieldOfView.getView(4, 7, Direction.NORTH, 3));
+
+		// A new wall in the view's window evicts it
+		level.setElement(4, 5, new Wall());
+
+		assertNotSame(view, fieldOfView.getView(4, 7, Direction.NORTH, 3));
+
+		// The wall hides the position behind it
+		assertEquals(10, fieldOfView.getView(4, 7, Direction.NORTH, 3).getCount());
+	}
+
+	public void testCreatureAndPartyCantSeeThroughWalls() {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level = dungeon.createLevel(1, 9, 9);
+		level.setElement(4, 4, new Wall());
+
+		final Creature mummy = new Creature(Creature.Type.MUMMY, 1);
+		mummy.setDirection(Direction.NORTH);
+		level.getElement(4, 5).addCreature(mummy);
+
+		final Party party = new Party(ChampionFactory.getFactory().newChampion(Name.WUUF));
+
+		dungeon.setParty(4, 3, 1, party);
+
+		// The wall between the creature and the party hides the party
+		assertFalse(mummy.canSeePosition(party.getPosition()));
+
+		// The party looks north and can't see the creature behind it
+		assertFalse(party.canSee(mummy.getElement().getPosition()));
+
+		// The party can see the position in front of it
+		assertTrue(party.canSee(new Position(4, 2, 1)));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
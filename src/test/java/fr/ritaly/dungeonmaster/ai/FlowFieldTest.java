@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Pit;
+import fr.ritaly.dungeonmaster.map.RetractableWall;
+import fr.ritaly.dungeonmaster.map.TestDungeons;
+
+public class FlowFieldTest extends TestCase {
+
+	public FlowFieldTest() {
+	}
+
+	public FlowFieldTest(String name) {
+		super(name);
+	}
+
+	public void testDistancesWhenMaterial() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final FlowField flowField = level.getFlowField(Materiality.MATERIAL);
+		flowField.setTarget(1, 1);
+
+		assertEquals(0, flowField.getDistance(1, 1));
+		assertEquals(1, flowField.getDistance(2, 1));
+		assertEquals(3, flowField.getDistance(3, 2));
+		// The wall at (3,1) must be bypassed
+		assertEquals(5, flowField.getDistance(4, 1));
+		assertEquals(FlowField.UNREACHABLE, flowField.getDistance(3, 1));
+		assertEquals(FlowField.UNREACHABLE, flowField.getDistance(0, 0));
+	}
+
+	public void testDistancesWhenImmaterial() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final FlowField flowField = level.getFlowField(Materiality.IMMATERIAL);
+		flowField.setTarget(1, 1);
+
+		// The walls can be traversed
+		assertEquals(3, flowField.getDistance(4, 1));
+		assertEquals(3, flowField.getDistance(3, 2));
+		assertEquals(2, flowField.getDistance(0, 0));
+	}
+
+	public void testFlowFieldIsSharedAndOnlyRecomputedWhenTargetMoves() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final FlowField flowField = level.getFlowField(Materiality.MATERIAL);
+
+		assertSame(flowField, level.getFlowField(Materiality.MATERIAL));
+		assertNotSame(flowField, level.getFlowField(Materiality.IMMATERIAL));
+
+		flowField.setTarget(1, 1);
+		flowField.getDistance(5, 1);
+		flowField.getDistance(5, 2);
+
+		assertEquals(1, flowField.getComputationCount());
+
+		// Same target, no computation
+		flowField.setTarget(1, 1);
+		flowField.getDistance(5, 1);
+
+		assertEquals(1, flowField.getComputationCount());
+
+		// The target moves
+		flowField.setTarget(2, 1);
+		assertEquals(5, flowField.getDistance(5, 1));
+
+		assertEquals(2, flowField.getComputationCount());
+	}
+
+	public void testFlowFieldInvalidatedWhenTraversabilityChanges() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final RetractableWall wall = new RetractableWall();
+		level.setElement(3, 2, wall);
+
+		final FlowField flowField = level.getFlowField(Materiality.MATERIAL);
+		flowField.setTarget(1, 1);
+
+		// The retractable wall is closed and blocks the way
+		assertEquals(FlowField.UNREACHABLE, flowField.getDistance(4, 1));
+
+		wall.open();
+
+		assertTrue(flowField.isDirty());
+		assertEquals(5, flowField.getDistance(4, 1));
+
+		// Dropping a traversable element doesn't invalidate the field
+		level.setElement(5, 2, new Pit(true));
+
+		assertFalse(flowField.isDirty());
+
+		// But a real open pit does
+		level.setElement(4, 2, new Pit(false, true));
+
+		assertTrue(flowField.isDirty());
+		assertEquals(FlowField.UNREACHABLE, flowField.getDistance(5, 2));
+		assertEquals(3, flowField.getComputationCount());
+	}
+}
@@ -0,0 +1,285 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Skill;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.item.Action;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.magic.Spell;
+import fr.ritaly.dungeonmaster.map.Door;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.DungeonUtils;
+import fr.ritaly.dungeonmaster.map.Floor;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Wall;
+
+public class NoiseMapTest extends TestCase {
+
+	public NoiseMapTest() {
+	}
+
+	public NoiseMapTest(String name) {
+		super(name);
+	}
+
+	public void testAudibilityInOpenSpaceMatchesSurroundingPositions() {
+		final Level level = new Dungeon().createLevel(1, 15, 15);
+
+		final NoiseMap noiseMap = level.getNoiseMap();
+		noiseMap.emit(7, 7);
+
+		final Position source = new Position(7, 7, 1);
+
+		for (int radius = 1; radius <= 6; radius++) {
+			for (int x = 1; x < 14; x++) {
+				for (int y = 1; y < 14; y++) {
+					if ((x == 7) && (y == 7)) {
+						continue;
+					}
+
+					final boolean surrounding = source.isSurrounding(new Position(x, y, 1), radius);
+
+					if (radius <= 3) {
+						// The approximation is exact within a radius of 3
+						assertEquals("Position [" + x + "," + y + "] with radius " + radius, surrounding,
+								noiseMap.isAudible(x, y, radius));
+					} else if (noiseMap.isAudible(x, y, radius)) {
+						// The approximation never overestimates the range
+						assertTrue("Position [" + x + "," + y + "] with radius " + radius, surrounding);
+					}
+				}
+			}
+		}
+	}
+
+	public void testNoiseGoesAroundWalls() {
+		// +---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+
+		// | W | S | . | W | x | . | W |
+		// +---+---+---+---+---+---+---+
+		// | W | . | . | . | . | . | W |
+		// +---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+
+		final List<String> rows = new ArrayList<String>();
+		rows.add("WWWWWWW");
+		rows.add("W  W  W");
+		rows.add("W     W");
+		rows.add("WWWWWWW");
+
+		final Level level = DungeonUtils.parse(rows, new Dungeon(), 1);
+
+		final NoiseMap noiseMap = level.getNoiseMap();
+		noiseMap.emit(1, 1);
+
+		assertEquals(0, noiseMap.getDistance(1, 1));
+		assertEquals(2, noiseMap.getDistance(2, 1));
+		assertEquals(3, noiseMap.getDistance(2, 2));
+
+		// The wall at (3,1) blocks the noise
+		assertEquals(NoiseMap.INAUDIBLE, noiseMap.getDistance(3, 1));
+
+		// The noise reaches (4,1) by going around the wall (it can't slip
+		// diagonally along the wall)
+		assertEquals(3 + 2 + 2 + 2, noiseMap.getDistance(4, 1));
+		assertTrue(noiseMap.isAudible(4, 1, 4));
+		assertFalse(noiseMap.isAudible(4, 1, 3));
+	}
+
+	public void testLoudnessBoundsTheFlood() {
+		final Level level = new Dungeon().createLevel(1, 15, 15);
+
+		final NoiseMap noiseMap = level.getNoiseMap();
+		noiseMap.emit(1, 7, 2);
+
+		assertEquals(4, noiseMap.getDistance(3, 7));
+		assertEquals(NoiseMap.INAUDIBLE, noiseMap.getDistance(4, 7));
+
+		// A creature with a large awareness can't hear a faint noise
+		assertFalse(noiseMap.isAudible(4, 7, 10));
+	}
+
+	public void testClosedDoorMufflesNoise() {
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+
+		final Door door = new Door(Door.Style.WOODEN, Orientation.NORTH_SOUTH);
+
+		level.setElement(4, 3, door);
+		level.setElement(3, 3, new Wall());
+		level.setElement(5, 3, new Wall());
+
+		final NoiseMap noiseMap = level.getNoiseMap();
+		noiseMap.emit(4, 1);
+
+		assertEquals(1, noiseMap.getFloodCount());
+
+		// The noise goes through the closed door but is muffled
+		assertEquals(2 + 2 + NoiseMap.MUFFLING + 2, noiseMap.getDistance(4, 4));
+
+		// Making the same noise again doesn't flood the level again
+		noiseMap.emit(4, 1);
+
+		assertEquals(1, noiseMap.getFloodCount());
+
+		// Opening the door invalidates the map
+		door.open();
+
+		Clock.getInstance().tick(16);
+
+		assertEquals(Door.State.OPEN, door.getState());
+		assertTrue(noiseMap.isDirty());
+		assertEquals(2 + 2 + 2, noiseMap.getDistance(4, 4));
+		assertEquals(2, noiseMap.getFloodCount());
+	}
+
+	public void testNoiseFadesOut() {
+		final Level level = new Dungeon().createLevel(1, 9, 9);
+
+		final NoiseMap noiseMap = level.getNoiseMap();
+		noiseMap.emit(4, 4);
+
+		Clock.getInstance().tick(NoiseMap.DURATION);
+
+		assertTrue(noiseMap.isSource(4, 4));
+		assertTrue(noiseMap.isAudible(5, 4, 2));
+
+		// Making the same noise again delays its fading
+		noiseMap.emit(4, 4);
+
+		Clock.getInstance().tick(NoiseMap.DURATION);
+
+		assertTrue(noiseMap.isAudible(5, 4, 2));
+
+		Clock.getInstance().tick(1);
+
+		assertFalse(noiseMap.isSource(4, 4));
+		assertFalse(noiseMap.isAudible(5, 4, 2));
+		assertEquals(NoiseMap.INAUDIBLE, noiseMap.getDistance(4, 4));
+		assertEquals(-1, noiseMap.getSourceX());
+
+		// A new noise can be heard again
+		noiseMap.emit(4, 4);
+
+		assertTrue(noiseMap.isAudible(5, 4, 2));
+	}
+
+	public void testCreatureHearsPartyMoves() {
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | P | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | . | . | . | M | . | . | . | W |
+		// +---+---+---+---+---+---+---+---+---+
+		// | W | W | W | W | W | W | W | W | W |
+		// +---+---+---+---+---+---+---+---+---+
+		final List<String> rows = new ArrayList<String>();
+		rows.add("WWWWWWWWW");
+		rows.add("W       W");
+		rows.add("WWWWWWWWW");
+		rows.add("W       W");
+		rows.add("WWWWWWWWW");
+
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level = DungeonUtils.parse(rows, dungeon, 1);
+
+		final Creature mummy = new Creature(Creature.Type.MUMMY, 1);
+		level.getElement(4, 3).addCreature(mummy);
+
+		final Party party = new Party(ChampionFactory.getFactory().newChampion(Name.WUUF));
+
+		dungeon.setParty(4, 1, 1, party);
+
+		// The noise made by the party when entering the dungeon can't go
+		// through the wall
+		assertTrue(level.getNoiseMap().isSource(4, 1));
+		assertFalse(mummy.canHearPosition(party.getPosition()));
+
+		// Digging a hole in the wall lets the noise through (the mummy's
+		// awareness is 2)
+		level.setElement(4, 2, new Floor());
+
+		assertTrue(mummy.canHearPosition(party.getPosition()));
+
+		// No noise was made from another position
+		assertFalse(mummy.canHearPosition(new Position(5, 1, 1)));
+	}
+
+	public void testPartyMakesNoiseWhenFightingAndCasting() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level = dungeon.createLevel(1, 9, 9);
+
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+
+		// Boost all the champion's skills to be able to fight and cast
+		for (Skill skill : Skill.values()) {
+			tiggy.gainExperience(skill, 1000000);
+		}
+
+		final Party party = new Party(tiggy);
+
+		dungeon.setParty(4, 4, 1, party);
+
+		final NoiseMap noiseMap = level.getNoiseMap();
+
+		// Let the noise made when entering the dungeon fade out
+		Clock.getInstance().tick(NoiseMap.DURATION + 1);
+
+		assertFalse(noiseMap.isSource(4, 4));
+
+		// Casting a spell is heard
+		tiggy.cast(PowerRune.LO, Spell.Type.TORCH);
+		tiggy.castSpell();
+
+		assertTrue(noiseMap.isSource(4, 4));
+
+		Clock.getInstance().tick(NoiseMap.DURATION + 1);
+
+		assertFalse(noiseMap.isSource(4, 4));
+
+		// So is swinging a sword
+		tiggy.getBody().getWeaponHand().putOn(ItemFactory.getFactory().newItem(Item.Type.SWORD));
+		tiggy.getBody().getWeaponHand().getItem().perform(Action.SWING);
+
+		assertTrue(noiseMap.isSource(4, 4));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Floor;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.TestDungeons;
+
+public class PathCacheTest extends TestCase {
+
+	public PathCacheTest() {
+	}
+
+	public PathCacheTest(String name) {
+		super(name);
+	}
+
+	public void testCachedPathIsReused() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+		final PathCache cache = new PathCache();
+
+		final List<Element> path1 = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1);
+
+		assertNotNull(path1);
+		assertEquals(7, path1.size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		final List<Element> path2 = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1);
+
+		assertSame(path1, path2);
+		assertEquals(1, cache.getHitCount());
+
+		// The materiality is part of the key
+		final List<Element> path3 = cache.findBestPath(level, Materiality.IMMATERIAL, 1, 1, 5, 1);
+
+		assertEquals(5, path3.size());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.size());
+	}
+
+	public void testPathEvictedWhenElementOnPathChanges() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+		final PathCache cache = new PathCache();
+
+		final List<Element> path = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1);
+		cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 1, 2);
+
+		assertEquals(2, cache.size());
+
+		// An element outside the paths changes: no eviction
+		level.getElement(5, 2).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		assertEquals(2, cache.size());
+
+		// An element on the first path changes
+		path.get(3).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		assertEquals(1, cache.size());
+		assertNotSame(path, cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1));
+	}
+
+	public void testPathEvictedWhenElementOnPathReplaced() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+		final PathCache cache = new PathCache();
+
+		final List<Element> path = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1);
+
+		level.setElement(3, 2, new Floor());
+
+		final List<Element> path2 = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1);
+
+		assertNotSame(path, path2);
+		assertSame(level.getElement(3, 2), path2.get(3));
+		assertEquals(2, cache.getMissCount());
+	}
+
+	public void testLeastRecentlyUsedPathEvicted() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+		final PathCache cache = new PathCache(2);
+
+		final List<Element> path1 = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1);
+		final List<Element> path2 = cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 1, 2);
+
+		// Use the first path so that the second one is the eldest
+		assertSame(path1, cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1));
+
+		cache.findBestPath(level, Materiality.MATERIAL, 2, 2, 5, 2);
+
+		assertEquals(2, cache.size());
+		assertSame(path1, cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 5, 1));
+		assertNotSame(path2, cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 1, 2));
+	}
+
+	public void testUnreachableGoalNotCached() {
+		final Level level = TestDungeons.newTwoRoomLevel();
+		final PathCache cache = new PathCache();
+
+		assertNull(cache.findBestPath(level, Materiality.MATERIAL, 1, 1, 3, 1));
+		assertEquals(0, cache.size());
+	}
+}
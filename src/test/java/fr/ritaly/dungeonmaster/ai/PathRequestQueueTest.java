@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.ai.astar.PathFinder;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Teleporter;
+import fr.ritaly.dungeonmaster.map.TestDungeons;
+import fr.ritaly.dungeonmaster.map.Wall;
+
+public class PathRequestQueueTest extends TestCase {
+
+	private PathRequestQueue queue;
+
+	public PathRequestQueueTest() {
+	}
+
+	public PathRequestQueueTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Ticks the clock twice: the requests submitted are dispatched on the
+	 * first tick and delivered on the second one (the queue waits for the
+	 * workers' futures before delivering).
+	 */
+	private void tickUntilDelivered() {
+		Clock.getInstance().tick(2);
+
+		assertEquals(0, queue.getPendingCount());
+	}
+
+	public void testRequestsResolvedOnLaterTick() throws Exception {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final List<PathRequest> resolved = new ArrayList<PathRequest>();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final CountDownLatch latch = new CountDownLatch(3);
+
+		final PathListener listener = new PathListener() {
+			@Override
+			public void pathResolved(PathRequest request) {
+				resolved.add(request);
+				threads.add(Thread.currentThread());
+				latch.countDown();
+			}
+		};
+
+		final PathRequest request1 = queue.submit(level, Materiality.MATERIAL, 1, 1, 5, 1, listener);
+		final PathRequest request2 = queue.submit(level, Materiality.IMMATERIAL,
+				PathFinder.Strategy.JUMP_POINT_SEARCH, 1, 1, 5, 1, listener);
+		final PathRequest request3 = queue.submit(level, Materiality.MATERIAL, 1, 1, 3, 1, listener);
+
+		assertEquals(3, queue.getPendingCount());
+		assertFalse(request1.isResolved());
+
+		tickUntilDelivered();
+
+		// The listener was notified synchronously by the last tick
+		assertEquals(0, latch.getCount());
+		assertEquals(3, resolved.size());
+
+		// The listener is always notified by the clock's thread (here the test's
+		// thread)
+		for (Thread thread : threads) {
+			assertSame(Thread.currentThread(), thread);
+		}
+
+		assertTrue(request1.isResolved());
+		assertEquals(new PathFinder(level, Materiality.MATERIAL).findBestPath(1, 1, 5, 1), request1.getPath());
+		assertEquals(5, request2.getPath().size());
+
+		// The goal is a wall
+		assertTrue(request3.isResolved());
+		assertNull(request3.getPath());
+	}
+
+	public void testResultsDeliveredInSubmissionOrder() throws Exception {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final List<PathRequest> resolved = new ArrayList<PathRequest>();
+
+		final PathListener listener = new PathListener() {
+			@Override
+			public void pathResolved(PathRequest request) {
+				resolved.add(request);
+			}
+		};
+
+		final List<PathRequest> requests = new ArrayList<PathRequest>();
+
+		for (int x = 5; x >= 1; x--) {
+			requests.add(queue.submit(level, Materiality.MATERIAL, 1, 1, x, 2, listener));
+		}
+
+		// The requests are dispatched on the next tick
+		Clock.getInstance().tick();
+
+		assertTrue(resolved.isEmpty());
+		assertEquals(5, queue.getPendingCount());
+
+		// And delivered on the tick after, whatever the workers' speed
+		Clock.getInstance().tick();
+
+		assertEquals(0, queue.getPendingCount());
+		assertEquals(requests, resolved);
+	}
+
+	public void testPathComputedAgainstSnapshot() throws Exception {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final PathRequest request = queue.submit(level, Materiality.MATERIAL, 1, 1, 5, 1, null);
+
+		// The request is dispatched (and the level snapshot) at the end of the
+		// tick
+		Clock.getInstance().tick();
+
+		// Blocking the level afterwards doesn't change the result
+		level.setElement(3, 2, new Wall());
+
+		tickUntilDelivered();
+
+		assertTrue(request.isResolved());
+		assertNotNull(request.getPath());
+		assertEquals(7, request.getPath().size());
+
+		// The path still goes through the position now blocked
+		final Element blocked = level.getElement(3, 2);
+
+		assertTrue(request.getPath().contains(blocked));
+		assertTrue(blocked.isConcrete());
+	}
+
+	public void testCancelledRequestNotDelivered() throws Exception {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final List<PathRequest> resolved = new ArrayList<PathRequest>();
+
+		final PathRequest request = queue.submit(level, Materiality.MATERIAL, 1, 1, 5, 1, new PathListener() {
+			@Override
+			public void pathResolved(PathRequest request) {
+				resolved.add(request);
+			}
+		});
+
+		request.cancel();
+
+		tickUntilDelivered();
+
+		assertTrue(resolved.isEmpty());
+		assertFalse(request.isResolved());
+	}
+
+	public void testHierarchicalPathResolvedOnLaterTick() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 9, 9);
+		final Level level2 = dungeon.createLevel(2, 9, 9);
+
+		final Teleporter teleporter = new Teleporter(new Position(1, 1, 2), DirectionTransform.IDENTITY, true);
+		level1.setElement(4, 7, teleporter);
+
+		final HierarchicalPathRequest request = new HierarchicalPathRequest(dungeon, Materiality.MATERIAL,
+				new Position(4, 4, 1), new Position(6, 6, 2), false, true);
+
+		queue.submit(request);
+
+		// Dispatched on the next tick, not resolved yet
+		Clock.getInstance().tick();
+
+		assertFalse(request.isResolved());
+
+		tickUntilDelivered();
+
+		assertTrue(request.isResolved());
+
+		final List<Element> path = request.getPath();
+
+		assertNotNull(path);
+		assertSame(level1.getElement(4, 4), path.get(0));
+		assertTrue(path.contains(teleporter));
+		assertSame(level2.getElement(6, 6), path.get(path.size() - 1));
+	}
+
+	public void testFlowFieldUpdatedOnLaterTick() throws Exception {
+		final Level level = TestDungeons.newTwoRoomLevel();
+
+		final FlowField flowField = level.getFlowField(Materiality.MATERIAL);
+		flowField.setTarget(2, 1);
+
+		// The field is recomputed by the workers
+		assertFalse(flowField.update(queue));
+
+		tickUntilDelivered();
+
+		assertTrue(flowField.update(queue));
+		assertFalse(flowField.isDirty());
+		assertEquals(1, flowField.getComputationCount());
+		assertEquals(4, flowField.getDistance(4, 1));
+
+		// The target moves once the request is dispatched: the result is
+		// discarded when delivered
+		flowField.setTarget(1, 1);
+
+		assertFalse(flowField.update(queue));
+
+		Clock.getInstance().tick();
+
+		flowField.setTarget(5, 2);
+		flowField.setTarget(1, 1);
+
+		tickUntilDelivered();
+
+		assertTrue(flowField.isDirty());
+		assertEquals(1, flowField.getComputationCount());
+
+		// The next update requests the field again
+		assertFalse(flowField.update(queue));
+
+		tickUntilDelivered();
+
+		assertTrue(flowField.update(queue));
+		assertEquals(2, flowField.getComputationCount());
+		assertEquals(5, flowField.getDistance(4, 1));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+
+		queue = new PathRequestQueue(2);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		queue.shutdown();
+
+		Clock.getInstance().reset();
+	}
+}
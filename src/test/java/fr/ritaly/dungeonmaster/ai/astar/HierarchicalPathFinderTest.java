@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai.astar;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.map.Door;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Floor;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Stairs;
+import fr.ritaly.dungeonmaster.map.Teleporter;
+import fr.ritaly.dungeonmaster.map.Wall;
+
+public class HierarchicalPathFinderTest extends TestCase {
+
+	public HierarchicalPathFinderTest() {
+	}
+
+	public HierarchicalPathFinderTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Asserts that the given path is valid: 2 consecutive elements are either
+	 * adjacent or linked by stairs / teleporter.
+	 */
+	private static void assertValidPath(List<Element> path, Position start, Position goal) {
+		assertNotNull(path);
+		assertEquals(start, path.get(0).getPosition());
+		assertEquals(goal, path.get(path.size() - 1).getPosition());
+
+		for (int i = 1; i < path.size(); i++) {
+			final Element previous = path.get(i - 1);
+			final Position from = previous.getPosition();
+			final Position to = path.get(i).getPosition();
+
+			if (previous instanceof Stairs) {
+				if (to.equals(((Stairs) previous).getDestination())) {
+					continue;
+				}
+			} else if (previous instanceof Teleporter) {
+				assertEquals(((Teleporter) previous).getDestination(), to);
+
+				continue;
+			}
+
+			assertEquals(from.z, to.z);
+			assertEquals(1, Math.abs(from.x - to.x) + Math.abs(from.y - to.y));
+
+			if (!(path.get(i) instanceof Stairs)) {
+				assertFalse(path.get(i).isConcrete());
+			}
+		}
+	}
+
+	public void testPathOnSingleLevel() {
+		// A wall splits the level into 2 parts linked at the bottom
+		final Dungeon dungeon = new Dungeon();
+		final Level level1 = dungeon.createLevel(1, 20, 20);
+
+		for (int y = 1; y < 18; y++) {
+			level1.setElement(9, y, new Wall());
+		}
+
+		final Position start = new Position(1, 1, 1);
+		final Position goal = new Position(17, 1, 1);
+
+		final List<Element> path = new HierarchicalPathFinder(dungeon, Materiality.MATERIAL).findBestPath(start,
+				goal, false, false);
+
+		assertValidPath(path, start, goal);
+
+		final List<Element> optimal = new PathFinder(level1, Materiality.MATERIAL).findBestPath(1, 1, 17, 1);
+
+		assertTrue(path.size() >= optimal.size());
+		assertTrue(path.size() <= optimal.size() + 4);
+
+		// The immaterial creature goes (almost) straight through the wall. The
+		// path is near-optimal as it goes through the cluster entrances
+		final List<Element> path2 = new HierarchicalPathFinder(dungeon, Materiality.IMMATERIAL).findBestPath(start,
+				goal, false, false);
+
+		assertNotNull(path2);
+		assertTrue(path2.size() >= 17);
+		assertTrue(path2.size() <= 17 + 4);
+	}
+
+	public void testPathAcrossLevelsThroughStairs() {
+		final Dungeon dungeon = new Dungeon();
+		final Level level1 = dungeon.createLevel(1, 20, 20);
+		final Level level2 = dungeon.createLevel(2, 12, 12);
+
+		final Position stairs1 = new Position(15, 15, 1);
+		final Position stairs2 = new Position(3, 3, 2);
+
+		level1.setElement(15, 15, new Stairs(Direction.NORTH, false, stairs2));
+		level2.setElement(3, 3, new Stairs(Direction.NORTH, true, stairs1));
+
+		final HierarchicalPathFinder pathFinder = new HierarchicalPathFinder(dungeon, Materiality.MATERIAL);
+
+		final Position start = new Position(1, 1, 1);
+		final Position goal = new Position(10, 10, 2);
+
+		final List<Element> path = pathFinder.findBestPath(start, goal, true, false);
+
+		assertValidPath(path, start, goal);
+		assertTrue(path.contains(level1.getElement(15, 15)));
+		assertTrue(path.contains(level2.getElement(3, 3)));
+
+		// The path finder can be reused and the path is the same
+		assertEquals(path, pathFinder.findBestPath(start, goal, true, false));
+
+		// The way back
+		assertValidPath(pathFinder.findBestPath(goal, start, true, false), goal, start);
+
+		// No path if the stairs can't be taken
+		assertNull(pathFinder.findBestPath(start, goal, false, false));
+	}
+
+	public void testPathThroughTeleporter() {
+		// The start position is walled in, the only way out is a teleporter
+		final Dungeon dungeon = new Dungeon();
+		final Level level1 = dungeon.createLevel(1, 20, 20);
+
+		for (int i = 1; i <= 4; i++) {
+			level1.setElement(i, 4, new Wall());
+			level1.setElement(4, i, new Wall());
+		}
+
+		final Position destination = new Position(18, 18, 1);
+
+		level1.setElement(2, 2, new Teleporter(destination, DirectionTransform.OPPOSITE, false));
+
+		final HierarchicalPathFinder pathFinder = new HierarchicalPathFinder(dungeon, Materiality.MATERIAL);
+
+		final Position start = new Position(1, 1, 1);
+		final Position goal = new Position(12, 12, 1);
+
+		final List<Element> path = pathFinder.findBestPath(start, goal, false, true);
+
+		assertValidPath(path, start, goal);
+		assertTrue(path.contains(level1.getElement(2, 2)));
+		assertEquals(2 + 1 + 12, path.size() - 1);
+
+		assertNull(pathFinder.findBestPath(start, goal, false, false));
+
+		// The graph is discarded once the teleporter is disabled
+		final HierarchicalPathFinder shared = dungeon.getHierarchicalPathFinder(Materiality.MATERIAL);
+
+		assertNotNull(shared.findBestPath(start, goal, false, true));
+
+		((Teleporter) level1.getElement(2, 2)).disable();
+
+		assertNull(shared.findBestPath(start, goal, false, true));
+	}
+
+	public void testGraphDiscardedWhenDoorCloses() {
+		// A wall with a door splits the level into 2 parts
+		final Dungeon dungeon = new Dungeon();
+		final Level level1 = dungeon.createLevel(1, 20, 20);
+
+		for (int y = 1; y < 19; y++) {
+			level1.setElement(9, y, new Wall());
+		}
+
+		final Door door = new Door(Door.Style.WOODEN, Orientation.WEST_EAST, Door.State.OPEN);
+
+		level1.setElement(9, 5, door);
+
+		final HierarchicalPathFinder pathFinder = dungeon.getHierarchicalPathFinder(Materiality.MATERIAL);
+
+		final Position start = new Position(1, 1, 1);
+		final Position goal = new Position(17, 1, 1);
+
+		final List<Element> path = pathFinder.findBestPath(start, goal, false, false);
+
+		assertValidPath(path, start, goal);
+		assertTrue(path.contains(door));
+
+		door.close();
+
+		Clock.getInstance().tick(16);
+
+		assertEquals(Door.State.CLOSED, door.getState());
+		assertNull(pathFinder.findBestPath(start, goal, false, false));
+
+		// Replacing the wall next to the door opens another way
+		level1.setElement(9, 6, new Floor());
+
+		assertValidPath(pathFinder.findBestPath(start, goal, false, false), start, goal);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -20,6 +20,7 @@ package fr.ritaly.dungeonmaster.ai.astar;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import fr.ritaly.dungeonmaster.ai.Materiality;
@@ -27,6 +28,7 @@ import fr.ritaly.dungeonmaster.map.Dungeon;
 import fr.ritaly.dungeonmaster.map.DungeonUtils;
 import fr.ritaly.dungeonmaster.map.Element;
 import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Wall;
 
 public class LevelPathFinderTest extends TestCase {
 
@@ -125,4 +127,98 @@ public class LevelPathFinderTest extends TestCase {
 		assertNotNull(nodes);
 		assertEquals(7, nodes.size());
 	}
-}
\ No newline at end of file
+
+	public void testFindPathWhenTargetUnreachable() {
+		// The material creature in S can't reach target X (walled in)
+		final Dungeon dungeon = new Dungeon();
+
+		final List<String> rows = new ArrayList<String>();
+		rows.add("WWWWWWW");
+		rows.add("W  W  W");
+		rows.add("W  W  W");
+		rows.add("WWWWWWW");
+
+		final Level level1 = DungeonUtils.parse(rows, dungeon, 1);
+		final PathFinder pathFinder = new PathFinder(level1, Materiality.MATERIAL);
+
+		assertNull(pathFinder.findBestPath(1, 1, 5, 2));
+
+		// The path finder can be reused for another search
+		final List<Element> nodes = pathFinder.findBestPath(1, 1, 2, 2);
+
+		assertNotNull(nodes);
+		assertEquals(3, nodes.size());
+		assertEquals(level1.getElement(1, 1), nodes.get(0));
+		assertEquals(level1.getElement(2, 2), nodes.get(2));
+	}
+
+	public void testJumpPointSearchFindsShortestPaths() {
+		final Random random = new Random(1234);
+
+		for (int i = 0; i < 20; i++) {
+			// Random level with about 30% of walls
+			final Level level = new Dungeon().createLevel(1, 32, 32);
+
+			for (int x = 1; x < 31; x++) {
+				for (int y = 1; y < 31; y++) {
+					if (random.nextInt(10) < 3) {
+						level.setElement(x, y, new Wall());
+					}
+				}
+			}
+
+			final PathFinder aStar = new PathFinder(level, Materiality.MATERIAL);
+			final PathFinder jps = new PathFinder(level, Materiality.MATERIAL, PathFinder.Strategy.JUMP_POINT_SEARCH);
+
+			for (int j = 0; j < 20; j++) {
+				final int startX = 1 + random.nextInt(30), startY = 1 + random.nextInt(30);
+				final int endX = 1 + random.nextInt(30), endY = 1 + random.nextInt(30);
+
+				if (level.getElement(startX, startY).isConcrete()) {
+					continue;
+				}
+
+				final List<Element> expected = aStar.findBestPath(startX, startY, endX, endY);
+				final List<Element> actual = jps.findBestPath(startX, startY, endX, endY);
+
+				if (expected == null) {
+					assertNull(actual);
+
+					continue;
+				}
+
+				assertNotNull(actual);
+				assertEquals(expected.size(), actual.size());
+				assertEquals(level.getElement(startX, startY), actual.get(0));
+				assertEquals(level.getElement(endX, endY), actual.get(actual.size() - 1));
+
+				for (int k = 1; k < actual.size(); k++) {
+					final Element element = actual.get(k);
+
+					assertFalse(element.isConcrete());
+					assertTrue(actual.get(k - 1).getAdjacentElements().contains(element));
+				}
+			}
+		}
+	}
+
+	public void testJumpPointSearchExpandsFewerNodesOnOpenLevel() {
+		final Level level = new Dungeon().createLevel(1, 64, 64);
+
+		// A few obstacles
+		for (int y = 10; y < 50; y++) {
+			level.setElement(30, y, new Wall());
+		}
+
+		final PathFinder aStar = new PathFinder(level, Materiality.MATERIAL);
+		final PathFinder jps = new PathFinder(level, Materiality.MATERIAL, PathFinder.Strategy.JUMP_POINT_SEARCH);
+
+		final List<Element> expected = aStar.findBestPath(2, 30, 60, 31);
+		final List<Element> actual = jps.findBestPath(2, 30, 60, 31);
+
+		assertNotNull(actual);
+		assertEquals(expected.size(), actual.size());
+		assertTrue(aStar.getExpandedCount() + " vs " + jps.getExpandedCount(),
+				jps.getExpandedCount() * 10 <= aStar.getExpandedCount());
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.ai.astar;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.ai.astar2.Maze;
+import fr.ritaly.dungeonmaster.ai.astar2.Square;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+import fr.ritaly.dungeonmaster.map.Element;
+import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Wall;
+
+/**
+ * Benchmark comparing the A* and jump point search strategies of
+ * {@link PathFinder} on generated levels, and the legacy
+ * {@link fr.ritaly.dungeonmaster.ai.astar2.PathFinder} on generated mazes of
+ * the same size. Not a unit test: run it with
+ * <code>java fr.ritaly.dungeonmaster.ai.astar.PathFinderBenchmark [size] [queries]</code>.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public class PathFinderBenchmark {
+
+	public static void main(String[] args) {
+		final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+		final int queries = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+
+		// Mute the debug logs, they would distort the measures
+		org.apache.log4j.Logger.getLogger(PathFinder.class).setLevel(org.apache.log4j.Level.INFO);
+
+		final Random random = new Random(0);
+
+		System.out.println(String.format("Benchmark on %dx%d levels, %d queries per run", size, size, queries));
+
+		for (int percent : new int[] { 0, 10, 30 }) {
+			final Level level = createLevel(size, percent, random);
+
+			final long seed = random.nextLong();
+
+			run("A* (" + percent + "% walls)", new PathFinder(level, Materiality.MATERIAL), queries, new Random(seed));
+			run("JPS (" + percent + "% walls)", new PathFinder(level, Materiality.MATERIAL,
+					PathFinder.Strategy.JUMP_POINT_SEARCH), queries, new Random(seed));
+		}
+
+		runLegacy(size, Math.max(1, queries / 100), random);
+	}
+
+	private static Level createLevel(int size, int percent, Random random) {
+		final Level level = new Dungeon().createLevel(1, size, size);
+
+		for (int x = 1; x < size - 1; x++) {
+			for (int y = 1; y < size - 1; y++) {
+				if (random.nextInt(100) < percent) {
+					level.setElement(x, y, new Wall());
+				}
+			}
+		}
+
+		return level;
+	}
+
+	private static void run(String label, PathFinder pathFinder, int queries, Random random) {
+		final Level level = pathFinder.getLevel();
+		final int size = level.getWidth();
+
+		// Warm up
+		for (int i = 0; i < queries / 10; i++) {
+			pathFinder.findBestPath(1, 1, size - 2, size - 2);
+		}
+
+		long expanded = 0, found = 0;
+
+		final long start = System.nanoTime();
+
+		for (int i = 0; i < queries; i++) {
+			final int startX = 1 + random.nextInt(size - 2), startY = 1 + random.nextInt(size - 2);
+			final int endX = 1 + random.nextInt(size - 2), endY = 1 + random.nextInt(size - 2);
+
+			final List<Element> path = pathFinder.findBestPath(startX, startY, endX, endY);
+
+			if (path != null) {
+				found++;
+			}
+
+			expanded += pathFinder.getExpandedCount();
+		}
+
+		final long elapsed = System.nanoTime() - start;
+
+		System.out.println(String.format("%-20s %8.1f us/query %10.1f nodes expanded/query (%d paths found)", label,
+				elapsed / 1000.0 / queries, (double) expanded / queries, found));
+	}
+
+	private static void runLegacy(int size, int queries, Random random) {
+		// The legacy path finder draws the maze on the console, mute it
+		final PrintStream out = System.out;
+
+		long elapsed = 0, found = 0;
+
+		try {
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+
+			for (int i = 0; i < queries; i++) {
+				final Maze maze = new Maze(size, size);
+
+				final long start = System.nanoTime();
+
+				final List<Square> path = new fr.ritaly.dungeonmaster.ai.astar2.PathFinder(maze).findBestPath(
+						random.nextInt(size), random.nextInt(size), random.nextInt(size), random.nextInt(size));
+
+				elapsed += System.nanoTime() - start;
+
+				if (path != null) {
+					found++;
+				}
+			}
+		} finally {
+			System.setOut(out);
+		}
+
+		System.out.println(String.format("%-20s %8.1f us/query %10s nodes expanded/query (%d paths found)",
+				"astar2 (maze)", elapsed / 1000.0 / queries, "n/a", found));
+	}
+}
@@ -24,15 +24,19 @@ import java.util.List;
 import junit.framework.TestCase;
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
 import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStream;
 import fr.ritaly.dungeonmaster.ai.AttackType;
 import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.ai.Materiality;
 import fr.ritaly.dungeonmaster.champion.Champion.Name;
 import fr.ritaly.dungeonmaster.champion.ChampionFactory;
 import fr.ritaly.dungeonmaster.champion.Party;
 import fr.ritaly.dungeonmaster.map.Dungeon;
 import fr.ritaly.dungeonmaster.map.Element;
 import fr.ritaly.dungeonmaster.map.Level;
+import fr.ritaly.dungeonmaster.map.Teleporter;
 
 public class CreatureTest extends TestCase {
 
@@ -192,6 +196,37 @@ public class CreatureTest extends TestCase {
 		assertFalse(element.equals(dragon.getElement()));
 	}
 
+	public void testPatrollingCreatureUsesPathCache() {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 9, 9);
+
+		final Creature dragon = new Creature(Creature.Type.RED_DRAGON, 1);
+		level1.getElement(4, 4).addCreature(dragon);
+
+		// The path of the first leg isn't cached, it's requested to the queue
+		// ahead of the dragon's first move
+		Clock.getInstance().tick();
+
+		assertEquals(1, dungeon.getPathRequestQueue().getPendingCount());
+
+		for (int i = 0; i < 40; i++) {
+			Clock.getInstance().tick(dragon.getMoveDuration());
+
+			assertEquals(Creature.State.PATROLLING, dragon.getState());
+
+			// The dragon walks back and forth around its initial position
+			final Position position = dragon.getElement().getPosition();
+
+			assertTrue(Math.abs(position.x - 4) <= 3);
+			assertTrue(Math.abs(position.y - 4) <= 3);
+		}
+
+		// The legs of the patrol were looked up in the cache
+		assertTrue(dungeon.getPathCache().getMissCount() > 0);
+		assertTrue(dungeon.getPathCache().getHitCount() > 0);
+	}
+
 	public void testCreatureCanSeePosition() {
 		// +---+---+---+---+---+---+---+---+---+
 		// | W | W | W | W | W | W | W | W | W |
@@ -493,6 +528,91 @@ public class CreatureTest extends TestCase {
 		assertEquals(new Position(4, 4, 1), dragon.getElement().getPosition());
 	}
 
+	public void testCreaturePursuesPartyThroughTeleporter() {
+		// The party is spotted on level 1 then leaves for level 2. Lord Chaos
+		// pursues it through the teleporter at (4,7)
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 9, 9);
+		final Level level2 = dungeon.createLevel(2, 9, 9);
+
+		level1.setElement(4, 7, new Teleporter(new Position(1, 1, 2), DirectionTransform.IDENTITY, true));
+
+		// Seed the creature's random stream so that its ranged attacks and
+		// patrol steps on level 2 are reproducible
+		final Creature lordChaos = new Creature(Creature.Type.LORD_CHAOS, 1, Direction.NORTH, new RandomStream(3L));
+		level1.getElement(4, 4).addCreature(lordChaos);
+
+		final Party party = new Party(ChampionFactory.getFactory().newChampion(Name.WUUF));
+
+		dungeon.setParty(4, 1, 1, party);
+
+		Clock.getInstance().tick(lordChaos.getMoveDuration());
+
+		assertEquals(Creature.State.TRACKING, lordChaos.getState());
+		assertEquals(new Position(4, 3, 1), lordChaos.getElement().getPosition());
+
+		dungeon.teleportParty(new Position(6, 6, 2), Direction.NORTH, true);
+
+		for (int i = 0; (i < 20) && (lordChaos.getElement().getLevel() != level2); i++) {
+			Clock.getInstance().tick(lordChaos.getMoveDuration());
+		}
+
+		// The creature reached the party's level through the teleporter
+		assertSame(level2, lordChaos.getElement().getLevel());
+		assertEquals(new Position(1, 1, 2), lordChaos.getElement().getPosition());
+
+		for (int i = 0; i < 20; i++) {
+			Clock.getInstance().tick(lordChaos.getMoveDuration());
+		}
+
+		// And closed in on the party
+		assertEquals(new Position(5, 6, 2), lordChaos.getElement().getPosition());
+	}
+
+	public void testCreatureStopsPursuingPartyOutOfReach() {
+		// Lord Chaos pursues the party through the teleporter at (4,7) but the
+		// party leaves level 2 for level 3 which can't be reached
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 9, 9);
+		final Level level2 = dungeon.createLevel(2, 9, 9);
+
+		dungeon.createLevel(3, 9, 9);
+
+		level1.setElement(4, 7, new Teleporter(new Position(1, 1, 2), DirectionTransform.IDENTITY, true));
+
+		final Creature lordChaos = new Creature(Creature.Type.LORD_CHAOS, 1, Direction.NORTH, new RandomStream(3L));
+		level1.getElement(4, 4).addCreature(lordChaos);
+
+		final Party party = new Party(ChampionFactory.getFactory().newChampion(Name.WUUF));
+
+		dungeon.setParty(4, 1, 1, party);
+
+		Clock.getInstance().tick(lordChaos.getMoveDuration());
+
+		dungeon.teleportParty(new Position(6, 6, 2), Direction.NORTH, true);
+
+		for (int i = 0; (i < 20) && (lordChaos.getElement().getLevel() != level2); i++) {
+			Clock.getInstance().tick(lordChaos.getMoveDuration());
+		}
+
+		assertSame(level2, lordChaos.getElement().getLevel());
+		assertEquals(Creature.State.TRACKING, lordChaos.getState());
+
+		dungeon.teleportParty(new Position(2, 2, 3), Direction.NORTH, true);
+
+		for (int i = 0; i < 10; i++) {
+			Clock.getInstance().tick(lordChaos.getMoveDuration());
+		}
+
+		// The creature gave up without tracking the party's coordinates on its
+		// own level
+		assertSame(level2, lordChaos.getElement().getLevel());
+		assertEquals(0, level2.getFlowField(Materiality.MATERIAL).getComputationCount());
+		assertEquals(0, level2.getFlowField(Materiality.IMMATERIAL).getComputationCount());
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		// On nettoie l'horloge entre deux tests
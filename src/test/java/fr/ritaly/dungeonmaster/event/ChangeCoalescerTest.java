@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.event;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Constants;
+import fr.ritaly.dungeonmaster.item.Torch;
+import fr.ritaly.dungeonmaster.stat.Stat;
+
+public class ChangeCoalescerTest extends TestCase {
+
+	public ChangeCoalescerTest() {
+	}
+
+	public ChangeCoalescerTest(String name) {
+		super(name);
+	}
+
+	private static final class CountingListener implements ChangeListener {
+
+		private int count;
+
+		@Override
+		public void onChangeEvent(ChangeEvent event) {
+			count++;
+		}
+	}
+
+	public void testChangesAreNotifiedImmediatelyByDefault() {
+		final Stat stat = new Stat("Tiggy", "Health", 50, 100);
+
+		final CountingListener listener = new CountingListener();
+
+		stat.addChangeListener(listener);
+
+		stat.inc(3);
+		stat.dec(5);
+
+		assertEquals(2, listener.count);
+	}
+
+	public void testChangesAreCoalescedPerTick() {
+		ChangeCoalescer.getInstance().setEnabled(true);
+
+		final Stat health = new Stat("Tiggy", "Health", 50, 100);
+		final Stat mana = new Stat("Tiggy", "Mana", 50, 100);
+
+		final CountingListener listener = new CountingListener();
+
+		health.addChangeListener(listener);
+		mana.addChangeListener(listener);
+
+		health.inc(3);
+		health.dec(5);
+		health.inc(1);
+		mana.dec(2);
+
+		// The changes are delivered at the end of the tick
+		assertEquals(0, listener.count);
+		assertEquals(2, ChangeCoalescer.getInstance().getPendingCount());
+
+		Clock.getInstance().tick();
+
+		// One event per changed stat
+		assertEquals(2, listener.count);
+		assertEquals(0, ChangeCoalescer.getInstance().getPendingCount());
+
+		Clock.getInstance().tick();
+
+		assertEquals(2, listener.count);
+
+		health.inc(1);
+
+		// Disabling the coalescing delivers the pending changes
+		ChangeCoalescer.getInstance().setEnabled(false);
+
+		assertEquals(3, listener.count);
+	}
+
+	public void testTorchNotifiesEveryDecayByDefault() {
+		final Torch torch = new Torch();
+
+		torch.light();
+
+		final CountingListener listener = new CountingListener();
+
+		torch.addChangeListener(listener);
+
+		// Burn the torch till it's depleted
+		while (torch.clockTicked()) {
+		}
+
+		assertEquals(0, torch.getLight());
+		assertEquals(Constants.MAX_LIGHT, listener.count);
+	}
+
+	public void testTorchOnlyNotifiesLightLevelChangesWhenCoalescing() {
+		ChangeCoalescer.getInstance().setEnabled(true);
+
+		final Torch torch = new Torch();
+
+		torch.light();
+
+		final CountingListener listener = new CountingListener();
+
+		torch.addChangeListener(listener);
+
+		assertEquals(Torch.LIGHT_LEVELS - 1, torch.getLightLevel());
+
+		// Burn the torch till it's depleted, flushing the changes as the clock
+		// does at the end of every tick
+		while (torch.clockTicked()) {
+			ChangeCoalescer.getInstance().flush();
+		}
+
+		ChangeCoalescer.getInstance().flush();
+
+		assertEquals(0, torch.getLight());
+		assertEquals(0, torch.getLightLevel());
+
+		// One event per light level reached
+		assertEquals(Torch.LIGHT_LEVELS - 1, listener.count);
+		assertTrue(Constants.MAX_LIGHT > listener.count);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ChangeCoalescer.getInstance().setEnabled(false);
+	}
+}
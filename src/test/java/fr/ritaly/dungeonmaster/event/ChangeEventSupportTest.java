@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+
+public class ChangeEventSupportTest extends TestCase {
+
+	public ChangeEventSupportTest() {
+	}
+
+	public ChangeEventSupportTest(String name) {
+		super(name);
+	}
+
+	private static final class RecordingListener implements ChangeListener {
+
+		private final List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+
+		@Override
+		public void onChangeEvent(ChangeEvent event) {
+			events.add(event);
+		}
+	}
+
+	public void testListenersAreNotified() {
+		final ChangeEventSupport support = new ChangeEventSupport();
+
+		assertFalse(support.hasListeners());
+
+		// No listener, nothing happens
+		support.fireChange(this);
+
+		final RecordingListener listener1 = new RecordingListener();
+		final RecordingListener listener2 = new RecordingListener();
+
+		support.addChangeListener(listener1);
+		support.addChangeListener(listener2);
+
+		assertTrue(support.hasListeners());
+
+		support.fireChange(this);
+		support.fireChange(this);
+
+		assertEquals(2, listener1.events.size());
+		assertEquals(2, listener2.events.size());
+		assertSame(this, listener1.events.get(0).getSource());
+
+		// The event is reused for the same source
+		assertSame(listener1.events.get(0), listener1.events.get(1));
+
+		support.fireChange("other");
+
+		assertEquals("other", listener1.events.get(2).getSource());
+
+		support.removeChangeListener(listener1);
+		support.fireChange(this);
+
+		assertEquals(3, listener1.events.size());
+		assertEquals(4, listener2.events.size());
+
+		support.removeChangeListener(listener2);
+
+		assertFalse(support.hasListeners());
+
+		// Removing an unknown listener is harmless
+		support.removeChangeListener(listener2);
+	}
+
+	public void testListenersCanBeRemovedWhileNotified() {
+		final ChangeEventSupport support = new ChangeEventSupport();
+
+		final RecordingListener listener2 = new RecordingListener();
+
+		support.addChangeListener(new ChangeListener() {
+			@Override
+			public void onChangeEvent(ChangeEvent event) {
+				// Remove itself during the notification
+				support.removeChangeListener(this);
+			}
+		});
+		support.addChangeListener(listener2);
+
+		support.fireChange(this);
+
+		// The second listener was notified anyway
+		assertEquals(1, listener2.events.size());
+
+		support.fireChange(this);
+
+		assertEquals(2, listener2.events.size());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
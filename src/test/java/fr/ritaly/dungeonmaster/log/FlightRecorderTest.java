@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.log.FlightRecorder.EventType;
+import fr.ritaly.dungeonmaster.stat.Stats;
+
+public class FlightRecorderTest extends TestCase {
+
+	public FlightRecorderTest() {
+	}
+
+	public FlightRecorderTest(String name) {
+		super(name);
+	}
+
+	private static String decode() throws Exception {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		FlightRecorder.dump(stream);
+
+		final StringWriter writer = new StringWriter();
+
+		FlightRecordDecoder.decode(new ByteArrayInputStream(stream.toByteArray()), writer);
+
+		return writer.toString();
+	}
+
+	public void testRecordsAreDumpedAndDecoded() throws Exception {
+		FlightRecorder.tick(7, 3);
+		FlightRecorder.record(EventType.CREATURE_STATE, 42, 0, 2);
+		FlightRecorder.record(EventType.PARTY_MOVED, 0, 1, 2, 3, 4);
+
+		assertEquals(3, FlightRecorder.size());
+
+		final String[] lines = decode().split("\n");
+
+		assertEquals(3, lines.length);
+		assertEquals("#7 TICK entity=0 listeners=3", lines[0]);
+		assertEquals("#7 CREATURE_STATE entity=42 old=0 new=2", lines[1]);
+		assertEquals("#7 PARTY_MOVED entity=0 x=1 y=2 z=3 direction=4", lines[2]);
+	}
+
+	public void testRingBufferKeepsTheMostRecentRecords() throws Exception {
+		for (int i = 0; i < FlightRecorder.CAPACITY + 5; i++) {
+			FlightRecorder.tick(i, 0);
+		}
+
+		assertEquals(FlightRecorder.CAPACITY, FlightRecorder.size());
+
+		final String[] lines = decode().split("\n");
+
+		assertEquals(FlightRecorder.CAPACITY, lines.length);
+		assertEquals("#5 TICK entity=0 listeners=0", lines[0]);
+		assertEquals("#" + (FlightRecorder.CAPACITY + 4) + " TICK entity=0 listeners=0", lines[lines.length - 1]);
+	}
+
+	public void testDisabledRecorderRecordsNothing() throws Exception {
+		FlightRecorder.setEnabled(false);
+
+		try {
+			FlightRecorder.record(EventType.CREATURE_STATE, 42, 0, 2);
+		} finally {
+			FlightRecorder.setEnabled(true);
+		}
+
+		assertEquals(0, FlightRecorder.size());
+	}
+
+	public void testGameEventsAreRecorded() throws Exception {
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+
+		FlightRecorder.clear();
+
+		final int mana = tiggy.getStats().getMana().baseValue();
+
+		tiggy.getStats().getMana().dec(1);
+
+		Clock.getInstance().tick();
+
+		final String output = decode();
+
+		assertTrue(output, output.contains("STAT_CHANGED entity=" + Name.TIGGY.ordinal() + " stat="
+				+ Stats.Type.MANA.ordinal() + " old=" + mana + " new=" + (mana - 1)));
+		assertTrue(output, output.contains("TICK"));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+
+		FlightRecorder.clear();
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.log;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.map.Dungeon;
+
+public class TracerTest extends TestCase {
+
+	public TracerTest() {
+	}
+
+	public TracerTest(String name) {
+		super(name);
+	}
+
+	public void testTracingIsDisabledByDefault() {
+		assertFalse(Tracer.isEnabled());
+		assertFalse(Tracer.isTraced(Dungeon.class));
+	}
+
+	public void testTracingCanBeEnabledPerPackage() {
+		Tracer.enable("fr.ritaly.dungeonmaster.map");
+
+		assertTrue(Tracer.isEnabled());
+		assertTrue(Tracer.isTraced(Dungeon.class));
+		assertFalse(Tracer.isTraced(Clock.class));
+
+		// A package prefix must match a whole package name
+		Tracer.disableAll();
+		Tracer.enable("fr.ritaly.dungeonmaster.ma");
+
+		assertFalse(Tracer.isTraced(Dungeon.class));
+
+		Tracer.disable("fr.ritaly.dungeonmaster.ma");
+
+		assertFalse(Tracer.isEnabled());
+	}
+
+	public void testRecordsKeepTheCallDepth() {
+		Tracer.enable("fr.ritaly.dungeonmaster.map");
+
+		Tracer.enter(Dungeon.class, "outer");
+		Tracer.enter(Dungeon.class, "inner");
+
+		// Not traced
+		Tracer.enter(Clock.class, "ignored");
+		Tracer.exit(Clock.class, "ignored");
+
+		Tracer.exit(Dungeon.class, "inner");
+		Tracer.exit(Dungeon.class, "outer");
+
+		final List<Tracer.Record> records = Tracer.getRecords();
+
+		assertEquals(4, records.size());
+
+		assertEquals("outer", records.get(0).getSite());
+		assertTrue(records.get(0).isEntry());
+		assertEquals(0, records.get(0).getDepth());
+
+		assertEquals("inner", records.get(1).getSite());
+		assertTrue(records.get(1).isEntry());
+		assertEquals(1, records.get(1).getDepth());
+
+		assertEquals("inner", records.get(2).getSite());
+		assertFalse(records.get(2).isEntry());
+		assertEquals(1, records.get(2).getDepth());
+
+		assertEquals("outer", records.get(3).getSite());
+		assertFalse(records.get(3).isEntry());
+		assertEquals(0, records.get(3).getDepth());
+
+		assertEquals(Thread.currentThread().getId(), records.get(0).getThreadId());
+	}
+
+	public void testRingBufferKeepsTheMostRecentRecords() {
+		Tracer.enable("fr.ritaly.dungeonmaster.map");
+
+		for (int i = 0; i < Tracer.CAPACITY + 10; i++) {
+			Tracer.enter(Dungeon.class, Integer.valueOf(i));
+			Tracer.exit(Dungeon.class, Integer.valueOf(i));
+		}
+
+		final List<Tracer.Record> records = Tracer.getRecords();
+
+		assertEquals(Tracer.CAPACITY, records.size());
+		assertEquals(Integer.toString(Tracer.CAPACITY + 9), records.get(records.size() - 1).getSite());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Tracer.disableAll();
+		Tracer.clear();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Tracer.disableAll();
+		Tracer.clear();
+	}
+}
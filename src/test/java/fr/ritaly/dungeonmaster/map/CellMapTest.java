@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.champion.Party;
+
+public class CellMapTest extends TestCase {
+
+	public CellMapTest() {
+	}
+
+	public CellMapTest(String name) {
+		super(name);
+	}
+
+	public void testFlagsMirrorElements() {
+		final Level level = new Dungeon().createLevel(1, 6, 6);
+
+		level.setElement(2, 2, new FakeWall());
+
+		final CellMap cellMap = level.getCellMap();
+
+		// Wall
+		assertTrue(cellMap.isConcrete(0, 0));
+		assertTrue(cellMap.isOpaque(0, 0));
+		assertFalse(cellMap.isTraversableByParty(0, 0));
+		assertFalse(cellMap.isTraversableByProjectile(0, 0));
+		assertFalse(cellMap.isTraversable(0, 0, Materiality.MATERIAL));
+		assertTrue(cellMap.isTraversable(0, 0, Materiality.IMMATERIAL));
+
+		// Floor
+		assertFalse(cellMap.isConcrete(1, 1));
+		assertFalse(cellMap.isOpaque(1, 1));
+		assertTrue(cellMap.isTraversableByParty(1, 1));
+		assertTrue(cellMap.isTraversableByProjectile(1, 1));
+		assertTrue(cellMap.isTraversable(1, 1, Materiality.MATERIAL));
+
+		// Fake wall: traversable but opaque
+		assertTrue(cellMap.isOpaque(2, 2));
+		assertTrue(cellMap.isTraversableByParty(2, 2));
+
+		// Outside the level
+		assertTrue(cellMap.isConcrete(-1, 3));
+		assertTrue(cellMap.isOpaque(6, 3));
+		assertFalse(cellMap.isTraversable(3, 6, Materiality.IMMATERIAL));
+
+		for (int x = 0; x < level.getWidth(); x++) {
+			for (int y = 0; y < level.getHeight(); y++) {
+				assertEquals(CellMap.getFlags(level.getElement(x, y)), cellMap.getFlags(x, y));
+			}
+		}
+	}
+
+	public void testFlagsFollowDoorState() {
+		final Level level = new Dungeon().createLevel(1, 6, 6);
+
+		final Door door = new Door(Door.Style.WOODEN, Orientation.NORTH_SOUTH);
+
+		level.setElement(3, 3, door);
+
+		final CellMap cellMap = level.getCellMap();
+
+		assertFalse(cellMap.isTraversableByParty(3, 3));
+		assertFalse(cellMap.isTraversable(3, 3, Materiality.MATERIAL));
+		assertTrue(cellMap.isOpaque(3, 3));
+
+		door.open();
+
+		Clock.getInstance().tick(16);
+
+		assertEquals(Door.State.OPEN, door.getState());
+		assertTrue(cellMap.isTraversableByParty(3, 3));
+		assertTrue(cellMap.isTraversableByProjectile(3, 3));
+		assertTrue(cellMap.isTraversable(3, 3, Materiality.MATERIAL));
+		assertFalse(cellMap.isOpaque(3, 3));
+
+		// Replacing the door resets the flags
+		level.setElement(3, 3, new Wall());
+
+		assertTrue(cellMap.isConcrete(3, 3));
+	}
+
+	public void testOccupancy() {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level = dungeon.createLevel(1, 6, 6);
+
+		final CellMap cellMap = level.getCellMap();
+
+		final Creature mummy = new Creature(Creature.Type.MUMMY, 1);
+
+		level.getElement(2, 3).addCreature(mummy);
+
+		assertTrue(cellMap.isOccupied(2, 3));
+
+		level.getElement(2, 3).removeCreature(mummy);
+
+		assertFalse(cellMap.isOccupied(2, 3));
+
+		dungeon.setParty(1, 1, 1, new Party());
+
+		assertTrue(cellMap.isOccupied(1, 1));
+
+		level.getElement(1, 1).removeParty();
+
+		assertFalse(cellMap.isOccupied(1, 1));
+
+		level.clear();
+
+		assertTrue(cellMap.isConcrete(1, 1));
+		assertFalse(cellMap.isTraversableByParty(1, 1));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StreamCorruptedException;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Location;
+import fr.ritaly.dungeonmaster.Move;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.RandomStreams;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.item.Action;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+
+public class CommandRecorderTest extends TestCase {
+
+	public CommandRecorderTest() {
+	}
+
+	public CommandRecorderTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Creates a dungeon with a mummy at (5,5,1) and an apple at (4,3,1).
+	 */
+	private static Dungeon newDungeon(long seed) {
+		final Dungeon dungeon = TestDungeons.newDungeon(seed, 1, new Position(3, 3, 1), Name.TIGGY, Name.WUUF);
+
+		dungeon.getElement(5, 5, 1).addCreature(new Creature(Creature.Type.MUMMY, 1, Direction.SOUTH, dungeon
+				.getRandomStreams().newStream(RandomStreams.CREATURES)));
+
+		dungeon.getElement(4, 3, 1).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_WEST);
+
+		return dungeon;
+	}
+
+	private static Champion getChampion(Dungeon dungeon, Name name) {
+		for (Champion champion : dungeon.getParty().getChampions(true)) {
+			if (champion.getName().equalsIgnoreCase(name.name())) {
+				return champion;
+			}
+		}
+
+		throw new AssertionError("No champion " + name);
+	}
+
+	public void testReplayReproducesTheRecordedSession() throws Exception {
+		final Dungeon dungeon = newDungeon(42);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final CommandRecorder recorder = new CommandRecorder(stream);
+
+		dungeon.setCommandRecorder(recorder);
+
+		Clock.getInstance().tick(3);
+
+		dungeon.moveParty(Move.RIGHT, true);
+
+		Clock.getInstance().tick(10);
+
+		dungeon.getParty().setLeader(getChampion(dungeon, Name.WUUF));
+		dungeon.getParty().swap(Location.FRONT_LEFT, Location.REAR_RIGHT);
+
+		getChampion(dungeon, Name.TIGGY).cast(PowerRune.LO);
+
+		Clock.getInstance().tick(25);
+
+		assertEquals(new Position(4, 3, 1), dungeon.getParty().getPosition());
+
+		dungeon.getParty().grab(dungeon.getElement(4, 3, 1), Sector.NORTH_WEST);
+		dungeon.moveParty(Move.BACKWARD, false);
+
+		Clock.getInstance().tick(40);
+
+		// Drop the apple and pick it up again
+		dungeon.getParty().release(dungeon.getElement(3, 3, 1), Sector.SOUTH_EAST);
+		dungeon.getParty().grab(dungeon.getElement(3, 3, 1), Sector.SOUTH_EAST);
+
+		recorder.close();
+
+		assertEquals(8, recorder.getCommandCount());
+
+		final long checksum = DungeonSnapshot.checksum(dungeon);
+		final int tick = Clock.getInstance().getTickId();
+
+		// Replay the session against a fresh dungeon
+		Clock.getInstance().reset();
+
+		final Dungeon copy = newDungeon(42);
+
+		assertEquals(8, CommandRecorder.replay(copy, new ByteArrayInputStream(stream.toByteArray())));
+
+		assertEquals(tick, Clock.getInstance().getTickId());
+		assertEquals(dungeon.getParty().getPosition(), copy.getParty().getPosition());
+		assertEquals(dungeon.getParty().getLeader().getName(), copy.getParty().getLeader().getName());
+		assertEquals(checksum, DungeonSnapshot.checksum(copy));
+
+		// The apple was picked up from the floor
+		assertEquals(Item.Type.APPLE, copy.getParty().getItem().getType());
+		assertFalse(copy.getElement(4, 3, 1).hasItems());
+		assertFalse(copy.getElement(3, 3, 1).hasItems());
+	}
+
+	public void testGrabOfItemWithUnknownOriginIsRejected() throws Exception {
+		final Dungeon dungeon = newDungeon(42);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final CommandRecorder recorder = new CommandRecorder(stream);
+
+		dungeon.setCommandRecorder(recorder);
+		dungeon.getParty().grab(ItemFactory.getFactory().newItem(Item.Type.TORCH));
+		recorder.close();
+
+		assertEquals(1, recorder.getCommandCount());
+
+		Clock.getInstance().reset();
+
+		// The replay can't tell where the torch came from
+		try {
+			CommandRecorder.replay(newDungeon(42), new ByteArrayInputStream(stream.toByteArray()));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+	}
+
+	public void testReleaseOfItemNotHeldIsRejected() throws Exception {
+		final Dungeon dungeon = newDungeon(42);
+
+		// The apple is grabbed before recording
+		dungeon.getParty().grab(dungeon.getElement(4, 3, 1), Sector.NORTH_WEST);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final CommandRecorder recorder = new CommandRecorder(stream);
+
+		dungeon.setCommandRecorder(recorder);
+		dungeon.getParty().release();
+		recorder.close();
+
+		assertEquals(1, recorder.getCommandCount());
+
+		Clock.getInstance().reset();
+
+		// The replayed party doesn't hold the apple
+		try {
+			CommandRecorder.replay(newDungeon(42), new ByteArrayInputStream(stream.toByteArray()));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+	}
+
+	public void testPerformWithEmptyWeaponHandIsRejected() throws Exception {
+		final Dungeon dungeon = newDungeon(42);
+
+		final Item rope = ItemFactory.getFactory().newItem(Item.Type.ROPE);
+
+		getChampion(dungeon, Name.TIGGY).getBody().getWeaponHand().putOn(rope);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final CommandRecorder recorder = new CommandRecorder(stream);
+
+		dungeon.setCommandRecorder(recorder);
+		rope.perform(Action.CLIMB_DOWN);
+		recorder.close();
+
+		assertEquals(1, recorder.getCommandCount());
+
+		Clock.getInstance().reset();
+
+		// The replayed champion doesn't hold the rope
+		try {
+			CommandRecorder.replay(newDungeon(42), new ByteArrayInputStream(stream.toByteArray()));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+	}
+
+	public void testReplayRequiresTheSameSeed() throws Exception {
+		final Dungeon dungeon = newDungeon(42);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final CommandRecorder recorder = new CommandRecorder(stream);
+
+		dungeon.setCommandRecorder(recorder);
+		dungeon.moveParty(Move.RIGHT, true);
+		recorder.close();
+
+		Clock.getInstance().reset();
+
+		try {
+			CommandRecorder.replay(newDungeon(43), new ByteArrayInputStream(stream.toByteArray()));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	public void testCommandsIssuedDuringTicksAreIgnored() throws Exception {
+		final Dungeon dungeon = newDungeon(42);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final CommandRecorder recorder = new CommandRecorder(stream);
+
+		dungeon.setCommandRecorder(recorder);
+
+		// Queued moves are executed by the clock but were only issued once
+		dungeon.moveParty(Move.RIGHT, false);
+		dungeon.moveParty(Move.LEFT, false);
+
+		Clock.getInstance().tick(30);
+
+		recorder.close();
+
+		assertEquals(2, recorder.getCommandCount());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		// Reset the clock before each test
+		Clock.getInstance().reset();
+	}
+}
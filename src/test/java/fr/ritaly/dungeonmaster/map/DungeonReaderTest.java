@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.actuator.TriggerType;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.Torch;
+
+public class DungeonReaderTest extends TestCase {
+
+	public DungeonReaderTest() {
+	}
+
+	public DungeonReaderTest(String name) {
+		super(name);
+	}
+
+	private static Dungeon read(String... lines) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+
+		for (String line : lines) {
+			builder.append(line).append('\n');
+		}
+
+		return new DungeonReader(new StringReader(builder.toString())).read();
+	}
+
+	public void testGridIsBuiltFromPlaceholders() throws Exception {
+		final Dungeon dungeon = read(
+				"# A small level",
+				"level 1 6 5",
+				"WWWWWW",
+				"W.M IW",
+				"W.WPRW",
+				"W O4.W",
+				"WWWWWW",
+				"light 20");
+
+		final Level level = dungeon.getLevel(1);
+
+		assertNotNull(level);
+		assertEquals(6, level.getWidth());
+		assertEquals(5, level.getHeight());
+		assertEquals(20, level.getAmbientLight());
+
+		// The plain walls and floor tiles aren't created
+		assertFalse(level.isMaterialized(0, 0));
+		assertFalse(level.isMaterialized(1, 1));
+		assertFalse(level.isMaterialized(2, 2));
+
+		assertEquals(Element.Type.WALL, level.getElement(2, 2).getType());
+		assertEquals(Element.Type.FLOOR, level.getElement(1, 1).getType());
+		assertEquals(Element.Type.FAKE_WALL, level.getElement(2, 1).getType());
+		assertEquals(Element.Type.INVISIBLE_WALL, level.getElement(4, 1).getType());
+		assertEquals(Element.Type.PILLAR, level.getElement(3, 2).getType());
+		assertEquals(Element.Type.RETRACTABLE_WALL, level.getElement(4, 2).getType());
+		assertEquals(Element.Type.PIT, level.getElement(2, 3).getType());
+		assertEquals(Element.Type.FOUR_SIDE_ALCOVE, level.getElement(3, 3).getType());
+	}
+
+	public void testElementsAreRead() throws Exception {
+		final Dungeon dungeon = read(
+				"level 1 7 7",
+				"WWWWWWW",
+				"W.....W",
+				"W.....W",
+				"W.....W",
+				"W.....W",
+				"W.....W",
+				"WWWWWWW",
+				"DOOR 2 2 WOODEN NORTH_SOUTH OPEN",
+				"STAIRS 1 1 EAST false 1 1 2",
+				"TELEPORTER 3 3 IDENTITY true 5 5 1",
+				"GENERATOR 4 4 MUMMY 2",
+				"PIT 5 5 true",
+				"TEXT_WALL 6 3 WEST \"HALL OF\" CHAMPIONS",
+				"PORTRAIT 0 3 EAST TIGGY",
+				"ALCOVE 3 0 SOUTH",
+				"PROJECTILE_LAUNCHER 3 6 NORTH spell MON FIREBALL",
+				"level 2 3 3",
+				"WWW",
+				"W.W",
+				"WWW");
+
+		final Level level = dungeon.getLevel(1);
+
+		final Door door = (Door) level.getElement(2, 2);
+
+		assertEquals(Door.Style.WOODEN, door.getStyle());
+		assertEquals(Door.State.OPEN, door.getState());
+
+		final Stairs stairs = (Stairs) level.getElement(1, 1);
+
+		assertFalse(stairs.isAscending());
+		assertEquals(new Position(1, 1, 2), stairs.getDestination());
+
+		final Teleporter teleporter = (Teleporter) level.getElement(3, 3);
+
+		assertTrue(teleporter.isSilent());
+		assertEquals(new Position(5, 5, 1), teleporter.getDestination());
+
+		assertEquals(Element.Type.GENERATOR, level.getElement(4, 4).getType());
+		assertTrue(((Pit) level.getElement(5, 5)).isIllusion());
+
+		final TextWall textWall = (TextWall) level.getElement(6, 3);
+
+		assertEquals(2, textWall.getLines().size());
+		assertEquals("HALL OF", textWall.getLines().get(0));
+		assertEquals("CHAMPIONS", textWall.getLines().get(1));
+
+		assertEquals("Tiggy", ((Portrait) level.getElement(0, 3)).getChampion().getName());
+		assertEquals(Direction.SOUTH, ((Alcove) level.getElement(3, 0)).getDirection());
+		assertEquals(Element.Type.PROJECTILE_LAUNCHER, level.getElement(3, 6).getType());
+
+		assertNotNull(dungeon.getLevel(2));
+	}
+
+	public void testItemsCreaturesAndPartyAreRead() throws Exception {
+		final Dungeon dungeon = read(
+				"party 1 1 1 SOUTH TIGGY WUUF",
+				"level 1 5 5",
+				"WWWWW",
+				"W...W",
+				"W...W",
+				"W...W",
+				"WWWWW",
+				"ALCOVE 4 2 WEST",
+				"item 2 2 NORTH_WEST TORCH",
+				"item 2 2 NORTH_WEST APPLE",
+				"item 4 2 WEST APPLE",
+				"creature 3 3 MUMMY NORTH SOUTH_EAST");
+
+		final Level level = dungeon.getLevel(1);
+
+		assertEquals(2, level.getElement(2, 2).getItemCount());
+		assertEquals(Item.Type.APPLE, level.getElement(2, 2).getItems(Sector.NORTH_WEST).get(1).getType());
+		assertEquals(1, ((Alcove) level.getElement(4, 2)).getItems(Direction.WEST).size());
+
+		final Creature creature = level.getElement(3, 3).getCreature(Sector.SOUTH_EAST);
+
+		assertNotNull(creature);
+		assertEquals(Creature.Type.MUMMY, creature.getType());
+
+		assertNotNull(dungeon.getParty());
+		assertEquals(new Position(1, 1, 1), dungeon.getParty().getPosition());
+		assertEquals(Direction.SOUTH, dungeon.getParty().getLookDirection());
+		assertEquals(2, dungeon.getParty().getSize(true));
+		assertEquals("Tiggy", dungeon.getParty().getLeader().getName());
+	}
+
+	public void testActuatorsAreWiredAfterward() throws Exception {
+		// The actuator refers to a pit defined later
+		final Dungeon dungeon = read(
+				"level 1 5 5",
+				"WWWWW",
+				"W...W",
+				"W...W",
+				"W...W",
+				"WWWWW",
+				"FLOOR_SWITCH 1 1",
+				"actuator 1 1 ITEM_DROPPED 1 TOGGLE 3 3 1",
+				"PIT 3 3");
+
+		final Level level = dungeon.getLevel(1);
+
+		assertNotNull(((FloorSwitch) level.getElement(1, 1)).getActuator(TriggerType.ITEM_DROPPED));
+
+		final Pit pit = (Pit) level.getElement(3, 3);
+
+		assertTrue(pit.isOpen());
+
+		level.getElement(1, 1).addItem(new Torch(), Sector.NORTH_WEST);
+
+		Clock.getInstance().tick(3);
+
+		assertFalse(pit.isOpen());
+	}
+
+	public void testErrorsAreLocated() throws Exception {
+		try {
+			read("level 1 3 3", "WWW", "W.W", "WWW", "DOOR 1 1 WOODEN DIAGONAL");
+			fail();
+		} catch (MapFormatException e) {
+			assertEquals(5, e.getLine());
+			assertEquals(17, e.getColumn());
+		}
+
+		try {
+			read("level 1 3 3", "WWW", "WxW", "WWW");
+			fail();
+		} catch (MapFormatException e) {
+			assertEquals(3, e.getLine());
+			assertEquals(2, e.getColumn());
+		}
+
+		try {
+			read("level 1 3 3", "WWW", "W.W", "WWW", "PILLAR 1 7");
+			fail();
+		} catch (MapFormatException e) {
+			assertEquals(5, e.getLine());
+			assertEquals(10, e.getColumn());
+		}
+
+		try {
+			// The actuator's source doesn't support actuators
+			read("level 1 3 3", "WWW", "W.W", "WWW", "actuator 1 1 1 TOGGLE 1 1 1");
+			fail();
+		} catch (MapFormatException e) {
+			assertEquals(5, e.getLine());
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,449 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Location;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.Skill;
+import fr.ritaly.dungeonmaster.actuator.TestActuator;
+import fr.ritaly.dungeonmaster.actuator.TriggerType;
+import fr.ritaly.dungeonmaster.ai.AttackType;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.item.Bones;
+import fr.ritaly.dungeonmaster.item.Chest;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.item.Potion;
+import fr.ritaly.dungeonmaster.item.Scroll;
+import fr.ritaly.dungeonmaster.item.Torch;
+import fr.ritaly.dungeonmaster.item.WaterSkin;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.magic.Spell;
+import fr.ritaly.dungeonmaster.projectile.ItemProjectileFactory;
+import fr.ritaly.dungeonmaster.projectile.Projectile;
+import fr.ritaly.dungeonmaster.projectile.ProjectileFactory;
+import fr.ritaly.dungeonmaster.projectile.SpellProjectileFactory;
+
+public class DungeonSnapshotTest extends TestCase {
+
+	public DungeonSnapshotTest() {
+	}
+
+	public DungeonSnapshotTest(String name) {
+		super(name);
+	}
+
+	private static byte[] save(Dungeon dungeon) throws IOException {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		DungeonSnapshot.write(dungeon, stream);
+
+		return stream.toByteArray();
+	}
+
+	private static Dungeon load(byte[] bytes) throws IOException {
+		return DungeonSnapshot.read(new ByteArrayInputStream(bytes));
+	}
+
+	public void testElementsAreRestored() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 8, 10);
+		level1.setAmbientLight(120);
+		level1.setExperienceMultiplier(2);
+		level1.setElement(2, 1, new Wall());
+		level1.setElement(2, 2, new Door(Door.Style.GRATE, Orientation.WEST_EAST, Door.State.HALF_OPEN));
+		level1.setElement(2, 3, new Wall());
+		level1.setElement(3, 2, new Pit(true, true));
+		level1.setElement(4, 2, new RetractableWall());
+		level1.setElement(5, 2, new Stairs(Direction.EAST, false, new Position(5, 2, 2)));
+		level1.setElement(6, 2, new Teleporter(new Position(1, 1, 2), DirectionTransform.NEXT_CLOCKWISE, true));
+		level1.setElement(7, 2, new Alcove(Direction.WEST, Item.Type.APPLE));
+		level1.setElement(2, 4, new TextWall(Direction.NORTH, Arrays.asList("HELLO", "WORLD")));
+		level1.setElement(3, 4, new Lever(Direction.SOUTH, true));
+		level1.setElement(4, 4, new TorchWall(Direction.NORTH, true));
+		level1.setElement(5, 4, new Generator(Creature.Type.MUMMY, 3));
+		level1.setElement(6, 4, new DecoratedFloor(DecoratedFloor.Style.PUDDLE));
+		level1.setElement(1, 4, new Altar(Direction.EAST));
+
+		((RetractableWall) level1.getElement(4, 2)).open();
+
+		level1.getElement(1, 1).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+		level1.getElement(1, 1).addItem(ItemFactory.getFactory().newItem(Item.Type.BREAD), Sector.NORTH_EAST);
+		level1.getElement(1, 2).addItem(ItemFactory.getFactory().newItem(Item.Type.TORCH), Sector.SOUTH_WEST);
+		((Altar) level1.getElement(1, 4)).dropItem(ItemFactory.getFactory().newItem(Item.Type.BREAD), Direction.EAST);
+
+		dungeon.createLevel(2, 5, 5);
+
+		final Dungeon copy = load(save(dungeon));
+
+		assertEquals(2, copy.getLevelCount());
+
+		final Level level = copy.getLevel(1);
+
+		assertEquals(10, level.getWidth());
+		assertEquals(8, level.getHeight());
+		assertEquals(120, level.getAmbientLight());
+		assertEquals(2, level.getExperienceMultiplier());
+		assertEquals(level1.draw(), level.draw());
+
+		final Door door = (Door) level.getElement(2, 2);
+
+		assertEquals(Door.Style.GRATE, door.getStyle());
+		assertEquals(Orientation.WEST_EAST, door.getOrientation());
+		assertEquals(Door.State.HALF_OPEN, door.getState());
+
+		assertTrue(((Pit) level.getElement(3, 2)).isIllusion());
+		assertTrue(((RetractableWall) level.getElement(4, 2)).isOpen());
+		assertEquals(new Position(5, 2, 2), ((Stairs) level.getElement(5, 2)).getDestination());
+		assertEquals(new Position(1, 1, 2), ((Teleporter) level.getElement(6, 2)).getDestination());
+		assertTrue(((Teleporter) level.getElement(6, 2)).isSilent());
+		assertEquals(Item.Type.APPLE, ((Alcove) level.getElement(7, 2)).getItemType());
+		assertEquals(Arrays.asList("HELLO", "WORLD"), ((TextWall) level.getElement(2, 4)).getLines());
+		assertTrue(((Lever) level.getElement(3, 4)).isLeverUp());
+		assertTrue(((TorchWall) level.getElement(4, 4)).hasTorch());
+		assertEquals(3, ((Generator) level.getElement(5, 4)).getHealthMultiplier());
+
+		assertEquals(2, level.getElement(1, 1).getItemCount(Sector.NORTH_EAST));
+		assertEquals(Item.Type.APPLE, level.getElement(1, 1).getItems(Sector.NORTH_EAST).get(0).getType());
+		assertEquals(Item.Type.TORCH, level.getElement(1, 2).getItems(Sector.SOUTH_WEST).get(0).getType());
+		assertEquals(Item.Type.BREAD, ((Altar) level.getElement(1, 4)).getItems(Direction.EAST).get(0).getType());
+		assertEquals(4, level.getSpatialIndex().getCount(SpatialIndex.Kind.ITEM));
+
+		// The plain elements stay plain
+		assertFalse(level.isMaterialized(8, 6));
+		assertFalse(copy.getLevel(2).isMaterialized(0, 0));
+	}
+
+	public void testCreaturesAndPartyAreRestored() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 6, 6);
+
+		final Creature mummy = new Creature(Creature.Type.MUMMY, 1, Direction.WEST);
+		mummy.hit(AttackType.NORMAL);
+
+		level1.getElement(3, 3).addCreature(mummy);
+
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+		final Champion wuuf = ChampionFactory.getFactory().newChampion(Name.WUUF);
+
+		final Party party = new Party();
+		party.addChampion(tiggy);
+		party.addChampion(wuuf);
+		party.swap(wuuf.getLocation(), Location.REAR_RIGHT);
+		party.setLeader(wuuf);
+
+		tiggy.getStats().getHealth().baseValue(10);
+		tiggy.gainExperience(Skill.FIGHTER, 1000);
+
+		dungeon.setParty(2, 1, 1, party);
+		party.setDirection(Direction.SOUTH);
+
+		final Dungeon copy = load(save(dungeon));
+
+		final Element element = copy.getLevel(1).getElement(3, 3);
+
+		assertEquals(1, element.getCreatureCount());
+
+		final Creature creature = element.getCreatures().iterator().next();
+
+		assertEquals(Creature.Type.MUMMY, creature.getType());
+		assertEquals(Direction.WEST, creature.getDirection());
+		assertEquals(mummy.getHealth(), creature.getHealth());
+		assertEquals(mummy.getMaxHealth(), creature.getMaxHealth());
+		assertEquals(mummy.getElement().getCreatureMap().keySet(), element.getCreatureMap().keySet());
+
+		final Party restored = copy.getParty();
+
+		assertNotNull(restored);
+		assertEquals(new Position(2, 1, 1), restored.getPosition());
+		assertEquals(Direction.SOUTH, restored.getLookDirection());
+		assertTrue(copy.getLevel(1).getElement(2, 1).hasParty());
+		assertEquals(2, restored.getSize(true));
+		assertEquals("Wuuf", restored.getLeader().getName());
+		assertEquals("Wuuf", restored.getChampion(Location.REAR_RIGHT).getName());
+
+		final Champion champion = restored.getChampion(tiggy.getLocation());
+
+		assertEquals("Tiggy", champion.getName());
+		assertEquals(tiggy.getStats().getHealth().value(), champion.getStats().getHealth().value());
+		assertEquals(tiggy.getStats().getHealth().maxValue(), champion.getStats().getHealth().maxValue());
+		assertEquals(tiggy.getStats().getStrength().value(), champion.getStats().getStrength().value());
+		assertEquals(tiggy.getExperience(Skill.FIGHTER).getPoints(), champion.getExperience(Skill.FIGHTER).getPoints());
+		assertEquals(tiggy.getExperience(Skill.FIGHTER).getLevel(), champion.getExperience(Skill.FIGHTER).getLevel());
+	}
+
+	public void testItemStatesAreRestored() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Element floor = dungeon.createLevel(1, 6, 6).getElement(2, 2);
+
+		final Torch torch = new Torch();
+		torch.restoreLight(100);
+
+		final WaterSkin waterSkin = new WaterSkin();
+		waterSkin.restoreDoses(2);
+
+		final Chest chest = new Chest();
+		chest.set(3, ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		final Item dagger = ItemFactory.getFactory().newItem(Item.Type.DAGGER);
+		dagger.curse(PowerRune.UM);
+
+		final Item bread = ItemFactory.getFactory().newItem(Item.Type.BREAD);
+		bread.setPoisonStrength(PowerRune.EE);
+
+		floor.addItem(torch, Sector.NORTH_WEST);
+		floor.addItem(waterSkin, Sector.NORTH_WEST);
+		floor.addItem(new Potion(Item.Type.HEALTH_POTION, PowerRune.MON), Sector.NORTH_EAST);
+		floor.addItem(new Scroll(Arrays.asList("FOO", "BAR")), Sector.NORTH_EAST);
+		floor.addItem(chest, Sector.SOUTH_WEST);
+		floor.addItem(dagger, Sector.SOUTH_EAST);
+		floor.addItem(bread, Sector.SOUTH_EAST);
+
+		final Element element = load(save(dungeon)).getLevel(1).getElement(2, 2);
+
+		assertEquals(100, ((Torch) element.getItems(Sector.NORTH_WEST).get(0)).getLight());
+		assertEquals(2, ((WaterSkin) element.getItems(Sector.NORTH_WEST).get(1)).getDoses());
+		assertEquals(PowerRune.MON, ((Potion) element.getItems(Sector.NORTH_EAST).get(0)).getStrength());
+		assertEquals(Arrays.asList("FOO", "BAR"), ((Scroll) element.getItems(Sector.NORTH_EAST).get(1)).getText());
+
+		final Chest restored = (Chest) element.getItems(Sector.SOUTH_WEST).get(0);
+
+		assertEquals(1, restored.getItemCount());
+		assertEquals(Item.Type.APPLE, restored.get(3).getType());
+
+		assertTrue(element.getItems(Sector.SOUTH_EAST).get(0).isCursed());
+		assertEquals(dagger.getCurseStrength(), element.getItems(Sector.SOUTH_EAST).get(0).getCurseStrength());
+		assertEquals(PowerRune.EE, element.getItems(Sector.SOUTH_EAST).get(1).getPoisonStrength());
+	}
+
+	public void testChampionItemsAreRestored() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 6, 6);
+
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+		final Champion wuuf = ChampionFactory.getFactory().newChampion(Name.WUUF);
+
+		final Party party = new Party();
+		party.addChampion(tiggy);
+		party.addChampion(wuuf);
+
+		dungeon.setParty(2, 2, 1, party);
+
+		final Torch torch = new Torch();
+		final Item dagger = ItemFactory.getFactory().newItem(Item.Type.DAGGER);
+		dagger.curse(PowerRune.LO);
+
+		tiggy.getBody().getWeaponHand().putOn(torch);
+		tiggy.getBody().getShieldHand().putOn(dagger);
+		tiggy.getInventory().getBackPack().set(5, ItemFactory.getFactory().newItem(Item.Type.BREAD));
+		tiggy.getInventory().getPouch().add(ItemFactory.getFactory().newItem(Item.Type.CORN));
+		party.grab(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		// The bones refer to a champion of the party
+		level1.getElement(3, 3).addItem(new Bones(wuuf), Sector.NORTH_WEST);
+
+		final Dungeon copy = load(save(dungeon));
+
+		final Party restored = copy.getParty();
+		final Champion champion = restored.getChampion(tiggy.getLocation());
+
+		assertEquals(Item.Type.TORCH, champion.getBody().getWeaponHand().getItem().getType());
+		assertTrue(((Torch) champion.getBody().getWeaponHand().getItem()).isBurning());
+		assertTrue(champion.getBody().getShieldHand().getItem().isCursed());
+		assertEquals(tiggy.getStats().getLuck().value(), champion.getStats().getLuck().value());
+		assertEquals(Item.Type.BREAD, champion.getInventory().getBackPack().get(5).getType());
+		assertEquals(Item.Type.CORN, champion.getInventory().getPouch().getItems().get(0).getType());
+		assertEquals(Item.Type.APPLE, restored.getItem().getType());
+
+		final Bones bones = (Bones) copy.getLevel(1).getElement(3, 3).getItems(Sector.NORTH_WEST).get(0);
+
+		assertSame(restored.getChampion(wuuf.getLocation()), bones.getChampion());
+	}
+
+	public void testWallElementsAreRestored() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 6, 6);
+
+		final WallLock lock = new WallLock(Direction.NORTH, Item.Type.GOLD_KEY);
+		lock.unlock(ItemFactory.getFactory().newItem(Item.Type.GOLD_KEY));
+
+		final WallSlot slot = new WallSlot(Direction.SOUTH, Item.Type.GOLD_COIN, 3);
+		slot.unlock(ItemFactory.getFactory().newItem(Item.Type.GOLD_COIN));
+
+		final FloorSwitch floorSwitch = new FloorSwitch(true);
+		floorSwitch.addActuator(TriggerType.ITEM_DROPPED, new TestActuator());
+
+		level1.setElement(1, 1, lock);
+		level1.setElement(2, 1, slot);
+		level1.setElement(3, 1, new Portrait(Direction.EAST, ChampionFactory.getFactory().newChampion(Name.WUUF)));
+		level1.setElement(4, 1, new ProjectileLauncher(Direction.WEST, new SpellProjectileFactory(new Spell(
+				PowerRune.ON, Spell.Type.FIREBALL))));
+		level1.setElement(1, 2, new ProjectileLauncher(Direction.WEST, new ItemProjectileFactory(
+				ItemFactory.getFactory(), Item.Type.DAGGER)));
+		level1.setElement(2, 2, floorSwitch);
+
+		final Level level = load(save(dungeon)).getLevel(1);
+
+		assertTrue(((WallLock) level.getElement(1, 1)).isUnlocked());
+		assertEquals(Item.Type.GOLD_KEY, ((WallLock) level.getElement(1, 1)).getKeyType());
+		assertEquals(1, ((WallSlot) level.getElement(2, 1)).getUseCount());
+		assertEquals(3, ((WallSlot) level.getElement(2, 1)).getMaxUseCount());
+		assertEquals("Wuuf", ((Portrait) level.getElement(3, 1)).getChampion().getName());
+
+		final Spell spell = ((SpellProjectileFactory) ((ProjectileLauncher) level.getElement(4, 1)).getFactory())
+				.getSpell();
+
+		assertEquals(PowerRune.ON, spell.getPower());
+		assertEquals(Spell.Type.FIREBALL, spell.getType());
+		assertEquals(Item.Type.DAGGER, ((ItemProjectileFactory) ((ProjectileLauncher) level.getElement(1, 2))
+				.getFactory()).getType());
+
+		// The actuator isn't saved
+		assertTrue(((FloorSwitch) level.getElement(2, 2)).isPressurePadVisible());
+		assertFalse(ElementCodec.hasActuator(level.getElement(2, 2)));
+	}
+
+	public void testSnapshotIsCompact() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		for (int i = 1; i <= 14; i++) {
+			dungeon.createLevel(i, 64, 64);
+		}
+
+		final byte[] bytes = save(dungeon);
+
+		// The plain levels are written as runs of placeholders (less than a
+		// bit per position)
+		assertTrue(bytes.length < (14 * 64 * 64) / 8);
+
+		assertEquals(14, load(bytes).getLevelCount());
+	}
+
+	public void testInvalidSnapshotsAreRejected() throws Exception {
+		final byte[] bytes = save(new Dungeon());
+
+		try {
+			load(new byte[] { 1, 2, 3, 4, 5 });
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+
+		// Truncated snapshot
+		try {
+			load(Arrays.copyOf(bytes, bytes.length - 2));
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+
+		// Unsupported version
+		final byte[] copy = bytes.clone();
+		copy[4] = (byte) (DungeonSnapshot.VERSION + 1);
+
+		try {
+			load(copy);
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private static byte[] placeholders(Element.Type type) throws IOException {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		final SnapshotOutput output = new SnapshotOutput(stream);
+
+		// A 2x2 level filled with a single run of placeholders
+		output.writeVarInt(1);
+		output.writeVarInt(2);
+		output.writeVarInt(2);
+		output.writeSignedVarInt(1);
+		output.writeSignedVarInt(0);
+		output.writeVarInt(0);
+		output.writeEnum(type);
+		output.writeVarInt(4);
+		output.flush();
+
+		return stream.toByteArray();
+	}
+
+	public void testInvalidPlaceholdersAreRejected() throws Exception {
+		assertNotNull(DungeonSnapshot.fromBytes(new Dungeon(), placeholders(Element.Type.WALL)));
+
+		try {
+			DungeonSnapshot.fromBytes(new Dungeon(), placeholders(null));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+
+		// A door can't be a placeholder
+		try {
+			DungeonSnapshot.fromBytes(new Dungeon(), placeholders(Element.Type.DOOR));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+	}
+
+	public void testUnsupportedElementsAreRejected() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		dungeon.createLevel(1, 5, 5).setElement(2, 2, new ProjectileLauncher(Direction.NORTH, new ProjectileFactory() {
+			@Override
+			public Projectile createProjectile(Dungeon dungeon, Position position, Direction direction, Sector sector) {
+				return null;
+			}
+		}));
+
+		try {
+			save(dungeon);
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+
+public class DungeonStoreTest extends TestCase {
+
+	private File directory;
+
+	public DungeonStoreTest() {
+	}
+
+	public DungeonStoreTest(String name) {
+		super(name);
+	}
+
+	public void testRecoverReplaysTheJournal() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+		dungeon.createLevel(1, 6, 6);
+		dungeon.setParty(1, 1, 1, new Party(ChampionFactory.getFactory().newChampion(Name.TIGGY)));
+
+		final DungeonStore store = new DungeonStore(directory, "game");
+
+		assertFalse(store.exists());
+
+		store.checkpoint(dungeon);
+
+		assertTrue(store.exists());
+		assertEquals(1, store.getGeneration());
+		assertNotNull(dungeon.getJournal());
+
+		dungeon.teleportParty(new Position(3, 3, 1), Direction.SOUTH, true);
+		dungeon.getElement(2, 2, 1).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+
+		// Simulate a crash: the journal is flushed but never closed
+		dungeon.getJournal().flush();
+
+		final DungeonStore other = new DungeonStore(directory, "game");
+		final Dungeon recovered = other.recover();
+
+		assertEquals(new Position(3, 3, 1), recovered.getParty().getPosition());
+		assertEquals(Direction.SOUTH, recovered.getParty().getLookDirection());
+		assertEquals(1, recovered.getElement(2, 2, 1).getItemCount(Sector.NORTH_EAST));
+
+		// The recovery took a new checkpoint and deleted the previous one
+		assertEquals(2, other.getGeneration());
+		assertNotNull(recovered.getJournal());
+		assertTrue(other.getSnapshotFile(2).exists());
+		assertFalse(other.getSnapshotFile(1).exists());
+		assertFalse(other.getJournalFile(1).exists());
+
+		other.close();
+		store.close();
+
+		assertNull(recovered.getJournal());
+	}
+
+	public void testRecoverWithoutSnapshotFails() throws Exception {
+		try {
+			new DungeonStore(directory, "game").recover();
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+
+		directory = File.createTempFile("dungeon", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+
+		directory.delete();
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.actuator.SimpleActuator;
+import fr.ritaly.dungeonmaster.actuator.TriggerAction;
+
+public class DungeonValidatorTest extends TestCase {
+
+	public DungeonValidatorTest() {
+	}
+
+	public DungeonValidatorTest(String name) {
+		super(name);
+	}
+
+	public void testValidDungeon() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		for (int i = 1; i <= 4; i++) {
+			dungeon.createLevel(i, 10, 10);
+		}
+
+		assertTrue(dungeon.validateAll().isEmpty());
+
+		dungeon.validate();
+	}
+
+	public void testAllViolationsAreCollected() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		for (int i = 1; i <= 4; i++) {
+			final Level level = dungeon.createLevel(i, 10, 10);
+
+			// Two holes in the border of each level
+			level.setElement(0, 3, new Floor());
+			level.setElement(9, 5, new Floor());
+		}
+
+		final List<ValidationException> violations = dungeon.validateAll();
+
+		assertEquals(8, violations.size());
+
+		try {
+			dungeon.validate();
+			fail();
+		} catch (ValidationException e) {
+			// The first violation is reported
+			assertEquals(violations.get(0).getMessage(), e.getMessage());
+		}
+	}
+
+	public void testDestinationsAreChecked() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 5, 5);
+
+		dungeon.createLevel(2, 5, 5);
+
+		// Teleports into a wall
+		level1.setElement(1, 1, new Teleporter(new Position(0, 0, 2), DirectionTransform.IDENTITY, true));
+
+		// Teleports outside the dungeon
+		level1.setElement(2, 2, new Teleporter(new Position(1, 1, 3), DirectionTransform.IDENTITY, true));
+
+		// Valid teleporter
+		level1.setElement(3, 3, new Teleporter(new Position(2, 2, 2), DirectionTransform.IDENTITY, true));
+
+		// Stairs leading outside the dungeon
+		level1.setElement(1, 3, new Stairs(Direction.WEST, false, new Position(2, 2, 7)));
+
+		final List<ValidationException> violations = dungeon.validateAll();
+
+		assertEquals(3, violations.size());
+
+		// The destination of the stairs isn't created
+		assertFalse(dungeon.getLevel(2).isMaterialized(0, 0));
+	}
+
+	public void testActuatorTargetsAreChecked() throws Exception {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level = dungeon.createLevel(1, 5, 5);
+
+		final Pit pit = new Pit();
+
+		level.setElement(3, 3, pit);
+
+		final WallSwitch wallSwitch = new WallSwitch(Direction.EAST);
+		wallSwitch.addActuator(new SimpleActuator(1, TriggerAction.TOGGLE, pit));
+
+		level.setElement(0, 2, wallSwitch);
+
+		assertTrue(dungeon.validateAll().isEmpty());
+
+		// Remove the pit from the dungeon
+		level.setElement(3, 3, new Floor());
+
+		assertEquals(1, dungeon.validateAll().size());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -18,12 +18,14 @@
  */
 package fr.ritaly.dungeonmaster.map;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.TestCase;
 import fr.ritaly.dungeonmaster.Clock;
 import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Offsets;
 import fr.ritaly.dungeonmaster.Sector;
 import fr.ritaly.dungeonmaster.ai.Creature;
 
@@ -349,4 +351,47 @@ public class ElementTest extends TestCase {
 		// On nettoie l'horloge entre deux tests
 		Clock.getInstance().reset();
 	}
-}
\ No newline at end of file
+
+	public void testVisitElements() {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level1 = dungeon.createLevel(1, 5, 5);
+
+		final Element element = level1.getElement(1, 1);
+
+		final List<Element> visited = new ArrayList<Element>();
+
+		final ElementVisitor visitor = new ElementVisitor() {
+			@Override
+			public boolean visit(Element element) {
+				visited.add(element);
+
+				return true;
+			}
+		};
+
+		// The offsets outside the level are skipped
+		assertTrue(level1.visitElements(element.getPosition(), Offsets.surrounding(2), visitor));
+		assertEquals(level1.getElements(element.getPosition().getSurroundingPositions(2)), visited);
+
+		// The visit stops as soon as the visitor returns false
+		visited.clear();
+
+		assertFalse(level1.visitElements(element.getPosition(), Offsets.attackable(1), new ElementVisitor() {
+			@Override
+			public boolean visit(Element element) {
+				visited.add(element);
+
+				return false;
+			}
+		}));
+		assertEquals(1, visited.size());
+
+		// Same elements as the ones returned by getAdjacentElements()
+		visited.clear();
+
+		level1.visitElements(element.getPosition(), Offsets.attackable(1), visitor);
+
+		assertEquals(element.getAdjacentElements(), visited);
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.champion.Party;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.stat.Stat;
+
+public class JournalTest extends TestCase {
+
+	public JournalTest() {
+	}
+
+	public JournalTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Creates a dungeon with a door at (3,1,1) and a pit at (2,3,1).
+	 */
+	private static Dungeon newDungeon() {
+		final Dungeon dungeon = TestDungeons.newDungeon(0L, 1, new Position(1, 1, 1), Name.TIGGY);
+
+		dungeon.setElement(3, 1, 1, new Door(Door.Style.WOODEN, Orientation.WEST_EAST));
+		dungeon.setElement(2, 3, 1, new Pit());
+
+		return dungeon;
+	}
+
+	private static byte[] save(Dungeon dungeon) throws IOException {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		DungeonSnapshot.write(dungeon, stream);
+
+		return stream.toByteArray();
+	}
+
+	public void testReplayRestoresTheMutations() throws Exception {
+		final Dungeon dungeon = newDungeon();
+		final byte[] snapshot = save(dungeon);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final Journal journal = new Journal(stream);
+
+		dungeon.setJournal(journal);
+
+		// Party
+		dungeon.teleportParty(new Position(4, 4, 1), Direction.EAST, true);
+		dungeon.getParty().getLeader().getStats().getHealth().baseValue(20);
+
+		// Items
+		final Element element = dungeon.getElement(2, 2, 1);
+		element.addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+		element.addItem(ItemFactory.getFactory().newItem(Item.Type.BREAD), Sector.NORTH_EAST);
+		element.addItem(ItemFactory.getFactory().newItem(Item.Type.TORCH), Sector.SOUTH_WEST);
+		element.removeItem(Sector.NORTH_EAST);
+
+		// Creatures
+		final Creature mummy = new Creature(Creature.Type.MUMMY, 1, Direction.SOUTH);
+		dungeon.getElement(1, 4, 1).addCreature(mummy);
+		dungeon.getElement(1, 4, 1).removeCreature(mummy);
+		dungeon.getElement(1, 3, 1).addCreature(mummy, Sector.SOUTH_WEST);
+
+		// Elements
+		((Door) dungeon.getElement(3, 1, 1)).open();
+		((Pit) dungeon.getElement(2, 3, 1)).close();
+
+		Clock.getInstance().tick(8);
+
+		journal.flush();
+
+		assertTrue(journal.getRecordCount() > 0);
+
+		// Replay the journal on top of the snapshot
+		final Dungeon copy = DungeonSnapshot.read(new ByteArrayInputStream(snapshot));
+
+		assertEquals(journal.getRecordCount(), Journal.replay(copy, new ByteArrayInputStream(stream.toByteArray())));
+
+		assertEquals(new Position(4, 4, 1), copy.getParty().getPosition());
+		assertEquals(Direction.EAST, copy.getParty().getLookDirection());
+		assertTrue(copy.getElement(4, 4, 1).hasParty());
+		assertFalse(copy.getElement(1, 1, 1).hasParty());
+		assertEquals(20, copy.getParty().getLeader().getStats().getHealth().baseValue());
+
+		final Element restored = copy.getElement(2, 2, 1);
+
+		assertEquals(1, restored.getItemCount(Sector.NORTH_EAST));
+		assertEquals(Item.Type.APPLE, restored.getItems(Sector.NORTH_EAST).get(0).getType());
+		assertEquals(Item.Type.TORCH, restored.getItems(Sector.SOUTH_WEST).get(0).getType());
+
+		assertFalse(copy.getElement(1, 4, 1).hasCreatures());
+		assertEquals(Creature.Type.MUMMY, copy.getElement(1, 3, 1).getCreature(Sector.SOUTH_WEST).getType());
+
+		final Door door = (Door) copy.getElement(3, 1, 1);
+
+		assertEquals(((Door) dungeon.getElement(3, 1, 1)).getState(), door.getState());
+		assertEquals(((Door) dungeon.getElement(3, 1, 1)).getMotion(), door.getMotion());
+		assertTrue(((Pit) copy.getElement(2, 3, 1)).isClosed());
+	}
+
+	public void testMaxOnlyStatChangeIsRecorded() throws Exception {
+		final Dungeon dungeon = newDungeon();
+		final byte[] snapshot = save(dungeon);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final Journal journal = new Journal(stream);
+
+		dungeon.setJournal(journal);
+
+		final Stat health = dungeon.getParty().getLeader().getStats().getHealth();
+		final int value = health.baseValue();
+		final int max = health.baseMaxValue();
+
+		// The value is unchanged, only the maximum changes
+		health.incMax(10);
+
+		assertEquals(value, health.baseValue());
+
+		journal.flush();
+
+		assertEquals(1, journal.getRecordCount());
+
+		final Dungeon copy = DungeonSnapshot.read(new ByteArrayInputStream(snapshot));
+
+		assertEquals(1, Journal.replay(copy, new ByteArrayInputStream(stream.toByteArray())));
+
+		final Stat restored = copy.getParty().getLeader().getStats().getHealth();
+
+		assertEquals(max + 10, restored.baseMaxValue());
+		assertEquals(value, restored.baseValue());
+	}
+
+	public void testTruncatedRecordIsIgnored() throws Exception {
+		final Dungeon dungeon = newDungeon();
+		final byte[] snapshot = save(dungeon);
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final Journal journal = new Journal(stream);
+
+		dungeon.setJournal(journal);
+		dungeon.teleportParty(new Position(4, 4, 1), Direction.EAST, true);
+		dungeon.teleportParty(new Position(4, 3, 1), Direction.WEST, true);
+		journal.flush();
+
+		assertEquals(2, journal.getRecordCount());
+
+		// Simulate a crash while writing the last record
+		final byte[] bytes = stream.toByteArray();
+		final byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+
+		final Dungeon copy = DungeonSnapshot.read(new ByteArrayInputStream(snapshot));
+
+		assertEquals(1, Journal.replay(copy, new ByteArrayInputStream(truncated)));
+		assertEquals(new Position(4, 4, 1), copy.getParty().getPosition());
+	}
+
+	public void testClosedJournalStopsRecording() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		final Journal journal = new Journal(new ByteArrayOutputStream());
+
+		dungeon.setJournal(journal);
+		dungeon.getElement(2, 2, 1).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+
+		assertEquals(1, journal.getRecordCount());
+
+		journal.close();
+
+		dungeon.getElement(2, 2, 1).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+		dungeon.getParty().getLeader().getStats().getHealth().baseValue(20);
+
+		assertEquals(1, journal.getRecordCount());
+	}
+
+	public void testInvalidJournalIsRejected() throws Exception {
+		try {
+			Journal.replay(newDungeon(), new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final Journal journal = new Journal(stream);
+		journal.flush();
+
+		// Append an unknown record
+		stream.write(127);
+
+		try {
+			Journal.replay(newDungeon(), new ByteArrayInputStream(stream.toByteArray()));
+			fail();
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.DirectionTransform;
+import fr.ritaly.dungeonmaster.Orientation;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.actuator.TestActuator;
+import fr.ritaly.dungeonmaster.actuator.TriggerType;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.item.Torch;
+import fr.ritaly.dungeonmaster.item.WaterSkin;
+import fr.ritaly.dungeonmaster.magic.PowerRune;
+import fr.ritaly.dungeonmaster.projectile.ItemProjectile;
+
+public class LevelResidencyTest extends TestCase {
+
+	public LevelResidencyTest() {
+	}
+
+	public LevelResidencyTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Creates a dungeon of 4 levels: the levels 1 and 2 are linked by stairs,
+	 * the levels 2 and 3 by a pit and the levels 3 and 4 by a teleporter.
+	 */
+	private static Dungeon newDungeon() {
+		final Dungeon dungeon = TestDungeons.newDungeon(0L, 4, new Position(1, 1, 1), Name.TIGGY);
+
+		dungeon.setElement(4, 4, 1, new Stairs(Direction.EAST, false, new Position(4, 4, 2)));
+		dungeon.setElement(4, 4, 2, new Stairs(Direction.EAST, true, new Position(4, 4, 1)));
+		dungeon.setElement(2, 2, 2, new Pit());
+		dungeon.setElement(3, 3, 3, new Teleporter(new Position(1, 1, 4), DirectionTransform.IDENTITY, true));
+
+		return dungeon;
+	}
+
+	public void testNeighbourhoodFollowsTheLinksBetweenLevels() throws Exception {
+		final LevelResidency residency = newDungeon().getResidency();
+
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), residency.getNeighbourhood(1));
+		assertEquals(new HashSet<Integer>(Arrays.asList(2, 3, 4)), residency.getNeighbourhood(3));
+
+		residency.setRadius(2);
+
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3)), residency.getNeighbourhood(1));
+	}
+
+	public void testDistantLevelsAreEvictedAndReloaded() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		final Creature mummy = new Creature(Creature.Type.MUMMY, 1, Direction.WEST);
+		dungeon.getElement(2, 3, 4).addCreature(mummy);
+		dungeon.getElement(3, 2, 4).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+
+		final LevelResidency residency = dungeon.getResidency();
+		residency.setEnabled(true);
+
+		assertFalse(residency.isEvicted(1));
+		assertFalse(residency.isEvicted(2));
+		assertTrue(residency.isEvicted(3));
+		assertTrue(residency.isEvicted(4));
+		assertEquals(4, dungeon.getLevelCount());
+		assertEquals(Arrays.asList(1, 2, 3, 4), dungeon.getLevelNumbers());
+
+		// The evicted level is reloaded when requested
+		final Level level = dungeon.getLevel(4);
+
+		assertNotNull(level);
+		assertFalse(residency.isEvicted(4));
+		assertEquals(1, level.getCreatureCount());
+		assertEquals(Creature.Type.MUMMY, level.getCreatures().get(0).getType());
+		assertEquals(1, level.getElement(3, 2).getItemCount(Sector.NORTH_EAST));
+
+		// Moving the party to the level 3 reloads its neighbourhood
+		dungeon.teleportParty(new Position(1, 1, 3), Direction.NORTH, true);
+
+		assertTrue(residency.isEvicted(1));
+		assertFalse(residency.isEvicted(2));
+		assertFalse(residency.isEvicted(3));
+		assertFalse(residency.isEvicted(4));
+	}
+
+	public void testLevelHostingThePartyIsNeverEvicted() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		assertFalse(dungeon.getResidency().evict(1));
+		assertTrue(dungeon.getResidency().evict(2));
+		assertFalse(dungeon.getResidency().evict(2));
+	}
+
+	public void testEvictedLevelCatchesUpWithTheElapsedTime() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		dungeon.setElement(3, 2, 4, new Door(Door.Style.WOODEN, Orientation.WEST_EAST));
+
+		((Door) dungeon.getElement(3, 2, 4)).open();
+
+		assertTrue(dungeon.getResidency().evict(4));
+
+		Clock.getInstance().tick(40);
+
+		final Door door = (Door) dungeon.getElement(3, 2, 4);
+
+		assertEquals(Door.State.OPEN, door.getState());
+		assertEquals(Door.Motion.IDLE, door.getMotion());
+	}
+
+	public void testLevelWithWiredSwitchIsPinned() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		final FloorSwitch floorSwitch = new FloorSwitch();
+		dungeon.setElement(3, 2, 4, floorSwitch);
+		floorSwitch.addActuator(TriggerType.ITEM_DROPPED, new TestActuator());
+
+		// The actuator can't be serialized, the level stays in memory
+		assertFalse(dungeon.getResidency().evict(4));
+		assertSame(floorSwitch, dungeon.getElement(3, 2, 4));
+
+		// Once unwired, the switch is evicted and reloaded
+		floorSwitch.clearActuator(TriggerType.ITEM_DROPPED);
+
+		assertTrue(dungeon.getResidency().evict(4));
+
+		final Element element = dungeon.getElement(3, 2, 4);
+
+		assertFalse(dungeon.getResidency().isEvicted(4));
+		assertNotSame(floorSwitch, element);
+		assertEquals(Element.Type.FLOOR_SWITCH, element.getType());
+	}
+
+	public void testEvictedItemsKeepTheirState() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		final Torch torch = new Torch();
+		torch.restoreLight(42);
+
+		final WaterSkin waterSkin = new WaterSkin();
+		waterSkin.restoreDoses(1);
+
+		final Item apple = ItemFactory.getFactory().newItem(Item.Type.APPLE);
+		apple.setPoisonStrength(PowerRune.PAL);
+
+		dungeon.getElement(2, 2, 4).addItem(torch, Sector.NORTH_WEST);
+		dungeon.getElement(2, 2, 4).addItem(waterSkin, Sector.NORTH_EAST);
+		dungeon.getElement(2, 2, 4).addItem(apple, Sector.SOUTH_EAST);
+
+		assertTrue(dungeon.getResidency().evict(4));
+
+		final Element element = dungeon.getElement(2, 2, 4);
+
+		assertNotSame(torch, element.getItems(Sector.NORTH_WEST).get(0));
+		assertEquals(42, ((Torch) element.getItems(Sector.NORTH_WEST).get(0)).getLight());
+		assertEquals(1, ((WaterSkin) element.getItems(Sector.NORTH_EAST).get(0)).getDoses());
+		assertEquals(PowerRune.PAL, element.getItems(Sector.SOUTH_EAST).get(0).getPoisonStrength());
+	}
+
+	public void testLevelWithFlyingProjectileIsPinned() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		new ItemProjectile(ItemFactory.getFactory().newItem(Item.Type.APPLE), dungeon, new Position(2, 2, 4),
+				Direction.EAST, Sector.NORTH_WEST, 2);
+
+		assertFalse(dungeon.getResidency().evict(4));
+
+		// The level can be evicted once the projectile has landed
+		Clock.getInstance().tick(30);
+
+		assertFalse(dungeon.getElement(2, 2, 4).hasProjectiles());
+		assertFalse(dungeon.getElement(3, 2, 4).hasProjectiles());
+		assertTrue(dungeon.getResidency().evict(4));
+	}
+
+	public void testSnapshotIncludesEvictedLevels() throws Exception {
+		final Dungeon dungeon = newDungeon();
+
+		dungeon.getElement(3, 2, 4).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE), Sector.NORTH_EAST);
+
+		dungeon.getResidency().setEnabled(true);
+
+		assertTrue(dungeon.getResidency().isEvicted(4));
+
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		DungeonSnapshot.write(dungeon, stream);
+
+		// Writing the snapshot doesn't reload the evicted levels
+		assertTrue(dungeon.getResidency().isEvicted(4));
+
+		final Dungeon copy = DungeonSnapshot.read(new ByteArrayInputStream(stream.toByteArray()));
+
+		assertEquals(4, copy.getLevelCount());
+		assertEquals(1, copy.getElement(3, 2, 4).getItemCount(Sector.NORTH_EAST));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.ai.Materiality;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+
+public class LevelTest extends TestCase {
+
+	public LevelTest() {
+	}
+
+	public LevelTest(String name) {
+		super(name);
+	}
+
+	public void testPlainElementsAreMaterializedOnDemand() throws Exception {
+		final Level level = new Dungeon().createLevel(1, 256, 256);
+
+		for (int x = 0; x < level.getWidth(); x++) {
+			for (int y = 0; y < level.getHeight(); y++) {
+				assertFalse(level.isMaterialized(x, y));
+			}
+		}
+
+		// The flags are set without materializing the elements
+		final CellMap cellMap = level.getCellMap();
+
+		assertTrue(cellMap.isConcrete(0, 10));
+		assertTrue(cellMap.isTraversable(10, 10, Materiality.MATERIAL));
+
+		// Neither validating nor rendering the level materializes the elements
+		level.validate();
+		level.draw();
+
+		assertFalse(level.isMaterialized(10, 10));
+
+		final Element element = level.getElement(10, 10);
+
+		assertNotNull(element);
+		assertEquals(Element.Type.FLOOR, element.getType());
+		assertSame(level, element.getLevel());
+		assertEquals(10, element.getPosition().x);
+		assertEquals(10, element.getPosition().y);
+		assertTrue(level.isMaterialized(10, 10));
+		assertSame(element, level.getElement(10, 10));
+
+		element.addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		assertTrue(level.getSpatialIndex().isOccupied(SpatialIndex.Kind.ITEM, 10, 10));
+
+		assertEquals(Element.Type.WALL, level.getElement(0, 0).getType());
+	}
+
+	public void testReplacingElementsByPlainOnes() throws Exception {
+		final Level level = new Dungeon().createLevel(1, 5, 5);
+
+		final Element element = level.getElement(2, 2);
+
+		element.addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		level.fill(ElementFactory.FLOOR_FACTORY);
+
+		// The previous element was detached and its items aren't indexed
+		// anymore
+		assertNull(element.getLevel());
+		assertFalse(level.isMaterialized(2, 2));
+		assertEquals(0, level.getSpatialIndex().getCount(SpatialIndex.Kind.ITEM));
+
+		level.fill(ElementFactory.WALL_FACTORY);
+
+		assertTrue(level.getCellMap().isConcrete(2, 2));
+		assertEquals(Element.Type.WALL, level.getElement(2, 2).getType());
+
+		level.surround(ElementFactory.FLOOR_FACTORY);
+
+		try {
+			level.validate();
+			fail();
+		} catch (ValidationException e) {
+			// Expected: the border is made of floor tiles
+		}
+
+		level.clear();
+
+		assertNull(level.getElement(1, 1));
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.Direction;
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.Sector;
+import fr.ritaly.dungeonmaster.ai.Creature;
+import fr.ritaly.dungeonmaster.item.Item;
+import fr.ritaly.dungeonmaster.item.ItemFactory;
+import fr.ritaly.dungeonmaster.map.SpatialIndex.Kind;
+import fr.ritaly.dungeonmaster.projectile.ItemProjectile;
+
+public class SpatialIndexTest extends TestCase {
+
+	public SpatialIndexTest() {
+	}
+
+	public SpatialIndexTest(String name) {
+		super(name);
+	}
+
+	public void testCreaturesAreIndexed() {
+		final Level level = new Dungeon().createLevel(1, 10, 10);
+
+		final SpatialIndex index = level.getSpatialIndex();
+
+		assertEquals(0, index.getCount(Kind.CREATURE));
+
+		final Creature mummy1 = new Creature(Creature.Type.MUMMY, 1);
+		final Creature mummy2 = new Creature(Creature.Type.MUMMY, 1);
+		final Creature mummy3 = new Creature(Creature.Type.MUMMY, 1);
+
+		level.getElement(2, 2).addCreature(mummy1);
+		level.getElement(5, 2).addCreature(mummy2);
+		level.getElement(5, 6).addCreature(mummy3);
+
+		assertEquals(3, index.getCount(Kind.CREATURE));
+		assertEquals(3, level.getCreatureCount());
+		assertTrue(index.isOccupied(Kind.CREATURE, 2, 2));
+		assertFalse(index.isOccupied(Kind.CREATURE, 3, 2));
+		assertEquals(1, index.getCount(Kind.CREATURE, 5, 6));
+
+		// Rectangle query (bounds included and clipped to the level)
+		assertEquals(Arrays.asList(level.getElement(2, 2), level.getElement(5, 2)),
+				index.findInRectangle(Kind.CREATURE, -5, 0, 5, 5));
+
+		// Radius query
+		assertEquals(Arrays.asList(level.getElement(5, 2)), index.findInRadius(Kind.CREATURE, 5, 3, 1));
+		assertEquals(Collections.singletonList(mummy3), level.getCreatures(new Position(6, 7, 1), 1));
+		assertTrue(level.getCreatures(new Position(6, 7, 2), 1).isEmpty());
+
+		// Line query (in order from the first position)
+		assertEquals(Arrays.asList(level.getElement(5, 6), level.getElement(5, 2)),
+				index.findOnLine(Kind.CREATURE, 5, 8, 5, 0));
+
+		// Moving a creature updates the index
+		level.getElement(5, 6).removeCreature(mummy3);
+		level.getElement(8, 8).addCreature(mummy3);
+
+		assertFalse(index.isOccupied(Kind.CREATURE, 5, 6));
+		assertTrue(index.isOccupied(Kind.CREATURE, 8, 8));
+		assertEquals(3, index.getCount(Kind.CREATURE));
+		assertEquals(3, level.getCreatures().size());
+	}
+
+	public void testItemsAreIndexed() {
+		final Level level = new Dungeon().createLevel(1, 10, 10);
+
+		final SpatialIndex index = level.getSpatialIndex();
+
+		final Element element = level.getElement(3, 4);
+
+		final Item apple = ItemFactory.getFactory().newItem(Item.Type.APPLE);
+		final Item bread = ItemFactory.getFactory().newItem(Item.Type.BREAD);
+
+		element.addItem(apple, Sector.SOUTH_WEST);
+		element.addItem(bread, Sector.NORTH_EAST);
+
+		assertEquals(2, index.getCount(Kind.ITEM));
+		assertEquals(2, index.getCount(Kind.ITEM, 3, 4));
+
+		assertTrue(element.removeItem(apple));
+
+		assertEquals(1, index.getCount(Kind.ITEM));
+
+		assertSame(bread, element.removeItem(Sector.NORTH_EAST));
+
+		assertEquals(0, index.getCount(Kind.ITEM));
+		assertFalse(index.isOccupied(Kind.ITEM, 3, 4));
+	}
+
+	public void testProjectilesAreIndexed() {
+		final Dungeon dungeon = new Dungeon();
+
+		final Level level = dungeon.createLevel(1, 10, 10);
+
+		final SpatialIndex index = level.getSpatialIndex();
+
+		final Item apple = ItemFactory.getFactory().newItem(Item.Type.APPLE);
+
+		new ItemProjectile(apple, dungeon, new Position(2, 5, 1), Direction.EAST, Sector.NORTH_WEST, 3);
+
+		assertEquals(1, index.getCount(Kind.PROJECTILE));
+		assertEquals(1, level.getProjectiles().size());
+		assertTrue(index.isOccupied(Kind.PROJECTILE, 2, 5));
+
+		// Let the projectile fly until it falls on the floor
+		Clock.getInstance().tick(60);
+
+		assertEquals(0, index.getCount(Kind.PROJECTILE));
+		assertTrue(level.getProjectiles().isEmpty());
+		assertEquals(1, index.getCount(Kind.ITEM));
+	}
+
+	public void testReplacingElementUpdatesIndex() {
+		final Level level = new Dungeon().createLevel(1, 10, 10);
+
+		final SpatialIndex index = level.getSpatialIndex();
+
+		level.getElement(4, 4).addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		assertTrue(index.isOccupied(Kind.ITEM, 4, 4));
+
+		level.setElement(4, 4, new Floor());
+
+		assertFalse(index.isOccupied(Kind.ITEM, 4, 4));
+		assertEquals(0, index.getCount(Kind.ITEM));
+
+		// An element already holding items is indexed when set
+		final Floor floor = new Floor();
+		floor.addItem(ItemFactory.getFactory().newItem(Item.Type.APPLE));
+
+		level.setElement(6, 6, floor);
+
+		assertTrue(index.isOccupied(Kind.ITEM, 6, 6));
+
+		level.clear();
+
+		assertEquals(0, index.getCount(Kind.ITEM));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Clock.getInstance().reset();
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.map;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.Validate;
+
+import fr.ritaly.dungeonmaster.Position;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Party;
+
+/**
+ * Builds the dungeons shared by the tests.
+ *
+ * @author <a href="mailto:francois.ritaly@gmail.com">Francois RITALY</a>
+ */
+public final class TestDungeons {
+
+	private TestDungeons() {
+	}
+
+	/**
+	 * Creates a new dungeon with a single level made of two rooms linked by a
+	 * corridor and returns this level.
+	 *
+	 * <pre>
+	 * +---+---+---+---+---+---+---+
+	 * | W | W | W | W | W | W | W |
+	 * +---+---+---+---+---+---+---+
+	 * | W | . | . | W | . | . | W |
+	 * +---+---+---+---+---+---+---+
+	 * | W | . | . | . | . | . | W |
+	 * +---+---+---+---+---+---+---+
+	 * | W | W | W | W | W | W | W |
+	 * +---+---+---+---+---+---+---+
+	 * </pre>
+	 *
+	 * @return a level. Never returns null.
+	 */
+	public static Level newTwoRoomLevel() {
+		return DungeonUtils.parse(Arrays.asList("WWWWWWW", "W  W  W", "W     W", "WWWWWWW"), new Dungeon(), 1);
+	}
+
+	/**
+	 * Creates a new dungeon with the given seed and the given number of 8x8
+	 * levels. The party made of the given champions stands at the given
+	 * position (the first champion is the leader).
+	 *
+	 * @param seed
+	 *            the seed of the dungeon's random streams.
+	 * @param levels
+	 *            the number of levels to create. Must be positive.
+	 * @param position
+	 *            the position of the party. Can't be null.
+	 * @param names
+	 *            the names of the champions in the party. Can't be empty.
+	 * @return a new dungeon. Never returns null.
+	 */
+	public static Dungeon newDungeon(long seed, int levels, Position position, Champion.Name... names) {
+		Validate.isTrue(levels > 0, String.format("The given number of levels %d must be positive", levels));
+		Validate.notNull(position, "The given position is null");
+		Validate.isTrue(names.length > 0, "No champion given");
+
+		final Dungeon dungeon = new Dungeon(seed);
+
+		for (int i = 1; i <= levels; i++) {
+			dungeon.createLevel(i, 8, 8);
+		}
+
+		final Party party = new Party(ChampionFactory.getFactory().newChampion(names[0]));
+
+		for (int i = 1; i < names.length; i++) {
+			party.addChampion(ChampionFactory.getFactory().newChampion(names[i]));
+		}
+
+		dungeon.setParty(position, party);
+
+		return dungeon;
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.ritaly.dungeonmaster.stat;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import fr.ritaly.dungeonmaster.Clock;
+import fr.ritaly.dungeonmaster.champion.Champion;
+import fr.ritaly.dungeonmaster.champion.ChampionFactory;
+import fr.ritaly.dungeonmaster.champion.Champion.Name;
+
+public class StatsTest extends TestCase {
+
+	public StatsTest() {
+	}
+
+	public StatsTest(String name) {
+		super(name);
+	}
+
+	private static final class RecordingListener implements StatListener {
+
+		private final List<String> changes = new ArrayList<String>();
+
+		@Override
+		public void statChanged(Stats stats, Stats.Type type, int oldValue, int newValue) {
+			changes.add(type + ":" + oldValue + "->" + newValue);
+		}
+
+		@Override
+		public void statMaxChanged(Stats stats, Stats.Type type, int oldMax, int newMax) {
+			changes.add(type + ".max:" + oldMax + "->" + newMax);
+		}
+	}
+
+	public void testStatListenerIsNotifiedOfTheChanges() {
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+		final Stats stats = tiggy.getStats();
+
+		final RecordingListener all = new RecordingListener();
+		final RecordingListener mana = new RecordingListener();
+
+		stats.addStatListener(all);
+		stats.addStatListener(Stats.Type.MANA, mana);
+
+		final int initialMana = stats.getMana().baseValue();
+		final int initialWisdom = stats.getWisdom().baseValue();
+
+		stats.getMana().dec(1);
+		stats.getWisdom().dec(2);
+
+		assertEquals(2, all.changes.size());
+		assertEquals("MANA:" + initialMana + "->" + (initialMana - 1), all.changes.get(0));
+		assertEquals("WISDOM:" + initialWisdom + "->" + (initialWisdom - 2), all.changes.get(1));
+
+		assertEquals(1, mana.changes.size());
+		assertEquals("MANA:" + initialMana + "->" + (initialMana - 1), mana.changes.get(0));
+
+		// The listeners are no longer notified once removed
+		stats.removeStatListener(all);
+		stats.removeStatListener(Stats.Type.MANA, mana);
+
+		stats.getMana().inc(1);
+
+		assertEquals(2, all.changes.size());
+		assertEquals(1, mana.changes.size());
+	}
+
+	public void testStatListenerIsNotifiedOfTheMaxChanges() {
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+		final Stats stats = tiggy.getStats();
+
+		final RecordingListener listener = new RecordingListener();
+
+		stats.addStatListener(Stats.Type.MANA, listener);
+
+		final int initialMax = stats.getMana().baseMaxValue();
+
+		// Only the maximum changes
+		stats.getMana().incMax(5);
+
+		assertEquals(1, listener.changes.size());
+		assertEquals("MANA.max:" + initialMax + "->" + (initialMax + 5), listener.changes.get(0));
+	}
+
+	public void testGetStatByType() {
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+		final Stats stats = tiggy.getStats();
+
+		for (Stats.Type type : Stats.Type.values()) {
+			assertSame(stats.getStat(type.getPropertyName()), stats.getStat(type));
+		}
+	}
+
+	public void testPropertyChangeListenerIsStillSupported() {
+		final Champion tiggy = ChampionFactory.getFactory().newChampion(Name.TIGGY);
+		final Stats stats = tiggy.getStats();
+
+		final List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+
+		stats.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent event) {
+				events.add(event);
+			}
+		});
+
+		final int initialHealth = stats.getHealth().baseValue();
+
+		stats.getHealth().dec(3);
+
+		assertEquals(1, events.size());
+		assertSame(stats, events.get(0).getSource());
+		assertEquals(Stats.PROPERTY_HEALTH, events.get(0).getPropertyName());
+		assertEquals(Integer.valueOf(initialHealth), events.get(0).getOldValue());
+		assertEquals(Integer.valueOf(initialHealth - 3), events.get(0).getNewValue());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		// Reset the clock before each test
+		Clock.getInstance().reset();
+	}
+}